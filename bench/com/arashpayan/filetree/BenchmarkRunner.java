@@ -0,0 +1,405 @@
+/* This file is part of FileTree.
+
+    FileTree is free software; you can redistribute it and/or modify
+    it under the terms of the GNU General Public License (or the Lesser GPL)
+    as published by the Free Software Foundation; either version 3 of the
+    License, or (at your option) any later version.
+
+    FileTree is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+ */
+/*
+ * BenchmarkRunner.java
+ *
+ * Copyright 2026 the FileTree contributors
+ */
+
+package com.arashpayan.filetree;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.lang.reflect.InvocationTargetException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.regex.Pattern;
+import javax.swing.SwingUtilities;
+
+/**
+ * Runs the <code>FileTreeBenchmarks</code> headless and writes the results as
+ * JSON, in the same layout JMH uses, so runs from different releases can be
+ * diffed with the usual JMH tools.
+ * <p>
+ * Usage: <code>BenchmarkRunner [-wi warmups] [-i iterations] [-r millis]
+ * [-o results.json] [regex]</code>. Only the benchmarks whose names match
+ * <code>regex</code> are run.
+ * <p>
+ * Each iteration keeps invoking a benchmark until <code>-r</code> milliseconds
+ * of measured time have gone by. The set up done before each invocation isn't
+ * measured. The score is the average time per operation over the measurement
+ * iterations, and its error is the half-width of a 99.9% confidence interval.
+ */
+public class BenchmarkRunner {
+
+    /**
+     * runs the benchmarks
+     * @param args the command line arguments
+     * @throws Exception if a benchmark fails
+     */
+    public static void main(String[] args) throws Exception {
+        int warmups = 3;
+        int iterations = 5;
+        long iterationTime = 1000;
+        File output = new File("bench-results.json");
+        Pattern filter = Pattern.compile(".*");
+        for (int i=0; i<args.length; i++)
+        {
+            if (args[i].equals("-wi"))
+                warmups = Integer.parseInt(args[++i]);
+            else if (args[i].equals("-i"))
+                iterations = Integer.parseInt(args[++i]);
+            else if (args[i].equals("-r"))
+                iterationTime = Long.parseLong(args[++i]);
+            else if (args[i].equals("-o"))
+                output = new File(args[++i]);
+            else
+                filter = Pattern.compile(args[i]);
+        }
+
+        FileTreeBenchmarks benchmarks = new FileTreeBenchmarks();
+        List<Result> results = new ArrayList<Result>();
+        try {
+            benchmarks.createFixtures();
+            for (Benchmark benchmark:benchmarks.getBenchmarks())
+            {
+                if (!filter.matcher(benchmark.getName()).find())
+                    continue;
+
+                System.out.println("# " + benchmark.getName() + " " + benchmark.getParams());
+                Result result = benchmark.measure(warmups, iterations, iterationTime);
+                System.out.println(result);
+                results.add(result);
+            }
+        } finally {
+            benchmarks.deleteFixtures();
+        }
+
+        writeJson(results, warmups, iterations, iterationTime, output);
+        System.out.println("results written to " + output.getPath());
+        System.exit(0);
+    }
+
+    /**
+     * runs <code>task</code> on the event dispatch thread and waits for it
+     * @param task the work to do
+     * @return the value returned by <code>task</code>
+     * @throws Exception if <code>task</code> throws one
+     */
+    static <T> T onEventThread(final Callable<T> task) throws Exception {
+        final List<T> result = new ArrayList<T>(1);
+        try {
+            SwingUtilities.invokeAndWait(new Runnable() {
+                public void run() {
+                    try {
+                        result.add(task.call());
+                    } catch (Exception e) {
+                        throw new RuntimeException(e);
+                    }
+                }
+            });
+        } catch (InvocationTargetException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException && cause.getCause() instanceof Exception)
+                throw (Exception)cause.getCause();
+            throw e;
+        }
+
+        return result.get(0);
+    }
+
+    /**
+     * writes the results in the layout of JMH's JSON output
+     * @param results the results to write
+     * @param warmups the number of warmup iterations
+     * @param iterations the number of measurement iterations
+     * @param iterationTime the length of an iteration, in milliseconds
+     * @param output the file to write to
+     * @throws IOException if the file can't be written
+     */
+    private static void writeJson(List<Result> results, int warmups, int iterations,
+            long iterationTime, File output) throws IOException {
+        StringBuilder json = new StringBuilder("[\n");
+        for (int r=0; r<results.size(); r++)
+        {
+            Result result = results.get(r);
+            Benchmark benchmark = result.benchmark;
+            json.append("    {\n");
+            json.append("        \"jmhVersion\" : \"compatible\",\n");
+            json.append("        \"benchmark\" : ").append(quote(FileTreeBenchmarks.class.getName() + "." + benchmark.getName())).append(",\n");
+            json.append("        \"mode\" : ").append(quote(benchmark.getMode())).append(",\n");
+            json.append("        \"threads\" : 1,\n");
+            json.append("        \"forks\" : 0,\n");
+            json.append("        \"jvm\" : ").append(quote(System.getProperty("java.home"))).append(",\n");
+            json.append("        \"jdkVersion\" : ").append(quote(System.getProperty("java.version"))).append(",\n");
+            json.append("        \"vmName\" : ").append(quote(System.getProperty("java.vm.name"))).append(",\n");
+            json.append("        \"os\" : ").append(quote(Constants.osname)).append(",\n");
+            json.append("        \"warmupIterations\" : ").append(warmups).append(",\n");
+            json.append("        \"warmupTime\" : ").append(quote(iterationTime + " ms")).append(",\n");
+            json.append("        \"measurementIterations\" : ").append(iterations).append(",\n");
+            json.append("        \"measurementTime\" : ").append(quote(iterationTime + " ms")).append(",\n");
+            json.append("        \"params\" : {");
+            int p = 0;
+            for (Map.Entry<String, String> param:benchmark.getParams().entrySet())
+            {
+                json.append(p++ == 0 ? "\n" : ",\n");
+                json.append("            ").append(quote(param.getKey())).append(" : ").append(quote(param.getValue()));
+            }
+            json.append(p == 0 ? "},\n" : "\n        },\n");
+            json.append("        \"primaryMetric\" : {\n");
+            json.append("            \"score\" : ").append(number(result.getScore())).append(",\n");
+            json.append("            \"scoreError\" : ").append(number(result.getScoreError())).append(",\n");
+            json.append("            \"scoreUnit\" : ").append(quote(benchmark.getUnit())).append(",\n");
+            json.append("            \"rawData\" : [\n                [\n");
+            for (int i=0; i<result.samples.length; i++)
+            {
+                json.append("                    ").append(number(result.samples[i]));
+                json.append(i < result.samples.length - 1 ? ",\n" : "\n");
+            }
+            json.append("                ]\n            ]\n        },\n");
+            json.append("        \"secondaryMetrics\" : {\n        }\n");
+            json.append(r < results.size() - 1 ? "    },\n" : "    }\n");
+        }
+        json.append("]\n");
+
+        File parent = output.getAbsoluteFile().getParentFile();
+        if (parent != null)
+            parent.mkdirs();
+        try (Writer writer = new OutputStreamWriter(new FileOutputStream(output), "UTF-8")) {
+            writer.write(json.toString());
+        }
+    }
+
+    /**
+     * formats a number for JSON
+     * @param d the number
+     * @return <code>d</code>, or "NaN" in quotes if it isn't a finite number
+     */
+    private static String number(double d) {
+        if (Double.isNaN(d) || Double.isInfinite(d))
+            return quote("NaN");
+
+        return String.valueOf(d);
+    }
+
+    /**
+     * quotes a string for JSON
+     * @param s the string
+     * @return <code>s</code> in quotes, with special characters escaped
+     */
+    private static String quote(String s) {
+        StringBuilder quoted = new StringBuilder("\"");
+        for (int i=0; i<s.length(); i++)
+        {
+            char c = s.charAt(i);
+            if (c == '"' || c == '\\')
+                quoted.append('\\').append(c);
+            else if (c < ' ')
+                quoted.append(String.format("\\u%04x", (int)c));
+            else
+                quoted.append(c);
+        }
+
+        return quoted.append('"').toString();
+    }
+
+    /**
+     * A single benchmark. Subclasses do the measured work in <code>run</code>,
+     * and may prepare each invocation in <code>setUp</code>, which isn't measured.
+     */
+    abstract static class Benchmark {
+        /**
+         * Creates a new instance of Benchmark
+         * @param name the name of the benchmark
+         * @param unit the unit of the score
+         */
+        Benchmark(String name, String unit) {
+            this.name = name;
+            this.unit = unit;
+            params = new LinkedHashMap<String, String>();
+        }
+
+        /**
+         * adds a parameter to the description of the benchmark
+         * @param key the name of the parameter
+         * @param value its value
+         * @return this benchmark
+         */
+        Benchmark param(String key, Object value) {
+            params.put(key, String.valueOf(value));
+            return this;
+        }
+
+        /**
+         * returns the name of the benchmark
+         * @return the name of the benchmark
+         */
+        String getName() {
+            return name;
+        }
+
+        /**
+         * returns the unit of the score
+         * @return the unit of the score
+         */
+        String getUnit() {
+            return unit;
+        }
+
+        /**
+         * returns the JMH mode the score corresponds to
+         * @return "avgt" for the average time per operation
+         */
+        String getMode() {
+            return "avgt";
+        }
+
+        /**
+         * returns the parameters of the benchmark
+         * @return the parameters, in the order they were added
+         */
+        Map<String, String> getParams() {
+            return params;
+        }
+
+        /**
+         * prepares the benchmark before its first iteration. Not measured.
+         * @throws Exception if the preparation fails
+         */
+        void setUpTrial() throws Exception {
+        }
+
+        /**
+         * prepares an invocation. Not measured.
+         * @throws Exception if the preparation fails
+         */
+        void setUp() throws Exception {
+        }
+
+        /**
+         * does the measured work
+         * @return the number of operations done
+         * @throws Exception if the work fails
+         */
+        abstract int run() throws Exception;
+
+        /**
+         * runs the warmup and measurement iterations
+         * @param warmups the number of warmup iterations
+         * @param iterations the number of measurement iterations
+         * @param iterationTime the measured time per iteration, in milliseconds
+         * @return the result
+         * @throws Exception if the benchmark fails
+         */
+        Result measure(int warmups, int iterations, long iterationTime) throws Exception {
+            setUpTrial();
+            double[] samples = new double[iterations];
+            for (int i=0; i<warmups + iterations; i++)
+            {
+                long elapsed = 0;
+                long operations = 0;
+                long budget = iterationTime * 1000000L;
+                while (elapsed < budget)
+                {
+                    setUp();
+                    long start = System.nanoTime();
+                    operations += run();
+                    elapsed += System.nanoTime() - start;
+                }
+                if (i >= warmups)
+                    samples[i - warmups] = elapsed / 1000.0 / Math.max(operations, 1);
+            }
+
+            return new Result(this, samples);
+        }
+
+        /**
+         * the name of the benchmark
+         */
+        private String name;
+        /**
+         * the unit of the score
+         */
+        private String unit;
+        /**
+         * the parameters of the benchmark
+         */
+        private Map<String, String> params;
+    }
+
+    /**
+     * the samples taken for a benchmark
+     */
+    static class Result {
+        /**
+         * Creates a new instance of Result
+         * @param benchmark the benchmark the samples are for
+         * @param samples the score of each measurement iteration
+         */
+        Result(Benchmark benchmark, double[] samples) {
+            this.benchmark = benchmark;
+            this.samples = samples;
+        }
+
+        /**
+         * returns the mean of the samples
+         * @return the score of the benchmark
+         */
+        double getScore() {
+            double sum = 0;
+            for (double sample:samples)
+                sum += sample;
+            return sum / samples.length;
+        }
+
+        /**
+         * returns the half-width of the 99.9% confidence interval of the score,
+         * using the normal approximation
+         * @return the error of the score, or NaN if there is a single sample
+         */
+        double getScoreError() {
+            if (samples.length < 2)
+                return Double.NaN;
+
+            double mean = getScore();
+            double squares = 0;
+            for (double sample:samples)
+                squares += (sample - mean) * (sample - mean);
+            return 3.291 * Math.sqrt(squares / (samples.length - 1)) / Math.sqrt(samples.length);
+        }
+
+        /**
+         * returns a line describing the result
+         * @return the score and error with the unit
+         */
+        public String toString() {
+            return String.format("%s: %.3f +- %.3f %s", benchmark.getName(), getScore(),
+                    getScoreError(), benchmark.getUnit());
+        }
+
+        /**
+         * the benchmark the samples are for
+         */
+        final Benchmark benchmark;
+        /**
+         * the score of each measurement iteration
+         */
+        final double[] samples;
+    }
+}
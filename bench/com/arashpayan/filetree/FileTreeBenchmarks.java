@@ -0,0 +1,454 @@
+/* This file is part of FileTree.
+
+    FileTree is free software; you can redistribute it and/or modify
+    it under the terms of the GNU General Public License (or the Lesser GPL)
+    as published by the Free Software Foundation; either version 3 of the
+    License, or (at your option) any later version.
+
+    FileTree is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+ */
+/*
+ * FileTreeBenchmarks.java
+ *
+ * Copyright 2026 the FileTree contributors
+ */
+
+package com.arashpayan.filetree;
+
+import java.io.IOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import javax.swing.tree.TreeCellRenderer;
+import javax.swing.tree.TreePath;
+
+/**
+ * The benchmarks run by <code>BenchmarkRunner</code>. They work on synthetic
+ * directory trees created under the temporary directory:
+ * <ul>
+ * <li>a wide directory of <code>WIDE_ENTRIES</code> entries, a tenth of them
+ * directories and a tenth of them hidden, with a mix of extensions</li>
+ * <li>a deep path of <code>DEEP_LEVELS</code> directories, each with
+ * <code>DEEP_SIBLINGS</code> other entries next to it</li>
+ * <li>a fresh tree for every delete</li>
+ * </ul>
+ * Everything that touches the <code>FileTree</code> runs on the event dispatch
+ * thread, the way an application would use it.
+ */
+public class FileTreeBenchmarks {
+
+    /**
+     * creates the directory trees the benchmarks work on, and the tree showing them
+     * @throws Exception if the fixtures can't be created
+     */
+    void createFixtures() throws Exception {
+        root = Files.createTempDirectory("filetree-bench");
+
+        wideDir = Files.createDirectory(root.resolve("wide"));
+        for (int i=0; i<WIDE_ENTRIES; i++)
+        {
+            String name = (i % 10 == 3 ? "." : "") + "entry" + i;
+            if (i % 10 == 0)
+                Files.createDirectory(wideDir.resolve(name));
+            else
+                Files.createFile(wideDir.resolve(name + EXTENSIONS[i % EXTENSIONS.length]));
+        }
+
+        deepRoot = Files.createDirectory(root.resolve("deep"));
+        Path dir = deepRoot;
+        for (int level=0; level<DEEP_LEVELS; level++)
+        {
+            for (int i=0; i<DEEP_SIBLINGS; i++)
+                Files.createFile(dir.resolve("sibling" + i + ".txt"));
+            dir = Files.createDirectory(dir.resolve("level" + level));
+        }
+        deepLeaf = Files.createFile(dir.resolve("leaf.txt"));
+
+        fileTree = BenchmarkRunner.onEventThread(new Callable<FileTree>() {
+            public FileTree call() {
+                return new FileTree();
+            }
+        });
+    }
+
+    /**
+     * deletes the directory trees created by <code>createFixtures</code>
+     * @throws IOException if they can't be deleted
+     */
+    void deleteFixtures() throws IOException {
+        if (root == null)
+            return;
+
+        Files.walkFileTree(root, new SimpleFileVisitor<Path>() {
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                Files.delete(file);
+                return FileVisitResult.CONTINUE;
+            }
+
+            public FileVisitResult postVisitDirectory(Path dir, IOException e) throws IOException {
+                Files.delete(dir);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    /**
+     * returns the benchmarks, in the order they're run
+     * @return the benchmarks
+     */
+    List<BenchmarkRunner.Benchmark> getBenchmarks() {
+        List<BenchmarkRunner.Benchmark> benchmarks = new ArrayList<BenchmarkRunner.Benchmark>();
+        benchmarks.add(new PopulateBenchmark(false).param("entries", WIDE_ENTRIES).param("showHiddenFiles", false));
+        benchmarks.add(new PopulateBenchmark(true).param("entries", WIDE_ENTRIES).param("showHiddenFiles", true));
+        benchmarks.add(new SetCurrentFileBenchmark().param("levels", DEEP_LEVELS).param("siblings", DEEP_SIBLINGS));
+        benchmarks.add(new RenderBenchmark("renderRow", false).param("entries", WIDE_ENTRIES));
+        benchmarks.add(new RenderBenchmark("renderRowColdIcons", true).param("entries", WIDE_ENTRIES));
+        benchmarks.add(new DeleteBenchmark().param("directories", DELETE_DIRECTORIES).param("filesPerDirectory", DELETE_FILES));
+        benchmarks.add(new MemoryBenchmark("memoryPerListedEntry", false).param("entries", WIDE_ENTRIES));
+        benchmarks.add(new MemoryBenchmark("memoryPerMaterializedNode", true).param("entries", WIDE_ENTRIES));
+        return benchmarks;
+    }
+
+    /**
+     * shows the hidden files or not, and expands the tree to the wide directory
+     * @param showHiddenFiles whether hidden files are shown
+     * @return the path of the wide directory in the tree
+     * @throws Exception if the tree can't be set up
+     */
+    private TreePath showWideDir(final boolean showHiddenFiles) throws Exception {
+        return BenchmarkRunner.onEventThread(new Callable<TreePath>() {
+            public TreePath call() {
+                fileTree.setShowHiddenFiles(showHiddenFiles);
+                fileTree.setCurrentFile(wideDir.toFile());
+                return fileTree.getSelectionPath();
+            }
+        });
+    }
+
+    /**
+     * the root of the fixtures
+     */
+    private Path root;
+    /**
+     * a directory with many entries
+     */
+    private Path wideDir;
+    /**
+     * the top of a deep path
+     */
+    private Path deepRoot;
+    /**
+     * the file at the bottom of the deep path
+     */
+    private Path deepLeaf;
+    /**
+     * the tree the benchmarks work with
+     */
+    private FileTree fileTree;
+
+    /**
+     * the number of entries in the wide directory
+     */
+    private static final int WIDE_ENTRIES = 20000;
+    /**
+     * the number of directories on the deep path
+     */
+    private static final int DEEP_LEVELS = 20;
+    /**
+     * the number of files next to each directory of the deep path
+     */
+    private static final int DEEP_SIBLINGS = 500;
+    /**
+     * the number of directories in a deleted tree
+     */
+    private static final int DELETE_DIRECTORIES = 20;
+    /**
+     * the number of files in each directory of a deleted tree
+     */
+    private static final int DELETE_FILES = 100;
+    /**
+     * the number of copies allocated when measuring memory, to drown out noise
+     */
+    private static final int MEMORY_COPIES = 5;
+    /**
+     * the extensions given to the files of the wide directory
+     */
+    private static final String[] EXTENSIONS = { ".txt", ".java", ".png", ".xml", "", ".tar.gz" };
+
+    /**
+     * expands the wide directory, which lists it on the event dispatch thread
+     */
+    private class PopulateBenchmark extends BenchmarkRunner.Benchmark {
+        /**
+         * Creates a new instance of PopulateBenchmark
+         * @param showHiddenFiles whether hidden files are shown
+         */
+        PopulateBenchmark(boolean showHiddenFiles) {
+            super("populateSubTree", "us/op");
+            this.showHiddenFiles = showHiddenFiles;
+        }
+
+        void setUpTrial() throws Exception {
+            path = showWideDir(showHiddenFiles);
+        }
+
+        void setUp() throws Exception {
+            BenchmarkRunner.onEventThread(new Callable<Void>() {
+                public Void call() {
+                    fileTree.collapsePath(path);
+                    return null;
+                }
+            });
+        }
+
+        int run() throws Exception {
+            return BenchmarkRunner.onEventThread(new Callable<Integer>() {
+                public Integer call() {
+                    fileTree.expandPath(path);
+                    return 1;
+                }
+            });
+        }
+
+        /**
+         * whether hidden files are shown
+         */
+        private boolean showHiddenFiles;
+        /**
+         * the path of the wide directory
+         */
+        private TreePath path;
+    }
+
+    /**
+     * reveals a file at the bottom of a deep path whose directories are collapsed
+     */
+    private class SetCurrentFileBenchmark extends BenchmarkRunner.Benchmark {
+        /**
+         * Creates a new instance of SetCurrentFileBenchmark
+         */
+        SetCurrentFileBenchmark() {
+            super("setCurrentFile", "us/op");
+        }
+
+        void setUpTrial() throws Exception {
+            showWideDir(false);
+        }
+
+        void setUp() throws Exception {
+            BenchmarkRunner.onEventThread(new Callable<Void>() {
+                public Void call() {
+                    fileTree.setCurrentFile(deepRoot.toFile());
+                    fileTree.collapsePath(fileTree.getSelectionPath());
+                    return null;
+                }
+            });
+        }
+
+        int run() throws Exception {
+            return BenchmarkRunner.onEventThread(new Callable<Integer>() {
+                public Integer call() {
+                    fileTree.setCurrentFile(deepLeaf.toFile());
+                    return 1;
+                }
+            });
+        }
+    }
+
+    /**
+     * renders every row of the tree through its renderer, with the wide
+     * directory expanded
+     */
+    private class RenderBenchmark extends BenchmarkRunner.Benchmark {
+        /**
+         * Creates a new instance of RenderBenchmark
+         * @param name the name of the benchmark
+         * @param coldIcons whether the icon cache is cleared before each pass, so
+         * the icons are looked up again
+         */
+        RenderBenchmark(String name, boolean coldIcons) {
+            super(name, "us/op");
+            this.coldIcons = coldIcons;
+        }
+
+        void setUpTrial() throws Exception {
+            showWideDir(false);
+        }
+
+        void setUp() throws Exception {
+            if (!coldIcons)
+                return;
+
+            BenchmarkRunner.onEventThread(new Callable<Void>() {
+                public Void call() {
+                    fileTree.getIconCache().clear();
+                    return null;
+                }
+            });
+        }
+
+        int run() throws Exception {
+            int rows = BenchmarkRunner.onEventThread(new Callable<Integer>() {
+                public Integer call() {
+                    TreeCellRenderer renderer = fileTree.getCellRenderer();
+                    int rowCount = fileTree.getRowCount();
+                    for (int row=0; row<rowCount; row++)
+                    {
+                        TreePath path = fileTree.getPathForRow(row);
+                        Object node = path.getLastPathComponent();
+                        renderer.getTreeCellRendererComponent(fileTree, node, false,
+                                fileTree.isExpanded(path), fileTree.getModel().isLeaf(node), row, false);
+                    }
+                    return rowCount;
+                }
+            });
+            if (coldIcons)
+            {
+                // wait for the lookups the renderer queued
+                BenchmarkRunner.onEventThread(new Callable<Void>() {
+                    public Void call() {
+                        return null;
+                    }
+                });
+            }
+
+            return rows;
+        }
+
+        /**
+         * whether the icons are looked up again on every pass
+         */
+        private boolean coldIcons;
+    }
+
+    /**
+     * deletes a fresh directory tree with a <code>DeleteTask</code>, which is
+     * what the tree's delete action runs
+     */
+    private class DeleteBenchmark extends BenchmarkRunner.Benchmark {
+        /**
+         * Creates a new instance of DeleteBenchmark
+         */
+        DeleteBenchmark() {
+            super("deleteTree", "us/op");
+        }
+
+        void setUp() throws Exception {
+            target = Files.createDirectory(root.resolve("delete" + (count++)));
+            for (int d=0; d<DELETE_DIRECTORIES; d++)
+            {
+                Path dir = Files.createDirectories(target.resolve("dir" + d).resolve("sub"));
+                for (int f=0; f<DELETE_FILES; f++)
+                    Files.createFile(dir.resolve("file" + f));
+            }
+        }
+
+        int run() throws Exception {
+            DeleteTask task = new DeleteTask(target);
+            task.execute();
+            task.get();
+            if (!task.isRootDeleted())
+                throw new IOException("could not delete " + target + ": " + task.getFailures());
+            return 1;
+        }
+
+        /**
+         * the tree to delete next
+         */
+        private Path target;
+        /**
+         * the number of trees created so far
+         */
+        private int count;
+    }
+
+    /**
+     * measures the heap taken by the wide directory once it's loaded into a node
+     */
+    private class MemoryBenchmark extends BenchmarkRunner.Benchmark {
+        /**
+         * Creates a new instance of MemoryBenchmark
+         * @param name the name of the benchmark
+         * @param materialize whether a node is created for every child, as
+         * happens when every row has been shown
+         */
+        MemoryBenchmark(String name, boolean materialize) {
+            super(name, "B/node");
+            this.materialize = materialize;
+        }
+
+        String getMode() {
+            return "ss";
+        }
+
+        int run() throws Exception {
+            return load().getChildCount();
+        }
+
+        BenchmarkRunner.Result measure(int warmups, int iterations, long iterationTime) throws Exception {
+            double[] samples = new double[iterations];
+            for (int i=0; i<warmups + iterations; i++)
+            {
+                FileTreeNode[] nodes = new FileTreeNode[MEMORY_COPIES];
+                long before = usedMemory();
+                for (int c=0; c<nodes.length; c++)
+                    nodes[c] = load();
+                long after = usedMemory();
+
+                int children = 0;
+                for (FileTreeNode node:nodes)
+                    children += node.getChildCount();
+                if (i >= warmups)
+                    samples[i - warmups] = (after - before) / (double)children;
+            }
+
+            return new BenchmarkRunner.Result(this, samples);
+        }
+
+        /**
+         * loads the wide directory into a new node
+         * @return the node
+         */
+        private FileTreeNode load() {
+            FileTreeNode node = new FileTreeNode(wideDir.toFile());
+            DirectoryListing listing = DirectoryListing.list(wideDir.toFile(), false);
+            node.setChildren(listing, listing.getView(true, true));
+            if (materialize)
+            {
+                for (int i=0; i<node.getChildCount(); i++)
+                    node.getChildAt(i);
+            }
+
+            return node;
+        }
+
+        /**
+         * returns the heap in use once garbage has been collected
+         * @return the used heap, in bytes
+         * @throws InterruptedException if interrupted while waiting for the collector
+         */
+        private long usedMemory() throws InterruptedException {
+            Runtime runtime = Runtime.getRuntime();
+            for (int i=0; i<3; i++)
+            {
+                System.gc();
+                Thread.sleep(50);
+            }
+
+            return runtime.totalMemory() - runtime.freeMemory();
+        }
+
+        /**
+         * whether a node is created for every child
+         */
+        private boolean materialize;
+    }
+}
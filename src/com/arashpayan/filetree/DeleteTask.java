@@ -0,0 +1,333 @@
+/* This file is part of FileTree.
+
+    FileTree is free software; you can redistribute it and/or modify
+    it under the terms of the GNU General Public License (or the Lesser GPL)
+    as published by the Free Software Foundation; either version 3 of the
+    License, or (at your option) any later version.
+
+    FileTree is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+ */
+/*
+ * DeleteTask.java
+ *
+ * Copyright 2026 the FileTree contributors
+ */
+
+package com.arashpayan.filetree;
+
+import java.io.IOException;
+import java.nio.file.DirectoryIteratorException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+import java.util.SortedMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.swing.SwingWorker;
+
+/**
+ * Deletes a file, or a directory and everything in it, off the event dispatch
+ * thread.
+ * <p>
+ * The subdirectories of the top <code>FORK_DEPTH</code> levels are deleted in
+ * parallel on a <code>ForkJoinPool</code>. Below that, each subtree is deleted
+ * with <code>Files.walkFileTree</code>, which walks iteratively, so deep trees
+ * can't overflow the stack. Symbolic links are deleted, never followed.
+ * <p>
+ * Every entry directly inside the deleted directory is published once it is
+ * completely gone, so <code>process</code> can remove its node right away. Paths
+ * that can't be deleted are collected along with the error instead of stopping
+ * the task, and the directories containing them are left in place. Cancelling
+ * the task stops it at the next entry.
+ */
+class DeleteTask extends SwingWorker<Void, Path> {
+
+    /**
+     * Creates a new instance of DeleteTask
+     * @param root the file or directory to delete
+     */
+    DeleteTask(Path root) {
+        if (root == null)
+            throw new IllegalArgumentException("Null argument not allowed");
+
+        this.root = root;
+        failures = new ConcurrentSkipListMap<Path, IOException>();
+        deletedCount = new AtomicLong();
+        finishedCount = new AtomicInteger();
+        entryCount = -1;
+    }
+
+    /**
+     * deletes the root. Called on a worker thread.
+     * @return nothing
+     */
+    protected Void doInBackground() {
+        ForkJoinPool pool = new ForkJoinPool();
+        try {
+            rootDeleted = pool.invoke(new DeleteAction(root, 0));
+        } finally {
+            pool.shutdown();
+        }
+
+        return null;
+    }
+
+    /**
+     * returns the file or directory being deleted
+     * @return the root of the task
+     */
+    Path getRoot() {
+        return root;
+    }
+
+    /**
+     * returns true once the root itself has been deleted
+     * @return true if everything was deleted
+     */
+    boolean isRootDeleted() {
+        return rootDeleted;
+    }
+
+    /**
+     * returns the number of files and directories deleted so far
+     * @return the number of deleted paths
+     */
+    long getDeletedCount() {
+        return deletedCount.get();
+    }
+
+    /**
+     * returns the number of entries directly inside the root
+     * @return the number of entries, or -1 if the root hasn't been listed yet
+     */
+    int getEntryCount() {
+        return entryCount;
+    }
+
+    /**
+     * returns the number of entries directly inside the root that have been
+     * dealt with, whether or not they could be deleted
+     * @return the number of finished entries
+     */
+    int getFinishedCount() {
+        return finishedCount.get();
+    }
+
+    /**
+     * returns the paths that couldn't be deleted, and why
+     * @return the failed paths, sorted, with the error of each
+     */
+    SortedMap<Path, IOException> getFailures() {
+        return Collections.unmodifiableSortedMap(failures);
+    }
+
+    /**
+     * records a path that couldn't be deleted
+     * @param path the path
+     * @param e the error
+     */
+    private void fail(Path path, IOException e) {
+        failures.put(path, e);
+    }
+
+    /**
+     * deletes a single file, empty directory or link
+     * @param path the path to delete
+     * @return true if it was deleted
+     */
+    private boolean delete(Path path) {
+        try {
+            Files.delete(path);
+            deletedCount.incrementAndGet();
+            return true;
+        } catch (IOException e) {
+            fail(path, e);
+            return false;
+        }
+    }
+
+    /**
+     * deletes a directory and everything in it on the current thread
+     * @param dir the directory to delete
+     * @return true if everything was deleted
+     */
+    private boolean walk(Path dir) {
+        final int[] failed = new int[1];
+        // the failure count when each open directory was entered
+        final Deque<Integer> entered = new ArrayDeque<Integer>();
+        try {
+            Files.walkFileTree(dir, new SimpleFileVisitor<Path>() {
+                public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) {
+                    if (isCancelled())
+                        return FileVisitResult.TERMINATE;
+                    entered.push(failed[0]);
+                    return FileVisitResult.CONTINUE;
+                }
+
+                public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                    if (isCancelled())
+                        return FileVisitResult.TERMINATE;
+                    if (!delete(file))
+                        failed[0]++;
+                    return FileVisitResult.CONTINUE;
+                }
+
+                public FileVisitResult visitFileFailed(Path file, IOException e) {
+                    fail(file, e);
+                    failed[0]++;
+                    return FileVisitResult.CONTINUE;
+                }
+
+                public FileVisitResult postVisitDirectory(Path dir, IOException e) {
+                    if (e != null)
+                    {
+                        fail(dir, e);
+                        failed[0]++;
+                    }
+                    // a directory with something left in it can't be deleted,
+                    // and the failure inside it has been reported already
+                    if (entered.pop() == failed[0] && !delete(dir))
+                        failed[0]++;
+                    return FileVisitResult.CONTINUE;
+                }
+            });
+        } catch (IOException e) {
+            fail(dir, e);
+            return false;
+        }
+
+        return failed[0] == 0 && !isCancelled();
+    }
+
+    /**
+     * the file or directory to delete
+     */
+    private final Path root;
+    /**
+     * the paths that couldn't be deleted
+     */
+    private final ConcurrentSkipListMap<Path, IOException> failures;
+    /**
+     * the number of files and directories deleted so far
+     */
+    private final AtomicLong deletedCount;
+    /**
+     * the number of entries directly inside the root that have been dealt with
+     */
+    private final AtomicInteger finishedCount;
+    /**
+     * the number of entries directly inside the root
+     */
+    private volatile int entryCount;
+    /**
+     * whether the root was deleted
+     */
+    private volatile boolean rootDeleted;
+
+    /**
+     * the number of directory levels below the root whose subdirectories are
+     * deleted in parallel
+     */
+    private static final int FORK_DEPTH = 3;
+
+    /**
+     * deletes a path and everything in it
+     */
+    private class DeleteAction extends RecursiveTask<Boolean> {
+        /**
+         * Creates a new instance of DeleteAction
+         * @param path the path to delete
+         * @param depth how far below the root <code>path</code> is
+         */
+        DeleteAction(Path path, int depth) {
+            this.path = path;
+            this.depth = depth;
+        }
+
+        /**
+         * deletes the path
+         * @return true if everything was deleted
+         */
+        protected Boolean compute() {
+            boolean success = deletePath();
+            if (depth == 1)
+            {
+                finishedCount.incrementAndGet();
+                if (success)
+                    publish(path);
+            }
+
+            return success;
+        }
+
+        /**
+         * does the work of <code>compute</code>
+         * @return true if everything was deleted
+         */
+        private boolean deletePath() {
+            if (DeleteTask.this.isCancelled())
+                return false;
+
+            BasicFileAttributes attrs;
+            try {
+                attrs = Files.readAttributes(path, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+            } catch (IOException e) {
+                fail(path, e);
+                return false;
+            }
+            if (!attrs.isDirectory())
+                return delete(path);
+            if (depth >= FORK_DEPTH)
+                return walk(path);
+
+            List<DeleteAction> subtasks = new ArrayList<DeleteAction>();
+            try (DirectoryStream<Path> stream = Files.newDirectoryStream(path)) {
+                for (Path entry:stream)
+                    subtasks.add(new DeleteAction(entry, depth + 1));
+            } catch (IOException e) {
+                fail(path, e);
+                return false;
+            } catch (DirectoryIteratorException e) {
+                fail(path, e.getCause());
+                return false;
+            }
+            if (depth == 0)
+                entryCount = subtasks.size();
+
+            boolean success = true;
+            for (DeleteAction subtask:invokeAll(subtasks))
+            {
+                if (!subtask.join())
+                    success = false;
+            }
+            if (!success || DeleteTask.this.isCancelled())
+                return false;
+
+            return delete(path);
+        }
+
+        /**
+         * the path to delete
+         */
+        private final Path path;
+        /**
+         * how far below the root <code>path</code> is
+         */
+        private final int depth;
+    }
+}
@@ -0,0 +1,861 @@
+/* This file is part of FileTree.
+
+    FileTree is free software; you can redistribute it and/or modify
+    it under the terms of the GNU General Public License (or the Lesser GPL)
+    as published by the Free Software Foundation; either version 3 of the
+    License, or (at your option) any later version.
+
+    FileTree is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+ */
+/*
+ * DirectoryListing.java
+ *
+ * Copyright 2026 the FileTree contributors
+ */
+
+package com.arashpayan.filetree;
+
+import java.io.DataOutput;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.file.ClosedFileSystemException;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.DosFileAttributes;
+import java.nio.file.attribute.PosixFileAttributes;
+import java.nio.file.attribute.PosixFilePermission;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The entries of a directory, stored compactly. Names are kept as UTF-8 bytes in
+ * a single pool, and the attributes of each entry, read with a single attribute
+ * read when the entry is added, are kept in primitive arrays. Entries are only
+ * ever appended, in the order they were read; the order and filtering used for
+ * display are applied by the <code>FileTreeNode</code> showing the listing.
+ * <p>
+ * A listing is not thread-safe. It's filled on one thread and then handed off to
+ * the event dispatch thread.
+ */
+final class DirectoryListing {
+
+    /**
+     * Creates a new, empty instance of DirectoryListing
+     * @param capacity the number of entries to make room for
+     */
+    DirectoryListing(int capacity) {
+        capacity = Math.max(capacity, 1);
+        names = new byte[capacity * 16];
+        nameEnds = new int[capacity];
+        flags = new byte[capacity];
+        sizes = new long[capacity];
+        modified = new long[capacity];
+        sortOrder = SortOrder.NAME;
+        directoriesFirst = Constants.isWindows;
+    }
+
+    /**
+     * lists <code>dir</code>
+     * @param dir the directory to list
+     * @param navigateOSXApps whether OS X application bundles can be expanded
+     * @return the entries of <code>dir</code>. Empty if <code>dir</code> couldn't be read.
+     */
+    static DirectoryListing list(File dir, boolean navigateOSXApps) {
+        // the stamp is read first, so a change made while the directory is being
+        // listed leaves the listing looking stale rather than current
+        long stamp = dir.lastModified();
+        File[] files = dir.listFiles();
+        if (files == null)  // not a directory, or an I/O error occurred
+            files = new File[0];
+
+        DirectoryListing listing = new DirectoryListing(files.length);
+        for (File file:files)
+        {
+            listing.add(file, dir, navigateOSXApps);
+            IoScheduler.madeProgress();
+        }
+        listing.stamp = stamp;
+
+        return listing;
+    }
+
+    /**
+     * returns the last-modified time the directory had when it was listed, which
+     * changes whenever entries are added to or removed from the directory
+     * @return the validity stamp of the listing, or 0 if it isn't known
+     */
+    long getStamp() {
+        return stamp;
+    }
+
+    /**
+     * sets the last-modified time the directory had when it was listed
+     * @param stamp the validity stamp of the listing
+     */
+    void setStamp(long stamp) {
+        this.stamp = stamp;
+    }
+
+    /**
+     * reads the attributes of <code>file</code> and appends it to the listing
+     * @param file the file to add
+     * @param dir the directory <code>file</code> was listed from, or null if it's a root
+     * @param navigateOSXApps whether OS X application bundles can be expanded
+     * @return the index of the new entry
+     */
+    int add(File file, File dir, boolean navigateOSXApps) {
+        String name = file.getName();
+        int index = append(name);
+
+        // files that can't be rebuilt from their parent and their name, such as
+        // roots and Windows shell folders, are kept as they are. Entries of other
+        // filesystems are rebuilt from their parent, which is on the same one.
+        boolean rebuildable = file.getClass() == File.class
+                || (file instanceof PathFile && dir instanceof PathFile);
+        if (dir == null || !rebuildable || !isChildPath(dir, file))
+        {
+            if (files == null)
+                files = new HashMap<Integer, File>();
+            files.put(index, file);
+        }
+
+        readAttributes(file, index);
+        if ((flags[index] & DIRECTORY) != 0)
+        {
+            if (!Constants.isOSX || navigateOSXApps || !name.endsWith(".app"))
+                flags[index] |= EXPANDABLE;
+        }
+
+        return index;
+    }
+
+    /**
+     * appends every entry of <code>other</code> to this listing
+     * @param other the listing to copy the entries of
+     * @return the index the first entry of <code>other</code> has in this listing
+     */
+    int addAll(DirectoryListing other) {
+        int first = size;
+        for (int i=0; i<other.size; i++)
+            add(other, i);
+
+        return first;
+    }
+
+    /**
+     * appends an entry of <code>other</code> to this listing
+     * @param other the listing to copy the entry from
+     * @param otherIndex the entry to copy
+     * @return the index of the new entry
+     */
+    int add(DirectoryListing other, int otherIndex) {
+        int index = append(other.getName(otherIndex));
+        copyAttributes(index, other, otherIndex);
+        return index;
+    }
+
+    /**
+     * replaces the attributes of an entry with those of an entry of <code>other</code>
+     * @param index the entry to update
+     * @param other the listing to copy the attributes from
+     * @param otherIndex the entry to copy the attributes of
+     */
+    void copyAttributes(int index, DirectoryListing other, int otherIndex) {
+        flags[index] = other.flags[otherIndex];
+        sizes[index] = other.sizes[otherIndex];
+        modified[index] = other.modified[otherIndex];
+        File file = other.files == null ? null : other.files.get(otherIndex);
+        if (file != null)
+        {
+            if (files == null)
+                files = new HashMap<Integer, File>();
+            files.put(index, file);
+        }
+    }
+
+    /**
+     * returns true if an entry has the same attributes as an entry of <code>other</code>
+     * @param index the entry of this listing
+     * @param other the other listing
+     * @param otherIndex the entry of <code>other</code>
+     * @return true if the flags, sizes and last-modified times are equal. Whether
+     * a directory was found to be empty isn't compared, since fresh entries
+     * haven't been probed.
+     */
+    boolean hasSameAttributes(int index, DirectoryListing other, int otherIndex) {
+        return ((flags[index] ^ other.flags[otherIndex]) & ~EMPTY) == 0 && sizes[index] == other.sizes[otherIndex]
+                && modified[index] == other.modified[otherIndex];
+    }
+
+    /**
+     * records whether a directory entry had any entries of its own when it was
+     * probed
+     * @param index the entry
+     * @param empty true if the directory was empty or couldn't be read
+     */
+    void setEmpty(int index, boolean empty) {
+        setFlag(index, EMPTY, empty);
+    }
+
+    /**
+     * records whether an entry is hidden by the tree's <code>TreeFilter</code>
+     * @param index the entry
+     * @param filtered true if the entry is hidden
+     */
+    void setFiltered(int index, boolean filtered) {
+        setFlag(index, FILTERED, filtered);
+    }
+
+    /**
+     * marks an entry as deleted. Deleted entries stay in the listing, but are never
+     * shown and aren't found by name.
+     * @param index the entry
+     */
+    void markDeleted(int index) {
+        flags[index] |= DELETED;
+    }
+
+    /**
+     * returns the index of every entry that hasn't been deleted, by name
+     * @return a map from entry names to entry indices
+     */
+    Map<String, Integer> getIndexByName() {
+        Map<String, Integer> indexByName = new HashMap<String, Integer>(size * 2);
+        for (int i=0; i<size; i++)
+        {
+            if (!is(i, DELETED))
+                indexByName.put(getName(i), i);
+        }
+
+        return indexByName;
+    }
+
+    /**
+     * returns true if the <code>File</code> of every entry can be rebuilt from the
+     * directory and the entry's name, so the listing can be written out
+     * @return true if the listing can be saved with <code>write</code>
+     */
+    boolean isPortable() {
+        return files == null;
+    }
+
+    /**
+     * writes the listing out, one array after the other, so it can be read back
+     * with a few bulk copies
+     * @param out where to write the listing
+     * @throws IOException if the listing can't be written
+     */
+    void write(DataOutput out) throws IOException {
+        int nameBytes = size == 0 ? 0 : nameEnds[size - 1];
+        out.writeLong(stamp);
+        out.writeInt(size);
+        out.writeInt(nameBytes);
+        out.write(names, 0, nameBytes);
+        for (int i=0; i<size; i++)
+            out.writeInt(nameEnds[i]);
+        out.write(flags, 0, size);
+        for (int i=0; i<size; i++)
+            out.writeLong(sizes[i]);
+        for (int i=0; i<size; i++)
+            out.writeLong(modified[i]);
+    }
+
+    /**
+     * reads a listing written by <code>write</code>
+     * @param in the buffer to read from, positioned at the start of the listing
+     * @return the listing
+     * @throws IOException if the data doesn't hold a valid listing
+     */
+    static DirectoryListing read(ByteBuffer in) throws IOException {
+        long stamp = in.getLong();
+        int size = in.getInt();
+        int nameBytes = in.getInt();
+        // each entry takes at least 21 bytes, which also bounds what is allocated
+        if (size < 0 || nameBytes < 0 || in.remaining() < nameBytes + size * 21L)
+            throw new IOException("Invalid listing");
+
+        DirectoryListing listing = new DirectoryListing(size);
+        if (nameBytes > listing.names.length)
+            listing.names = new byte[nameBytes];
+        in.get(listing.names, 0, nameBytes);
+        in.asIntBuffer().get(listing.nameEnds, 0, size);
+        in.position(in.position() + size * 4);
+        in.get(listing.flags, 0, size);
+        in.asLongBuffer().get(listing.sizes, 0, size);
+        in.position(in.position() + size * 8);
+        in.asLongBuffer().get(listing.modified, 0, size);
+        in.position(in.position() + size * 8);
+
+        int start = 0;
+        for (int i=0; i<size; i++)
+        {
+            if (listing.nameEnds[i] < start || listing.nameEnds[i] > nameBytes)
+                throw new IOException("Invalid listing");
+            start = listing.nameEnds[i];
+        }
+        listing.size = size;
+        listing.stamp = stamp;
+        return listing;
+    }
+
+    /**
+     * appends a new entry with no attributes to the listing
+     * @param name the name of the entry
+     * @return the index of the new entry
+     */
+    private int append(String name) {
+        byte[] bytes = name.getBytes(UTF8);
+        int start = size == 0 ? 0 : nameEnds[size - 1];
+        if (size == flags.length)
+        {
+            int capacity = size * 2;
+            nameEnds = Arrays.copyOf(nameEnds, capacity);
+            flags = Arrays.copyOf(flags, capacity);
+            sizes = Arrays.copyOf(sizes, capacity);
+            modified = Arrays.copyOf(modified, capacity);
+        }
+        if (start + bytes.length > names.length)
+            names = Arrays.copyOf(names, Math.max(names.length * 2, start + bytes.length));
+
+        System.arraycopy(bytes, 0, names, start, bytes.length);
+        nameEnds[size] = start + bytes.length;
+        return size++;
+    }
+
+    /**
+     * reads the attributes of <code>file</code> into entry <code>index</code>. On
+     * Windows the DOS attributes are read, since they carry the hidden flag in the
+     * same call. Elsewhere the POSIX attributes are read for the executable bit, and
+     * hidden files are the ones whose names start with a '.', just like
+     * <code>File.isHidden()</code>.
+     * @param file the file to read the attributes of
+     * @param index the entry to store them in
+     */
+    private void readAttributes(File file, int index) {
+        Path path;
+        try { path = file.toPath(); }
+        catch (InvalidPathException e) {
+            // a virtual shell folder such as 'My Computer', which only the
+            // java.io.File API knows how to query
+            setFlag(index, DIRECTORY, file.isDirectory());
+            setFlag(index, FILE, file.isFile());
+            setFlag(index, HIDDEN, file.isHidden());
+            sizes[index] = file.length();
+            modified[index] = file.lastModified();
+            return;
+        }
+
+        // other filesystems, such as that of a zip file, may only have the basic
+        // attributes
+        Class<? extends BasicFileAttributes> type = BasicFileAttributes.class;
+        if (PathFile.isDefault(path))
+            type = Constants.isWindows ? DosFileAttributes.class : PosixFileAttributes.class;
+        BasicFileAttributes attrs = null;
+        try {
+            attrs = Files.readAttributes(path, type);
+            setFlag(index, DIRECTORY, attrs.isDirectory());
+            setFlag(index, FILE, attrs.isRegularFile());
+        } catch (IOException | ClosedFileSystemException e) {
+            // a broken symbolic link, an entry that vanished, or one of an
+            // archive that has been closed. Like java.io.File, treat it as
+            // neither a file nor a directory.
+            try { attrs = Files.readAttributes(path, type, LinkOption.NOFOLLOW_LINKS); }
+            catch (IOException | ClosedFileSystemException e2) { }
+        }
+
+        if (attrs != null)
+        {
+            sizes[index] = attrs.size();
+            modified[index] = attrs.lastModifiedTime().toMillis();
+        }
+
+        if (attrs instanceof PosixFileAttributes)
+        {
+            Set<PosixFilePermission> permissions = ((PosixFileAttributes)attrs).permissions();
+            setFlag(index, EXECUTABLE, permissions.contains(PosixFilePermission.OWNER_EXECUTE)
+                    || permissions.contains(PosixFilePermission.GROUP_EXECUTE)
+                    || permissions.contains(PosixFilePermission.OTHERS_EXECUTE));
+        }
+
+        if (attrs instanceof DosFileAttributes)
+            setFlag(index, HIDDEN, ((DosFileAttributes)attrs).isHidden());
+        else
+            setFlag(index, HIDDEN, file.getName().startsWith("."));
+    }
+
+    /**
+     * sets or clears a flag of an entry
+     * @param index the entry
+     * @param flag the flag
+     * @param value whether to set or clear it
+     */
+    private void setFlag(int index, int flag, boolean value) {
+        if (value)
+            flags[index] |= flag;
+        else
+            flags[index] &= ~flag;
+    }
+
+    /**
+     * returns true if <code>file</code>'s path is its name appended to <code>dir</code>'s path
+     * @param dir the directory
+     * @param file a file listed from <code>dir</code>
+     * @return true if <code>new File(dir, file.getName())</code> is the same path as <code>file</code>
+     */
+    private static boolean isChildPath(File dir, File file) {
+        String dirPath = dir.getPath();
+        String path = file.getPath();
+        String name = file.getName();
+        if (name.length() == 0 || !path.endsWith(name))
+            return false;
+
+        int dirLength = path.length() - name.length();
+        if (dirPath.endsWith(File.separator))
+            return dirLength == dirPath.length() && path.startsWith(dirPath);
+        return dirLength == dirPath.length() + 1 && path.startsWith(dirPath)
+                && path.charAt(dirPath.length()) == File.separatorChar;
+    }
+
+    /**
+     * returns the number of entries in the listing
+     * @return the number of entries
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * returns the name of an entry
+     * @param index the entry
+     * @return the name of the entry
+     */
+    String getName(int index) {
+        int start = index == 0 ? 0 : nameEnds[index - 1];
+        return new String(names, start, nameEnds[index] - start, UTF8);
+    }
+
+    /**
+     * returns the <code>File</code> of an entry
+     * @param index the entry
+     * @param dir the directory the listing was read from. Unused for roots.
+     * @return the <code>File</code> of the entry
+     */
+    File getFile(int index, File dir) {
+        if (files != null)
+        {
+            File file = files.get(index);
+            if (file != null)
+                return file;
+        }
+
+        return PathFile.getChild(dir, getName(index));
+    }
+
+    /**
+     * returns true if an entry has a flag set
+     * @param index the entry
+     * @param flag one of <code>DIRECTORY</code>, <code>FILE</code>, <code>HIDDEN</code>,
+     * <code>EXECUTABLE</code>, <code>EXPANDABLE</code>, <code>DELETED</code>,
+     * <code>EMPTY</code> or <code>FILTERED</code>
+     * @return true if the flag is set
+     */
+    boolean is(int index, int flag) {
+        return (flags[index] & flag) != 0;
+    }
+
+    /**
+     * returns the size of an entry, in bytes
+     * @param index the entry
+     * @return the size of the entry
+     */
+    long getSize(int index) {
+        return sizes[index];
+    }
+
+    /**
+     * returns the last-modified time of an entry, in milliseconds since the epoch
+     * @param index the entry
+     * @return the last-modified time of the entry
+     */
+    long getLastModified(int index) {
+        return modified[index];
+    }
+
+    /**
+     * returns true if an entry passes the file and hidden file filters, and
+     * isn't hidden by the <code>TreeFilter</code>
+     * @param index the entry
+     * @param showFiles whether to include regular files
+     * @param showHiddenFiles whether to include hidden files
+     * @return true if the entry should be shown in the tree
+     */
+    boolean isShown(int index, boolean showFiles, boolean showHiddenFiles) {
+        if (is(index, DELETED) || is(index, FILTERED))
+            return false;
+        if (is(index, FILE) && !showFiles)
+            return false;
+
+        return showHiddenFiles || !is(index, HIDDEN);
+    }
+
+    /**
+     * returns the indices of the entries that pass the filters, in display order
+     * @param showFiles whether to include regular files
+     * @param showHiddenFiles whether to include hidden files
+     * @return the shown entries, sorted
+     */
+    int[] getView(boolean showFiles, boolean showHiddenFiles) {
+        return getView(0, showFiles, showHiddenFiles);
+    }
+
+    /**
+     * returns the indices of the entries from <code>first</code> on that pass the
+     * filters, in display order
+     * @param first the first entry to consider
+     * @param showFiles whether to include regular files
+     * @param showHiddenFiles whether to include hidden files
+     * @return the shown entries, sorted
+     */
+    int[] getView(int first, boolean showFiles, boolean showHiddenFiles) {
+        int[] view = new int[size - first];
+        int count = 0;
+        for (int i=first; i<size; i++)
+        {
+            if (isShown(i, showFiles, showHiddenFiles))
+                view[count++] = i;
+        }
+
+        return sort(Arrays.copyOf(view, count));
+    }
+
+    /**
+     * sets the order <code>sort</code> and <code>compare</code> put entries in
+     * @param sortOrder the order of the entries
+     * @param directoriesFirst whether directories come before files
+     */
+    void setOrder(SortOrder sortOrder, boolean directoriesFirst) {
+        this.sortOrder = sortOrder;
+        this.directoriesFirst = directoriesFirst;
+    }
+
+    /**
+     * returns the order the entries are sorted in
+     * @return the sort order
+     */
+    SortOrder getSortOrder() {
+        return sortOrder;
+    }
+
+    /**
+     * returns true if directories are sorted before files
+     * @return true if directories come first
+     */
+    boolean isDirectoriesFirst() {
+        return directoriesFirst;
+    }
+
+    /**
+     * sorts entries into display order. The sort key of each entry is made once,
+     * and the attributes it's sorted by were read when it was listed, so sorting
+     * doesn't touch the disk. Large arrays are sorted in parallel.
+     * @param indices the entries to sort
+     * @return <code>indices</code>, sorted
+     */
+    int[] sort(int[] indices) {
+        final String[] keys = new String[indices.length];
+        Integer[] order = new Integer[indices.length];
+        for (int i=0; i<indices.length; i++)
+        {
+            keys[i] = getKey(getName(indices[i]));
+            order[i] = i;
+        }
+
+        final int[] entries = indices;
+        Comparator<Integer> comparator = new Comparator<Integer>() {
+            public int compare(Integer i1, Integer i2) {
+                return compareEntries(entries[i1], keys[i1], entries[i2], keys[i2]);
+            }
+        };
+        if (order.length >= PARALLEL_SORT_THRESHOLD)
+            Arrays.parallelSort(order, comparator);
+        else
+            Arrays.sort(order, comparator);
+
+        int[] sorted = new int[indices.length];
+        for (int i=0; i<order.length; i++)
+            sorted[i] = indices[order[i]];
+
+        return sorted;
+    }
+
+    /**
+     * compares two entries of this listing by display order
+     * @param i1 the first entry
+     * @param i2 the second entry
+     * @return a negative number, zero or a positive number as the first entry sorts
+     * before, with or after the second
+     */
+    int compare(int i1, int i2) {
+        return compareEntries(i1, getKey(getName(i1)), i2, getKey(getName(i2)));
+    }
+
+    /**
+     * compares two entries of this listing by display order, with the sort key
+     * of the second one made already, so an entry can be compared many times
+     * without making its key again
+     * @param i1 the first entry
+     * @param i2 the second entry
+     * @param key2 the sort key of the second entry, from <code>getSortKey</code>
+     * @return a negative number, zero or a positive number as the first entry sorts
+     * before, with or after the second
+     */
+    int compare(int i1, int i2, String key2) {
+        return compareEntries(i1, getKey(getName(i1)), i2, key2);
+    }
+
+    /**
+     * returns the key an entry is sorted by
+     * @param index the entry
+     * @return the sort key of its name
+     */
+    String getSortKey(int index) {
+        return getKey(getName(index));
+    }
+
+    /**
+     * compares an entry of this listing with a name by display order, the same way
+     * <code>compare(int, int)</code> compares two entries. Only meaningful when
+     * the entries are sorted by name.
+     * @param index the entry
+     * @param directory whether <code>name</code> is the name of a directory
+     * @param name the name to compare the entry with
+     * @return a negative number, zero or a positive number as the entry sorts
+     * before, with or after <code>name</code>
+     */
+    int compare(int index, boolean directory, String name) {
+        boolean isDirectory = is(index, DIRECTORY);
+        if (directoriesFirst && isDirectory != directory)
+            return isDirectory ? -1 : 1;
+
+        return compareKeys(getKey(getName(index)), getKey(name));
+    }
+
+    /**
+     * returns the key a name is sorted by. When case doesn't matter, that's the
+     * name folded to one case, followed by the name itself to break ties.
+     * @param name the name of an entry
+     * @return the sort key of the name
+     */
+    private String getKey(String name) {
+        if (!sortOrder.foldsCase())
+            return name;
+
+        // the same folding String.compareToIgnoreCase() does, done once per name
+        char[] folded = new char[name.length() * 2 + 1];
+        for (int i=0; i<name.length(); i++)
+            folded[i] = Character.toLowerCase(Character.toUpperCase(name.charAt(i)));
+        folded[name.length()] = '\0';
+        name.getChars(0, name.length(), folded, name.length() + 1);
+        return new String(folded);
+    }
+
+    /**
+     * compares two entries in the current order
+     * @param i1 the first entry
+     * @param key1 the sort key of the first entry
+     * @param i2 the second entry
+     * @param key2 the sort key of the second entry
+     * @return a negative number, zero or a positive number as the first entry sorts
+     * before, with or after the second
+     */
+    private int compareEntries(int i1, String key1, int i2, String key2) {
+        if (directoriesFirst)
+        {
+            boolean dir1 = is(i1, DIRECTORY);
+            if (dir1 != is(i2, DIRECTORY))
+                return dir1 ? -1 : 1;
+        }
+
+        int cmp = 0;
+        if (sortOrder == SortOrder.SIZE)
+            cmp = Long.compare(sizes[i1], sizes[i2]);
+        else if (sortOrder == SortOrder.LAST_MODIFIED)
+            cmp = Long.compare(modified[i1], modified[i2]);
+        if (cmp != 0)
+            return cmp;
+
+        return compareKeys(key1, key2);
+    }
+
+    /**
+     * compares two sort keys
+     * @param key1 the first key
+     * @param key2 the second key
+     * @return a negative number, zero or a positive number as the first key sorts
+     * before, with or after the second
+     */
+    private int compareKeys(String key1, String key2) {
+        if (sortOrder == SortOrder.NATURAL)
+            return compareNatural(key1, key2);
+
+        return key1.compareTo(key2);
+    }
+
+    /**
+     * compares two strings character by character, except that runs of digits
+     * are compared by their numeric value. Of two equal numbers, the one with
+     * fewer leading zeros comes first.
+     * @param s1 the first string
+     * @param s2 the second string
+     * @return a negative number, zero or a positive number as the first string
+     * sorts before, with or after the second
+     */
+    private static int compareNatural(String s1, String s2) {
+        int i1 = 0, i2 = 0;
+        int n1 = s1.length(), n2 = s2.length();
+        while (i1 < n1 && i2 < n2)
+        {
+            char c1 = s1.charAt(i1);
+            char c2 = s2.charAt(i2);
+            if (!isDigit(c1) || !isDigit(c2))
+            {
+                if (c1 != c2)
+                    return c1 - c2;
+                i1++;
+                i2++;
+                continue;
+            }
+
+            int start1 = i1, start2 = i2;
+            while (i1 < n1 && s1.charAt(i1) == '0')
+                i1++;
+            while (i2 < n2 && s2.charAt(i2) == '0')
+                i2++;
+            int digits1 = i1, digits2 = i2;
+            while (i1 < n1 && isDigit(s1.charAt(i1)))
+                i1++;
+            while (i2 < n2 && isDigit(s2.charAt(i2)))
+                i2++;
+
+            // without leading zeros, the longer number is the bigger one
+            int length1 = i1 - digits1, length2 = i2 - digits2;
+            if (length1 != length2)
+                return length1 - length2;
+            for (int k=0; k<length1; k++)
+            {
+                int cmp = s1.charAt(digits1 + k) - s2.charAt(digits2 + k);
+                if (cmp != 0)
+                    return cmp;
+            }
+            if (i1 - start1 != i2 - start2)
+                return (i1 - start1) - (i2 - start2);
+        }
+
+        return (n1 - i1) - (n2 - i2);
+    }
+
+    /**
+     * returns true if <code>c</code> is an ASCII digit
+     * @param c the character
+     * @return true if <code>c</code> is between '0' and '9'
+     */
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    /**
+     * the names of the entries, UTF-8 encoded, one after the other
+     */
+    private byte[] names;
+    /**
+     * the offset in <code>names</code> just past the end of each entry's name
+     */
+    private int[] nameEnds;
+    /**
+     * the flags of each entry
+     */
+    private byte[] flags;
+    /**
+     * the size of each entry, in bytes
+     */
+    private long[] sizes;
+    /**
+     * the last-modified time of each entry, in milliseconds
+     */
+    private long[] modified;
+    /**
+     * the number of entries
+     */
+    private int size;
+    /**
+     * the last-modified time of the directory when it was listed
+     */
+    private long stamp;
+    /**
+     * the order the entries are sorted in
+     */
+    private SortOrder sortOrder;
+    /**
+     * whether directories are sorted before files
+     */
+    private boolean directoriesFirst;
+    /**
+     * the entries whose <code>File</code> can't be rebuilt from the parent directory
+     * and their name, by index. Null if there are none.
+     */
+    private Map<Integer, File> files;
+
+    /**
+     * the entry is a directory
+     */
+    static final int DIRECTORY = 1;
+    /**
+     * the entry is a regular file
+     */
+    static final int FILE = 2;
+    /**
+     * the entry is hidden
+     */
+    static final int HIDDEN = 4;
+    /**
+     * one of the entry's execute permission bits is set
+     */
+    static final int EXECUTABLE = 8;
+    /**
+     * the entry is a directory the user can navigate into
+     */
+    static final int EXPANDABLE = 16;
+    /**
+     * the entry has been deleted since it was read
+     */
+    static final int DELETED = 32;
+    /**
+     * the entry is a directory that was empty, or couldn't be read, when it
+     * was last probed
+     */
+    static final int EMPTY = 64;
+    /**
+     * the entry is hidden by the tree's <code>TreeFilter</code>
+     */
+    static final int FILTERED = 128;
+
+    /**
+     * the encoding of the names
+     */
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+    /**
+     * the number of entries from which they're sorted in parallel
+     */
+    private static final int PARALLEL_SORT_THRESHOLD = 10000;
+}
@@ -0,0 +1,361 @@
+/* This file is part of FileTree.
+
+    FileTree is free software; you can redistribute it and/or modify
+    it under the terms of the GNU General Public License (or the Lesser GPL)
+    as published by the Free Software Foundation; either version 3 of the
+    License, or (at your option) any later version.
+
+    FileTree is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+ */
+/*
+ * DirectoryPrefetcher.java
+ *
+ * Copyright 2026 the FileTree contributors
+ */
+
+package com.arashpayan.filetree;
+
+import java.io.File;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Lists directories before the user expands them, so the expansion can be
+ * served from memory instead of waiting on the disk or the network.
+ * <p>
+ * Directories are queued in the order they're likely to be expanded, and the
+ * most recently queued are listed first, since they're the ones the user is
+ * looking at. The queue is bounded, and the oldest requests are dropped when
+ * it's full. At most <code>threads</code> directories are listed at once, on
+ * the I/O scheduler at <code>IoPriority.PREFETCH</code>, so prefetching only
+ * gets the I/O the loads the user is waiting for leave over. A directory whose
+ * mount isn't responding is skipped.
+ * <p>
+ * The listings are kept until they're taken, or until the entries they hold
+ * add up to more than the budget, at which point the least recently listed are
+ * dropped. A listing is only handed out if the directory's last-modified time
+ * hasn't changed since it was read.
+ * <p>
+ * All methods can be called from any thread.
+ */
+final class DirectoryPrefetcher {
+
+    /**
+     * Creates a new instance of DirectoryPrefetcher
+     * @param core the core that lists the directories, schedules the listings and
+     * counts the prefetches
+     * @param threads the most directories to list at once
+     * @param budget the most entries to keep in prefetched listings
+     */
+    DirectoryPrefetcher(FileTreeCore core, int threads, int budget) {
+        if (core == null)
+            throw new IllegalArgumentException("Null argument not allowed");
+        if (threads < 1)
+            throw new IllegalArgumentException("threads must be at least 1");
+
+        this.core = core;
+        this.threads = threads;
+        this.budget = budget;
+        queue = new ArrayDeque<Request>();
+        pending = new HashSet<File>();
+        // in access order, so the eldest entry is the least recently listed
+        listings = new LinkedHashMap<File, DirectoryListing>(16, 0.75f, true);
+    }
+
+    /**
+     * queues directories to be listed. The first directory is listed first.
+     * Directories that are queued, being listed or listed already are skipped.
+     * @param dirs the directories, most likely to be expanded first
+     * @param depth how many levels to list. With a depth of 2, the subdirectories
+     * of each directory are queued once it's listed, and so on.
+     */
+    synchronized void prefetch(List<File> dirs, int depth) {
+        if (closed || depth < 1)
+            return;
+
+        for (int i=dirs.size()-1; i>=0; i--)
+        {
+            File dir = dirs.get(i);
+            if (pending.contains(dir) || listings.containsKey(dir))
+                continue;
+
+            pending.add(dir);
+            queue.addFirst(new Request(dir, depth));
+        }
+        while (queue.size() > MAX_QUEUED)
+            pending.remove(queue.removeLast().dir);
+
+        startNext();
+    }
+
+    /**
+     * takes the prefetched listing of a directory. A listing that's in flight
+     * is dropped when it's done, since the caller is going to list the
+     * directory itself. The listing may be out of date, and must be checked
+     * with <code>validate()</code> before it's used, which reads the disk. If
+     * there is no listing, a miss is counted.
+     * @param dir the directory
+     * @return the listing, or null if the directory wasn't prefetched
+     */
+    DirectoryListing take(File dir) {
+        DirectoryListing listing;
+        synchronized (this) {
+            pending.remove(dir);
+            listing = listings.remove(dir);
+            if (listing != null)
+                cachedEntries -= listing.size();
+        }
+
+        if (listing == null)
+            core.getMetrics().prefetchMiss();
+        return listing;
+    }
+
+    /**
+     * checks whether a listing returned by <code>take()</code> is still valid,
+     * counting a hit if it is and a miss otherwise. Reads the last-modified
+     * time of the directory, so it's called off the event dispatch thread
+     * unless the directory is going to be listed on it anyway.
+     * @param dir the directory
+     * @param listing its prefetched listing
+     * @return true if the directory hasn't changed since it was prefetched
+     */
+    boolean validate(File dir, DirectoryListing listing) {
+        core.getMetrics().statCalled(1);
+        if (dir.lastModified() != listing.getStamp())
+        {
+            core.getMetrics().prefetchMiss();
+            return false;
+        }
+
+        core.getMetrics().prefetchHit();
+        return true;
+    }
+
+    /**
+     * returns the most entries kept in prefetched listings
+     * @return the budget
+     */
+    synchronized int getBudget() {
+        return budget;
+    }
+
+    /**
+     * sets the most entries kept in prefetched listings, dropping listings
+     * until they fit
+     * @param budget the budget
+     */
+    synchronized void setBudget(int budget) {
+        this.budget = budget;
+        evict();
+    }
+
+    /**
+     * forgets every queued request and prefetched listing. Listings that are in
+     * flight are dropped when they're done.
+     */
+    synchronized void clear() {
+        queue.clear();
+        pending.clear();
+        listings.clear();
+        cachedEntries = 0;
+    }
+
+    /**
+     * stops prefetching, and forgets everything prefetched so far. Listings that
+     * are in flight are dropped when they're done.
+     */
+    synchronized void close() {
+        closed = true;
+        clear();
+    }
+
+    /**
+     * starts listing the next queued directories, until <code>threads</code> of
+     * them are being listed. Must be called with the lock held.
+     */
+    private void startNext() {
+        while (workers < threads && !closed)
+        {
+            final Request request = queue.pollFirst();
+            if (request == null)
+                return;
+
+            workers++;
+            core.getScheduler().submit(request.dir, IoPriority.PREFETCH, new Runnable() {
+                public void run() {
+                    fetch(request);
+                }
+            }, new Runnable() {
+                public void run() {
+                    // the mount isn't responding, so the directory is skipped
+                    finish(request, null, null);
+                }
+            });
+        }
+    }
+
+    /**
+     * lists a queued directory
+     * @param request the directory
+     */
+    private void fetch(Request request) {
+        DirectoryListing listing = null;
+        List<File> subdirectories = null;
+        try {
+            listing = core.list(request.dir);
+            core.getMetrics().prefetched();
+            if (request.depth > 1)
+                subdirectories = getSubdirectories(request.dir, listing);
+        } finally {
+            finish(request, listing, subdirectories);
+        }
+    }
+
+    /**
+     * keeps the listing of a directory that's done, queues its subdirectories,
+     * and starts on the next directory
+     * @param request the directory
+     * @param listing the listing, or null if the directory couldn't be listed
+     * @param subdirectories the subdirectories to queue, or null
+     */
+    private synchronized void finish(Request request, DirectoryListing listing, List<File> subdirectories) {
+        // a listing that timed out finishes again when its call returns
+        if (request.finished)
+            return;
+
+        request.finished = true;
+        workers--;
+        // the directory was taken, or the prefetcher cleared, meanwhile
+        if (pending.remove(request.dir) && listing != null && !closed)
+        {
+            if (listing.size() > budget)
+                core.getMetrics().prefetchEvicted(1);
+            else
+            {
+                listings.put(request.dir, listing);
+                cachedEntries += listing.size();
+                evict();
+                if (subdirectories != null)
+                    prefetch(subdirectories, request.depth - 1);
+            }
+        }
+        startNext();
+    }
+
+    /**
+     * drops the least recently listed listings until the rest fit the budget
+     */
+    private void evict() {
+        int evicted = 0;
+        Iterator<DirectoryListing> it = listings.values().iterator();
+        while (cachedEntries > budget && it.hasNext())
+        {
+            cachedEntries -= it.next().size();
+            it.remove();
+            evicted++;
+        }
+        if (evicted > 0)
+            core.getMetrics().prefetchEvicted(evicted);
+    }
+
+    /**
+     * returns the directories in a listing that would be shown in the tree, in
+     * the order they'd be shown
+     * @param dir the directory the listing was read from
+     * @param listing the listing
+     * @return the directories, at most <code>MAX_QUEUED</code> of them
+     */
+    private List<File> getSubdirectories(File dir, DirectoryListing listing) {
+        List<File> subdirectories = new ArrayList<File>();
+        for (int entry:core.getView(listing))
+        {
+            if (subdirectories.size() == MAX_QUEUED)
+                break;
+            if (listing.is(entry, DirectoryListing.EXPANDABLE))
+                subdirectories.add(listing.getFile(entry, dir));
+        }
+
+        return subdirectories;
+    }
+
+    /**
+     * the core that lists the directories
+     */
+    private final FileTreeCore core;
+    /**
+     * the most directories listed at once
+     */
+    private final int threads;
+    /**
+     * the most entries kept in prefetched listings
+     */
+    private int budget;
+    /**
+     * the directories waiting to be listed, the next one first
+     */
+    private final ArrayDeque<Request> queue;
+    /**
+     * the directories that are queued or being listed, and still wanted
+     */
+    private final Set<File> pending;
+    /**
+     * the prefetched listings, by directory, least recently listed first
+     */
+    private final Map<File, DirectoryListing> listings;
+    /**
+     * the number of entries in <code>listings</code>
+     */
+    private int cachedEntries;
+    /**
+     * the number of directories being listed
+     */
+    private int workers;
+    /**
+     * set once the prefetcher has been closed
+     */
+    private boolean closed;
+
+    /**
+     * the most directories waiting to be listed
+     */
+    static final int MAX_QUEUED = 256;
+
+    /**
+     * a directory waiting to be listed
+     */
+    private static class Request {
+        /**
+         * Creates a new instance of Request
+         * @param dir the directory
+         * @param depth the number of levels left to list, counting this one
+         */
+        Request(File dir, int depth) {
+            this.dir = dir;
+            this.depth = depth;
+        }
+
+        /**
+         * the directory
+         */
+        final File dir;
+        /**
+         * the number of levels left to list, counting this one
+         */
+        final int depth;
+        /**
+         * set once the directory is done with, so it's only finished once.
+         * Only used with the lock held.
+         */
+        boolean finished;
+    }
+}
@@ -0,0 +1,266 @@
+/* This file is part of FileTree.
+
+    FileTree is free software; you can redistribute it and/or modify
+    it under the terms of the GNU General Public License (or the Lesser GPL)
+    as published by the Free Software Foundation; either version 3 of the
+    License, or (at your option) any later version.
+
+    FileTree is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+ */
+/*
+ * DirectorySize.java
+ *
+ * Copyright 2026 the FileTree contributors
+ */
+
+package com.arashpayan.filetree;
+
+import java.nio.file.Path;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The total size of a directory and everything below it, as computed by a
+ * <code>DirectorySizeScanner</code>. The totals are updated in place while the
+ * directory is scanned, so a <code>DirectorySize</code> can be shown before the
+ * scan is done and the numbers grow as the scan goes on.
+ * <p>
+ * Symbolic links are counted as files and never followed.
+ */
+public class DirectorySize {
+
+    /**
+     * Creates a new instance of DirectorySize
+     * @param path the directory
+     */
+    DirectorySize(Path path) {
+        this.path = path;
+        scannedBytes = new AtomicLong();
+        scannedFiles = new AtomicLong();
+    }
+
+    /**
+     * returns the number of bytes in the files at or below the directory. Until
+     * the first scan is done, this is the number counted so far.
+     * @return the total size, in bytes
+     */
+    public long getBytes() {
+        return complete ? bytes : scannedBytes.get();
+    }
+
+    /**
+     * returns the number of files at or below the directory, not counting
+     * directories. Until the first scan is done, this is the number counted so far.
+     * @return the number of files
+     */
+    public long getFileCount() {
+        return complete ? files : scannedFiles.get();
+    }
+
+    /**
+     * returns true once the directory has been scanned completely. A complete
+     * size keeps its totals while it's checked for changes.
+     * @return true if the totals are final
+     */
+    public boolean isComplete() {
+        return complete;
+    }
+
+    /**
+     * returns the size and file count in a form suited for showing to the user,
+     * like "1.4 MB in 210 files". A size that's still being counted ends with
+     * an ellipsis.
+     * @return the totals as a <code>String</code>
+     */
+    public String toString() {
+        long fileCount = getFileCount();
+        String text = formatBytes(getBytes()) + " in " + fileCount + (fileCount == 1 ? " file" : " files");
+        if (!complete)
+            return text + "\u2026";
+
+        return text;
+    }
+
+    /**
+     * returns a number of bytes in the largest unit that keeps it at least 1,
+     * like "512 bytes" or "3.2 GB"
+     * @param bytes the number of bytes
+     * @return the number of bytes as a <code>String</code>
+     */
+    public static String formatBytes(long bytes) {
+        if (bytes < 1024)
+            return bytes + (bytes == 1 ? " byte" : " bytes");
+
+        int unit = 0;
+        double value = bytes;
+        while (value >= 1024 && unit < UNITS.length - 1)
+        {
+            value /= 1024;
+            unit++;
+        }
+
+        return String.format("%.1f %s", value, UNITS[unit]);
+    }
+
+    /**
+     * returns the directory
+     * @return the directory whose size this is
+     */
+    Path getPath() {
+        return path;
+    }
+
+    /**
+     * makes <code>task</code> the one scanning the directory, unless another task
+     * is scanning it already
+     * @param task the task that wants to scan the directory
+     * @return the task that was scanning the directory already, or null if
+     * <code>task</code> is scanning it now
+     */
+    synchronized ForkJoinTask<?> claim(ForkJoinTask<?> task) {
+        if (scanner != null)
+            return scanner;
+
+        scanner = task;
+        return null;
+    }
+
+    /**
+     * lets other tasks scan the directory again
+     */
+    synchronized void release() {
+        scanner = null;
+    }
+
+    /**
+     * starts counting from zero for a first scan
+     */
+    void resetScanned() {
+        scannedBytes.set(0);
+        scannedFiles.set(0);
+    }
+
+    /**
+     * adds to the totals counted so far by a first scan
+     * @param bytes the number of bytes to add
+     * @param files the number of files to add
+     */
+    void addScanned(long bytes, long files) {
+        scannedBytes.addAndGet(bytes);
+        scannedFiles.addAndGet(files);
+    }
+
+    /**
+     * sets the final totals of a scan
+     * @param bytes the total size
+     * @param files the total number of files
+     */
+    void setTotals(long bytes, long files) {
+        this.bytes = bytes;
+        this.files = files;
+        complete = true;
+    }
+
+    /**
+     * returns the last-modified time of the directory when it was last listed
+     * @return the last-modified time, in milliseconds since the epoch
+     */
+    long getStamp() {
+        return stamp;
+    }
+
+    /**
+     * returns the size of the files directly inside the directory when it was
+     * last listed
+     * @return the size, in bytes
+     */
+    long getDirectBytes() {
+        return directBytes;
+    }
+
+    /**
+     * returns the number of files directly inside the directory when it was
+     * last listed
+     * @return the number of files
+     */
+    long getDirectFiles() {
+        return directFiles;
+    }
+
+    /**
+     * returns the subdirectories of the directory when it was last listed
+     * @return the sizes of the subdirectories
+     */
+    DirectorySize[] getSubdirectories() {
+        return subdirectories;
+    }
+
+    /**
+     * remembers what was found when the directory was listed, so the listing can
+     * be reused as long as the directory doesn't change
+     * @param stamp the last-modified time of the directory before it was listed
+     * @param directBytes the size of the files directly inside the directory
+     * @param directFiles the number of files directly inside the directory
+     * @param subdirectories the subdirectories of the directory
+     */
+    void setListing(long stamp, long directBytes, long directFiles, DirectorySize[] subdirectories) {
+        this.stamp = stamp;
+        this.directBytes = directBytes;
+        this.directFiles = directFiles;
+        this.subdirectories = subdirectories;
+    }
+
+    /**
+     * the directory
+     */
+    private final Path path;
+    /**
+     * the total size found by the last complete scan
+     */
+    private volatile long bytes;
+    /**
+     * the number of files found by the last complete scan
+     */
+    private volatile long files;
+    /**
+     * whether <code>bytes</code> and <code>files</code> are set
+     */
+    private volatile boolean complete;
+    /**
+     * the bytes counted so far by the first scan
+     */
+    private final AtomicLong scannedBytes;
+    /**
+     * the files counted so far by the first scan
+     */
+    private final AtomicLong scannedFiles;
+    /**
+     * the task scanning the directory, or null
+     */
+    private ForkJoinTask<?> scanner;
+    /**
+     * the last-modified time of the directory when it was last listed. Only
+     * used by the task that has claimed the directory.
+     */
+    private long stamp;
+    /**
+     * the size of the files directly inside the directory when it was last listed
+     */
+    private long directBytes;
+    /**
+     * the number of files directly inside the directory when it was last listed
+     */
+    private long directFiles;
+    /**
+     * the subdirectories of the directory when it was last listed
+     */
+    private DirectorySize[] subdirectories;
+
+    /**
+     * the units <code>formatBytes</code> can use, from kilobytes up
+     */
+    private static final String[] UNITS = {"KB", "MB", "GB", "TB", "PB", "EB"};
+}
@@ -0,0 +1,383 @@
+/* This file is part of FileTree.
+
+    FileTree is free software; you can redistribute it and/or modify
+    it under the terms of the GNU General Public License (or the Lesser GPL)
+    as published by the Free Software Foundation; either version 3 of the
+    License, or (at your option) any later version.
+
+    FileTree is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+ */
+/*
+ * DirectorySizeScanner.java
+ *
+ * Copyright 2026 the FileTree contributors
+ */
+
+package com.arashpayan.filetree;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.DirectoryIteratorException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Adds up the sizes of directories in the background. Every directory is
+ * scanned by its own task on a <code>ForkJoinPool</code>, so the subdirectories
+ * of a directory are scanned in parallel and idle threads steal work from busy
+ * ones. The bytes and files counted are added to the <code>DirectorySize</code>
+ * of every directory above them as they're found, so partial totals can be
+ * shown while the scan goes on.
+ * <p>
+ * What a directory contained is remembered along with its last-modified time.
+ * Scanning a directory again only lists the directories whose last-modified
+ * time changed since, so checking a subtree that hasn't changed costs one
+ * attribute read per directory. A file that changes size doesn't change the
+ * last-modified time of its directory, so that change is only seen once
+ * something is added to, removed from or renamed in the directory.
+ * <p>
+ * Directories that are already being scanned are never scanned twice at once.
+ * A scan that reaches one waits for it and takes its totals.
+ * <p>
+ * The disk is read through the I/O scheduler, in the background priority
+ * class. A directory whose mount isn't responding is left incomplete, along
+ * with the directories above it, and is scanned again the next time it's asked
+ * for.
+ */
+class DirectorySizeScanner {
+
+    /**
+     * Creates a new instance of DirectorySizeScanner
+     * @param filter the filter whose hidden files and directories aren't counted
+     * @param top the highest directory whose rule file applies, or null to go
+     * up to the root of the filesystem
+     * @param scheduler the scheduler the disk is read through
+     */
+    DirectorySizeScanner(TreeFilter filter, File top, IoScheduler scheduler) {
+        if (filter == null || scheduler == null)
+            throw new IllegalArgumentException("Null argument not allowed");
+
+        this.filter = filter;
+        this.top = top;
+        this.scheduler = scheduler;
+        sizes = new ConcurrentHashMap<Path, DirectorySize>();
+        pool = new ForkJoinPool();
+    }
+
+    /**
+     * returns the size of a directory, starting a scan of it if necessary. The
+     * returned <code>DirectorySize</code> is updated as the scan goes on.
+     * @param dir the directory
+     * @param revalidate whether a directory that has been scanned before is
+     * checked for changes. If false, its remembered totals are returned as they are.
+     * @return the size of the directory
+     */
+    DirectorySize scan(Path dir, boolean revalidate) {
+        if (dir == null)
+            throw new IllegalArgumentException("Null argument not allowed");
+
+        DirectorySize size = getSize(dir);
+        if (size.isComplete() && !revalidate)
+            return size;
+
+        ScanTask task = new ScanTask(size, null);
+        if (size.claim(task) == null)
+            pool.execute(task);
+
+        return size;
+    }
+
+    /**
+     * returns true if no directory is being scanned
+     * @return true if the scanner is idle
+     */
+    boolean isIdle() {
+        return pool.isQuiescent();
+    }
+
+    /**
+     * stops every scan. Sizes that weren't done are scanned from the start the
+     * next time they're asked for.
+     */
+    void close() {
+        closed = true;
+        pool.shutdownNow();
+    }
+
+    /**
+     * returns the remembered size of a directory, creating it if necessary
+     * @param dir the directory
+     * @return the size of the directory
+     */
+    private DirectorySize getSize(Path dir) {
+        DirectorySize size = sizes.get(dir);
+        if (size == null)
+        {
+            DirectorySize created = new DirectorySize(dir);
+            size = sizes.putIfAbsent(dir, created);
+            if (size == null)
+                size = created;
+        }
+
+        return size;
+    }
+
+    /**
+     * the sizes of every directory scanned so far, by path
+     */
+    private final ConcurrentHashMap<Path, DirectorySize> sizes;
+    /**
+     * the filter whose hidden files and directories aren't counted
+     */
+    private final TreeFilter filter;
+    /**
+     * the highest directory whose rule file applies, or null
+     */
+    private final File top;
+    /**
+     * reads the disk
+     */
+    private final IoScheduler scheduler;
+    /**
+     * the pool the scans run on
+     */
+    private final ForkJoinPool pool;
+    /**
+     * set once the scanner has been closed
+     */
+    private volatile boolean closed;
+
+    /**
+     * scans one directory, and the directories below it in subtasks
+     */
+    private class ScanTask extends RecursiveAction {
+        /**
+         * Creates a new instance of ScanTask. The task must have claimed
+         * <code>size</code> before it's run.
+         * @param size the size of the directory to scan
+         * @param parent the task scanning the parent directory, or null
+         */
+        ScanTask(DirectorySize size, ScanTask parent) {
+            this.size = size;
+            this.parent = parent;
+            // a size that's complete keeps showing its old totals until it's
+            // done, so nothing is counted into it on the way
+            counting = !size.isComplete();
+        }
+
+        /**
+         * scans the directory
+         */
+        protected void compute() {
+            try {
+                scanDirectory();
+            } finally {
+                size.release();
+            }
+        }
+
+        /**
+         * does the work of <code>compute</code>
+         */
+        private void scanDirectory() {
+            if (closed)
+                return;
+            if (counting)
+                size.resetScanned();
+
+            final Path dir = size.getPath();
+            Long modified = call(dir, new Callable<Long>() {
+                public Long call() {
+                    try {
+                        return Files.getLastModifiedTime(dir, LinkOption.NOFOLLOW_LINKS).toMillis();
+                    } catch (IOException e) {
+                        return null;
+                    }
+                }
+            });
+            if (abandoned)
+                return;
+            if (modified == null)
+            {
+                // a directory that can't be read, or is gone, holds nothing
+                size.setListing(0, 0, 0, new DirectorySize[0]);
+                size.setTotals(0, 0);
+                return;
+            }
+            final long stamp = modified;
+            if (counting || stamp != size.getStamp())
+            {
+                Boolean listed = call(dir, new Callable<Boolean>() {
+                    public Boolean call() {
+                        return list(dir, stamp);
+                    }
+                });
+                if (listed == null || !listed)
+                    return;
+            }
+
+            List<ScanTask> subtasks = new ArrayList<ScanTask>();
+            List<ForkJoinTask<?>> others = new ArrayList<ForkJoinTask<?>>();
+            for (DirectorySize subdirectory:size.getSubdirectories())
+            {
+                ScanTask subtask = new ScanTask(subdirectory, this);
+                ForkJoinTask<?> other = subdirectory.claim(subtask);
+                if (other == null)
+                    subtasks.add(subtask);
+                else
+                    others.add(other);
+            }
+            invokeAll(subtasks);
+            for (ForkJoinTask<?> other:others)
+            {
+                other.join();
+                DirectorySize subdirectory = ((ScanTask)other).size;
+                add(subdirectory.getBytes(), subdirectory.getFileCount());
+            }
+            if (closed)
+                return;
+
+            long bytes = size.getDirectBytes();
+            long files = size.getDirectFiles();
+            for (DirectorySize subdirectory:size.getSubdirectories())
+            {
+                if (!subdirectory.isComplete())
+                    return; // a scan below was stopped
+                bytes += subdirectory.getBytes();
+                files += subdirectory.getFileCount();
+            }
+            size.setTotals(bytes, files);
+            // a size that wasn't counting has kept its totals from the
+            // directories above until now
+            if (!counting && parent != null)
+                parent.add(bytes, files);
+        }
+
+        /**
+         * lists the directory, adding up the files directly inside it and
+         * remembering its subdirectories
+         * @param dir the directory
+         * @param stamp the last-modified time of the directory
+         * @return false if the scan was stopped
+         */
+        private boolean list(Path dir, long stamp) {
+            List<Path> entries = new ArrayList<Path>();
+            List<BasicFileAttributes> attributes = new ArrayList<BasicFileAttributes>();
+            long ruleModified = -1;
+            boolean complete = true;
+            try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir)) {
+                for (Path entry:stream)
+                {
+                    if (closed)
+                        return false;
+
+                    IoScheduler.madeProgress();
+                    BasicFileAttributes attrs;
+                    try {
+                        attrs = Files.readAttributes(entry, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+                    } catch (IOException e) {
+                        continue;   // gone since it was listed
+                    }
+                    if (entry.getFileName().toString().equals(filter.getRuleFileName()))
+                        ruleModified = attrs.lastModifiedTime().toMillis();
+                    entries.add(entry);
+                    attributes.add(attrs);
+                }
+            } catch (IOException | DirectoryIteratorException e) {
+                // count whatever was read before the error
+                complete = false;
+            }
+
+            if (abandoned)
+                return false;   // gave up on waiting for it
+
+            File dirFile = PathFile.of(dir);
+            if (complete || ruleModified >= 0)
+                filter.updateRules(dirFile, ruleModified);
+            TreeFilter.RuleChain chain = filter.getRuleChain(dirFile, top, true);
+            long bytes = 0;
+            long files = 0;
+            List<DirectorySize> subdirectories = new ArrayList<DirectorySize>();
+            for (int i=0; i<entries.size(); i++)
+            {
+                Path entry = entries.get(i);
+                BasicFileAttributes attrs = attributes.get(i);
+                if (!filter.accepts(chain, dirFile, entry.getFileName().toString(), attrs.isDirectory()))
+                    continue;
+
+                if (attrs.isDirectory())
+                    subdirectories.add(getSize(entry));
+                else
+                {
+                    bytes += attrs.size();
+                    files++;
+                }
+            }
+
+            size.setListing(stamp, bytes, files, subdirectories.toArray(new DirectorySize[subdirectories.size()]));
+            if (counting)
+                add(bytes, files);
+            return true;
+        }
+
+        /**
+         * reads the disk through the scheduler. If the mount doesn't respond,
+         * the scan of this directory is abandoned, and a read that returns
+         * late is ignored.
+         * @param dir the directory being read
+         * @param read the read
+         * @return the result of the read, or null if the scan was abandoned
+         */
+        private <T> T call(Path dir, Callable<T> read) {
+            try {
+                return scheduler.call(PathFile.of(dir), IoPriority.BACKGROUND, read);
+            } catch (IOException e) {
+                abandoned = true;
+                return null;
+            }
+        }
+
+        /**
+         * adds bytes and files to this directory and the ones above it, up to
+         * the first one that isn't counting
+         * @param bytes the number of bytes
+         * @param files the number of files
+         */
+        private void add(long bytes, long files) {
+            for (ScanTask task=this; task != null && task.counting; task=task.parent)
+                task.size.addScanned(bytes, files);
+        }
+
+        /**
+         * the size of the directory
+         */
+        private final DirectorySize size;
+        /**
+         * the task scanning the parent directory, or null
+         */
+        private final ScanTask parent;
+        /**
+         * whether this is the first scan of the directory, whose progress is
+         * counted into its size as it goes
+         */
+        private final boolean counting;
+        /**
+         * set if the mount didn't respond, after which nothing more is read
+         * into the size
+         */
+        private volatile boolean abandoned;
+    }
+}
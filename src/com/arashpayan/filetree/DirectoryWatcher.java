@@ -0,0 +1,370 @@
+/* This file is part of FileTree.
+
+    FileTree is free software; you can redistribute it and/or modify
+    it under the terms of the GNU General Public License (or the Lesser GPL)
+    as published by the Free Software Foundation; either version 3 of the
+    License, or (at your option) any later version.
+
+    FileTree is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+ */
+/*
+ * DirectoryWatcher.java
+ *
+ * Copyright 2026 the FileTree contributors
+ */
+
+package com.arashpayan.filetree;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.ProviderMismatchException;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+import javax.swing.SwingUtilities;
+
+/**
+ * Watches the expanded directories of a <code>FileTree</code> for changes and
+ * applies them to the tree as they happen.
+ * <p>
+ * Events are collected on a background thread for <code>COALESCE_DELAY</code>
+ * milliseconds after the first one arrives, so a burst of changes to a directory
+ * turns into a single update. The attributes of the changed entries are read on
+ * that thread too, through the I/O scheduler, and the event dispatch thread only
+ * merges the result into the model. The changes of a directory whose mount isn't
+ * responding are dropped, so a hung mount doesn't hold up the others. If the
+ * watch service loses events for a directory, the directory is listed again and
+ * compared with what the tree shows.
+ * <p>
+ * Apart from the background thread, all methods must be called on the event
+ * dispatch thread.
+ */
+class DirectoryWatcher {
+
+    /**
+     * Creates a new instance of DirectoryWatcher and starts its thread
+     * @param fileTree the tree to apply the changes to
+     * @throws IOException if the watch service can't be created
+     */
+    DirectoryWatcher(FileTree fileTree) throws IOException {
+        this.fileTree = fileTree;
+        watchService = FileSystems.getDefault().newWatchService();
+        nodes = new HashMap<WatchKey, FileTreeNode>();
+        keys = new HashMap<FileTreeNode, WatchKey>();
+
+        Thread thread = new Thread(new Runnable() {
+            public void run() {
+                processEvents();
+            }
+        }, "FileTree watcher");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * starts watching the directory represented by <code>node</code>
+     * @param node the node to keep up to date
+     */
+    void watch(FileTreeNode node) {
+        if (keys.containsKey(node))
+            return;
+
+        File dir = node.getFile();
+        if (dir == null)
+            return;
+
+        try {
+            WatchKey key = dir.toPath().register(watchService,
+                    StandardWatchEventKinds.ENTRY_CREATE,
+                    StandardWatchEventKinds.ENTRY_DELETE,
+                    StandardWatchEventKinds.ENTRY_MODIFY);
+            // the same directory may be registered again after it was unwatched
+            FileTreeNode previous = nodes.put(key, node);
+            if (previous != null)
+                keys.remove(previous);
+            keys.put(node, key);
+        } catch (IOException | InvalidPathException | UnsupportedOperationException | ProviderMismatchException e) {
+            // a directory that can't be watched, such as one inside a zip file,
+            // just isn't kept up to date
+        }
+    }
+
+    /**
+     * stops watching the directory represented by <code>node</code> and every
+     * directory below it
+     * @param node the node that was collapsed
+     */
+    void unwatch(FileTreeNode node) {
+        Iterator<Map.Entry<FileTreeNode, WatchKey>> it = keys.entrySet().iterator();
+        while (it.hasNext())
+        {
+            Map.Entry<FileTreeNode, WatchKey> entry = it.next();
+            if (isDescendant(entry.getKey(), node))
+            {
+                entry.getValue().cancel();
+                nodes.remove(entry.getValue());
+                it.remove();
+            }
+        }
+    }
+
+    /**
+     * stops watching every directory
+     */
+    void unwatchAll() {
+        for (WatchKey key:nodes.keySet())
+            key.cancel();
+        nodes.clear();
+        keys.clear();
+    }
+
+    /**
+     * stops watching every directory and stops the background thread
+     */
+    void close() {
+        unwatchAll();
+        try { watchService.close(); }
+        catch (IOException e) { e.printStackTrace(); }
+    }
+
+    /**
+     * returns the number of directories being watched
+     * @return the number of watched directories
+     */
+    int getWatchCount() {
+        return keys.size();
+    }
+
+    /**
+     * returns true if <code>node</code> is <code>ancestor</code> or one of its descendants
+     * @param node the node to check
+     * @param ancestor the possible ancestor
+     * @return true if <code>ancestor</code> is on the path from the root to <code>node</code>
+     */
+    private static boolean isDescendant(FileTreeNode node, FileTreeNode ancestor) {
+        for (FileTreeNode n=node; n!=null; n=n.getParent())
+        {
+            if (n == ancestor)
+                return true;
+        }
+
+        return false;
+    }
+
+    /**
+     * the loop of the background thread. Collects the events of the watched
+     * directories, reads the attributes of whatever changed, and hands the result
+     * to the event dispatch thread.
+     */
+    private void processEvents() {
+        try {
+            while (true)
+            {
+                WatchKey key = watchService.take();
+                Map<WatchKey, Set<String>> changes = new LinkedHashMap<WatchKey, Set<String>>();
+                Set<WatchKey> overflowed = new HashSet<WatchKey>();
+                long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(COALESCE_DELAY);
+                while (key != null)
+                {
+                    collectEvents(key, changes, overflowed);
+                    long wait = deadline - System.nanoTime();
+                    key = wait > 0 ? watchService.poll(wait, TimeUnit.NANOSECONDS) : watchService.poll();
+                }
+
+                final List<Change> batch = new ArrayList<Change>(changes.size());
+                for (Map.Entry<WatchKey, Set<String>> entry:changes.entrySet())
+                {
+                    Change change = readChange(entry.getKey(), entry.getValue(), overflowed.contains(entry.getKey()));
+                    if (change != null)
+                        batch.add(change);
+                }
+
+                SwingUtilities.invokeLater(new Runnable() {
+                    public void run() {
+                        apply(batch);
+                    }
+                });
+            }
+        } catch (InterruptedException e) {
+            // fall through and let the thread end
+        } catch (ClosedWatchServiceException e) {
+            // the watcher was closed
+        }
+    }
+
+    /**
+     * adds the pending events of <code>key</code> to the ones collected so far
+     * @param key a signalled key
+     * @param changes the names of the changed entries, by key
+     * @param overflowed the keys that lost events
+     */
+    private static void collectEvents(WatchKey key, Map<WatchKey, Set<String>> changes, Set<WatchKey> overflowed) {
+        Set<String> names = changes.get(key);
+        if (names == null)
+        {
+            names = new HashSet<String>();
+            changes.put(key, names);
+        }
+
+        for (WatchEvent<?> event:key.pollEvents())
+        {
+            if (event.kind() == StandardWatchEventKinds.OVERFLOW)
+                overflowed.add(key);
+            else
+                names.add(((Path)event.context()).getFileName().toString());
+        }
+        key.reset();
+    }
+
+    /**
+     * reads the current state of the entries of a directory that changed,
+     * through the I/O scheduler
+     * @param key the key of the directory
+     * @param names the names of the entries that changed
+     * @param overflowed whether events were lost, in which case the whole
+     * directory is listed again
+     * @return the change to apply to the tree, or null if the directory's
+     * mount isn't responding
+     */
+    private Change readChange(final WatchKey key, final Set<String> names, final boolean overflowed) {
+        final File dir = ((Path)key.watchable()).toFile();
+        try {
+            return fileTree.getCore().getScheduler().call(dir, IoPriority.BACKGROUND, new Callable<Change>() {
+                public Change call() {
+                    return readChange(key, dir, names, overflowed);
+                }
+            });
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    /**
+     * reads the current state of the entries of a directory that changed, on
+     * the calling thread
+     * @param key the key of the directory
+     * @param dir the directory
+     * @param names the names of the entries that changed
+     * @param overflowed whether events were lost
+     * @return the change to apply to the tree
+     */
+    private Change readChange(WatchKey key, File dir, Set<String> names, boolean overflowed) {
+        FileTreeCore core = fileTree.getCore();
+        if (overflowed)
+            return new Change(key, core.list(dir), null, true);
+
+        boolean navigateOSXApps = core.isNavigateOSXApps();
+        DirectoryListing present = new DirectoryListing(names.size());
+        List<String> removed = new ArrayList<String>();
+        for (String name:names)
+        {
+            File file = new File(dir, name);
+            if (Files.exists(file.toPath(), LinkOption.NOFOLLOW_LINKS))
+                present.add(file, dir, navigateOSXApps);
+            else
+                removed.add(name);
+        }
+        core.filter(dir, present, false);
+
+        return new Change(key, present, removed, false);
+    }
+
+    /**
+     * applies changes to the tree. Called on the event dispatch thread.
+     * @param batch the changes to apply
+     */
+    private void apply(List<Change> batch) {
+        for (Change change:batch)
+        {
+            FileTreeNode node = nodes.get(change.key);
+            if (node == null)
+                continue;   // unwatched since the events were read
+            if (!change.key.isValid())
+            {
+                nodes.remove(change.key);
+                keys.remove(node);
+            }
+
+            fileTree.directoryChanged(node, change.present, change.removed, change.complete);
+        }
+    }
+
+    /**
+     * the tree to apply the changes to
+     */
+    private FileTree fileTree;
+    /**
+     * the watch service the directories are registered with
+     */
+    private WatchService watchService;
+    /**
+     * the watched nodes, by key
+     */
+    private Map<WatchKey, FileTreeNode> nodes;
+    /**
+     * the keys of the watched nodes
+     */
+    private Map<FileTreeNode, WatchKey> keys;
+
+    /**
+     * how long to collect events for after the first one arrives, in milliseconds
+     */
+    private static final long COALESCE_DELAY = 100;
+
+    /**
+     * the changes to a single directory, as read on the background thread
+     */
+    private static class Change {
+        /**
+         * Creates a new instance of Change
+         * @param key the key of the directory
+         * @param present the entries that were created or modified
+         * @param removed the names of the entries that were deleted
+         * @param complete whether <code>present</code> is a complete listing
+         */
+        Change(WatchKey key, DirectoryListing present, List<String> removed, boolean complete) {
+            this.key = key;
+            this.present = present;
+            this.removed = removed;
+            this.complete = complete;
+        }
+
+        /**
+         * the key of the directory
+         */
+        final WatchKey key;
+        /**
+         * the entries that were created or modified
+         */
+        final DirectoryListing present;
+        /**
+         * the names of the entries that were deleted. Null if <code>present</code>
+         * is complete.
+         */
+        final List<String> removed;
+        /**
+         * whether <code>present</code> is a complete listing of the directory
+         */
+        final boolean complete;
+    }
+}
@@ -0,0 +1,423 @@
+/* This file is part of FileTree.
+
+    FileTree is free software; you can redistribute it and/or modify
+    it under the terms of the GNU General Public License (or the Lesser GPL)
+    as published by the Free Software Foundation; either version 3 of the
+    License, or (at your option) any later version.
+
+    FileTree is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+ */
+/*
+ * ExpandAllTask.java
+ *
+ * Copyright 2026 the FileTree contributors
+ */
+
+package com.arashpayan.filetree;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.swing.SwingWorker;
+
+/**
+ * Lists a directory and the directories below it, down to a given depth, off
+ * the event dispatch thread. Every directory is listed by its own task on a
+ * fork-join pool, so sibling directories are read in parallel, and every
+ * listing goes through the I/O scheduler like any other load. Nothing is
+ * attached to the tree here: the result is a tree of <code>Directory</code>s
+ * that the caller attaches in one go once the task is done.
+ * <p>
+ * A directory that's reached a second time, through a symbolic link or a
+ * bind mount, is recognized by its file key and not listed again, so cycles
+ * end. The listed directories hold no more than <code>maxNodes</code> entries
+ * between them, not counting the one the task started at: a directory whose
+ * entries don't fit is left out, and stays collapsed, no more directories are
+ * started once the limit is reached, and the result is marked as truncated.
+ * The progress of the task is the part of the directories found so far that
+ * have been listed. Cancelling the task stops it at the next directory.
+ * <p>
+ * The workers block while they wait for the I/O scheduler, so they tell the
+ * pool, which may start more workers in the meantime to keep its parallelism.
+ */
+class ExpandAllTask extends SwingWorker<ExpandAllTask.Directory, Void> {
+
+    /**
+     * Creates a new instance of ExpandAllTask
+     * @param core lists the directories and holds the options they're shown with
+     * @param dir the directory to start at
+     * @param maxDepth the number of levels to list, counting <code>dir</code>
+     * as the first
+     * @param maxNodes the most entries to list, after which no more directories
+     * are started
+     */
+    ExpandAllTask(FileTreeCore core, File dir, int maxDepth, int maxNodes) {
+        if (core == null || dir == null)
+            throw new IllegalArgumentException("Null argument not allowed");
+        if (maxDepth < 1)
+            throw new IllegalArgumentException("At least one level must be listed");
+
+        this.core = core;
+        this.dir = dir;
+        this.maxDepth = maxDepth;
+        this.maxNodes = maxNodes;
+        visited = Collections.newSetFromMap(new ConcurrentHashMap<Object, Boolean>());
+        foundCount = new AtomicInteger();
+        listedCount = new AtomicInteger();
+        nodeCount = new AtomicInteger();
+    }
+
+    /**
+     * lists the directories. Called on a worker thread.
+     * @return the directory the task started at, or null if it couldn't be listed
+     * @throws InterruptedException if the task is cancelled while it waits for
+     * the listings
+     * @throws ExecutionException if listing a directory failed unexpectedly
+     */
+    protected Directory doInBackground() throws InterruptedException, ExecutionException {
+        ForkJoinPool pool = new ForkJoinPool(Math.max(1, core.getMountConcurrency()),
+                new ForkJoinPool.ForkJoinWorkerThreadFactory() {
+            public ForkJoinWorkerThread newThread(ForkJoinPool pool) {
+                ForkJoinWorkerThread thread = new ForkJoinWorkerThread(pool) {};
+                thread.setName("FileTree expand");
+                thread.setDaemon(true);
+                return thread;
+            }
+        }, null, false);
+        foundCount.incrementAndGet();
+        ForkJoinTask<Directory> root = pool.submit(new ListTask(dir, 1));
+
+        try {
+            while (true)
+            {
+                try {
+                    Directory directory = root.get(PROGRESS_INTERVAL, TimeUnit.MILLISECONDS);
+                    setProgress(100);
+                    return directory;
+                } catch (TimeoutException e) {
+                    setProgress(Math.min(99, listedCount.get() * 100 / foundCount.get()));
+                }
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /**
+     * returns the number of directories listed so far
+     * @return the number of directories listed
+     */
+    int getListedCount() {
+        return listedCount.get();
+    }
+
+    /**
+     * returns the number of entries in the directories listed so far
+     * @return the number of entries listed
+     */
+    int getNodeCount() {
+        return nodeCount.get();
+    }
+
+    /**
+     * returns true if directories were left out because too many entries had
+     * been listed
+     * @return true if the result doesn't go down to the full depth everywhere
+     */
+    boolean isTruncated() {
+        return truncated;
+    }
+
+    /**
+     * returns the key that identifies the directory a file leads to, following
+     * symbolic links
+     * @param file the file
+     * @return the key, or null if the filesystem doesn't have one
+     */
+    private static Object getFileKey(File file) {
+        try {
+            return Files.readAttributes(file.toPath(), BasicFileAttributes.class).fileKey();
+        } catch (IOException | InvalidPathException | UnsupportedOperationException e) {
+            return null;
+        }
+    }
+
+    /**
+     * lists the entries of the directory once, and says whether it was reached
+     * before
+     * @param dir the directory
+     * @return the listing, or null if the directory was listed already
+     */
+    private DirectoryListing list(File dir) {
+        Object key = getFileKey(dir);
+        if (key != null && !visited.add(key))
+            return null;
+
+        return core.list(dir);
+    }
+
+    /**
+     * counts entries towards <code>maxNodes</code>, if they all fit
+     * @param count the number of entries
+     * @return true if they were counted, false if they'd go over the limit
+     */
+    private boolean reserve(int count) {
+        while (true)
+        {
+            int current = nodeCount.get();
+            if (current + count > maxNodes)
+                return false;
+            if (nodeCount.compareAndSet(current, current + count))
+                return true;
+        }
+    }
+
+    /**
+     * lists the directories and holds the options they're shown with
+     */
+    private final FileTreeCore core;
+    /**
+     * the directory to start at
+     */
+    private final File dir;
+    /**
+     * the number of levels to list
+     */
+    private final int maxDepth;
+    /**
+     * the most entries to list
+     */
+    private final int maxNodes;
+    /**
+     * the file keys of the directories listed so far
+     */
+    private final Set<Object> visited;
+    /**
+     * the number of directories found so far, listed or not
+     */
+    private final AtomicInteger foundCount;
+    /**
+     * the number of directories listed so far
+     */
+    private final AtomicInteger listedCount;
+    /**
+     * the number of entries in the directories listed so far
+     */
+    private final AtomicInteger nodeCount;
+    /**
+     * set once a directory has been left out because of <code>maxNodes</code>
+     */
+    private volatile boolean truncated;
+
+    /**
+     * how often the progress is updated while the directories are being listed,
+     * in milliseconds
+     */
+    private static final int PROGRESS_INTERVAL = 100;
+
+    /**
+     * a directory that was listed, with the directories below it that were
+     * listed too
+     */
+    static class Directory {
+        /**
+         * Creates a new instance of Directory
+         * @param file the directory
+         * @param listing its listing
+         * @param view the entries of the listing to show, in display order
+         * @param optionsVersion the version of the options the view was made with
+         */
+        Directory(File file, DirectoryListing listing, int[] view, int optionsVersion) {
+            this.file = file;
+            this.listing = listing;
+            this.view = view;
+            this.optionsVersion = optionsVersion;
+            children = new ArrayList<Directory>();
+        }
+
+        /**
+         * the directory
+         */
+        final File file;
+        /**
+         * its listing
+         */
+        final DirectoryListing listing;
+        /**
+         * the entries of the listing to show, in display order
+         */
+        final int[] view;
+        /**
+         * the version of the options the view was made with
+         */
+        final int optionsVersion;
+        /**
+         * the child directories that were listed, in display order
+         */
+        final List<Directory> children;
+    }
+
+    /**
+     * lists one directory, then forks a task for every child directory that's
+     * shown, and waits for them
+     */
+    private class ListTask extends RecursiveTask<Directory> {
+        /**
+         * Creates a new instance of ListTask
+         * @param dir the directory to list
+         * @param depth the level of the directory, 1 being the one the task
+         * started at
+         */
+        ListTask(File dir, int depth) {
+            this.dir = dir;
+            this.depth = depth;
+        }
+
+        /**
+         * lists the directory and the ones below it
+         * @return the directory, or null if it was listed already, couldn't be
+         * listed, or the task was cancelled
+         */
+        protected Directory compute() {
+            // not this task's isCancelled(), which is about the fork-join task
+            if (ExpandAllTask.this.isCancelled())
+                return null;
+
+            int optionsVersion = core.getOptionsVersion();
+            ListBlocker blocker = new ListBlocker(dir);
+            try {
+                if (nodeCount.get() >= maxNodes)
+                {
+                    truncated = true;
+                    return null;
+                }
+                ForkJoinPool.managedBlock(blocker);
+            } catch (InterruptedException e) {
+                // the pool is being shut down
+                return null;
+            } finally {
+                listedCount.incrementAndGet();
+            }
+            DirectoryListing listing = blocker.listing;
+            if (listing == null)
+                return null;
+
+            int[] view = core.getView(listing);
+            if (depth == 1)
+                nodeCount.addAndGet(view.length);
+            else if (!reserve(view.length))
+            {
+                truncated = true;
+                return null;
+            }
+            Directory directory = new Directory(dir, listing, view, optionsVersion);
+            if (depth == maxDepth)
+                return directory;
+
+            List<ListTask> subtasks = new ArrayList<ListTask>();
+            for (int entry:view)
+            {
+                if (!listing.is(entry, DirectoryListing.EXPANDABLE))
+                    continue;
+                if (nodeCount.get() >= maxNodes)
+                {
+                    truncated = true;
+                    break;
+                }
+                subtasks.add(new ListTask(listing.getFile(entry, dir), depth + 1));
+            }
+            foundCount.addAndGet(subtasks.size());
+
+            for (ListTask subtask:invokeAll(subtasks))
+            {
+                Directory child = subtask.join();
+                if (child != null)
+                    directory.children.add(child);
+            }
+
+            return directory;
+        }
+
+        /**
+         * the directory to list
+         */
+        private final File dir;
+        /**
+         * the level of the directory
+         */
+        private final int depth;
+    }
+
+    /**
+     * lists a directory through the I/O scheduler, letting the fork-join pool
+     * know that the worker is blocked while it waits
+     */
+    private class ListBlocker implements ForkJoinPool.ManagedBlocker {
+        /**
+         * Creates a new instance of ListBlocker
+         * @param dir the directory to list
+         */
+        ListBlocker(File dir) {
+            this.dir = dir;
+        }
+
+        /**
+         * lists the directory and waits for the listing
+         * @return true, since the listing is done
+         */
+        public boolean block() {
+            try {
+                listing = core.getScheduler().call(dir, IoPriority.USER, new Callable<DirectoryListing>() {
+                    public DirectoryListing call() {
+                        return list(dir);
+                    }
+                });
+            } catch (IOException e) {
+                // the mount isn't responding, so the directory stays collapsed
+            }
+            done = true;
+            return true;
+        }
+
+        /**
+         * returns true if the directory has been listed already
+         * @return true if there's no need to block
+         */
+        public boolean isReleasable() {
+            return done;
+        }
+
+        /**
+         * the directory to list
+         */
+        private final File dir;
+        /**
+         * the listing, or null if the directory was listed already or couldn't
+         * be listed
+         */
+        private DirectoryListing listing;
+        /**
+         * whether the directory has been listed
+         */
+        private boolean done;
+    }
+}
@@ -0,0 +1,975 @@
+/* This file is part of FileTree.
+
+    FileTree is free software; you can redistribute it and/or modify
+    it under the terms of the GNU General Public License (or the Lesser GPL)
+    as published by the Free Software Foundation; either version 3 of the
+    License, or (at your option) any later version.
+
+    FileTree is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+ */
+/*
+ * FileNameIndex.java
+ *
+ * Copyright 2026 the FileTree contributors
+ */
+
+package com.arashpayan.filetree;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.DirectoryIteratorException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * An in-memory index of the names of every file and directory below a root,
+ * for finding files by part of their name.
+ * <p>
+ * The index is filled by a crawler on a background thread, and can be searched
+ * while the crawl is still going on: a search reports what's been indexed so
+ * far, then the entries that are added until the crawl is done. Names are kept
+ * in a single pool of characters, and each entry is a handful of ints in
+ * primitive arrays: its parent, its first child and its next sibling. Every
+ * entry is also filed under the trigrams of its name, hashed into a fixed
+ * number of buckets, so a search only looks at the names that share a bucket
+ * with the rarest trigram of the query.
+ * <p>
+ * The index is kept fresh incrementally. <code>refresh()</code> re-lists only
+ * the directories whose last-modified time changed since they were indexed, and
+ * <code>update()</code> re-lists a single directory. Either one applies just the
+ * differences. Deleted entries are only marked at first. Once they make up more
+ * than half of the index, the rest are renumbered, in the same order, and the
+ * space of the deleted ones is given back, so a directory whose contents keep
+ * changing doesn't grow the index for good. Symbolic links are indexed but
+ * never followed.
+ */
+public class FileNameIndex {
+
+    /**
+     * Receives the matches of a search as they're found
+     */
+    public interface MatchHandler {
+        /**
+         * called with each file whose name matches, on the searching thread
+         * @param file the file that matches
+         * @return true to keep searching, false to stop
+         */
+        boolean matchFound(File file);
+    }
+
+    /**
+     * Creates a new instance of FileNameIndex. Nothing is indexed until
+     * <code>start()</code> is called.
+     * @param root the directory to index
+     */
+    public FileNameIndex(File root) {
+        this(root, new TreeFilter());
+    }
+
+    /**
+     * Creates a new instance of FileNameIndex that leaves out the files and
+     * directories a filter hides, and never descends into hidden directories.
+     * Nothing is indexed until <code>start()</code> is called.
+     * @param root the directory to index
+     * @param filter the filter
+     */
+    public FileNameIndex(File root, TreeFilter filter) {
+        this(root, filter, null);
+    }
+
+    /**
+     * Creates a new instance of FileNameIndex that reads directories through an
+     * I/O scheduler, in the background priority class. Directories whose mount
+     * isn't responding are skipped, and picked up by a later refresh.
+     * Nothing is indexed until <code>start()</code> is called.
+     * @param root the directory to index
+     * @param filter the filter whose hidden files and directories are left out
+     * @param scheduler the scheduler, or null to read directories directly
+     */
+    FileNameIndex(File root, TreeFilter filter, IoScheduler scheduler) {
+        if (root == null || filter == null)
+            throw new IllegalArgumentException("Null argument not allowed");
+
+        this.root = root.getAbsoluteFile();
+        this.filter = filter;
+        this.scheduler = scheduler;
+        chars = new char[INITIAL_CAPACITY * 16];
+        nameStarts = new int[INITIAL_CAPACITY + 1];
+        parents = new int[INITIAL_CAPACITY];
+        firstChildren = new int[INITIAL_CAPACITY];
+        nextSiblings = new int[INITIAL_CAPACITY];
+        stamps = new long[INITIAL_CAPACITY];
+        directories = new BitSet();
+        deleted = new BitSet();
+        postings = new int[BUCKETS][];
+        postingSizes = new int[BUCKETS];
+        addEntry(-1, this.root.getPath(), true);
+        indexer = Executors.newSingleThreadExecutor(new ThreadFactory() {
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "FileTree indexer");
+                thread.setDaemon(true);
+                thread.setPriority(Thread.MIN_PRIORITY);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * returns the directory being indexed
+     * @return the root of the index
+     */
+    public File getRoot() {
+        return root;
+    }
+
+    /**
+     * starts crawling the root in the background. Calling it again has no effect.
+     */
+    public synchronized void start() {
+        if (crawling || crawled)
+            return;
+
+        crawling = true;
+        indexer.execute(new Runnable() {
+            public void run() {
+                crawl(new ArrayDeque<Integer>(Arrays.asList(0)));
+                synchronized (FileNameIndex.this) {
+                    crawling = false;
+                    crawled = true;
+                    FileNameIndex.this.notifyAll();
+                }
+            }
+        });
+    }
+
+    /**
+     * re-lists, in the background, every indexed directory whose last-modified
+     * time changed since it was indexed, along with anything new below it
+     */
+    public void refresh() {
+        indexer.execute(new Runnable() {
+            public void run() {
+                int end;
+                synchronized (FileNameIndex.this) {
+                    end = count;
+                }
+                Deque<Integer> added = new ArrayDeque<Integer>();
+                for (int id=0; id<end && !closed; id++)
+                {
+                    File dir;
+                    long stamp;
+                    synchronized (FileNameIndex.this) {
+                        if (!directories.get(id) || deleted.get(id))
+                            continue;
+                        dir = getFile(id);
+                        stamp = stamps[id];
+                    }
+                    if (lastModified(dir) != stamp)
+                        relist(id, dir, added);
+                }
+                crawl(added);
+                synchronized (FileNameIndex.this) {
+                    compact();
+                }
+            }
+        });
+    }
+
+    /**
+     * re-lists a single directory in the background, applying the differences
+     * to the index. A directory that isn't indexed yet updates the nearest
+     * directory above it that is.
+     * @param dir the directory that changed
+     */
+    public void update(final File dir) {
+        if (dir == null)
+            throw new IllegalArgumentException("Null argument not allowed");
+
+        indexer.execute(new Runnable() {
+            public void run() {
+                int id;
+                File indexed;
+                synchronized (FileNameIndex.this) {
+                    id = findEntry(dir.getAbsoluteFile());
+                    if (id < 0)
+                        return;
+                    indexed = getFile(id);
+                }
+                Deque<Integer> added = new ArrayDeque<Integer>();
+                relist(id, indexed, added);
+                crawl(added);
+                synchronized (FileNameIndex.this) {
+                    compact();
+                }
+            }
+        });
+    }
+
+    /**
+     * returns true once the first crawl of the root is done
+     * @return true if everything below the root has been indexed
+     */
+    public synchronized boolean isComplete() {
+        return crawled;
+    }
+
+    /**
+     * returns the number of files and directories in the index, not counting the root
+     * @return the number of indexed entries
+     */
+    public synchronized int size() {
+        return count - 1 - deleted.cardinality();
+    }
+
+    /**
+     * searches the index for files whose names contain <code>query</code>, ignoring
+     * case. What's already indexed is searched right away. If the crawl is
+     * still going on, this method then waits for more entries, and reports the
+     * ones that match, until the crawl is done.
+     * @param query the text to look for in the names
+     * @param handler receives the matches
+     * @throws InterruptedException if the thread is interrupted while waiting
+     * for the crawl
+     */
+    public void search(String query, MatchHandler handler) throws InterruptedException {
+        if (query == null || handler == null)
+            throw new IllegalArgumentException("Null argument not allowed");
+
+        String folded = fold(query);
+        int seen;
+        int[] matches;
+        synchronized (this) {
+            searchers++;
+            seen = count;
+            matches = findMatches(folded, seen);
+        }
+        try {
+            if (!report(matches, handler))
+                return;
+
+            while (true)
+            {
+                int first = seen;
+                synchronized (this) {
+                    while (seen == count && crawling && !closed)
+                        wait();
+                    if (seen == count)
+                        return;
+                    seen = count;
+                    matches = scanMatches(folded, first, seen);
+                }
+                if (!report(matches, handler))
+                    return;
+            }
+        } finally {
+            synchronized (this) {
+                searchers--;
+            }
+        }
+    }
+
+    /**
+     * returns the files whose names contain <code>query</code>, ignoring case, among
+     * what has been indexed so far
+     * @param query the text to look for in the names
+     * @param limit the most files to return
+     * @return the matching files, in the order they were indexed
+     */
+    public List<File> find(String query, final int limit) {
+        if (query == null)
+            throw new IllegalArgumentException("Null argument not allowed");
+
+        final List<File> files = new ArrayList<File>();
+        if (limit <= 0)
+            return files;
+
+        int[] matches;
+        synchronized (this) {
+            searchers++;
+            matches = findMatches(fold(query), count);
+        }
+        try {
+            report(matches, new MatchHandler() {
+                public boolean matchFound(File file) {
+                    files.add(file);
+                    return files.size() < limit;
+                }
+            });
+        } finally {
+            synchronized (this) {
+                searchers--;
+            }
+        }
+        return files;
+    }
+
+    /**
+     * stops the crawler. The index can't be used afterwards.
+     */
+    public void close() {
+        synchronized (this) {
+            closed = true;
+            notifyAll();
+        }
+        indexer.shutdownNow();
+    }
+
+    /**
+     * indexes the directories in <code>queue</code> and everything below them
+     * @param queue the ids of the directories to list, which is emptied
+     */
+    private void crawl(Deque<Integer> queue) {
+        while (!queue.isEmpty() && !closed)
+        {
+            int id = queue.poll();
+            File dir;
+            synchronized (this) {
+                if (deleted.get(id))
+                    continue;
+                dir = getFile(id);
+            }
+            long[] stamp = new long[1];
+            List<String> names = new ArrayList<String>();
+            BitSet dirs = new BitSet();
+            if (read(dir, stamp, names, dirs) == null)
+                continue;   // left for a refresh to pick up
+            synchronized (this) {
+                stamps[id] = stamp[0];
+                for (int i=0; i<names.size(); i++)
+                {
+                    int child = addEntry(id, names.get(i), dirs.get(i));
+                    if (dirs.get(i))
+                        queue.add(child);
+                }
+                notifyAll();
+            }
+        }
+    }
+
+    /**
+     * lists a directory that's in the index again, and applies the differences
+     * @param id the id of the directory
+     * @param dir the directory
+     * @param added receives the ids of new directories, which still have to be crawled
+     */
+    private void relist(int id, File dir, Deque<Integer> added) {
+        long[] stamp = new long[1];
+        List<String> names = new ArrayList<String>();
+        BitSet dirs = new BitSet();
+        Boolean exists = read(dir, stamp, names, dirs);
+        if (exists == null)
+            return;
+        synchronized (this) {
+            if (deleted.get(id))
+                return;
+            if (!exists && id != 0)
+            {
+                delete(id);
+                notifyAll();
+                return;
+            }
+            stamps[id] = stamp[0];
+
+            Map<String, Integer> children = new HashMap<String, Integer>();
+            for (int child=firstChildren[id]; child>=0; child=nextSiblings[child])
+            {
+                if (!deleted.get(child))
+                    children.put(getName(child), child);
+            }
+            for (int i=0; i<names.size(); i++)
+            {
+                Integer child = children.remove(names.get(i));
+                // an entry that turned from a file into a directory, or back, is new
+                if (child != null && directories.get(child) != dirs.get(i))
+                {
+                    delete(child);
+                    child = null;
+                }
+                if (child == null)
+                {
+                    int newChild = addEntry(id, names.get(i), dirs.get(i));
+                    if (dirs.get(i))
+                        added.add(newChild);
+                }
+            }
+            for (int child:children.values())
+                delete(child);
+            notifyAll();
+        }
+    }
+
+    /**
+     * reads the last-modified time and the entries of a directory, off the
+     * lock, through the scheduler if there is one
+     * @param dir the directory
+     * @param stamp receives the last-modified time, read before the entries
+     * @param names receives the names of the entries
+     * @param dirs receives, for each entry, whether it's a directory
+     * @return false if the directory doesn't exist anymore, or null if its
+     * mount isn't responding
+     */
+    private Boolean read(final File dir, final long[] stamp, final List<String> names, final BitSet dirs) {
+        if (scheduler == null)
+        {
+            stamp[0] = dir.lastModified();
+            return read(dir, names, dirs);
+        }
+
+        try {
+            return scheduler.call(dir, IoPriority.BACKGROUND, new Callable<Boolean>() {
+                public Boolean call() {
+                    stamp[0] = dir.lastModified();
+                    return read(dir, names, dirs);
+                }
+            });
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    /**
+     * returns the last-modified time of a directory, through the scheduler if
+     * there is one
+     * @param dir the directory
+     * @return the last-modified time, or -1 if its mount isn't responding
+     */
+    private long lastModified(final File dir) {
+        if (scheduler == null)
+            return dir.lastModified();
+
+        try {
+            return scheduler.call(dir, IoPriority.BACKGROUND, new Callable<Long>() {
+                public Long call() {
+                    return dir.lastModified();
+                }
+            });
+        } catch (IOException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * reads the names of the entries of a directory, off the lock
+     * @param dir the directory
+     * @param names receives the names of the entries
+     * @param dirs receives, for each entry, whether it's a directory
+     * @return false if the directory doesn't exist anymore
+     */
+    private boolean read(File dir, List<String> names, BitSet dirs) {
+        List<String> read = new ArrayList<String>();
+        BitSet readDirs = new BitSet();
+        long ruleModified = -1;
+        boolean complete = true;
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir.toPath())) {
+            for (Path entry:stream)
+            {
+                if (closed)
+                    break;
+
+                IoScheduler.madeProgress();
+                BasicFileAttributes attrs;
+                try {
+                    attrs = Files.readAttributes(entry, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+                } catch (IOException e) {
+                    continue;   // gone since it was listed
+                }
+                String name = entry.getFileName().toString();
+                if (name.equals(filter.getRuleFileName()))
+                    ruleModified = attrs.lastModifiedTime().toMillis();
+                readDirs.set(read.size(), attrs.isDirectory());
+                read.add(name);
+            }
+        } catch (IOException | DirectoryIteratorException e) {
+            // keep whatever was read before the error
+            if (!dir.exists())
+                return false;
+            complete = false;
+        }
+
+        if ((complete && !closed) || ruleModified >= 0)
+            filter.updateRules(dir, ruleModified);
+        TreeFilter.RuleChain chain = filter.getRuleChain(dir, root, true);
+        for (int i=0; i<read.size(); i++)
+        {
+            if (!filter.accepts(chain, dir, read.get(i), readDirs.get(i)))
+                continue;
+
+            dirs.set(names.size(), readDirs.get(i));
+            names.add(read.get(i));
+        }
+
+        return true;
+    }
+
+    /**
+     * appends an entry to the index and files it under the trigrams of its name.
+     * Must be called with the lock held.
+     * @param parent the id of the directory holding the entry, or -1 for the root
+     * @param name the name of the entry
+     * @param directory whether the entry is a directory
+     * @return the id of the new entry
+     */
+    private int addEntry(int parent, String name, boolean directory) {
+        if (count == parents.length)
+        {
+            int capacity = count * 2;
+            nameStarts = Arrays.copyOf(nameStarts, capacity + 1);
+            parents = Arrays.copyOf(parents, capacity);
+            firstChildren = Arrays.copyOf(firstChildren, capacity);
+            nextSiblings = Arrays.copyOf(nextSiblings, capacity);
+            stamps = Arrays.copyOf(stamps, capacity);
+        }
+        int start = nameStarts[count];
+        if (start + name.length() > chars.length)
+            chars = Arrays.copyOf(chars, Math.max(chars.length * 2, start + name.length()));
+        name.getChars(0, name.length(), chars, start);
+
+        int id = count++;
+        nameStarts[count] = start + name.length();
+        parents[id] = parent;
+        firstChildren[id] = -1;
+        directories.set(id, directory);
+        if (parent >= 0)
+        {
+            nextSiblings[id] = firstChildren[parent];
+            firstChildren[parent] = id;
+            for (int i=0; i+3<=name.length(); i++)
+                addPosting(bucket(name, i), id);
+        }
+        else
+            nextSiblings[id] = -1;
+
+        return id;
+    }
+
+    /**
+     * files an entry under a trigram bucket
+     * @param bucket the bucket
+     * @param id the id of the entry
+     */
+    private void addPosting(int bucket, int id) {
+        int[] posting = postings[bucket];
+        int size = postingSizes[bucket];
+        // ids are added in ascending order, so a repeat is always the last one
+        if (size > 0 && posting[size - 1] == id)
+            return;
+        if (posting == null)
+            posting = postings[bucket] = new int[4];
+        else if (size == posting.length)
+            posting = postings[bucket] = Arrays.copyOf(posting, size * 2);
+        posting[size] = id;
+        postingSizes[bucket] = size + 1;
+    }
+
+    /**
+     * marks an entry, and everything below it, as deleted. Must be called with
+     * the lock held.
+     * @param id the id of the entry
+     */
+    private void delete(int id) {
+        Deque<Integer> pending = new ArrayDeque<Integer>();
+        pending.push(id);
+        while (!pending.isEmpty())
+        {
+            int entry = pending.pop();
+            deleted.set(entry);
+            for (int child=firstChildren[entry]; child>=0; child=nextSiblings[child])
+            {
+                if (!deleted.get(child))
+                    pending.push(child);
+            }
+        }
+    }
+
+    /**
+     * renumbers the entries that are left, once more than half of the index has
+     * been deleted, giving back the names, slots and postings of the deleted
+     * ones. The entries keep their order, so the postings stay sorted and a
+     * directory's children stay in the order they were added. Nothing is done
+     * while a search is going on, since it holds on to ids. Must be called
+     * with the lock held, by the indexer between jobs, when it holds no ids
+     * itself.
+     */
+    private void compact() {
+        if (searchers > 0 || count < INITIAL_CAPACITY || deleted.cardinality() * 2 <= count)
+            return;
+
+        // the root is never deleted, and a parent always comes before its children
+        int[] ids = new int[count];
+        int live = 0;
+        int length = 0;
+        for (int id=0; id<count; id++)
+        {
+            if (deleted.get(id))
+            {
+                ids[id] = -1;
+                continue;
+            }
+            ids[id] = live++;
+            length += nameStarts[id + 1] - nameStarts[id];
+        }
+
+        int capacity = Math.max(INITIAL_CAPACITY, live * 2);
+        char[] newChars = new char[Math.max(INITIAL_CAPACITY * 16, length * 2)];
+        int[] newNameStarts = new int[capacity + 1];
+        int[] newParents = new int[capacity];
+        int[] newFirstChildren = new int[capacity];
+        int[] newNextSiblings = new int[capacity];
+        long[] newStamps = new long[capacity];
+        BitSet newDirectories = new BitSet();
+        for (int id=0; id<count; id++)
+        {
+            int newId = ids[id];
+            if (newId < 0)
+                continue;
+
+            int start = newNameStarts[newId];
+            int nameLength = nameStarts[id + 1] - nameStarts[id];
+            System.arraycopy(chars, nameStarts[id], newChars, start, nameLength);
+            newNameStarts[newId + 1] = start + nameLength;
+            newFirstChildren[newId] = -1;
+            newStamps[newId] = stamps[id];
+            newDirectories.set(newId, directories.get(id));
+            if (id == 0)
+            {
+                newParents[newId] = -1;
+                newNextSiblings[newId] = -1;
+                continue;
+            }
+            int parent = ids[parents[id]];
+            newParents[newId] = parent;
+            newNextSiblings[newId] = newFirstChildren[parent];
+            newFirstChildren[parent] = newId;
+        }
+
+        for (int bucket=0; bucket<BUCKETS; bucket++)
+        {
+            int[] posting = postings[bucket];
+            if (posting == null)
+                continue;
+            int size = 0;
+            for (int i=0; i<postingSizes[bucket]; i++)
+            {
+                if (ids[posting[i]] >= 0)
+                    posting[size++] = ids[posting[i]];
+            }
+            postingSizes[bucket] = size;
+            if (size == 0)
+                postings[bucket] = null;
+            else if (size * 4 < posting.length)
+                postings[bucket] = Arrays.copyOf(posting, size * 2);
+        }
+
+        chars = newChars;
+        nameStarts = newNameStarts;
+        parents = newParents;
+        firstChildren = newFirstChildren;
+        nextSiblings = newNextSiblings;
+        stamps = newStamps;
+        directories.clear();
+        directories.or(newDirectories);
+        deleted.clear();
+        count = live;
+    }
+
+    /**
+     * returns the ids of the entries below <code>end</code> whose names contain
+     * <code>folded</code>. Must be called with the lock held.
+     * @param folded the query, in lower case
+     * @param end the first id not to look at
+     * @return the ids of the matches, in ascending order
+     */
+    private int[] findMatches(String folded, int end) {
+        if (folded.length() < 3)
+            return scanMatches(folded, 1, end);
+
+        // the rarest trigram of the query narrows the candidates the most
+        int best = -1;
+        for (int i=0; i+3<=folded.length(); i++)
+        {
+            int bucket = bucket(folded, i);
+            if (best < 0 || postingSizes[bucket] < postingSizes[best])
+                best = bucket;
+        }
+
+        int[] posting = postings[best];
+        int[] matches = new int[postingSizes[best]];
+        int matchCount = 0;
+        for (int i=0; i<postingSizes[best] && posting[i] < end; i++)
+        {
+            if (matches(posting[i], folded))
+                matches[matchCount++] = posting[i];
+        }
+
+        return Arrays.copyOf(matches, matchCount);
+    }
+
+    /**
+     * returns the ids from <code>first</code> up to <code>end</code> whose names
+     * contain <code>folded</code>, by looking at every one of them. Must be called
+     * with the lock held.
+     * @param folded the query, in lower case
+     * @param first the first id to look at
+     * @param end the first id not to look at
+     * @return the ids of the matches, in ascending order
+     */
+    private int[] scanMatches(String folded, int first, int end) {
+        int[] matches = new int[Math.max(end - first, 0)];
+        int matchCount = 0;
+        for (int id=Math.max(first, 1); id<end; id++)
+        {
+            if (matches(id, folded))
+                matches[matchCount++] = id;
+        }
+
+        return Arrays.copyOf(matches, matchCount);
+    }
+
+    /**
+     * returns true if an entry is still there and its name contains
+     * <code>folded</code>, ignoring case
+     * @param id the id of the entry
+     * @param folded the query, in lower case
+     * @return true if the entry matches
+     */
+    private boolean matches(int id, String folded) {
+        if (deleted.get(id))
+            return false;
+
+        int start = nameStarts[id];
+        int last = nameStarts[id + 1] - folded.length();
+        for (int i=start; i<=last; i++)
+        {
+            int j = 0;
+            while (j < folded.length() && Character.toLowerCase(chars[i + j]) == folded.charAt(j))
+                j++;
+            if (j == folded.length())
+                return true;
+        }
+
+        return false;
+    }
+
+    /**
+     * hands the files of a search to its handler, a few at a time so the lock
+     * isn't held for long
+     * @param ids the ids of the matches
+     * @param handler receives the files
+     * @return false if the handler asked to stop
+     */
+    private boolean report(int[] ids, MatchHandler handler) {
+        for (int i=0; i<ids.length; i+=REPORT_BATCH_SIZE)
+        {
+            int end = Math.min(ids.length, i + REPORT_BATCH_SIZE);
+            List<File> files = new ArrayList<File>(end - i);
+            synchronized (this) {
+                for (int j=i; j<end; j++)
+                {
+                    if (!deleted.get(ids[j]))
+                        files.add(getFile(ids[j]));
+                }
+            }
+            for (File file:files)
+            {
+                if (!handler.matchFound(file))
+                    return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * returns the id of the deepest indexed directory on the path to <code>file</code>.
+     * Must be called with the lock held.
+     * @param file an absolute path
+     * @return the id of the entry for <code>file</code> if it's an indexed
+     * directory, or of the nearest indexed directory above it. -1 if
+     * <code>file</code> isn't below the root.
+     */
+    private int findEntry(File file) {
+        List<String> names = new ArrayList<String>();
+        for (File f=file; !f.equals(root); f=f.getParentFile())
+        {
+            if (f.getParentFile() == null)
+                return -1;
+            names.add(f.getName());
+        }
+
+        int id = 0;
+        for (int i=names.size()-1; i>=0; i--)
+        {
+            int child = firstChildren[id];
+            while (child >= 0 && (deleted.get(child) || !directories.get(child) || !getName(child).equals(names.get(i))))
+                child = nextSiblings[child];
+            if (child < 0)
+                break;
+            id = child;
+        }
+
+        return id;
+    }
+
+    /**
+     * returns the name of an entry. Must be called with the lock held.
+     * @param id the id of the entry
+     * @return the name of the entry
+     */
+    private String getName(int id) {
+        return new String(chars, nameStarts[id], nameStarts[id + 1] - nameStarts[id]);
+    }
+
+    /**
+     * returns the file of an entry. Must be called with the lock held.
+     * @param id the id of the entry
+     * @return the file of the entry
+     */
+    private File getFile(int id) {
+        if (id == 0)
+            return root;
+
+        return PathFile.getChild(getFile(parents[id]), getName(id));
+    }
+
+    /**
+     * returns a query in lower case, folded one character at a time the same way
+     * names are when they're compared
+     * @param query the query
+     * @return the query in lower case
+     */
+    private static String fold(String query) {
+        char[] folded = new char[query.length()];
+        for (int i=0; i<folded.length; i++)
+            folded[i] = Character.toLowerCase(query.charAt(i));
+
+        return new String(folded);
+    }
+
+    /**
+     * returns the bucket of the trigram at <code>start</code> in a name, ignoring case
+     * @param name the name
+     * @param start the index of the first character of the trigram
+     * @return the bucket, between 0 and <code>BUCKETS</code>
+     */
+    private static int bucket(String name, int start) {
+        int hash = Character.toLowerCase(name.charAt(start));
+        hash = hash * 31 + Character.toLowerCase(name.charAt(start + 1));
+        hash = hash * 31 + Character.toLowerCase(name.charAt(start + 2));
+        return (hash * 0x9E3779B1) >>> (32 - BUCKET_BITS);
+    }
+
+    /**
+     * the directory being indexed
+     */
+    private final File root;
+    /**
+     * the filter whose hidden files and directories are left out
+     */
+    private final TreeFilter filter;
+    /**
+     * reads the directories, or null to read them directly
+     */
+    private final IoScheduler scheduler;
+    /**
+     * the names of all the entries, one after the other
+     */
+    private char[] chars;
+    /**
+     * where the name of each entry starts in <code>chars</code>. The name of an
+     * entry ends where the next one starts.
+     */
+    private int[] nameStarts;
+    /**
+     * the id of the directory holding each entry, or -1 for the root
+     */
+    private int[] parents;
+    /**
+     * the id of the most recently added child of each directory, or -1
+     */
+    private int[] firstChildren;
+    /**
+     * the id of the next child of the same directory, or -1
+     */
+    private int[] nextSiblings;
+    /**
+     * the last-modified time of each directory when it was listed
+     */
+    private long[] stamps;
+    /**
+     * the entries that are directories
+     */
+    private final BitSet directories;
+    /**
+     * the entries that have been deleted since they were indexed
+     */
+    private final BitSet deleted;
+    /**
+     * for each trigram bucket, the ids of the entries filed under it, in
+     * ascending order
+     */
+    private final int[][] postings;
+    /**
+     * the number of ids in each bucket
+     */
+    private final int[] postingSizes;
+    /**
+     * the number of entries, including deleted ones and the root
+     */
+    private int count;
+    /**
+     * the number of searches going on, during which the entries can't be
+     * renumbered
+     */
+    private int searchers;
+    /**
+     * whether the first crawl is going on
+     */
+    private boolean crawling;
+    /**
+     * whether the first crawl is done
+     */
+    private boolean crawled;
+    /**
+     * set once the index has been closed
+     */
+    private volatile boolean closed;
+    /**
+     * the thread that crawls and updates the index
+     */
+    private final ExecutorService indexer;
+
+    /**
+     * the number of entries the index makes room for at first
+     */
+    private static final int INITIAL_CAPACITY = 1024;
+    /**
+     * the number of bits in a trigram bucket
+     */
+    private static final int BUCKET_BITS = 16;
+    /**
+     * the number of trigram buckets
+     */
+    private static final int BUCKETS = 1 << BUCKET_BITS;
+    /**
+     * the number of matches turned into files at a time
+     */
+    private static final int REPORT_BATCH_SIZE = 256;
+}
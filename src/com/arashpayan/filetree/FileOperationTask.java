@@ -0,0 +1,561 @@
+/* This file is part of FileTree.
+
+    FileTree is free software; you can redistribute it and/or modify
+    it under the terms of the GNU General Public License (or the Lesser GPL)
+    as published by the Free Software Foundation; either version 3 of the
+    License, or (at your option) any later version.
+
+    FileTree is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+ */
+/*
+ * FileOperationTask.java
+ *
+ * Copyright 2026 the FileTree contributors
+ */
+
+package com.arashpayan.filetree;
+
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.FileSystemException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Queue;
+import java.util.SortedMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.swing.SwingWorker;
+
+/**
+ * Deletes, copies, moves or renames a batch of files and directories off the
+ * event dispatch thread. Every path of the batch is handled by its own job on
+ * a small pool of worker threads.
+ * <p>
+ * Deletes are done by a <code>DeleteTask</code> per path. Moves are renames
+ * where the filesystem can do them atomically, and copies followed by deletes
+ * where it can't, as between volumes. Copies keep the attributes of what they
+ * copy, and copy symbolic links rather than following them. Nothing is ever
+ * overwritten.
+ * <p>
+ * Every change to the filesystem is published as a <code>Change</code> once
+ * it's done, along with the attributes of any new path, read here rather than
+ * on the event dispatch thread, so <code>process</code> gets them in chunks and can update the
+ * tree once per chunk. Paths that can't be dealt with are collected along with
+ * the error instead of stopping the task. Cancelling the task stops it at the
+ * next entry.
+ */
+class FileOperationTask extends SwingWorker<Void, FileOperationTask.Change> {
+
+    /**
+     * the operations a task can do
+     */
+    enum Operation {
+        /** deletes the paths */
+        DELETE,
+        /** copies the paths into a directory */
+        COPY,
+        /** moves the paths into a directory */
+        MOVE,
+        /** gives a single path a new name */
+        RENAME
+    }
+
+    /**
+     * Creates a new instance of FileOperationTask. Paths that are below other
+     * paths of the batch are dropped, since they're dealt with along with those.
+     * @param operation what to do with the paths
+     * @param sources the paths to work on
+     * @param target the directory to copy or move into, or the new path of a
+     * renamed file. Null for deletes.
+     * @param navigateOSXApps whether OS X application bundles that are added
+     * can be expanded
+     */
+    FileOperationTask(Operation operation, List<Path> sources, Path target, boolean navigateOSXApps) {
+        if (operation == null || sources == null)
+            throw new IllegalArgumentException("Null argument not allowed");
+        if (operation != Operation.DELETE && target == null)
+            throw new IllegalArgumentException("Null argument not allowed");
+        if (operation == Operation.RENAME && sources.size() != 1)
+            throw new IllegalArgumentException("Only a single path can be renamed");
+
+        this.operation = operation;
+        this.target = target;
+        this.navigateOSXApps = navigateOSXApps;
+        this.sources = new ArrayList<Path>();
+        for (Path source:sources)
+        {
+            if (!isBelowAny(source, sources))
+                this.sources.add(source);
+        }
+        failures = new ConcurrentSkipListMap<Path, IOException>();
+        deletes = new ConcurrentLinkedQueue<DeleteTask>();
+        processedCount = new AtomicLong();
+        processedBytes = new AtomicLong();
+        finishedCount = new AtomicInteger();
+    }
+
+    /**
+     * works through the batch. Called on a worker thread.
+     * @return nothing
+     * @throws InterruptedException if the thread is interrupted while it waits
+     * for the workers
+     */
+    protected Void doInBackground() throws InterruptedException {
+        startTime = System.nanoTime();
+        ExecutorService pool = Executors.newFixedThreadPool(Math.max(1, Math.min(WORKERS, sources.size())),
+                new ThreadFactory() {
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "FileTree file operation");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        for (final Path source:sources)
+        {
+            pool.execute(new Runnable() {
+                public void run() {
+                    try {
+                        perform(source);
+                    } finally {
+                        finishedCount.incrementAndGet();
+                    }
+                }
+            });
+        }
+        pool.shutdown();
+
+        try {
+            // a delete only checks whether its own task was cancelled
+            while (!pool.awaitTermination(CANCEL_CHECK_INTERVAL, TimeUnit.MILLISECONDS))
+            {
+                if (isCancelled())
+                {
+                    for (DeleteTask delete:deletes)
+                        delete.cancel(false);
+                }
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+
+        return null;
+    }
+
+    /**
+     * returns what the task does
+     * @return the operation of the task
+     */
+    Operation getOperation() {
+        return operation;
+    }
+
+    /**
+     * returns the paths the task works on
+     * @return the paths, without those below other paths of the batch
+     */
+    List<Path> getSources() {
+        return Collections.unmodifiableList(sources);
+    }
+
+    /**
+     * returns the number of files and directories deleted, copied or moved so far
+     * @return the number of paths processed
+     */
+    long getProcessedCount() {
+        return processedCount.get();
+    }
+
+    /**
+     * returns the size of the files copied so far
+     * @return the number of bytes copied
+     */
+    long getProcessedBytes() {
+        return processedBytes.get();
+    }
+
+    /**
+     * returns the rate at which paths are processed
+     * @return the number of paths processed per second since the task started
+     */
+    double getPathsPerSecond() {
+        return perSecond(processedCount.get());
+    }
+
+    /**
+     * returns the rate at which bytes are copied
+     * @return the number of bytes copied per second since the task started
+     */
+    double getBytesPerSecond() {
+        return perSecond(processedBytes.get());
+    }
+
+    /**
+     * returns how much of the batch is done. Big deletes count the entries
+     * directly inside them as they go.
+     * @return the part of the work done, from 0 to 1
+     */
+    double getFractionDone() {
+        if (sources.isEmpty())
+            return 1;
+
+        double done = finishedCount.get();
+        for (DeleteTask delete:deletes)
+        {
+            int entryCount = delete.getEntryCount();
+            if (entryCount > 0)
+                done += delete.getFinishedCount() / (entryCount + 1.0);
+        }
+
+        return Math.min(1, done / sources.size());
+    }
+
+    /**
+     * returns the paths that couldn't be dealt with, and why
+     * @return the failed paths, sorted, with the error of each
+     */
+    SortedMap<Path, IOException> getFailures() {
+        return Collections.unmodifiableSortedMap(failures);
+    }
+
+    /**
+     * does the operation on one path of the batch
+     * @param source the path
+     */
+    private void perform(Path source) {
+        if (isCancelled())
+            return;
+
+        try {
+            switch (operation)
+            {
+                case DELETE:
+                    if (delete(source))
+                        publish(change(source, null));
+                    break;
+                case COPY:
+                {
+                    // by name, since the source may be on another filesystem
+                    Path copy = target.resolve(source.getFileName().toString());
+                    copy(source, copy);
+                    publish(change(null, copy));
+                    break;
+                }
+                case MOVE:
+                {
+                    Path moved = target.resolve(source.getFileName().toString());
+                    move(source, moved);
+                    publish(change(Files.exists(source, LinkOption.NOFOLLOW_LINKS) ? null : source, moved));
+                    break;
+                }
+                case RENAME:
+                    // a rename in the same directory never needs a copy
+                    Files.move(source, target);
+                    processedCount.incrementAndGet();
+                    publish(change(source, target));
+                    break;
+            }
+        } catch (IOException e) {
+            fail(source, e);
+        } catch (RuntimeException e) {
+            // like a filesystem that can't do what's asked, which would otherwise
+            // end the worker without a word
+            fail(source, new IOException(e));
+        }
+    }
+
+    /**
+     * returns a change, with the attributes of the new path read on this thread
+     * @param removed the path that's gone, or null
+     * @param added the path that's new, or null
+     * @return the change
+     */
+    private Change change(Path removed, Path added) {
+        DirectoryListing entry = null;
+        if (added != null && added.getParent() != null)
+        {
+            entry = new DirectoryListing(1);
+            entry.add(PathFile.of(added), PathFile.of(added.getParent()), navigateOSXApps);
+        }
+
+        return new Change(removed, added, entry);
+    }
+
+    /**
+     * deletes a path and everything in it with a <code>DeleteTask</code> run
+     * on this thread. The entries directly inside a directory are published as
+     * soon as they're gone.
+     * @param path the path to delete
+     * @return true if everything was deleted
+     */
+    private boolean delete(final Path path) {
+        DeleteTask delete = new DeleteTask(path) {
+            protected void process(List<Path> chunks) {
+                for (Path entry:chunks)
+                    FileOperationTask.this.publish(change(entry, null));
+            }
+        };
+        deletes.add(delete);
+        try {
+            delete.run();
+        } finally {
+            deletes.remove(delete);
+        }
+
+        processedCount.addAndGet(delete.getDeletedCount());
+        failures.putAll(delete.getFailures());
+        return delete.isRootDeleted();
+    }
+
+    /**
+     * copies a path and everything in it. Entries that can't be copied are
+     * recorded as failures and skipped.
+     * @param source the path to copy
+     * @param copy the path of the copy, which must not exist
+     * @return true if everything was copied
+     * @throws IOException if <code>copy</code> itself can't be created
+     */
+    private boolean copy(final Path source, final Path copy) throws IOException {
+        if (copy.startsWith(source))
+            throw new FileSystemException(source.toString(), copy.toString(), "can't be copied into itself");
+
+        final int[] failed = new int[1];
+        final IOException[] rootFailure = new IOException[1];
+        Files.walkFileTree(source, new SimpleFileVisitor<Path>() {
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) {
+                if (isCancelled())
+                    return FileVisitResult.TERMINATE;
+                if (copyEntry(dir, attrs))
+                    return FileVisitResult.CONTINUE;
+                return dir.equals(source) ? FileVisitResult.TERMINATE : FileVisitResult.SKIP_SUBTREE;
+            }
+
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                if (isCancelled())
+                    return FileVisitResult.TERMINATE;
+                copyEntry(file, attrs);
+                return FileVisitResult.CONTINUE;
+            }
+
+            public FileVisitResult visitFileFailed(Path file, IOException e) {
+                failed(file, e);
+                return FileVisitResult.CONTINUE;
+            }
+
+            private boolean copyEntry(Path entry, BasicFileAttributes attrs) {
+                try {
+                    Files.copy(entry, copy.resolve(source.relativize(entry).toString()),
+                            StandardCopyOption.COPY_ATTRIBUTES, LinkOption.NOFOLLOW_LINKS);
+                    processedCount.incrementAndGet();
+                    if (!attrs.isDirectory())
+                        processedBytes.addAndGet(attrs.size());
+                    return true;
+                } catch (IOException e) {
+                    failed(entry, e);
+                    return false;
+                }
+            }
+
+            private void failed(Path entry, IOException e) {
+                // a copy that can't even start is the caller's failure
+                if (entry.equals(source))
+                    rootFailure[0] = e;
+                else
+                {
+                    fail(entry, e);
+                    failed[0]++;
+                }
+            }
+        });
+        if (rootFailure[0] != null)
+            throw rootFailure[0];
+
+        return failed[0] == 0 && !isCancelled();
+    }
+
+    /**
+     * moves a path. Where the filesystem can't move it in one step, it's copied
+     * and then deleted, and it's only deleted if everything was copied.
+     * @param source the path to move
+     * @param moved the new path, which must not exist
+     * @throws IOException if the path can't be moved at all
+     */
+    private void move(Path source, Path moved) throws IOException {
+        if (moved.startsWith(source))
+            throw new FileSystemException(source.toString(), moved.toString(), "can't be moved into itself");
+        // an atomic move may replace what's there
+        if (Files.exists(moved, LinkOption.NOFOLLOW_LINKS))
+            throw new FileAlreadyExistsException(moved.toString());
+
+        try {
+            Files.move(source, moved, StandardCopyOption.ATOMIC_MOVE);
+            processedCount.incrementAndGet();
+        } catch (AtomicMoveNotSupportedException e) {
+            // another volume
+            if (copy(source, moved))
+                delete(source);
+        }
+    }
+
+    /**
+     * records a path that couldn't be dealt with
+     * @param path the path
+     * @param e the error
+     */
+    private void fail(Path path, IOException e) {
+        failures.put(path, e);
+    }
+
+    /**
+     * returns a count divided by the time since the task started
+     * @param count the number of things done
+     * @return the number of things done per second
+     */
+    private double perSecond(long count) {
+        long nanos = System.nanoTime() - startTime;
+        if (startTime == 0 || nanos <= 0)
+            return 0;
+
+        return count * 1e9 / nanos;
+    }
+
+    /**
+     * returns true if <code>path</code> is below one of <code>paths</code>
+     * @param path the path
+     * @param paths the paths to check
+     * @return true if an ancestor of <code>path</code> is among <code>paths</code>
+     */
+    private static boolean isBelowAny(Path path, List<Path> paths) {
+        for (Path other:paths)
+        {
+            if (!other.equals(path) && path.startsWith(other))
+                return true;
+        }
+
+        return false;
+    }
+
+    /**
+     * what to do with the paths
+     */
+    private final Operation operation;
+    /**
+     * the paths to work on
+     */
+    private final List<Path> sources;
+    /**
+     * the directory to copy or move into, or the new path of a renamed file
+     */
+    private final Path target;
+    /**
+     * whether OS X application bundles that are added can be expanded
+     */
+    private final boolean navigateOSXApps;
+    /**
+     * the paths that couldn't be dealt with
+     */
+    private final ConcurrentSkipListMap<Path, IOException> failures;
+    /**
+     * the deletes under way
+     */
+    private final Queue<DeleteTask> deletes;
+    /**
+     * the number of paths deleted, copied or moved so far
+     */
+    private final AtomicLong processedCount;
+    /**
+     * the number of bytes copied so far
+     */
+    private final AtomicLong processedBytes;
+    /**
+     * the number of paths of the batch that have been dealt with
+     */
+    private final AtomicInteger finishedCount;
+    /**
+     * when the task started, from <code>System.nanoTime()</code>
+     */
+    private volatile long startTime;
+
+    /**
+     * the most paths of the batch worked on at once
+     */
+    private static final int WORKERS = 4;
+    /**
+     * how often the task checks whether it was cancelled, in milliseconds
+     */
+    private static final int CANCEL_CHECK_INTERVAL = 100;
+
+    /**
+     * a change made to the filesystem: a path that's gone, a path that's new,
+     * or both for a move
+     */
+    static class Change {
+        /**
+         * Creates a new instance of Change
+         * @param removed the path that's gone, or null
+         * @param added the path that's new, or null
+         * @param entry the new path as the single entry of a listing, or null
+         */
+        Change(Path removed, Path added, DirectoryListing entry) {
+            this.removed = removed;
+            this.added = added;
+            this.entry = entry;
+        }
+
+        /**
+         * returns the path that's gone
+         * @return the removed path, or null
+         */
+        Path getRemoved() {
+            return removed;
+        }
+
+        /**
+         * returns the path that's new
+         * @return the added path, or null
+         */
+        Path getAdded() {
+            return added;
+        }
+
+        /**
+         * returns the new path with its attributes, as the single entry of a
+         * listing
+         * @return the listing of the added path, or null if nothing was added
+         * or it's a root
+         */
+        DirectoryListing getEntry() {
+            return entry;
+        }
+
+        /**
+         * the path that's gone, or null
+         */
+        private final Path removed;
+        /**
+         * the path that's new, or null
+         */
+        private final Path added;
+        /**
+         * the new path as the single entry of a listing, or null
+         */
+        private final DirectoryListing entry;
+    }
+}
@@ -20,17 +20,48 @@
 package com.arashpayan.filetree;
 
 import java.awt.Component;
+import java.awt.Rectangle;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
 import java.io.File;
-import java.util.Arrays;
+import java.io.IOException;
+import java.nio.file.AccessDeniedException;
+import java.nio.file.DirectoryIteratorException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileSystem;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Comparator;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import javax.swing.Icon;
 import javax.swing.JFileChooser;
+import javax.swing.JTextField;
 import javax.swing.JTree;
+import javax.swing.SwingUtilities;
+import javax.swing.SwingWorker;
+import javax.swing.Timer;
+import javax.swing.UIManager;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
 import javax.swing.event.TreeExpansionEvent;
 import javax.swing.event.TreeExpansionListener;
+import javax.swing.event.TreeSelectionEvent;
+import javax.swing.event.TreeSelectionListener;
 import javax.swing.filechooser.FileSystemView;
-import javax.swing.tree.DefaultMutableTreeNode;
 import javax.swing.tree.DefaultTreeCellRenderer;
-import javax.swing.tree.DefaultTreeModel;
 import javax.swing.tree.TreePath;
 
 /**
@@ -41,26 +72,64 @@ public class FileTree extends JTree {
     
     /** Creates a new instance of FileTree */
     public FileTree() {
-        super(new DefaultTreeModel(new DefaultMutableTreeNode("root")));
-        fileTreeModel = (DefaultTreeModel)treeModel;
-        showHiddenFiles = false;
-        showFiles = true;
-        navigateOSXApps = false;
+        this(new FileTreeCore());
+    }
+    
+    /**
+     * Creates a new instance of FileTree that shows the filesystem as seen by
+     * <code>core</code>. The tree's show files, show hidden files and OS X
+     * application options are the core's, so they're shared with anything else
+     * using the same core.
+     * @param core the engine that lists the directories
+     */
+    public FileTree(FileTreeCore core) {
+        this(core, null);
+    }
+    
+    /**
+     * Creates a new instance of FileTree that starts out the way it was when
+     * <code>saveSnapshot</code> wrote <code>snapshot</code>. The saved directories are
+     * shown expanded right away, without listing them, and are then checked
+     * against the disk in the background. If the snapshot can't be read, the
+     * tree starts out like a new one.
+     * @param core the engine that lists the directories
+     * @param snapshot the file a snapshot was saved to. May be null or missing.
+     */
+    public FileTree(FileTreeCore core, File snapshot) {
+        super(new FileTreeModel(new FileTreeNode("root", false)));
+        if (core == null)
+            throw new IllegalArgumentException("Null argument not allowed");
         
-        initComponents();
+        this.core = core;
+        fileTreeModel = (FileTreeModel)treeModel;
+        asyncLoading = false;
+        streamingLoading = false;
+        cachedChildren = false;
+        prefetchBudget = DEFAULT_PREFETCH_BUDGET;
+        pendingLoads = new HashMap<FileTreeNode, Future<?>>();
+        
+        initComponents(snapshot);
         initListeners();
     }
     
     /**
      * returns the data model used by the FileTree. This method returns the same value
      * as <code>getModel()</code>, with the only exception being that this method
-     * returns a <code>DefaultTreeModel</code>
+     * returns a <code>FileTreeModel</code>
      * @return the data model used by the <code>FileTree</code>
      */
-    public DefaultTreeModel getFileTreeModel() {
+    public FileTreeModel getFileTreeModel() {
         return fileTreeModel;
     }
     
+    /**
+     * returns the engine that lists the directories shown by this tree
+     * @return the core of this tree
+     */
+    public FileTreeCore getCore() {
+        return core;
+    }
+    
     /**
      * returns the selected file in the tree. If there are multiple selections in the
      * tree, then it will return the <code>File</code> associated with the value
@@ -73,9 +142,7 @@ public class FileTree extends JTree {
         if (treePath == null)
             return null;
         
-        DefaultMutableTreeNode treeNode = (DefaultMutableTreeNode)treePath.getLastPathComponent();
-        FileTreeNode fileTreeNode = (FileTreeNode)treeNode.getUserObject();
-        return fileTreeNode.file;
+        return fileTreeModel.getFile(treePath.getLastPathComponent());
     }
     
     /**
@@ -91,23 +158,21 @@ public class FileTree extends JTree {
         
         File [] files = new File[treePaths.length];
         for (int i=0; i<treePaths.length; i++)
-        {
-            DefaultMutableTreeNode treeNode = (DefaultMutableTreeNode)treePaths[i].getLastPathComponent();
-            FileTreeNode fileTreeNode = (FileTreeNode)treeNode.getUserObject();
-            files[i] = fileTreeNode.file;
-        }
+            files[i] = fileTreeModel.getFile(treePaths[i].getLastPathComponent());
         
         return files;
     }
     
     /**
      * initializes class members
+     * @param snapshot the snapshot to start from, or null
      */
-    private void initComponents() {
+    private void initComponents(File snapshot) {
         if (Constants.isWindows)
             fsv = FileSystemView.getFileSystemView();
         
-        initRoot();
+        if (snapshot == null || !restoreSnapshot(snapshot))
+            initRoot();
         setCellRenderer(new FileTreeCellRenderer());
         setEditable(false);
     }
@@ -118,13 +183,38 @@ public class FileTree extends JTree {
     private void initListeners() {
         addTreeExpansionListener(new TreeExpansionListener() {
             public void treeCollapsed(TreeExpansionEvent event) {
+                TreePath path = event.getPath();
+                FileTreeNode treeNode = (FileTreeNode) path.getLastPathComponent();
+                cancelLoad(treeNode);
+                if (watcher != null)
+                    watcher.unwatch(treeNode);
             }
             public void treeExpanded(TreeExpansionEvent event) {
                 TreePath path = event.getPath();
-                DefaultMutableTreeNode treeNode = (DefaultMutableTreeNode) path.getLastPathComponent();
-                treeNode.removeAllChildren();
-                populateSubTree(treeNode);
-                fileTreeModel.nodeStructureChanged(treeNode);
+                FileTreeNode treeNode = (FileTreeNode) path.getLastPathComponent();
+                // the results of a search only show part of their directories
+                if (watcher != null && searchRoot == null)
+                    watcher.watch(treeNode);
+                // check a size that's shown for changes below the directory
+                if (showSizes && treeNode.getDirectorySize() != null)
+                    scanSize(treeNode, true);
+                if (batchExpansion)
+                    return; // the children were loaded by expandToFile or a search
+                if (searchRoot != null && treeNode.getListing() != null)
+                    return; // keep the results of the search pruned
+                
+                long start = System.nanoTime();
+                if (loadExpanded(treeNode, start))
+                    core.getMetrics().expanded(start, treeNode.getFile());
+                core.getMetrics().eventThreadBlocked(start, "Expanding", treeNode.getFile());
+            }
+        });
+        
+        // the selection must keep its nodes when big directories let go of theirs
+        addTreeSelectionListener(new TreeSelectionListener() {
+            public void valueChanged(TreeSelectionEvent e) {
+                for (TreePath path:e.getPaths())
+                    fileTreeModel.setPinned((FileTreeNode)path.getLastPathComponent(), e.isAddedPath(path));
             }
         });
         
@@ -132,31 +222,239 @@ public class FileTree extends JTree {
         addMouseListener(ftl);
     }
     
+    /**
+     * loads the children of a node the user expanded, the way the loading
+     * options say to
+     * @param treeNode the expanded node
+     * @param start when the node was expanded, from <code>System.nanoTime()</code>
+     * @return true if the children are shown already, false if they're shown
+     * once a background load is done
+     */
+    private boolean loadExpanded(FileTreeNode treeNode, long start) {
+        if (cachedChildren && treeNode.getListing() != null && !pendingLoads.containsKey(treeNode))
+        {
+            revalidateSubTree(treeNode, !asyncLoading && !streamingLoading, false);
+            childrenShown(treeNode);
+            return true;
+        }
+        DirectoryListing prefetched = takePrefetched(treeNode);
+        if (prefetched != null && (asyncLoading || streamingLoading))
+        {
+            // the prefetched listing is checked against the disk in the background
+            cancelLoad(treeNode);
+            loadSubTree(treeNode, start, prefetched);
+            return false;
+        }
+        if (streamingLoading)
+        {
+            streamSubTree(treeNode, start);
+            return false;
+        }
+        if (asyncLoading)
+        {
+            loadSubTree(treeNode, start, null);
+            return false;
+        }
+        cancelLoad(treeNode);
+        if (prefetched != null && prefetcher.validate(treeNode.getFile(), prefetched))
+            treeNode.setChildren(prefetched, core.getView(prefetched));
+        else
+            core.loadChildren(treeNode);
+        fileTreeModel.nodeStructureChanged(treeNode);
+        childrenShown(treeNode);
+        return true;
+    }
+    
     /**
      * initializes the tree model
      */
     private void initRoot() {
-        File[] roots = null;
-        if (Constants.isWindows)
-            roots = fsv.getRoots();
-        else
-            roots = File.listRoots();
+        stopSearch();
+        cancelAllLoads();
+        cancelExpandAll();
+        if (watcher != null)
+            watcher.unwatchAll();
+        if (prefetcher != null)
+            prefetcher.clear();
+        
+        rootNode = core.createRoot();
+        fileTreeModel.setRoot(rootNode);
+        if (watcher != null)
+            watcher.watch(rootNode);
+        childrenShown(rootNode);
+    }
+    
+    /**
+     * builds the tree from a snapshot, then checks the restored directories
+     * against the disk in the background
+     * @param file the file the snapshot was saved to
+     * @return false if there is no snapshot, or it couldn't be read
+     */
+    private boolean restoreSnapshot(File file) {
+        if (!file.exists())
+            return false;
+        
+        TreeSnapshot snapshot;
+        try {
+            snapshot = TreeSnapshot.read(file);
+        } catch (IOException e) {
+            e.printStackTrace();
+            return false;
+        }
+        
+        Map<File, DirectoryListing> listings = snapshot.getListings();
+        rootNode = core.createRoot(listings);
+        fileTreeModel.setRoot(rootNode);
+        
+        List<FileTreeNode> restored = new ArrayList<FileTreeNode>();
+        if (rootNode.getListing() != null)
+            restored.add(rootNode);
+        List<TreePath> expanded = new ArrayList<TreePath>();
+        for (Map.Entry<File, DirectoryListing> entry:listings.entrySet())
+        {
+            FileTreeNode node = findRestoredNode(entry.getKey(), listings);
+            if (node == null || node.getListing() != null || !node.getAllowsChildren())
+                continue;
+            
+            DirectoryListing listing = entry.getValue();
+            core.refilter(entry.getKey(), listing, true);
+            node.setChildren(listing, core.getView(listing));
+            restored.add(node);
+            expanded.add(new TreePath(fileTreeModel.getPathToRoot(node)));
+        }
+        expandPaths(expanded);
         
-        if (roots.length == 1)
+        List<TreePath> selection = new ArrayList<TreePath>();
+        for (File selected:snapshot.getSelection())
         {
-            rootNode = new DefaultMutableTreeNode(new FileTreeNode(roots[0]));
-            populateSubTree(rootNode);
+            FileTreeNode node = findRestoredNode(selected, listings);
+            if (node != null)
+                selection.add(new TreePath(fileTreeModel.getPathToRoot(node)));
         }
-        else if (roots.length > 1)
+        setSelectionPaths(selection.toArray(new TreePath[selection.size()]));
+        
+        for (FileTreeNode node:restored)
+            revalidateSubTree(node, false, false);
+        return true;
+    }
+    
+    /**
+     * walks down the tree to the node of <code>file</code> while it's being
+     * restored. Directories along the way that aren't in the snapshot are listed.
+     * @param file the file to look for
+     * @param listings the listings of the snapshot
+     * @return the node of <code>file</code>, or null if it can't be found
+     */
+    private FileTreeNode findRestoredNode(File file, Map<File, DirectoryListing> listings) {
+        FileTreeNode node = core.getPathStart(rootNode);
+        if (node == null)
+            return null;
+        
+        for (String part:core.getPathParts(file))
         {
-            rootNode = new DefaultMutableTreeNode("Computer");
-            for (File root:roots)
-                rootNode.add(new DefaultMutableTreeNode(root));
+            if (node.getListing() == null && node.representsFile() && node.getAllowsChildren())
+            {
+                // a directory whose listing follows in the snapshot is never
+                // above the file, since parents come before their children
+                core.loadChildren(node);
+            }
+            FileTreeNode child = core.findChild(node, part);
+            if (child != null)
+                node = child;
         }
-        else
-            rootNode = new DefaultMutableTreeNode("Error");
         
-        fileTreeModel.setRoot(rootNode);
+        return file.equals(node.getFile()) ? node : null;
+    }
+    
+    /**
+     * Saves the directories that are expanded, with their listings, and the
+     * selection to a file, so a tree created with the file as its snapshot
+     * starts out the same way without listing anything first
+     * @param file the file to save the snapshot to
+     * @throws IOException if the snapshot can't be written
+     */
+    public void saveSnapshot(File file) throws IOException {
+        if (file == null)
+            throw new IllegalArgumentException("Null argument not allowed");
+        
+        List<TreePath> expanded = searchRoot == null ? getExpandedPaths(rootNode) : savedExpansion;
+        // parents have to come before their children
+        Collections.sort(expanded, new Comparator<TreePath>() {
+            public int compare(TreePath p1, TreePath p2) {
+                return p1.getPathCount() - p2.getPathCount();
+            }
+        });
+        
+        Map<File, DirectoryListing> listings = new LinkedHashMap<File, DirectoryListing>();
+        for (TreePath path:expanded)
+        {
+            FileTreeNode node = (FileTreeNode)path.getLastPathComponent();
+            DirectoryListing listing = node.getListing();
+            // paths of other filesystems can't be found again from a snapshot
+            File dir = node.getFile();
+            if (dir != null && !(dir instanceof PathFile) && listing != null && listing.isPortable())
+                listings.put(dir, listing);
+        }
+        
+        List<File> selection = new ArrayList<File>();
+        File[] selected = getSelectedFiles();
+        if (selected != null)
+        {
+            for (File f:selected)
+            {
+                if (f != null && !(f instanceof PathFile))
+                    selection.add(f);
+            }
+        }
+        
+        TreeSnapshot.write(file, listings, selection);
+    }
+    
+    /**
+     * returns the cache of the icons shown in the tree. The cache's hit and miss
+     * counters show how well it is working.
+     * @return the icon cache used by the tree's renderer
+     */
+    public IconCache getIconCache() {
+        if (iconCache == null)
+        {
+            IconCache.IconSource source;
+            Executor executor = new Executor() {
+                public void execute(Runnable command) {
+                    SwingUtilities.invokeLater(command);
+                }
+            };
+            if (Constants.isWindows)
+            {
+                // shell folders do their own threading, so icons can be
+                // looked up by the I/O scheduler, on the mount of each file
+                source = new IconCache.IconSource() {
+                    public Icon getIcon(File file) {
+                        // the shell doesn't know the entries of archives
+                        if (file instanceof PathFile)
+                            return UIManager.getIcon(file.isDirectory() ? "FileView.directoryIcon" : "FileView.fileIcon");
+                        return fsv.getSystemIcon(file);
+                    }
+                };
+            }
+            else
+            {
+                // JFileChooser is a Swing component, so its icons are looked up on
+                // the event dispatch thread, just not in the middle of painting
+                final JFileChooser fileChooser = new JFileChooser();
+                source = new IconCache.IconSource() {
+                    public Icon getIcon(File file) {
+                        return fileChooser.getIcon(file);
+                    }
+                };
+            }
+            iconCache = new IconCache(IconCache.DEFAULT_SIZE, source, executor);
+            iconCache.setMetrics(core.getMetrics());
+            if (Constants.isWindows)
+                iconCache.setScheduler(core.getScheduler());
+        }
+        
+        return iconCache;
     }
     
     /**
@@ -174,7 +472,7 @@ public class FileTree extends JTree {
      * @return true if the user can navigate into OS X application bundles
      */
     public boolean isNavigateOSXApps() {
-        return navigateOSXApps;
+        return core.isNavigateOSXApps();
     }
     
     /**
@@ -183,7 +481,7 @@ public class FileTree extends JTree {
      * @return true if files will be shown in the tree, false otherwise
      */
     public boolean isShowFiles() {
-        return showFiles;
+        return core.isShowFiles();
     }
     
     /**
@@ -192,214 +490,1897 @@ public class FileTree extends JTree {
      * @return true if the tree will show hidden files, false otherwise
      */
     public boolean isShowHiddenFiles() {
-        return showHiddenFiles;
+        return core.isShowHiddenFiles();
     }
     
     /**
-     * called whenever a node is expanded
-     * @param node the node to expand
+     * returns the filter that decides which files and directories are shown
+     * @return the filter
      */
-    private void populateSubTree(DefaultMutableTreeNode node) {
-        Object userObject = node.getUserObject();
-        if (userObject instanceof FileTreeNode)
-        {
-            FileTreeNode fileTreeNode = (FileTreeNode)userObject;
-            File []files = fileTreeNode.file.listFiles();
-            
-            // Windows displays directories before regular files, so we're going
-            // to sort the list of files such that directories appear first
-            if (Constants.isWindows)
-            {
-                Arrays.sort(files, new Comparator<File>() {
-                    public int compare(File f1, File f2) {
-                        boolean f1IsDir = f1.isDirectory();
-                        boolean f2IsDir = f2.isDirectory();
-                        
-                        if (f1IsDir == f2IsDir)
-                            return f1.compareTo(f2);
-                        if (f1IsDir && !f2IsDir)
-                            return -1;
+    public TreeFilter getFilter() {
+        return core.getFilter();
+    }
+    
+    /**
+     * returns the order the children of a directory are sorted in. Default value
+     * is <code>SortOrder.NAME</code>.
+     * @return the sort order
+     */
+    public SortOrder getSortOrder() {
+        return core.getSortOrder();
+    }
+    
+    /**
+     * returns true if directories are sorted before files. Default value is true
+     * on Windows, and false elsewhere.
+     * @return true if directories come first
+     */
+    public boolean isDirectoriesFirst() {
+        return core.isDirectoriesFirst();
+    }
+    
+    /**
+     * returns true if the size of every file, and the total size of every
+     * directory, is shown next to its name. Default value is false.
+     * @return true if sizes are shown, false otherwise
+     */
+    public boolean isShowSizes() {
+        return showSizes;
+    }
+    
+    /**
+     * returns the index used to search for files by name, or null if no search
+     * has been started and no search root has been set
+     * @return the search index
+     */
+    public FileNameIndex getSearchIndex() {
+        return searchIndex;
+    }
+    
+    /**
+     * returns the text the tree is filtered by, or null if the tree isn't showing
+     * the results of a search
+     * @return the query of the current search
+     */
+    public String getSearchQuery() {
+        return searchTask == null ? null : searchTask.getQuery();
+    }
+    
+    /**
+     * returns true if directories are listed on a background thread when they
+     * are expanded, false otherwise. Default value is false.
+     * @return true if directories are loaded asynchronously, false otherwise
+     */
+    public boolean isAsyncLoading() {
+        return asyncLoading;
+    }
+    
+    /**
+     * returns true if directories are streamed into the tree in batches as they
+     * are read, false otherwise. Default value is false.
+     * @return true if directories are streamed into the tree, false otherwise
+     */
+    public boolean isStreamingLoading() {
+        return streamingLoading;
+    }
+    
+    /**
+     * returns true if expanded directories are watched for changes, false
+     * otherwise. Default value is false.
+     * @return true if the tree updates itself as the filesystem changes
+     */
+    public boolean isLiveUpdates() {
+        return watcher != null;
+    }
+    
+    /**
+     * returns true if the children of directories are kept and reused when they
+     * are expanded again or the show files options change, false otherwise.
+     * Default value is false.
+     * @return true if loaded directories are cached, false otherwise
+     */
+    public boolean isCachedChildren() {
+        return cachedChildren;
+    }
+    
+    /**
+     * returns true if directories are probed in the background to find the
+     * empty ones, which are shown without an expand handle. Default value is false.
+     * @return true if empty directories are detected, false otherwise
+     */
+    public boolean isEmptyDirectoryDetection() {
+        return emptyDirectoryDetection;
+    }
+    
+    /**
+     * returns how many levels below a loaded directory are listed ahead of
+     * being expanded. Default value is 0, which doesn't prefetch.
+     * @return the prefetch depth
+     */
+    public int getPrefetchDepth() {
+        return prefetchDepth;
+    }
+    
+    /**
+     * returns the most entries kept in directories that were prefetched but
+     * not expanded yet. Default value is <code>DEFAULT_PREFETCH_BUDGET</code>.
+     * @return the prefetch budget
+     */
+    public int getPrefetchBudget() {
+        return prefetchBudget;
+    }
+    
+    /**
+     * lists the children of <code>node</code> on the I/O scheduler. A placeholder
+     * child is shown until the listing is done, at which point the real children
+     * are swapped in on the event dispatch thread. If <code>node</code> is
+     * already being loaded, this method does nothing.
+     * @param node the node to load
+     * @param start when the node was expanded, from <code>System.nanoTime()</code>
+     * @param prefetched a prefetched listing of the directory, which is used
+     * instead of listing it again if the directory hasn't changed since. May
+     * be null.
+     */
+    private void loadSubTree(final FileTreeNode node, final long start, final DirectoryListing prefetched) {
+        final File dir = node.getFile();
+        if (dir == null)
+            return;
+        if (pendingLoads.containsKey(node))
+            return; // merge with the load that's already in flight
+        
+        fileTreeModel.setPlaceholder(node, LOADING);
+        
+        // prefetching may be turned off while the load runs
+        final DirectoryPrefetcher validator = prefetcher;
+        final Future<?>[] self = new Future<?>[1];
+        Runnable task = new Runnable() {
+            public void run() {
+                final int optionsVersion = core.getOptionsVersion();
+                final DirectoryListing listing = prefetched != null && validator.validate(dir, prefetched)
+                        ? prefetched : core.list(dir);
+                final int[] view = core.getView(listing);
+                if (Thread.currentThread().isInterrupted())
+                    return;
+                
+                SwingUtilities.invokeLater(new Runnable() {
+                    public void run() {
+                        // if the load was cancelled or superseded, drop the result
+                        if (self[0] == null || pendingLoads.get(node) != self[0])
+                            return;
+                        pendingLoads.remove(node);
                         
-                        // here we assume that f1 is a file, and f2 is a directory
-                        return 1;
+                        // the options may have changed since the view was made
+                        long applying = System.nanoTime();
+                        int[] shown = view;
+                        if (optionsVersion != core.getOptionsVersion())
+                        {
+                            core.refilter(dir, listing, false);
+                            shown = core.getView(listing);
+                        }
+                        fileTreeModel.setChildren(node, listing, shown);
+                        core.getMetrics().eventThreadBlocked(applying, "Showing a listing", dir);
+                        core.getMetrics().expanded(start, dir);
+                        childrenShown(node);
                     }
                 });
             }
-            else
-                Arrays.sort(files);
-            
-            for (File file:files)
-            {
-                if (file.isFile() && !showFiles)
-                    continue;
-                
-                if (!showHiddenFiles && file.isHidden())
-                    continue;
-                
-                FileTreeNode subFile = new FileTreeNode(file);
-                DefaultMutableTreeNode subNode = new DefaultMutableTreeNode(subFile);
-                if (file.isDirectory())
-                {
-                    if (!Constants.isOSX || navigateOSXApps || !file.getName().endsWith(".app"))
-                        subNode.add(new DefaultMutableTreeNode("Fake"));
-                }
-                node.add(subNode);
-            }
-        }
+        };
+        
+        // the future is published before the result can be, because the
+        // completion runnable above runs on this (the event dispatch) thread
+        self[0] = core.getScheduler().submit(dir, IoPriority.USER, task, loadFailed(node, self, false));
+        pendingLoads.put(node, self[0]);
     }
     
     /**
-     * Expands the tree to the <code>File</code> specified by the argument, and selects
-     * it as well. If the <code>currFile</code> does not exist or is null, calling this
-     * method will have no effect.
-     * @param currFile The file or directory to expand the tree to and select.
+     * streams the children of <code>node</code> into the tree. The directory is
+     * read with a <code>DirectoryStream</code> on the I/O scheduler, and every
+     * <code>STREAMING_BATCH_SIZE</code> entries are sorted and merged into the
+     * node on the event dispatch thread, so the first rows show up long before
+     * a huge directory has been read completely. If <code>node</code> is already
+     * being loaded, this method does nothing.
+     * @param node the node to load
+     * @param start when the node was expanded, from <code>System.nanoTime()</code>
      */
-    public void setCurrentFile(File currFile) {
-        if (currFile == null || !currFile.exists())
+    private void streamSubTree(final FileTreeNode node, final long start) {
+        final File dir = node.getFile();
+        if (dir == null)
             return;
+        if (pendingLoads.containsKey(node))
+            return; // merge with the load that's already in flight
         
-        String path = currFile.getPath();
-        String [] pathParts = null;
-        if (Constants.isWindows)
-            pathParts = path.split("\\\\");
-        else
-            pathParts = path.split(File.separator);
+        fileTreeModel.setPlaceholder(node, LOADING);
         
-        if (Constants.isWindows)
-        {
-            int childCount = rootNode.getChildCount();
-            DefaultMutableTreeNode myComputer = null;
-            for (int i=0; i<childCount; i++)
-            {
-                FileTreeNode fileTreeNode = 
-                        (FileTreeNode)((DefaultMutableTreeNode)rootNode.getChildAt(i)).getUserObject();
-                if (fileTreeNode.file.getPath().equals(FileTreeNode.WINDOWS_MYCOMPUTER))
-                {
-                    myComputer = (DefaultMutableTreeNode)rootNode.getChildAt(i);
-                    TreePath treePath = new TreePath(myComputer.getPath());
-                    expandPath(treePath);
-                    break;
+        final boolean navigateOSXApps = core.isNavigateOSXApps();
+        final Future<?>[] self = new Future<?>[1];
+        Runnable task = new Runnable() {
+            public void run() {
+                long listing = System.nanoTime();
+                stamp = dir.lastModified();
+                int entries = 0;
+                DirectoryListing batch = new DirectoryListing(STREAMING_BATCH_SIZE);
+                try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir.toPath())) {
+                    for (Path entry:stream)
+                    {
+                        if (Thread.currentThread().isInterrupted())
+                            return;
+                        
+                        batch.add(PathFile.of(entry), dir, navigateOSXApps);
+                        IoScheduler.madeProgress();
+                        entries++;
+                        if (batch.size() == STREAMING_BATCH_SIZE)
+                        {
+                            publish(batch, false);
+                            batch = new DirectoryListing(STREAMING_BATCH_SIZE);
+                        }
+                    }
+                } catch (IOException | DirectoryIteratorException e) {
+                    // treat an unreadable directory the same way as an empty one,
+                    // keeping whatever was read before the error
                 }
+                core.getMetrics().listed(listing, dir, entries);
+                publish(batch, true);
             }
             
-            DefaultMutableTreeNode currNode = myComputer;
-            for (String part:pathParts)
-            {
-                childCount = currNode.getChildCount();
-                for (int i=0; i<childCount; i++)
-                {
-                    DefaultMutableTreeNode childNode = (DefaultMutableTreeNode)currNode.getChildAt(i);
-                    FileTreeNode fileTreeNode = (FileTreeNode)childNode.getUserObject();
-                    String pathName = fileTreeNode.file.getName();
-                    if (pathName.length() == 0)
-                        pathName = fileTreeNode.file.getPath().substring(0, 2);
-                    if (pathName.equals(part))
-                    {
-                        TreePath treePath = new TreePath(childNode.getPath());
-                        expandPath(treePath);
-                        selectionModel.setSelectionPath(treePath);
-                        currNode = childNode;
-                        break;
+            private void publish(final DirectoryListing batch, final boolean last) {
+                final int optionsVersion = core.getOptionsVersion();
+                core.filter(dir, batch, false);
+                SwingUtilities.invokeLater(new Runnable() {
+                    public void run() {
+                        // if the load was cancelled or superseded, drop the batch
+                        if (self[0] == null || pendingLoads.get(node) != self[0])
+                            return;
+                        if (last)
+                            pendingLoads.remove(node);
+                        
+                        long merging = System.nanoTime();
+                        // the filter may have changed since the batch was filtered
+                        if (optionsVersion != core.getOptionsVersion())
+                            core.refilter(dir, batch, false);
+                        DirectoryListing listing = node.getListing();
+                        if (listing == null)
+                            listing = new DirectoryListing(batch.size());
+                        int first = listing.addAll(batch);
+                        if (last)
+                            listing.setStamp(stamp);
+                        int[] sorted = core.getView(listing, first);
+                        // the placeholder stays until there is something to replace it
+                        if (sorted.length > 0 || last)
+                            fileTreeModel.mergeChildren(node, listing, sorted);
+                        core.getMetrics().eventThreadBlocked(merging, "Merging a batch", dir);
+                        // the expansion is done once the first rows are shown
+                        if (!shown && (last || node.getChildCount() > 0 && node.getListing() != null))
+                        {
+                            shown = true;
+                            core.getMetrics().expanded(start, dir);
+                        }
+                        if (last)
+                            childrenShown(node);
                     }
-                }
+                });
             }
             
-        }
-        else
+            /**
+             * the last-modified time of the directory before it was read
+             */
+            private long stamp;
+            /**
+             * whether the first entries have been shown. Only used on the
+             * event dispatch thread.
+             */
+            private boolean shown;
+        };
+        
+        // the future is published before any batch can be, because the
+        // batches are merged on this (the event dispatch) thread
+        self[0] = core.getScheduler().submit(dir, IoPriority.USER, task, loadFailed(node, self, true));
+        pendingLoads.put(node, self[0]);
+    }
+    
+    /**
+     * brings the cached children of <code>node</code> up to date. If the
+     * directory's last-modified time still matches the one it had when it was
+     * listed, the children are reused as they are. Otherwise the directory is
+     * listed again and only the differences are applied, so the children that
+     * didn't change keep their nodes, expansion state and selection. The check is
+     * made on the I/O scheduler unless <code>synchronous</code> is true.
+     * @param node the node to revalidate
+     * @param synchronous whether to check the directory on the calling thread
+     * @param force whether to list the directory again even if its last-modified
+     * time hasn't changed, which misses changes to the entries themselves
+     */
+    private void revalidateSubTree(final FileTreeNode node, boolean synchronous, final boolean force) {
+        final File dir = node.getFile();
+        if (dir == null)
+            return;
+        
+        final long stamp = force ? Long.MIN_VALUE : node.getListing().getStamp();
+        if (!force)
+            core.getMetrics().statCalled(1);
+        if (synchronous)
         {
-            DefaultMutableTreeNode currNode = rootNode;
-            for (String part:pathParts)
-            {
-                int childCount = currNode.getChildCount();
-                for (int i=0; i<childCount; i++)
-                {
-                    DefaultMutableTreeNode childNode = (DefaultMutableTreeNode)currNode.getChildAt(i);
-                    FileTreeNode fileTreeNode = (FileTreeNode)childNode.getUserObject();
-                    if (fileTreeNode.file.getName().equals(part))
-                    {
-                        TreePath treePath = new TreePath(childNode.getPath());
-                        expandPath(treePath);
-                        selectionModel.setSelectionPath(treePath);
-                        currNode = childNode;
-                        break;
+            if (force || dir.lastModified() != stamp)
+                applyListing(node, core.list(dir));
+            return;
+        }
+        
+        final Future<?>[] self = new Future<?>[1];
+        Runnable task = new Runnable() {
+            public void run() {
+                final DirectoryListing listing = !force && dir.lastModified() == stamp ? null : core.list(dir);
+                if (Thread.currentThread().isInterrupted())
+                    return;
+                
+                SwingUtilities.invokeLater(new Runnable() {
+                    public void run() {
+                        // if the check was cancelled or superseded, drop the result
+                        if (self[0] == null || pendingLoads.get(node) != self[0])
+                            return;
+                        pendingLoads.remove(node);
+                        
+                        if (listing != null)
+                        {
+                            long applying = System.nanoTime();
+                            applyListing(node, listing);
+                            core.getMetrics().eventThreadBlocked(applying, "Applying changes", dir);
+                        }
                     }
-                }
+                });
             }
-        }
+        };
+        
+        self[0] = core.getScheduler().submit(dir, IoPriority.USER, task, loadFailed(node, self, false));
+        pendingLoads.put(node, self[0]);
     }
     
     /**
-     * Allow or disallow the user to delete files from the tree view.
-     * @param allowDelete <code>true</code> allows deleting of files/directories. <code>false</code> does
-     * not.
+     * returns the handler of a background load that timed out, or couldn't run
+     * because the directory's mount isn't responding. The load is forgotten, and
+     * a directory that has nothing to show yet says so, until it's expanded again.
+     * So does a directory that was being streamed, rather than showing only the
+     * entries read before the mount stopped responding.
+     * @param node the node being loaded
+     * @param self holds the future of the load
+     * @param streaming whether the children are merged in as they're read
+     * @return the failure handler
      */
-    public void setDeleteEnabled(boolean allowDelete) {
-        this.allowDelete = allowDelete;
+    private Runnable loadFailed(final FileTreeNode node, final Future<?>[] self, final boolean streaming) {
+        return new Runnable() {
+            public void run() {
+                SwingUtilities.invokeLater(new Runnable() {
+                    public void run() {
+                        if (self[0] == null || pendingLoads.get(node) != self[0])
+                            return;
+                        pendingLoads.remove(node);
+                        
+                        if (streaming || node.getListing() == null)
+                            fileTreeModel.setPlaceholder(node, NOT_RESPONDING);
+                    }
+                });
+            }
+        };
     }
     
     /**
-     * Toggle the showing of files in the tree (as opposed to just directories)
-     * @param showFiles <code>true</code> shows files in the tree. <code>false</code> does not.
+     * applies the differences between a fresh listing of the directory represented
+     * by <code>node</code> and its cached children
+     * @param node the node of the directory
+     * @param listing the fresh listing
      */
-    public void setShowFiles(boolean showFiles) {
-        if (this.showFiles != showFiles)
-        {
-            this.showFiles = showFiles;
-            initRoot();
-        }
+    private void applyListing(FileTreeNode node, DirectoryListing listing) {
+        fileTreeModel.applyChanges(node, listing, null, true, core.isShowFiles(), core.isShowHiddenFiles());
+        node.getListing().setStamp(listing.getStamp());
+        if (searchIndex != null)
+            searchIndex.update(node.getFile());
+        checkRules();
     }
     
     /**
-     * Allows or disallows the showing of hidden files and directories in the tree.
-     * @param showHiddenFiles <code>true</code> shows hidden files. <code>false</code> does not.
+     * re-applies the filter and the show files options to every loaded directory
+     * at or below <code>node</code>, without listing anything again
+     * @param node the node to start at
      */
-    public void setShowHiddenFiles(boolean showHiddenFiles) {
-        if (showHiddenFiles != this.showHiddenFiles)
+    private void refilterSubTree(FileTreeNode node) {
+        if (node.getListing() != null && node.getFile() != null)
+            core.refilter(node.getFile(), node.getListing(), false);
+        fileTreeModel.refilter(node, core.isShowFiles(), core.isShowHiddenFiles());
+        for (int i=0; i<node.getChildCount(); i++)
         {
-            this.showHiddenFiles = showHiddenFiles;
-            initRoot();
+            FileTreeNode child = node.getCreatedChild(i);
+            if (child != null)
+                refilterSubTree(child);
         }
     }
     
     /**
-     * sets whether the user can navigate into OS X application bundles (.app). The
-     * default value is <code>false</code>
-     * @param navigateOSXApps if true, users will be able to navigate into OS X application bundles. set it
-     * to false to disallow navigating bundles.
+     * re-applies the filter to the whole tree, and to the results of the search
+     * if there is one, after a rule file changed
      */
-    public void setNavigateOSXApps(boolean navigateOSXApps) {
-        this.navigateOSXApps = navigateOSXApps;
+    private void checkRules() {
+        int version = core.getFilter().getRulesVersion();
+        if (version == rulesVersion)
+            return;
+        
+        rulesVersion = version;
+        if (searchRoot != null)
+            refilterSubTree(searchRoot);
+        refilterSubTree(rootNode);
     }
     
     /**
-     * the root node of the <code>FileTree</code>
+     * reads, through the I/O scheduler, the rule files of a new filter that apply
+     * to the loaded directories and to the ones being loaded, then filters the
+     * tree again on the event dispatch thread from what was read. A directory
+     * whose mount isn't responding is filtered as if it had no rule files.
+     * @param filter the new filter
      */
-    protected DefaultMutableTreeNode rootNode;
+    private void loadRules(final TreeFilter filter) {
+        if (ruleLoader != null)
+            ruleLoader.cancel(true);
+        
+        final File top = core.getRootFile();
+        final List<File> dirs = new ArrayList<File>();
+        collectLoadedDirectories(rootNode, dirs);
+        if (searchRoot != null)
+            collectLoadedDirectories(searchRoot, dirs);
+        for (FileTreeNode node:pendingLoads.keySet())
+        {
+            if (node.getFile() != null)
+                dirs.add(node.getFile());
+        }
+        
+        ruleLoader = new SwingWorker<Void, Void>() {
+            protected Void doInBackground() {
+                for (final File dir:dirs)
+                {
+                    if (isCancelled())
+                        break;
+                    try {
+                        core.getScheduler().call(dir, IoPriority.USER, new Callable<Void>() {
+                            public Void call() {
+                                filter.loadRules(dir, top);
+                                return null;
+                            }
+                        });
+                    } catch (IOException e) {
+                        // its rule files count as empty until it's listed again
+                    }
+                }
+                return null;
+            }
+            protected void done() {
+                if (ruleLoader != this)
+                    return;
+                ruleLoader = null;
+                if (core.getFilter() != filter)
+                    return;
+                
+                if (searchRoot != null)
+                    refilterSubTree(searchRoot);
+                refilterSubTree(rootNode);
+            }
+        };
+        ruleLoader.execute();
+    }
+    
     /**
-     * the <code>TreeModel</code> for this object. The same value as the <code>JTree</code>
-     * treeModel member.
+     * adds the directories at or below <code>node</code> whose children are
+     * loaded to a list
+     * @param node the node to start at
+     * @param dirs receives the directories
      */
-    protected DefaultTreeModel fileTreeModel;
+    private void collectLoadedDirectories(FileTreeNode node, List<File> dirs) {
+        if (node.getListing() != null && node.getFile() != null)
+            dirs.add(node.getFile());
+        for (int i=0; i<node.getChildCount(); i++)
+        {
+            FileTreeNode child = node.getCreatedChild(i);
+            if (child != null)
+                collectLoadedDirectories(child, dirs);
+        }
+    }
+    
     /**
-     * just a filesystemview used to get icons for nodes in Windows
+     * forgets the sizes of every loaded directory at or below <code>node</code>,
+     * so they're scanned again the next time they're shown
+     * @param node the node to start at
+     */
+    private void clearSizes(FileTreeNode node) {
+        node.setDirectorySize(null);
+        for (int i=0; i<node.getChildCount(); i++)
+        {
+            FileTreeNode child = node.getCreatedChild(i);
+            if (child != null)
+                clearSizes(child);
+        }
+    }
+    
+    /**
+     * sorts every loaded directory again in the current order, keeping the
+     * expanded directories and the selection
+     */
+    private void sortTree() {
+        FileTreeNode shownRoot = (FileTreeNode)fileTreeModel.getRoot();
+        List<TreePath> expanded = getExpandedPaths(shownRoot);
+        TreePath[] selection = getSelectionPaths();
+        
+        sortSubTree(rootNode);
+        if (searchRoot != null)
+            sortSubTree(searchRoot);
+        fileTreeModel.nodeStructureChanged(shownRoot);
+        
+        // the nodes are the same ones, so the old paths still lead to them
+        expandPaths(expanded);
+        setSelectionPaths(selection);
+    }
+    
+    /**
+     * returns the paths of the expanded nodes at or below <code>node</code>
+     * @param node the node to start at
+     * @return the expanded paths
+     */
+    private List<TreePath> getExpandedPaths(FileTreeNode node) {
+        List<TreePath> expanded = new ArrayList<TreePath>();
+        Enumeration<TreePath> descendants = getExpandedDescendants(new TreePath(fileTreeModel.getPathToRoot(node)));
+        while (descendants != null && descendants.hasMoreElements())
+            expanded.add(descendants.nextElement());
+        
+        return expanded;
+    }
+    
+    /**
+     * expands paths whose nodes are loaded already, without loading them again
+     * @param paths the paths to expand
+     */
+    private void expandPaths(List<TreePath> paths) {
+        batchExpansion = true;
+        try {
+            for (TreePath path:paths)
+                expandPath(path);
+        } finally {
+            batchExpansion = false;
+        }
+    }
+    
+    /**
+     * sorts the children of every loaded directory at or below <code>node</code>
+     * again, without telling the model
+     * @param node the node to start at
+     */
+    private void sortSubTree(FileTreeNode node) {
+        DirectoryListing listing = node.getListing();
+        if (listing != null)
+        {
+            core.applyOrder(listing);
+            node.sortChildren();
+        }
+        for (int i=0; i<node.getChildCount(); i++)
+        {
+            FileTreeNode child = node.getCreatedChild(i);
+            if (child != null)
+                sortSubTree(child);
+        }
+    }
+    
+    /**
+     * returns the total size of the directory represented by <code>node</code>,
+     * starting to add it up if that hasn't been done yet
+     * @param node the node of a directory
+     * @return the size of the directory, or null if it has no path to scan
+     */
+    private DirectorySize getDirectorySize(FileTreeNode node) {
+        DirectorySize size = node.getDirectorySize();
+        if (size == null)
+            size = scanSize(node, false);
+        
+        return size;
+    }
+    
+    /**
+     * scans the size of the directory represented by <code>node</code> in the
+     * background, and keeps repainting the tree until the scan is done
+     * @param node the node of a directory
+     * @param revalidate whether to check a size that was scanned before for changes
+     * @return the size of the directory, or null if it has no path to scan
+     */
+    private DirectorySize scanSize(FileTreeNode node, boolean revalidate) {
+        Path dir;
+        try {
+            dir = node.getFile().toPath();
+        } catch (InvalidPathException e) {
+            return null;    // a virtual folder, like "My Computer"
+        }
+        
+        if (sizeScanner == null)
+            sizeScanner = new DirectorySizeScanner(core.getFilter(), core.getRootFile(), core.getScheduler());
+        DirectorySize size = sizeScanner.scan(dir, revalidate);
+        node.setDirectorySize(size);
+        if (sizeTimer == null)
+        {
+            sizeTimer = new Timer(SIZE_REPAINT_INTERVAL, new ActionListener() {
+                public void actionPerformed(ActionEvent e) {
+                    if (sizeScanner.isIdle())
+                        sizeTimer.stop();
+                    visibleSizesChanged();
+                }
+            });
+        }
+        if (!sizeTimer.isRunning())
+            sizeTimer.start();
+        
+        return size;
+    }
+    
+    /**
+     * tells the tree that the rows in view may have changed width, as the
+     * sizes shown in them grow
+     */
+    private void visibleSizesChanged() {
+        Rectangle visible = getVisibleRect();
+        int first = getClosestRowForLocation(visible.x, visible.y);
+        int last = getClosestRowForLocation(visible.x, visible.y + visible.height);
+        if (first < 0)
+            return;
+        
+        for (int row=first; row<=last; row++)
+        {
+            FileTreeNode node = (FileTreeNode)getPathForRow(row).getLastPathComponent();
+            if (node.getDirectorySize() != null)
+                fileTreeModel.nodeChanged(node);
+        }
+    }
+    
+    /**
+     * tells the tree that every row may have changed width, after sizes were
+     * shown or hidden
+     */
+    private void allSizesChanged() {
+        fileTreeModel.nodeChanged(rootNode);
+        Enumeration<TreePath> expanded = getExpandedDescendants(new TreePath(rootNode));
+        while (expanded != null && expanded.hasMoreElements())
+        {
+            FileTreeNode node = (FileTreeNode)expanded.nextElement().getLastPathComponent();
+            int[] childIndices = new int[node.getChildCount()];
+            for (int i=0; i<childIndices.length; i++)
+                childIndices[i] = i;
+            fileTreeModel.nodesChanged(node, childIndices);
+        }
+    }
+    
+    /**
+     * called by the <code>DirectoryWatcher</code> on the event dispatch thread when a
+     * watched directory changes
+     * @param node the node of the directory
+     * @param present the entries that were created or modified, or the complete
+     * listing of the directory
+     * @param removed the names of the entries that were deleted. May be null.
+     * @param complete whether <code>present</code> is a complete listing
+     */
+    void directoryChanged(FileTreeNode node, DirectoryListing present, Collection<String> removed, boolean complete) {
+        // a load in flight will pick the changes up when it reads the directory
+        if (pendingLoads.containsKey(node))
+            return;
+        
+        fileTreeModel.applyChanges(node, present, removed, complete, core.isShowFiles(), core.isShowHiddenFiles());
+        if (searchIndex != null)
+            searchIndex.update(node.getFile());
+        
+        TreeFilter filter = core.getFilter();
+        if (removed != null && removed.contains(filter.getRuleFileName()))
+            filter.updateRules(node.getFile(), -1);
+        checkRules();
+    }
+    
+    /**
+     * updates the tree after files were added to and removed from the
+     * filesystem. The changes are grouped by directory, so each loaded directory
+     * gets a single update for all of its changes. Directories that haven't
+     * been loaded are left alone, since they'll be listed when they are.
+     * Nothing is read from the disk: the new paths come with their attributes.
+     * @param removed the paths that are gone
+     * @param added the paths that are new, each with a listing holding its
+     * attributes as the only entry
+     */
+    void filesChanged(Collection<Path> removed, Map<Path, DirectoryListing> added) {
+        // keyed by path, since the changes may be on more than one filesystem
+        Map<Path, List<String>> removedByDir = new LinkedHashMap<Path, List<String>>();
+        for (Path path:removed)
+        {
+            Path dir = path.getParent();
+            List<String> names = removedByDir.get(dir);
+            if (names == null)
+            {
+                names = new ArrayList<String>();
+                removedByDir.put(dir, names);
+            }
+            names.add(path.getFileName().toString());
+        }
+        
+        Map<Path, DirectoryListing> addedByDir = new LinkedHashMap<Path, DirectoryListing>();
+        for (Map.Entry<Path, DirectoryListing> entry:added.entrySet())
+        {
+            Path dir = entry.getKey().getParent();
+            DirectoryListing listing = addedByDir.get(dir);
+            if (listing == null)
+            {
+                listing = new DirectoryListing(1);
+                addedByDir.put(dir, listing);
+                if (!removedByDir.containsKey(dir))
+                    removedByDir.put(dir, null);
+            }
+            listing.add(entry.getValue(), 0);
+        }
+        
+        for (Map.Entry<Path, List<String>> entry:removedByDir.entrySet())
+        {
+            if (entry.getKey() == null)
+                continue;   // a root
+            File dir = PathFile.of(entry.getKey());
+            FileTreeNode node = findLoadedNode(dir);
+            if (node == null)
+                continue;
+            
+            DirectoryListing listing = addedByDir.get(entry.getKey());
+            if (listing == null)
+                listing = new DirectoryListing(0);
+            core.filter(dir, listing, false);
+            directoryChanged(node, listing, entry.getValue(), false);
+        }
+    }
+    
+    /**
+     * returns the node of a directory whose children are loaded, without
+     * loading anything
+     * @param dir the directory
+     * @return the node of <code>dir</code>, or null if it isn't loaded
+     */
+    private FileTreeNode findLoadedNode(File dir) {
+        FileTreeNode node = core.getPathStart(rootNode);
+        if (node == null)
+            return null;
+        
+        for (String part:core.getPathParts(dir))
+        {
+            if (node.getListing() == null)
+                return null;
+            FileTreeNode child = core.findChild(node, part);
+            if (child != null)
+                node = child;
+        }
+        
+        return dir.equals(node.getFile()) && node.getListing() != null ? node : null;
+    }
+    
+    /**
+     * returns the path the tree is rooted at
+     * @return the root path, or null if the tree shows the roots of the filesystem
+     */
+    public Path getRoot() {
+        return core.getRoot();
+    }
+    
+    /**
+     * Roots the tree at a path, which can be on any <code>FileSystem</code>, such
+     * as an in-memory one or that of an archive opened with <code>openArchive()</code>.
+     * The tree is rebuilt from the new root, and an archive that was open is
+     * closed. Directories of filesystems other than the default one aren't
+     * watched for changes.
+     * @param root the root path, or null to show the roots of the filesystem again
+     */
+    public void setRoot(Path root) {
+        FileSystem previous = archive;
+        archive = null;
+        core.setRoot(root);
+        initRoot();
+        if (previous != null)
+        {
+            try {
+                previous.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+    
+    /**
+     * Shows the contents of a zip or jar file as the tree, without extracting
+     * it. The archive is mounted through the zip filesystem provider, which
+     * reads the central directory once, and each directory is listed from it
+     * when it's expanded. The archive stays open until the tree is rooted
+     * somewhere else.
+     * @param archive the archive to open
+     * @throws IOException if the file can't be read or isn't an archive
+     */
+    public void openArchive(File archive) throws IOException {
+        if (archive == null)
+            throw new IllegalArgumentException("Null argument not allowed");
+        
+        FileSystem fileSystem = FileSystems.newFileSystem(archive.toPath(), (ClassLoader)null);
+        setRoot(fileSystem.getRootDirectories().iterator().next());
+        this.archive = fileSystem;
+    }
+    
+    /**
+     * Sets the directory that searches look in, and starts indexing the names of
+     * everything below it in the background. The index is kept up to date as
+     * directories in the tree are reloaded or change.
+     * @param root the directory to search in, or null to stop indexing
+     */
+    public void setSearchRoot(File root) {
+        clearSearch();
+        if (searchIndex != null)
+            searchIndex.close();
+        
+        searchIndex = null;
+        if (root != null)
+        {
+            searchIndex = new FileNameIndex(root, core.getFilter(), core.getScheduler());
+            searchIndex.start();
+        }
+    }
+    
+    /**
+     * Filters the tree down to the files whose names contain <code>query</code>,
+     * ignoring case, and the directories leading to them. Matches show up as
+     * they're found, even while the search root is still being indexed, up to
+     * <code>MAX_SEARCH_RESULTS</code> of them. If no search root has been set, the
+     * user's home directory is used.
+     * @param query the text to look for. Null or an empty string clears the search.
+     */
+    public void search(String query) {
+        if (query == null || query.length() == 0)
+        {
+            clearSearch();
+            return;
+        }
+        ensureSearchIndex();
+        
+        if (searchRoot == null)
+        {
+            savedExpansion = getExpandedPaths(rootNode);
+            savedSelection = getSelectionPaths();
+        }
+        stopSearch();
+        searchRoot = new FileTreeNode(searchIndex.getRoot());
+        fileTreeModel.setRoot(searchRoot);
+        
+        searchTask = new SearchTask(searchIndex, query, MAX_SEARCH_RESULTS,
+                core.getScheduler(), core.isNavigateOSXApps()) {
+            protected void process(List<SearchTask.Match> matches) {
+                // the results of a search that has been replaced are dropped
+                if (searchTask == this)
+                    addSearchResults(matches);
+            }
+        };
+        searchTask.execute();
+    }
+    
+    /**
+     * Stops filtering the tree, bringing back the directories that were expanded
+     * before the search. If a result of the search is selected, the tree is
+     * expanded to it.
+     */
+    public void clearSearch() {
+        if (searchRoot == null)
+            return;
+        
+        File selected = getSelectedFile();
+        stopSearch();
+        fileTreeModel.setRoot(rootNode);
+        expandPaths(savedExpansion);
+        setSelectionPaths(savedSelection);
+        savedExpansion = null;
+        savedSelection = null;
+        if (selected != null)
+            setCurrentFile(selected);
+    }
+    
+    /**
+     * returns a text field that filters the tree as the user types into it. If
+     * no search root has been set, the user's home directory starts being
+     * indexed as soon as something is typed into the field, and not before.
+     * @return a search field for this tree
+     */
+    public JTextField createSearchField() {
+        final JTextField searchField = new JTextField();
+        // wait for the user to stop typing before searching
+        final Timer delay = new Timer(SEARCH_DELAY, new ActionListener() {
+            public void actionPerformed(ActionEvent e) {
+                search(searchField.getText());
+            }
+        });
+        delay.setRepeats(false);
+        searchField.getDocument().addDocumentListener(new DocumentListener() {
+            public void insertUpdate(DocumentEvent e) {
+                // the crawl gets going while the user is still typing
+                ensureSearchIndex();
+                delay.restart();
+            }
+            public void removeUpdate(DocumentEvent e) {
+                delay.restart();
+            }
+            public void changedUpdate(DocumentEvent e) {
+                delay.restart();
+            }
+        });
+        
+        return searchField;
+    }
+    
+    /**
+     * starts indexing the user's home directory, unless a search root has been
+     * set already
+     */
+    private void ensureSearchIndex() {
+        if (searchIndex == null)
+            setSearchRoot(new File(System.getProperty("user.home")));
+    }
+    
+    /**
+     * cancels the search in progress and forgets its results, without
+     * bringing the tree back
+     */
+    private void stopSearch() {
+        if (searchTask != null)
+            searchTask.cancel(true);
+        searchTask = null;
+        searchRoot = null;
+    }
+    
+    /**
+     * adds matches of the search to the tree, along with the directories leading
+     * to them, and expands the directories so the matches can be seen
+     * @param matches the matches
+     */
+    private void addSearchResults(List<SearchTask.Match> matches) {
+        List<TreePath> parents = new ArrayList<TreePath>();
+        for (SearchTask.Match match:matches)
+        {
+            FileTreeNode node = addSearchResult(match);
+            if (node != null && node.getParent() != null)
+                parents.add(new TreePath(fileTreeModel.getPathToRoot(node.getParent())));
+        }
+        expandPaths(parents);
+    }
+    
+    /**
+     * adds a match of the search to the tree, and the directories leading to it.
+     * The attributes come with the match, so nothing is read from the disk.
+     * @param match the match
+     * @return the node of the match, or null if it isn't shown, like a hidden file
+     * when hidden files aren't shown
+     */
+    private FileTreeNode addSearchResult(SearchTask.Match match) {
+        DirectoryListing path = match.getPath();
+        FileTreeNode node = searchRoot;
+        for (int i=0; i<path.size(); i++)
+        {
+            String name = path.getName(i);
+            FileTreeNode child = core.findChild(node, name);
+            if (child == null)
+            {
+                DirectoryListing listing = node.getListing();
+                if (listing == null)
+                    listing = new DirectoryListing(1);
+                int first = listing.size();
+                listing.add(path, i);
+                fileTreeModel.mergeChildren(node, listing, core.getView(listing, first));
+                child = core.findChild(node, name);
+                if (child == null)
+                    return null;
+            }
+            node = child;
+        }
+        
+        return node;
+    }
+    
+    /**
+     * cancels the background load of <code>node</code>, if there is one
+     * @param node the node whose load should be cancelled
+     */
+    private void cancelLoad(FileTreeNode node) {
+        Future<?> future = pendingLoads.remove(node);
+        if (future != null)
+            future.cancel(true);
+    }
+    
+    /**
+     * cancels every background load that's in flight
+     */
+    private void cancelAllLoads() {
+        for (Future<?> future:pendingLoads.values())
+            future.cancel(true);
+        pendingLoads.clear();
+    }
+    
+    /**
+     * Expands the tree to the <code>File</code> specified by the argument, and selects
+     * it as well. If the <code>currFile</code> does not exist or is null, calling this
+     * method will have no effect.
+     * @param currFile The file or directory to expand the tree to and select.
+     */
+    public void setCurrentFile(File currFile) {
+        if (currFile == null || !exists(currFile))
+            return;
+        
+        long start = System.nanoTime();
+        clearSearch();
+        expandToFile(currFile);
+        core.getMetrics().currentFileSet(start, currFile);
+    }
+    
+    /**
+     * Lists a directory again and updates its children with only the
+     * differences, so the entries that didn't change keep their nodes, their
+     * expansion and their selection, and the tree only repaints what changed.
+     * If <code>file</code> isn't a directory that has been loaded, the directory
+     * holding it is refreshed instead, to pick up changes to the file itself.
+     * Directories that haven't been loaded are left alone, since they're listed
+     * when they're expanded.
+     * @param file the directory to refresh
+     */
+    public void refresh(File file) {
+        if (file == null)
+            throw new IllegalArgumentException("Null argument not allowed");
+        
+        FileTreeNode node = findLoadedNode(file);
+        if (node == null && file.getParentFile() != null)
+            node = findLoadedNode(file.getParentFile());
+        if (node != null && !pendingLoads.containsKey(node))
+            revalidateSubTree(node, !asyncLoading && !streamingLoading, true);
+    }
+    
+    /**
+     * Refreshes every expanded directory the way <code>refresh()</code> does,
+     * keeping the expansion and the selection. Directories that are loaded but
+     * collapsed are checked for changes when they're expanded again.
+     */
+    public void refreshAll() {
+        refreshSubTree(rootNode);
+    }
+    
+    /**
+     * refreshes the expanded directories at or below <code>node</code>, and
+     * marks the collapsed ones as out of date
+     * @param node the node to start at
+     */
+    private void refreshSubTree(FileTreeNode node) {
+        DirectoryListing listing = node.getListing();
+        if (listing != null && node.representsFile() && !pendingLoads.containsKey(node))
+        {
+            if (isExpanded(new TreePath(fileTreeModel.getPathToRoot(node))))
+                revalidateSubTree(node, !asyncLoading && !streamingLoading, true);
+            else
+                listing.setStamp(0);
+        }
+        for (int i=0; i<node.getChildCount(); i++)
+        {
+            FileTreeNode child = node.getCreatedChild(i);
+            if (child != null && child.getListing() != null)
+                refreshSubTree(child);
+        }
+    }
+    
+    /**
+     * Expands a directory and the directories below it, down to
+     * <code>maxDepth</code> levels. The directories that haven't been loaded are
+     * listed in parallel in the background, so a deep source tree opens in the
+     * time it takes to read it rather than one directory at a time, and the
+     * tree is updated once, when they've all been read. Directories reached
+     * twice through symbolic links are only expanded the first time, and once
+     * <code>MAX_EXPAND_ALL_NODES</code> entries have been listed no more
+     * directories are, so the rest stay collapsed.
+     * <p>
+     * The returned worker reports the progress of the listing through its
+     * <code>progress</code> property, and can be cancelled, in which case
+     * nothing is expanded. Expanding another directory this way cancels the
+     * previous one.
+     * @param path the path of the directory to expand
+     * @param maxDepth the number of levels to expand, counting the directory
+     * itself as the first, so 1 just expands the directory
+     * @return the worker doing the expansion, or null if <code>path</code>
+     * doesn't lead to a directory
+     */
+    public SwingWorker<?, ?> expandAll(TreePath path, int maxDepth) {
+        if (path == null)
+            throw new IllegalArgumentException("Null argument not allowed");
+        
+        final FileTreeNode node = (FileTreeNode)path.getLastPathComponent();
+        File dir = node.getFile();
+        if (dir == null || !node.representsFile() || !node.getAllowsChildren())
+            return null;
+        
+        cancelExpandAll();
+        final long start = System.nanoTime();
+        expandTask = new ExpandAllTask(core, dir, maxDepth, MAX_EXPAND_ALL_NODES) {
+            protected void done() {
+                if (expandTask == this)
+                    expandTask = null;
+                if (isCancelled())
+                    return;
+                
+                try {
+                    applyExpansion(node, get());
+                } catch (InterruptedException | ExecutionException e) {
+                    e.printStackTrace();
+                }
+                core.getMetrics().expanded(start, node.getFile());
+            }
+        };
+        expandTask.execute();
+        return expandTask;
+    }
+    
+    /**
+     * cancels the expansion started by <code>expandAll()</code>, if there is one
+     */
+    private void cancelExpandAll() {
+        if (expandTask != null)
+            expandTask.cancel(true);
+        expandTask = null;
+    }
+    
+    /**
+     * attaches the directories listed by <code>expandAll()</code> to the tree,
+     * tells the model about them once, and expands them. The paths that were
+     * expanded or selected below <code>node</code> before stay that way.
+     * @param node the node the expansion started at
+     * @param loaded the directories that were listed, or null if the directory
+     * couldn't be listed
+     */
+    private void applyExpansion(FileTreeNode node, ExpandAllTask.Directory loaded) {
+        if (loaded == null || !isInTree(node))
+            return;
+        
+        long applying = System.nanoTime();
+        List<TreePath> expanded = getExpandedPaths(node);
+        TreePath[] selection = getSelectionPaths();
+        List<FileTreeNode> attached = new ArrayList<FileTreeNode>();
+        attachExpanded(node, loaded, attached);
+        fileTreeModel.nodeStructureChanged(node);
+        
+        for (FileTreeNode n:attached)
+            expanded.add(new TreePath(fileTreeModel.getPathToRoot(n)));
+        expandPaths(expanded);
+        if (selection != null)
+        {
+            List<TreePath> kept = new ArrayList<TreePath>();
+            for (TreePath path:selection)
+            {
+                if (isInTree((FileTreeNode)path.getLastPathComponent()))
+                    kept.add(path);
+            }
+            setSelectionPaths(kept.toArray(new TreePath[kept.size()]));
+        }
+        for (FileTreeNode n:attached)
+            childrenShown(n);
+        core.getMetrics().eventThreadBlocked(applying, "Expanding a subtree", node.getFile());
+    }
+    
+    /**
+     * gives <code>node</code> and the directories below it the children that
+     * were listed for them, without telling the model. A directory that's
+     * expanded already keeps the children it has.
+     * @param node the node of a listed directory
+     * @param loaded the listed directory
+     * @param attached collects the nodes to expand
+     */
+    private void attachExpanded(FileTreeNode node, ExpandAllTask.Directory loaded, List<FileTreeNode> attached) {
+        boolean shown = node.getListing() != null && !pendingLoads.containsKey(node)
+                && isExpanded(new TreePath(fileTreeModel.getPathToRoot(node)));
+        if (!shown)
+        {
+            cancelLoad(node);
+            int[] view = loaded.view;
+            // the options may have changed since the view was made
+            if (loaded.optionsVersion != core.getOptionsVersion())
+            {
+                core.refilter(loaded.file, loaded.listing, false);
+                view = core.getView(loaded.listing);
+            }
+            node.setChildren(loaded.listing, view);
+        }
+        attached.add(node);
+        
+        for (ExpandAllTask.Directory child:loaded.children)
+        {
+            FileTreeNode childNode = core.findChild(node, child.file.getName());
+            if (childNode != null && childNode.getAllowsChildren())
+                attachExpanded(childNode, child, attached);
+        }
+    }
+    
+    /**
+     * returns true if a node is still part of the tree that's shown
+     * @param node the node
+     * @return true if the node leads up to the root of the model
+     */
+    private boolean isInTree(FileTreeNode node) {
+        return fileTreeModel.getPathToRoot(node)[0] == fileTreeModel.getRoot();
+    }
+    
+    /**
+     * returns true if a file exists. The check is made on the I/O scheduler, and
+     * the event dispatch thread waits for it no longer than <code>EDT_IO_WAIT</code>,
+     * however long it sits in the mount's queue, so a busy or unresponsive mount
+     * can't hang the tree.
+     * @param file the file
+     * @return true if the file exists, false if it doesn't or can't be told
+     */
+    private boolean exists(final File file) {
+        try {
+            return core.getScheduler().call(file, IoPriority.USER, new Callable<Boolean>() {
+                public Boolean call() {
+                    return file.exists();
+                }
+            }, EDT_IO_WAIT);
+        } catch (IOException e) {
+            return false;
+        }
+    }
+    
+    /**
+     * does the work of <code>setCurrentFile</code>. The directories along the path
+     * are loaded first, without telling the tree, and looked up by name. Then
+     * the tree is told about everything that was loaded at once, and the path is
+     * expanded in one go. Directories that are already expanded aren't listed
+     * again.
+     * @param currFile the existing file or directory to expand the tree to and select
+     */
+    private void expandToFile(File currFile) {
+        FileTreeNode currNode = core.getPathStart(rootNode);
+        if (currNode == null)
+            return;
+        
+        // the highest node whose children were replaced without an event
+        FileTreeNode loaded = null;
+        for (String part:core.getPathParts(currFile))
+        {
+            if (loadForExpansion(currNode) && loaded == null)
+                loaded = currNode;
+            
+            FileTreeNode childNode = core.findChild(currNode, part);
+            if (childNode != null)
+                currNode = childNode;
+        }
+        // the file itself is expanded too if it's a directory
+        if (loadForExpansion(currNode) && loaded == null)
+            loaded = currNode;
+        if (loaded != null)
+            fileTreeModel.nodeStructureChanged(loaded);
+        
+        TreePath treePath = new TreePath(fileTreeModel.getPathToRoot(currNode));
+        TreePath expanded = currNode.isLeaf() ? treePath.getParentPath() : treePath;
+        batchExpansion = true;
+        try {
+            expandPath(expanded);
+        } finally {
+            batchExpansion = false;
+        }
+        selectionModel.setSelectionPath(treePath);
+        childrenShown((FileTreeNode)expanded.getLastPathComponent());
+    }
+    
+    /**
+     * makes sure the children of <code>node</code> are loaded before
+     * <code>expandToFile</code> looks through them. A directory that's expanded
+     * already is left alone, and a cached one is revalidated. Any other
+     * directory is listed on this thread, and it's up to the caller to tell the
+     * model.
+     * @param node the node to load
+     * @return true if the children of <code>node</code> were replaced without
+     * firing an event
+     */
+    private boolean loadForExpansion(FileTreeNode node) {
+        if (!node.representsFile() || !node.getAllowsChildren())
+            return false;
+        
+        boolean loaded = node.getListing() != null && !pendingLoads.containsKey(node);
+        if (loaded && isExpanded(new TreePath(fileTreeModel.getPathToRoot(node))))
+            return false;
+        if (loaded && cachedChildren)
+        {
+            revalidateSubTree(node, true, false);
+            return false;
+        }
+        
+        cancelLoad(node);
+        // the directory is listed on this thread anyway, so it's checked here too
+        DirectoryListing prefetched = takePrefetched(node);
+        if (prefetched != null && prefetcher.validate(node.getFile(), prefetched))
+            node.setChildren(prefetched, core.getView(prefetched));
+        else
+            core.loadChildren(node);
+        return true;
+    }
+    
+    /**
+     * takes the prefetched listing of a node's directory, if prefetching is on
+     * @param node the node about to be loaded
+     * @return the listing, which may be out of date, or null if there is none
+     */
+    private DirectoryListing takePrefetched(FileTreeNode node) {
+        if (prefetcher == null || node.getFile() == null)
+            return null;
+        
+        return prefetcher.take(node.getFile());
+    }
+    
+    /**
+     * starts the background work that follows the children of a node being
+     * shown: prefetching its child directories, and probing them for entries
+     * @param node the node whose children are shown
+     */
+    private void childrenShown(FileTreeNode node) {
+        prefetchChildren(node);
+        probeChildren(node);
+    }
+    
+    /**
+     * queues the child directories of a node that has just been loaded to be
+     * prefetched, in the order they're shown, skipping the ones that are loaded
+     * already
+     * @param node the loaded node
+     */
+    private void prefetchChildren(FileTreeNode node) {
+        DirectoryListing listing = node.getListing();
+        File dir = node.getFile();
+        if (prefetcher == null || listing == null || dir == null)
+            return;
+        
+        List<File> dirs = new ArrayList<File>();
+        for (int i=0; i<node.getChildCount() && dirs.size()<DirectoryPrefetcher.MAX_QUEUED; i++)
+        {
+            int entry = node.getEntry(i);
+            if (entry < 0 || !listing.is(entry, DirectoryListing.EXPANDABLE))
+                continue;
+            FileTreeNode child = node.getCreatedChild(i);
+            if (child != null && child.getListing() != null)
+                continue;
+            dirs.add(listing.getFile(entry, dir));
+        }
+        prefetcher.prefetch(dirs, prefetchDepth);
+    }
+    
+    /**
+     * checks in the background which child directories of a node have no
+     * entries, so they can be shown without an expand handle. The children are
+     * probed in batches of <code>PROBE_BATCH_SIZE</code> on the I/O scheduler,
+     * behind the directories the user is waiting for, and each batch is applied
+     * to the tree in one go. Only the first <code>MAX_PROBED</code> child
+     * directories are probed; the rest keep their expand handles.
+     * @param node the node whose children are shown
+     */
+    private void probeChildren(final FileTreeNode node) {
+        final DirectoryListing listing = node.getListing();
+        File dir = node.getFile();
+        if (!emptyDirectoryDetection || listing == null || dir == null)
+            return;
+        
+        List<Integer> entries = new ArrayList<Integer>();
+        for (int i=0; i<node.getChildCount() && entries.size()<MAX_PROBED; i++)
+        {
+            int entry = node.getEntry(i);
+            if (entry < 0 || !listing.is(entry, DirectoryListing.EXPANDABLE))
+                continue;
+            FileTreeNode child = node.getCreatedChild(i);
+            if (child == null || child.getListing() == null)
+                entries.add(entry);
+        }
+        
+        for (int first=0; first<entries.size(); first+=PROBE_BATCH_SIZE)
+        {
+            int last = Math.min(first + PROBE_BATCH_SIZE, entries.size());
+            final int[] batch = new int[last - first];
+            final File[] dirs = new File[batch.length];
+            for (int i=0; i<batch.length; i++)
+            {
+                batch[i] = entries.get(first + i);
+                dirs[i] = listing.getFile(batch[i], dir);
+            }
+            
+            core.getScheduler().submit(dir, IoPriority.PREFETCH, new Runnable() {
+                public void run() {
+                    final boolean[] empty = new boolean[dirs.length];
+                    for (int i=0; i<dirs.length; i++)
+                        empty[i] = isEmptyDirectory(dirs[i]);
+                    
+                    SwingUtilities.invokeLater(new Runnable() {
+                        public void run() {
+                            fileTreeModel.setProbed(node, listing, batch, empty);
+                        }
+                    });
+                }
+            }, null);
+        }
+    }
+    
+    /**
+     * returns true if a directory has no entries, or can't be read. At most one
+     * entry is read.
+     * @param dir the directory
+     * @return true if listing the directory would show nothing, false if it
+     * has an entry or it can't be told
+     */
+    private static boolean isEmptyDirectory(File dir) {
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir.toPath())) {
+            return !stream.iterator().hasNext();
+        } catch (AccessDeniedException e) {
+            return true;
+        } catch (IOException | DirectoryIteratorException | InvalidPathException e) {
+            // not a directory the filesystem can list, like a shell folder on
+            // Windows, so keep the expand handle
+            return false;
+        }
+    }
+    
+    /**
+     * Enables or disables background loading of directories. When enabled, expanding
+     * a directory shows a "Loading..." placeholder while the directory is listed off
+     * the event dispatch thread, so slow or huge directories don't freeze the UI.
+     * @param asyncLoading <code>true</code> lists directories in the background.
+     * <code>false</code> lists them on the event dispatch thread.
+     */
+    public void setAsyncLoading(boolean asyncLoading) {
+        this.asyncLoading = asyncLoading;
+    }
+    
+    /**
+     * Enables or disables streaming of directories into the tree. When enabled,
+     * expanding a directory reads it on a background thread and inserts its
+     * children in sorted batches as they are read, instead of listing and sorting
+     * the whole directory first. This keeps huge directories responsive, at the
+     * cost of rows moving as later batches are merged in.
+     * @param streamingLoading <code>true</code> streams directories into the tree.
+     * <code>false</code> does not.
+     */
+    public void setStreamingLoading(boolean streamingLoading) {
+        this.streamingLoading = streamingLoading;
+    }
+    
+    /**
+     * Enables or disables live updates. When enabled, every expanded directory is
+     * watched for changes, and files that are created, deleted or modified show up
+     * in the tree as it happens, without collapsing anything. Directories stop
+     * being watched when they're collapsed.
+     * @param liveUpdates <code>true</code> keeps the tree in sync with the filesystem.
+     * <code>false</code> does not.
+     */
+    public void setLiveUpdates(boolean liveUpdates) {
+        if (liveUpdates == (watcher != null))
+            return;
+        
+        if (!liveUpdates)
+        {
+            watcher.close();
+            watcher = null;
+            return;
+        }
+        
+        try {
+            watcher = new DirectoryWatcher(this);
+        } catch (IOException e) {
+            e.printStackTrace();
+            return;
+        }
+        
+        Enumeration<TreePath> expanded = getExpandedDescendants(new TreePath(rootNode));
+        while (expanded != null && expanded.hasMoreElements())
+            watcher.watch((FileTreeNode)expanded.nextElement().getLastPathComponent());
+    }
+    
+    /**
+     * Enables or disables caching of loaded directories. When enabled, a directory
+     * that's expanded again is only listed again if its last-modified time changed
+     * since it was loaded, and then only the differences are applied to the tree.
+     * Changing the show files or show hidden files options filters the loaded
+     * directories instead of reloading the tree, so the expanded directories and
+     * the selection are kept.
+     * @param cachedChildren <code>true</code> reuses loaded directories.
+     * <code>false</code> lists directories every time they're expanded.
+     */
+    public void setCachedChildren(boolean cachedChildren) {
+        this.cachedChildren = cachedChildren;
+    }
+    
+    /**
+     * Enables or disables detection of empty directories. When enabled, whenever
+     * a directory's children are shown, its child directories are checked in the
+     * background by reading at most one entry of each, and the ones that are
+     * empty or can't be read lose their expand handle, so the user doesn't have
+     * to expand them to find out. Directories are checked again every time their
+     * parent is expanded. Enabling it checks the children of the directories
+     * that are expanded already.
+     * @param emptyDirectoryDetection <code>true</code> detects empty directories.
+     * <code>false</code> shows every directory with an expand handle until it's
+     * expanded.
+     */
+    public void setEmptyDirectoryDetection(boolean emptyDirectoryDetection) {
+        if (emptyDirectoryDetection == this.emptyDirectoryDetection)
+            return;
+        
+        this.emptyDirectoryDetection = emptyDirectoryDetection;
+        if (!emptyDirectoryDetection)
+            return;
+        
+        Enumeration<TreePath> expanded = getExpandedDescendants(new TreePath(rootNode));
+        while (expanded != null && expanded.hasMoreElements())
+            probeChildren((FileTreeNode)expanded.nextElement().getLastPathComponent());
+    }
+    
+    /**
+     * Sets how many levels below a loaded directory are listed ahead of being
+     * expanded. With a depth of 1, whenever a directory's children are shown,
+     * its child directories are listed in the background, at most
+     * <code>PREFETCH_THREADS</code> at a time and at the lowest thread priority,
+     * so expanding one of them is served from memory. Each expansion made while
+     * prefetching counts as a hit or a miss in the core's
+     * <code>FileTreeMetrics</code>, which tells whether the depth and the budget
+     * pay off, for example on a slow network filesystem.
+     * @param prefetchDepth the number of levels to prefetch, or 0 to stop prefetching
+     */
+    public void setPrefetchDepth(int prefetchDepth) {
+        if (prefetchDepth < 0)
+            throw new IllegalArgumentException("prefetchDepth must not be negative");
+        
+        this.prefetchDepth = prefetchDepth;
+        if (prefetchDepth == 0 && prefetcher != null)
+        {
+            prefetcher.close();
+            prefetcher = null;
+        }
+        else if (prefetchDepth > 0 && prefetcher == null)
+            prefetcher = new DirectoryPrefetcher(core, PREFETCH_THREADS, prefetchBudget);
+    }
+    
+    /**
+     * Sets the most entries kept in directories that were prefetched but not
+     * expanded yet. When the prefetched directories hold more, the ones listed
+     * least recently are dropped, and a directory bigger than the budget isn't
+     * kept at all.
+     * @param prefetchBudget the most entries to keep
+     */
+    public void setPrefetchBudget(int prefetchBudget) {
+        if (prefetchBudget < 0)
+            throw new IllegalArgumentException("prefetchBudget must not be negative");
+        
+        this.prefetchBudget = prefetchBudget;
+        if (prefetcher != null)
+            prefetcher.setBudget(prefetchBudget);
+    }
+    
+    /**
+     * Shows or hides sizes. When shown, every file has its size next to its name,
+     * and every directory the total size and number of the files at or below it.
+     * Directory totals are added up in the background, and show up in the tree as
+     * they grow. They're remembered, so a directory that's expanded again is only
+     * listed again where something was added, removed or renamed below it. Scans
+     * that are under way when sizes are hidden run to completion, so showing them
+     * again is quick.
+     * @param showSizes <code>true</code> shows sizes. <code>false</code> does not.
+     */
+    public void setShowSizes(boolean showSizes) {
+        if (showSizes == this.showSizes)
+            return;
+        
+        this.showSizes = showSizes;
+        if (!showSizes && sizeTimer != null)
+            sizeTimer.stop();
+        allSizesChanged();
+    }
+    
+    /**
+     * Allow or disallow the user to delete files from the tree view.
+     * @param allowDelete <code>true</code> allows deleting of files/directories. <code>false</code> does
+     * not.
+     */
+    public void setDeleteEnabled(boolean allowDelete) {
+        this.allowDelete = allowDelete;
+    }
+    
+    /**
+     * Toggle the showing of files in the tree (as opposed to just directories)
+     * @param showFiles <code>true</code> shows files in the tree. <code>false</code> does not.
+     */
+    public void setShowFiles(boolean showFiles) {
+        if (core.isShowFiles() != showFiles)
+        {
+            core.setShowFiles(showFiles);
+            if (searchRoot != null)
+                refilterSubTree(searchRoot);
+            if (cachedChildren)
+                refilterSubTree(rootNode);
+            else
+                initRoot();
+        }
+    }
+    
+    /**
+     * Allows or disallows the showing of hidden files and directories in the tree.
+     * @param showHiddenFiles <code>true</code> shows hidden files. <code>false</code> does not.
+     */
+    public void setShowHiddenFiles(boolean showHiddenFiles) {
+        if (showHiddenFiles != core.isShowHiddenFiles())
+        {
+            core.setShowHiddenFiles(showHiddenFiles);
+            if (searchRoot != null)
+                refilterSubTree(searchRoot);
+            if (cachedChildren)
+                refilterSubTree(rootNode);
+            else
+                initRoot();
+        }
+    }
+    
+    /**
+     * Sets the filter that decides which files and directories are shown, like
+     * one that hides build output and what <code>.gitignore</code> files ignore.
+     * Directories that are loaded already are filtered again from the names read
+     * when they were listed, without reading them again, and stay expanded.
+     * The rule files the new filter needs for them are read in the background
+     * first, so the tree changes once they're in. Hidden directories are never
+     * listed, and the sizes and the search index start over without them.
+     * @param filter the filter
+     */
+    public void setFilter(TreeFilter filter) {
+        core.setFilter(filter);
+        rulesVersion = filter.getRulesVersion();
+        loadRules(filter);
+        if (prefetcher != null)
+            prefetcher.clear();
+        if (sizeScanner != null)
+        {
+            sizeScanner.close();
+            sizeScanner = null;
+            clearSizes(rootNode);
+            if (showSizes)
+                allSizesChanged();
+        }
+        if (searchIndex != null)
+            setSearchRoot(searchIndex.getRoot());
+    }
+    
+    /**
+     * Sets the order the children of a directory are sorted in. Directories that
+     * are loaded already are sorted again from the attributes read when they were
+     * listed, without reading them again, and stay expanded.
+     * @param sortOrder the sort order
+     */
+    public void setSortOrder(SortOrder sortOrder) {
+        if (sortOrder != core.getSortOrder())
+        {
+            core.setSortOrder(sortOrder);
+            sortTree();
+        }
+    }
+    
+    /**
+     * Sets whether directories are sorted before files, whatever the sort order.
+     * Directories that are loaded already are sorted again, and stay expanded.
+     * @param directoriesFirst <code>true</code> sorts directories first
+     */
+    public void setDirectoriesFirst(boolean directoriesFirst) {
+        if (directoriesFirst != core.isDirectoriesFirst())
+        {
+            core.setDirectoriesFirst(directoriesFirst);
+            sortTree();
+        }
+    }
+    
+    /**
+     * sets whether the user can navigate into OS X application bundles (.app). The
+     * default value is <code>false</code>
+     * @param navigateOSXApps if true, users will be able to navigate into OS X application bundles. set it
+     * to false to disallow navigating bundles.
+     */
+    public void setNavigateOSXApps(boolean navigateOSXApps) {
+        core.setNavigateOSXApps(navigateOSXApps);
+    }
+    
+    /**
+     * Turns the large model mode of the tree on or off. In large model mode, the
+     * rows all have the same height, so the tree doesn't measure rows it isn't
+     * showing, and a directory with more than <code>CHILD_WINDOW</code> children
+     * only keeps the nodes of the children it showed most recently. Scrolling
+     * through a directory of a million entries then creates the nodes of the
+     * rows that come into view and lets go of the ones that are long gone, so
+     * the memory used stays in proportion to the viewport. If no row height has
+     * been set, the height of a row as drawn by the renderer is used.
+     * @param largeModel <code>true</code> turns large model mode on.
+     * <code>false</code> turns it off.
+     */
+    public void setLargeModel(boolean largeModel) {
+        // the row height must be fixed before the UI picks its layout cache
+        if (largeModel && getRowHeight() <= 0 && getCellRenderer() != null)
+        {
+            Component row = getCellRenderer().getTreeCellRendererComponent(this, treeModel.getRoot(),
+                    false, false, false, 0, false);
+            setRowHeight(row.getPreferredSize().height);
+        }
+        super.setLargeModel(largeModel);
+        // JTree sets up the model before this tree does
+        if (fileTreeModel != null)
+            fileTreeModel.setChildWindow(largeModel ? CHILD_WINDOW : 0);
+    }
+    
+    /**
+     * the root node of the <code>FileTree</code>
+     */
+    protected FileTreeNode rootNode;
+    /**
+     * the <code>TreeModel</code> for this object. The same value as the <code>JTree</code>
+     * treeModel member.
+     */
+    protected FileTreeModel fileTreeModel;
+    /**
+     * just a filesystemview used to get icons for nodes in Windows
      */
     protected FileSystemView fsv;
     /**
-     * whether or not to show hidden files
+     * the archive the tree is rooted in, which is closed when the root changes
      */
-    protected boolean showHiddenFiles;
+    private FileSystem archive;
     /**
-     * whether or not to show files
+     * lists the directories shown by the tree, and holds its options
      */
-    protected boolean showFiles;
+    protected FileTreeCore core;
     /**
      * whether to allow deleting of files
      */
     protected boolean allowDelete;
     /**
-     * allows/disallows navigating into OS X application bundles
+     * whether directories are listed on a background thread
+     */
+    protected boolean asyncLoading;
+    /**
+     * whether directories are streamed into the tree in batches
+     */
+    protected boolean streamingLoading;
+    /**
+     * whether loaded directories are kept and reused
+     */
+    protected boolean cachedChildren;
+    /**
+     * whether the sizes of files and directories are shown
+     */
+    protected boolean showSizes;
+    /**
+     * set while <code>expandToFile</code> expands a path whose directories it
+     * has already loaded
+     */
+    private boolean batchExpansion;
+    /**
+     * the background loads that are in flight, keyed by the node being loaded.
+     * Only accessed from the event dispatch thread.
+     */
+    private Map<FileTreeNode, Future<?>> pendingLoads;
+    /**
+     * the expansion started by <code>expandAll()</code> that's in flight, or null
+     */
+    private ExpandAllTask expandTask;
+    /**
+     * the icons shown by the renderer. Created lazily.
+     */
+    private IconCache iconCache;
+    /**
+     * watches the expanded directories when live updates are enabled
+     */
+    private DirectoryWatcher watcher;
+    /**
+     * adds up the sizes of directories when sizes are shown. Created lazily.
+     */
+    private DirectorySizeScanner sizeScanner;
+    /**
+     * the version of the filter's rule files the tree was last filtered with
+     */
+    private int rulesVersion;
+    /**
+     * whether directories are probed to find the empty ones
+     */
+    private boolean emptyDirectoryDetection;
+    /**
+     * lists directories before they're expanded, or null if prefetching is off
+     */
+    private DirectoryPrefetcher prefetcher;
+    /**
+     * the number of levels to prefetch below a loaded directory
+     */
+    private int prefetchDepth;
+    /**
+     * the most entries to keep in prefetched directories
+     */
+    private int prefetchBudget;
+    /**
+     * repaints the sizes in view while directories are being scanned
+     */
+    private Timer sizeTimer;
+    /**
+     * reads the rule files of a new filter before the tree is filtered again,
+     * or null
+     */
+    private SwingWorker<Void, Void> ruleLoader;
+    /**
+     * the names of the files below the search root. Created lazily.
+     */
+    private FileNameIndex searchIndex;
+    /**
+     * the search whose results are shown, or null
+     */
+    private SearchTask searchTask;
+    /**
+     * the root of the tree of search results while they're shown, or null
+     */
+    private FileTreeNode searchRoot;
+    /**
+     * the paths that were expanded before the results of a search were shown
+     */
+    private List<TreePath> savedExpansion;
+    /**
+     * the paths that were selected before the results of a search were shown
      */
-    protected boolean navigateOSXApps;
+    private TreePath[] savedSelection;
+    
+    /**
+     * the text of the placeholder node shown while a directory is being loaded
+     */
+    private static final String LOADING = "Loading\u2026";
+    /**
+     * the text of the placeholder node shown while a directory's mount isn't
+     * responding
+     */
+    private static final String NOT_RESPONDING = "Not responding";
+    /**
+     * the number of sibling directories probed by one task, and applied to the
+     * tree at once
+     */
+    private static final int PROBE_BATCH_SIZE = 64;
+    /**
+     * the most child directories probed when a directory is shown
+     */
+    private static final int MAX_PROBED = 1024;
+    /**
+     * the most directories prefetched at once
+     */
+    public static final int PREFETCH_THREADS = 2;
+    /**
+     * the default of the most entries kept in prefetched directories, a few
+     * megabytes' worth
+     */
+    public static final int DEFAULT_PREFETCH_BUDGET = 100000;
+    /**
+     * the number of entries merged into the tree at a time when streaming
+     */
+    private static final int STREAMING_BATCH_SIZE = 500;
+    /**
+     * how often the sizes in view are repainted while they're being added up,
+     * in milliseconds
+     */
+    private static final int SIZE_REPAINT_INTERVAL = 250;
+    /**
+     * the most child nodes a directory keeps in large model mode. Several
+     * screens' worth, so the rows around the viewport keep their nodes while
+     * scrolling back and forth.
+     */
+    public static final int CHILD_WINDOW = 4096;
+    /**
+     * the most entries listed by <code>expandAll()</code>, after which the
+     * directories that haven't been listed stay collapsed
+     */
+    public static final int MAX_EXPAND_ALL_NODES = 20000;
+    /**
+     * the most matches of a search shown in the tree
+     */
+    public static final int MAX_SEARCH_RESULTS = 1000;
+    /**
+     * how long the search field waits for the user to stop typing, in milliseconds
+     */
+    private static final int SEARCH_DELAY = 200;
+    /**
+     * the longest the event dispatch thread waits for a file to be checked,
+     * in milliseconds
+     */
+    private static final long EDT_IO_WAIT = 1000;
     
     /**
      * A subclass of DefaultTreeCellRenderer that is responsible for rendering the
@@ -410,7 +2391,11 @@ public class FileTree extends JTree {
          * just a simple constructor
          */
         public FileTreeCellRenderer() {
-            fileChooser = new JFileChooser();
+            repaintTree = new Runnable() {
+                public void run() {
+                    repaint();
+                }
+            };
         }
         
         /**
@@ -427,20 +2412,24 @@ public class FileTree extends JTree {
         public Component getTreeCellRendererComponent(JTree tree, Object value, boolean selected, boolean expanded, boolean leaf, int row, boolean hasFocus) {
             super.getTreeCellRendererComponent(tree, value, selected, expanded, leaf, row, hasFocus);
             
-            Object userObject = ((DefaultMutableTreeNode)value).getUserObject();
-            if (userObject instanceof FileTreeNode)
+            FileTreeNode fileTreeNode = (FileTreeNode)value;
+            if (fileTreeNode.representsFile())
             {
-                FileTreeNode fileTreeNode = (FileTreeNode)userObject;
+                // until the icon has been looked up, the default one set above is shown
+                Icon icon = getIconCache().getIcon(fileTreeNode, repaintTree);
+                if (icon != null)
+                    setIcon(icon);
                 
-                if (!Constants.isWindows)
+                if (showSizes)
                 {
-                    try { setIcon(fileChooser.getIcon(fileTreeNode.file)); }
-                    catch (Exception e) { e.printStackTrace(); }
-                }
-                else
-                {
-                    try { setIcon(fsv.getSystemIcon(fileTreeNode.file)); }
-                    catch (Exception e) { e.printStackTrace(); }
+                    if (fileTreeNode.isDirectory())
+                    {
+                        DirectorySize size = getDirectorySize(fileTreeNode);
+                        if (size != null)
+                            setText(getText() + "  (" + size + ")");
+                    }
+                    else
+                        setText(getText() + "  (" + DirectorySize.formatBytes(fileTreeNode.getSize()) + ")");
                 }
             }
 
@@ -448,8 +2437,8 @@ public class FileTree extends JTree {
         }
         
         /**
-         * used to obtain icons for non-Windows OSes
+         * repaints the tree once an icon has been looked up
          */
-        private JFileChooser fileChooser;
+        private Runnable repaintTree;
     }
 }
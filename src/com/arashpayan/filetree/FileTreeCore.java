@@ -0,0 +1,568 @@
+/* This file is part of FileTree.
+
+    FileTree is free software; you can redistribute it and/or modify
+    it under the terms of the GNU General Public License (or the Lesser GPL)
+    as published by the Free Software Foundation; either version 3 of the
+    License, or (at your option) any later version.
+
+    FileTree is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+ */
+/*
+ * FileTreeCore.java
+ *
+ * Copyright 2026 the FileTree contributors
+ */
+
+package com.arashpayan.filetree;
+
+import java.io.File;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import javax.swing.filechooser.FileSystemView;
+
+/**
+ * The engine behind <code>FileTree</code>, usable without a display. It finds
+ * the roots of the filesystem, lists directories into <code>FileTreeNode</code>s
+ * with their children filtered and sorted in a chosen <code>SortOrder</code>,
+ * and resolves files to the nodes that lead to them. Children are only listed
+ * when asked for, so a tree of nodes can be browsed lazily.
+ * <p>
+ * A core can be shared between threads and between trees: its options can be
+ * read and changed from any thread, and each listing uses the options that were
+ * set when it started. The nodes it builds aren't synchronized, though, so a
+ * tree of nodes must only be used by one thread at a time. For the nodes of a
+ * <code>FileTree</code>, that's the event dispatch thread.
+ */
+public class FileTreeCore {
+
+    /**
+     * Creates a new instance of FileTreeCore that shows files but not hidden
+     * files, doesn't navigate into OS X application bundles, and sorts by name
+     * the way the platform does
+     */
+    public FileTreeCore() {
+        showFiles = true;
+        showHiddenFiles = false;
+        navigateOSXApps = false;
+        sortOrder = SortOrder.NAME;
+        directoriesFirst = Constants.isWindows;
+        filter = new TreeFilter();
+        if (Constants.isWindows)
+            fsv = FileSystemView.getFileSystemView();
+        metrics = new FileTreeMetrics();
+        scheduler = new IoScheduler(metrics);
+    }
+
+    /**
+     * returns the metrics of this core and of the trees that use it
+     * @return the counters of the work done
+     */
+    public FileTreeMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * returns the scheduler the filesystem calls of this core and of the trees
+     * that use it are run on
+     * @return the I/O scheduler
+     */
+    IoScheduler getScheduler() {
+        return scheduler;
+    }
+
+    /**
+     * returns the longest a filesystem call made in the background may take
+     * before it fails and its mount is marked as not responding. Default value
+     * is 10 seconds.
+     * @return the timeout, in milliseconds
+     */
+    public long getIoTimeout() {
+        return scheduler.getTimeout();
+    }
+
+    /**
+     * sets the longest a filesystem call made in the background may take before
+     * it fails and its mount is marked as not responding
+     * @param millis the timeout, in milliseconds
+     */
+    public void setIoTimeout(long millis) {
+        scheduler.setTimeout(millis);
+    }
+
+    /**
+     * returns the most filesystem calls made on a single mount at once. Default
+     * value is 4.
+     * @return the concurrency limit of each mount
+     */
+    public int getMountConcurrency() {
+        return scheduler.getMountConcurrency();
+    }
+
+    /**
+     * sets the most filesystem calls made on a single mount at once
+     * @param mountConcurrency the concurrency limit of each mount
+     */
+    public void setMountConcurrency(int mountConcurrency) {
+        scheduler.setMountConcurrency(mountConcurrency);
+    }
+
+    /**
+     * returns the mounts that have stopped responding. Work on them fails right
+     * away until one of their calls returns.
+     * @return the mount points of the degraded mounts
+     */
+    public List<String> getDegradedMounts() {
+        return scheduler.getDegradedMounts();
+    }
+
+    /**
+     * returns the roots of the filesystem. If a root path has been set, that's
+     * the only one. Otherwise on Windows this is the desktop, and elsewhere the
+     * roots from <code>File.listRoots()</code>.
+     * @return the roots of the filesystem
+     */
+    public File[] getRoots() {
+        Path root = this.root;
+        if (root != null)
+        {
+            if (PathFile.isDefault(root))
+                return new File[] {root.toFile()};
+
+            // the root of a filesystem has no name, so it goes by the filesystem's
+            String name = root.getFileName() == null ? root.getFileSystem().toString() : null;
+            return new File[] {new PathFile(root, name)};
+        }
+        if (Constants.isWindows)
+            return fsv.getRoots();
+
+        return File.listRoots();
+    }
+
+    /**
+     * creates the root node of a new tree. If there is a single root, its
+     * children are listed right away. If there are several, they become the
+     * children of a "Computer" node.
+     * @return the root node
+     */
+    public FileTreeNode createRoot() {
+        return createRoot(Collections.<File, DirectoryListing>emptyMap());
+    }
+
+    /**
+     * creates the root node of a new tree, like <code>createRoot()</code>, but
+     * takes the children of a single root from <code>listings</code> if it's there
+     * instead of listing it
+     * @param listings listings that have been read already, by directory
+     * @return the root node
+     */
+    FileTreeNode createRoot(Map<File, DirectoryListing> listings) {
+        File[] roots = getRoots();
+        FileTreeNode rootNode;
+        if (roots.length == 1)
+        {
+            rootNode = new FileTreeNode(roots[0]);
+            DirectoryListing listing = listings.get(roots[0]);
+            if (listing != null)
+            {
+                refilter(roots[0], listing, true);
+                rootNode.setChildren(listing, getView(listing));
+            }
+            else
+                loadChildren(rootNode);
+        }
+        else if (roots.length > 1)
+        {
+            rootNode = new FileTreeNode("Computer", true);
+            for (File root:roots)
+                rootNode.addChild(new FileTreeNode(root));
+        }
+        else
+            rootNode = new FileTreeNode("Error", false);
+
+        return rootNode;
+    }
+
+    /**
+     * lists the directory represented by <code>node</code> on the calling thread
+     * and replaces the children of <code>node</code> with its entries
+     * @param node the node to load
+     */
+    public void loadChildren(FileTreeNode node) {
+        File dir = node.getFile();
+        if (dir == null)
+            return;
+
+        DirectoryListing listing = list(dir);
+        node.setChildren(listing, getView(listing));
+    }
+
+    /**
+     * returns the child of <code>node</code> with the given name. Children that
+     * come from a listing are binary searched.
+     * @param node the node to look in
+     * @param name the name of the child
+     * @return the child, or null if there isn't one
+     */
+    public FileTreeNode findChild(FileTreeNode node, String name) {
+        int index = node.indexOfChild(name);
+        if (index >= 0)
+            return node.getChildAt(index);
+
+        if (Constants.isWindows)
+        {
+            // drives don't have a name, and go by the start of their path
+            int childCount = node.getChildCount();
+            for (int i=0; i<childCount; i++)
+            {
+                FileTreeNode childNode = node.getChildAt(i);
+                File file = childNode.getFile();
+                if (childNode.getName().length() == 0 && file != null
+                        && file.getPath().length() >= 2 && file.getPath().substring(0, 2).equals(name))
+                    return childNode;
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * walks down from <code>rootNode</code> towards <code>file</code>, listing the
+     * directories along the way that haven't been listed yet. Parts of the path
+     * that can't be found are skipped.
+     * @param rootNode the root of the tree, as returned by <code>createRoot()</code>
+     * @param file the file to look for
+     * @return the deepest node found on the way to <code>file</code>, which is the
+     * node of <code>file</code> itself if the whole path was found. null if the tree
+     * has nowhere to start looking.
+     */
+    public FileTreeNode resolve(FileTreeNode rootNode, File file) {
+        if (file == null)
+            throw new IllegalArgumentException("Null argument not allowed");
+
+        FileTreeNode node = getPathStart(rootNode);
+        if (node == null)
+            return null;
+
+        for (String part:getPathParts(file))
+        {
+            if (node.getListing() == null && node.representsFile() && node.getAllowsChildren())
+                loadChildren(node);
+
+            FileTreeNode child = findChild(node, part);
+            if (child != null)
+                node = child;
+        }
+
+        return node;
+    }
+
+    /**
+     * returns the node that paths are resolved from. On Windows that's "My
+     * Computer", which holds the drives, and otherwise the root itself.
+     * @param rootNode the root of the tree
+     * @return the node to start resolving paths at, or null if there isn't one
+     */
+    FileTreeNode getPathStart(FileTreeNode rootNode) {
+        if (!Constants.isWindows || root != null)
+            return rootNode;
+
+        int childCount = rootNode.getChildCount();
+        for (int i=0; i<childCount; i++)
+        {
+            File file = rootNode.getChildAt(i).getFile();
+            if (file != null && file.getPath().equals(FileTreeNode.WINDOWS_MYCOMPUTER))
+                return rootNode.getChildAt(i);
+        }
+
+        return null;
+    }
+
+    /**
+     * splits the path of a file into the names along it
+     * @param file the file
+     * @return the names of the directories leading to <code>file</code>, and of
+     * <code>file</code> itself
+     */
+    String[] getPathParts(File file) {
+        String path = file.getPath();
+        if (Constants.isWindows)
+            return path.split("\\\\");
+
+        return path.split(File.separator);
+    }
+
+    /**
+     * lists a directory on the calling thread
+     * @param dir the directory to list
+     * @return the listing
+     */
+    DirectoryListing list(File dir) {
+        long start = System.nanoTime();
+        TreeFilter filter = this.filter;
+        DirectoryListing listing = DirectoryListing.list(dir, navigateOSXApps);
+        filter.applyFresh(dir, getRootFile(), listing, true);
+        metrics.listed(start, dir, listing.size());
+        return listing;
+    }
+
+    /**
+     * hides the entries of a listing that has just been read that don't pass
+     * the filter
+     * @param dir the directory the listing was read from
+     * @param listing the listing
+     * @param complete whether the listing holds every entry of the directory
+     */
+    void filter(File dir, DirectoryListing listing, boolean complete) {
+        filter.applyFresh(dir, getRootFile(), listing, complete);
+    }
+
+    /**
+     * applies the current filter to a listing that was read before, without
+     * reading the directory again
+     * @param dir the directory the listing was read from
+     * @param listing the listing
+     * @param read whether rule files the filter hasn't read yet are read now.
+     * If false, nothing is read from the disk, and they count as empty.
+     */
+    void refilter(File dir, DirectoryListing listing, boolean read) {
+        filter.apply(dir, getRootFile(), listing, read);
+    }
+
+    /**
+     * returns the entries of a listing that pass the filters, in display order
+     * @param listing the listing
+     * @return the indices of the entries to show
+     */
+    int[] getView(DirectoryListing listing) {
+        applyOrder(listing);
+        return listing.getView(showFiles, showHiddenFiles);
+    }
+
+    /**
+     * returns the entries of a listing from <code>first</code> on that pass the
+     * filters, in display order
+     * @param listing the listing
+     * @param first the first entry to consider
+     * @return the indices of the entries to show
+     */
+    int[] getView(DirectoryListing listing, int first) {
+        applyOrder(listing);
+        return listing.getView(first, showFiles, showHiddenFiles);
+    }
+
+    /**
+     * makes a listing sort its entries in the current order
+     * @param listing the listing
+     */
+    void applyOrder(DirectoryListing listing) {
+        listing.setOrder(sortOrder, directoriesFirst);
+    }
+
+    /**
+     * returns a number that changes whenever an option that affects the
+     * children of a node changes. A view made while the version was different
+     * is out of date.
+     * @return the version of the options
+     */
+    int getOptionsVersion() {
+        return optionsVersion;
+    }
+
+    /**
+     * returns true if files are listed, false if only directories are. Default
+     * value is true.
+     * @return true if files are listed
+     */
+    public boolean isShowFiles() {
+        return showFiles;
+    }
+
+    /**
+     * returns true if hidden files are listed. Default value is false.
+     * @return true if hidden files are listed
+     */
+    public boolean isShowHiddenFiles() {
+        return showHiddenFiles;
+    }
+
+    /**
+     * returns true if OS X application bundles can be expanded. Default value is
+     * false.
+     * @return true if OS X application bundles can be expanded
+     */
+    public boolean isNavigateOSXApps() {
+        return navigateOSXApps;
+    }
+
+    /**
+     * returns the order children are sorted in. Default value is
+     * <code>SortOrder.NAME</code>.
+     * @return the sort order
+     */
+    public SortOrder getSortOrder() {
+        return sortOrder;
+    }
+
+    /**
+     * returns true if directories are sorted before files. Default value is true
+     * on Windows, and false elsewhere.
+     * @return true if directories come first
+     */
+    public boolean isDirectoriesFirst() {
+        return directoriesFirst;
+    }
+
+    /**
+     * sets the order children are sorted in. Nodes that have been loaded already
+     * keep their order.
+     * @param sortOrder the sort order
+     */
+    public synchronized void setSortOrder(SortOrder sortOrder) {
+        if (sortOrder == null)
+            throw new IllegalArgumentException("Null argument not allowed");
+
+        this.sortOrder = sortOrder;
+        optionsVersion++;
+    }
+
+    /**
+     * sets whether directories are sorted before files, whatever the sort order.
+     * Nodes that have been loaded already keep their order.
+     * @param directoriesFirst <code>true</code> sorts directories first
+     */
+    public synchronized void setDirectoriesFirst(boolean directoriesFirst) {
+        this.directoriesFirst = directoriesFirst;
+        optionsVersion++;
+    }
+
+    /**
+     * sets whether files are listed, as opposed to just directories. Nodes that
+     * have been loaded already keep their children.
+     * @param showFiles <code>true</code> lists files. <code>false</code> does not.
+     */
+    public synchronized void setShowFiles(boolean showFiles) {
+        this.showFiles = showFiles;
+        optionsVersion++;
+    }
+
+    /**
+     * sets whether hidden files and directories are listed. Nodes that have been
+     * loaded already keep their children.
+     * @param showHiddenFiles <code>true</code> lists hidden files. <code>false</code> does not.
+     */
+    public synchronized void setShowHiddenFiles(boolean showHiddenFiles) {
+        this.showHiddenFiles = showHiddenFiles;
+        optionsVersion++;
+    }
+
+    /**
+     * returns the path the tree is rooted at
+     * @return the root path, or null if the tree shows the roots of the filesystem
+     */
+    public Path getRoot() {
+        return root;
+    }
+
+    /**
+     * returns the directory the tree is rooted at, above which the filter
+     * doesn't look for rule files
+     * @return the root directory, or null if the tree shows the roots of the
+     * filesystem
+     */
+    File getRootFile() {
+        Path root = this.root;
+        return root == null ? null : PathFile.of(root);
+    }
+
+    /**
+     * roots the tree at a path, which can be on any <code>FileSystem</code>, such
+     * as that of a zip file or an in-memory one. Applies to roots created from
+     * now on.
+     * @param root the root path, or null to show the roots of the filesystem
+     */
+    public synchronized void setRoot(Path root) {
+        this.root = root;
+        optionsVersion++;
+    }
+
+    /**
+     * returns the filter that decides which entries are listed
+     * @return the filter
+     */
+    public TreeFilter getFilter() {
+        return filter;
+    }
+
+    /**
+     * sets the filter that decides which entries are listed. Nodes that have
+     * been loaded already keep their children.
+     * @param filter the filter
+     */
+    public synchronized void setFilter(TreeFilter filter) {
+        if (filter == null)
+            throw new IllegalArgumentException("Null argument not allowed");
+
+        this.filter = filter;
+        optionsVersion++;
+    }
+
+    /**
+     * sets whether OS X application bundles (.app) can be expanded. Applies to
+     * directories listed from now on.
+     * @param navigateOSXApps if true, application bundles can be expanded
+     */
+    public synchronized void setNavigateOSXApps(boolean navigateOSXApps) {
+        this.navigateOSXApps = navigateOSXApps;
+        optionsVersion++;
+    }
+
+    /**
+     * the path the tree is rooted at, or null for the roots of the filesystem
+     */
+    private volatile Path root;
+    /**
+     * decides which entries are listed
+     */
+    private volatile TreeFilter filter;
+    /**
+     * whether files are listed
+     */
+    private volatile boolean showFiles;
+    /**
+     * whether hidden files are listed
+     */
+    private volatile boolean showHiddenFiles;
+    /**
+     * whether OS X application bundles can be expanded
+     */
+    private volatile boolean navigateOSXApps;
+    /**
+     * the order children are sorted in
+     */
+    private volatile SortOrder sortOrder;
+    /**
+     * whether directories are sorted before files
+     */
+    private volatile boolean directoriesFirst;
+    /**
+     * changes whenever one of the options above does
+     */
+    private volatile int optionsVersion;
+    /**
+     * used to find the roots on Windows
+     */
+    private FileSystemView fsv;
+    /**
+     * counts the work done by this core and the trees that use it
+     */
+    private final FileTreeMetrics metrics;
+    /**
+     * runs the filesystem calls made in the background
+     */
+    private final IoScheduler scheduler;
+}
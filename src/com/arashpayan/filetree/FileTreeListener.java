@@ -20,15 +20,32 @@
 package com.arashpayan.filetree;
 
 import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
 import java.awt.event.KeyEvent;
 import java.awt.event.MouseAdapter;
 import java.awt.event.MouseEvent;
 import java.io.File;
+import java.io.IOException;
+import java.nio.file.AccessDeniedException;
+import java.nio.file.DirectoryNotEmptyException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.FileSystemException;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.SortedMap;
 import javax.swing.AbstractAction;
 import javax.swing.Action;
+import javax.swing.JFileChooser;
 import javax.swing.JOptionPane;
 import javax.swing.JPopupMenu;
-import javax.swing.tree.DefaultMutableTreeNode;
+import javax.swing.ProgressMonitor;
+import javax.swing.SwingWorker;
+import javax.swing.Timer;
 import javax.swing.tree.TreePath;
 
 /**
@@ -58,7 +75,10 @@ public class FileTreeListener extends MouseAdapter {
     }
     
     /**
-     * 
+     * shows the menu of the operations on the selected files. A row that isn't
+     * selected is selected first, so the menu always works on the selection.
+     * The operations that change or remove the selected files are only shown
+     * if the tree allows deleting.
      * @param x the x coordinate of the mouse when it was pressed
      * @param y the y coordinate of the mouse when it was pressed
      */
@@ -67,131 +87,437 @@ public class FileTreeListener extends MouseAdapter {
         if (treePath == null)
             return;
         
-        if (!fileTree.isDeleteEnabled())
+        if (!fileTree.isPathSelected(treePath))
+            fileTree.setSelectionPath(treePath);
+        List<File> files = new ArrayList<File>();
+        for (TreePath selected:fileTree.getSelectionPaths())
+        {
+            File file = fileTree.getFileTreeModel().getFile(selected.getLastPathComponent());
+            if (file != null)
+                files.add(file);
+        }
+        if (files.isEmpty())
             return;
         
         JPopupMenu popup = new JPopupMenu();
-        
-        popup.add(new DeleteFileAction(treePath));
+        popup.add(new CopyAction(files));
+        if (fileTree.isDeleteEnabled())
+        {
+            popup.add(new MoveAction(files));
+            popup.add(new RenameAction(files));
+            popup.addSeparator();
+            popup.add(new DeleteFileAction(files));
+        }
+        popup.addSeparator();
+        popup.add(new RefreshAction(files));
+        TreePath selected = fileTree.getSelectionPath();
+        if (files.size() == 1 && ((FileTreeNode)selected.getLastPathComponent()).getAllowsChildren())
+            popup.add(new ExpandAllAction(selected));
         popup.show(fileTree, x, y);
     }
     
+    /**
+     * returns how the files are referred to in dialogs: the name of a single
+     * file in quotes, or the number of files
+     * @param files the files
+     * @return the description of the files
+     */
+    private static String describe(List<File> files) {
+        if (files.size() == 1)
+            return "'" + files.get(0).getName() + "'";
+        
+        return files.size() + " items";
+    }
+    
+    /**
+     * returns a short description of why a path couldn't be dealt with
+     * @param e the error
+     * @return the description
+     */
+    private static String describe(IOException e) {
+        if (e instanceof AccessDeniedException)
+            return "access denied";
+        if (e instanceof DirectoryNotEmptyException)
+            return "directory not empty";
+        if (e instanceof NoSuchFileException)
+            return "no such file";
+        if (e instanceof FileAlreadyExistsException)
+            return "already exists";
+        if (e instanceof FileSystemException && ((FileSystemException)e).getReason() != null)
+            return ((FileSystemException)e).getReason();
+        if (e.getMessage() != null)
+            return e.getMessage();
+        
+        return e.toString();
+    }
+    
     /**
      * the <code>FileTree</code> to listen on
      */
     private FileTree fileTree;
     
     /**
-     * feature not implemented
+     * how often the progress of an operation is shown, in milliseconds
      */
-    private class RenameAction extends AbstractAction {
-
-        public RenameAction(TreePath treePath) {
-            this.treePath = treePath;
+    private static final int PROGRESS_INTERVAL = 250;
+    /**
+     * the number of steps of the progress bar
+     */
+    private static final int PROGRESS_STEPS = 1000;
+    /**
+     * the number of levels the expand all action expands
+     */
+    private static final int EXPAND_ALL_DEPTH = 5;
+    /**
+     * the most paths listed when an operation fails
+     */
+    private static final int MAX_REPORTED_FAILURES = 20;
+    
+    /**
+     * an action that runs a <code>FileOperationTask</code> on the selected files,
+     * showing its progress and updating the tree as it goes
+     */
+    private abstract class FileOperationAction extends AbstractAction {
+        /**
+         * constructor for an action on the selected files
+         * @param name the name of the action
+         * @param files the files to act on
+         */
+        public FileOperationAction(String name, List<File> files) {
+            putValue(Action.NAME, name);
+            this.files = files;
+        }
+        
+        /**
+         * runs the operation in the background
+         * @param operation what to do with the files
+         * @param target the directory to copy or move into, or the new path of a
+         * renamed file. Null for deletes.
+         * @param title the title of the progress monitor
+         */
+        protected void run(final FileOperationTask.Operation operation, Path target, final String title) {
+            List<Path> sources = new ArrayList<Path>(files.size());
+            for (File file:files)
+                sources.add(file.toPath());
+            
+            final FileTreeMetrics metrics = fileTree.getCore().getMetrics();
+            final long start = System.nanoTime();
+            final ProgressMonitor monitor = new ProgressMonitor(fileTree, title, "", 0, PROGRESS_STEPS);
+            final FileOperationTask task = new FileOperationTask(operation, sources, target,
+                    fileTree.isNavigateOSXApps()) {
+                protected void process(List<FileOperationTask.Change> chunks) {
+                    long updating = System.nanoTime();
+                    applyChanges(chunks);
+                    metrics.eventThreadBlocked(updating, "Updating the tree", title);
+                }
+                protected void done() {
+                    if (operation == FileOperationTask.Operation.DELETE)
+                        metrics.deleted(start, title, getProcessedCount());
+                    progressTimer.stop();
+                    monitor.close();
+                    finished(this);
+                }
+            };
+            progressTimer = new Timer(PROGRESS_INTERVAL, new ActionListener() {
+                public void actionPerformed(ActionEvent e) {
+                    if (monitor.isCanceled())
+                    {
+                        task.cancel(false);
+                        return;
+                    }
+                    monitor.setNote(describeProgress(task));
+                    monitor.setProgress((int)(task.getFractionDone() * PROGRESS_STEPS));
+                }
+            });
+            progressTimer.start();
+            task.execute();
+        }
+        
+        /**
+         * updates the tree with a chunk of changes, one update per directory.
+         * Called on the event dispatch thread while the task runs.
+         * @param changes the changes made to the filesystem
+         */
+        private void applyChanges(List<FileOperationTask.Change> changes) {
+            List<Path> removed = new ArrayList<Path>();
+            Map<Path, DirectoryListing> added = new LinkedHashMap<Path, DirectoryListing>();
+            for (FileOperationTask.Change change:changes)
+            {
+                if (change.getRemoved() != null)
+                    removed.add(change.getRemoved());
+                if (change.getEntry() != null)
+                    added.put(change.getAdded(), change.getEntry());
+            }
+            fileTree.filesChanged(removed, added);
+        }
+        
+        /**
+         * returns what has been done so far, like "120 items copied, 3.4 MB at
+         * 1.2 MB/s"
+         * @param task the task
+         * @return the progress of the task
+         */
+        private String describeProgress(FileOperationTask task) {
+            String note = task.getProcessedCount() + " items ";
+            switch (task.getOperation())
+            {
+                case DELETE: note += "deleted"; break;
+                case COPY: note += "copied"; break;
+                case MOVE: note += "moved"; break;
+                default: note += "renamed"; break;
+            }
+            long bytes = task.getProcessedBytes();
+            if (bytes == 0)
+                return note;
+            
+            return note + ", " + DirectorySize.formatBytes(bytes) + " at "
+                    + DirectorySize.formatBytes((long)task.getBytesPerSecond()) + "/s";
+        }
+        
+        /**
+         * tells the user about anything that couldn't be done, once the task is
+         * done. A renamed file is selected.
+         * @param task the task
+         */
+        private void finished(FileOperationTask task) {
+            if (task.isCancelled())
+                return;
             
-            putValue(Action.NAME, "Rename");
+            SortedMap<Path, IOException> failures = task.getFailures();
+            if (failures.isEmpty())
+            {
+                if (task.getOperation() == FileOperationTask.Operation.RENAME)
+                    fileTree.setCurrentFile(renamed);
+                return;
+            }
             
-            DefaultMutableTreeNode treeNode = (DefaultMutableTreeNode)treePath.getLastPathComponent();
-            fileTreeNode = (FileTreeNode)treeNode.getUserObject();
-            if (!fileTreeNode.file.canWrite())
-                setEnabled(false);
+            StringBuilder message = new StringBuilder();
+            message.append("Could not ").append(task.getOperation().name().toLowerCase(Locale.ENGLISH))
+                    .append(' ').append(failures.size()).append(" item(s):\n");
+            int shown = 0;
+            for (Map.Entry<Path, IOException> failure:failures.entrySet())
+            {
+                if (shown++ == MAX_REPORTED_FAILURES)
+                {
+                    message.append("\u2026\n");
+                    break;
+                }
+                message.append(failure.getKey()).append(": ").append(describe(failure.getValue())).append('\n');
+            }
+            JOptionPane.showMessageDialog(fileTree.getRootPane(),
+                    message.toString(),
+                    "Operation failed",
+                    JOptionPane.ERROR_MESSAGE);
+        }
+        
+        /**
+         * the files to act on
+         */
+        protected List<File> files;
+        /**
+         * the new file of a rename, which is selected once it's done
+         */
+        protected File renamed;
+        /**
+         * updates the progress monitor while the operation runs
+         */
+        private Timer progressTimer;
+    }
+    
+    private class CopyAction extends FileOperationAction {
+        /**
+         * constructor for the action to copy the selected files into a directory
+         * @param files the files to copy
+         */
+        public CopyAction(List<File> files) {
+            super("Copy To\u2026", files);
         }
         
+        /**
+         * asks for the directory to copy into, and copies the files
+         * @param e information about the event that caused this method to be called
+         */
         public void actionPerformed(ActionEvent e) {
-            fileTree.startEditingAtPath(treePath);
+            File dir = chooseDirectory("Copy");
+            if (dir != null)
+                run(FileOperationTask.Operation.COPY, dir.toPath(), "Copying " + describe(files));
         }
+    }
+    
+    private class MoveAction extends FileOperationAction {
+        /**
+         * constructor for the action to move the selected files into a directory
+         * @param files the files to move
+         */
+        public MoveAction(List<File> files) {
+            super("Move To\u2026", files);
+        }
+        
+        /**
+         * asks for the directory to move into, and moves the files
+         * @param e information about the event that caused this method to be called
+         */
+        public void actionPerformed(ActionEvent e) {
+            File dir = chooseDirectory("Move");
+            if (dir != null)
+                run(FileOperationTask.Operation.MOVE, dir.toPath(), "Moving " + describe(files));
+        }
+    }
+    
+    /**
+     * asks the user for a directory
+     * @param approveText the text of the button that picks the directory
+     * @return the directory, or null if the user cancelled
+     */
+    private File chooseDirectory(String approveText) {
+        JFileChooser chooser = new JFileChooser();
+        chooser.setFileSelectionMode(JFileChooser.DIRECTORIES_ONLY);
+        if (chooser.showDialog(fileTree, approveText) != JFileChooser.APPROVE_OPTION)
+            return null;
         
-        private TreePath treePath;
-        private FileTreeNode fileTreeNode;
+        return chooser.getSelectedFile();
     }
     
-    private class DeleteFileAction extends AbstractAction {
+    private class RenameAction extends FileOperationAction {
         /**
-         * constructor for the action to delete a file or directory
-         * @param treePath the treepath of the node to act on
+         * constructor for the action to rename a single selected file
+         * @param files the selected files
          */
-        public DeleteFileAction(TreePath treePath) {
-            this.treePath = treePath;
-            
-            if (Constants.isOSX)
-                putValue(Action.NAME, "Move to Trash");
-            else
+        public RenameAction(List<File> files) {
+            super("Rename\u2026", files);
+            setEnabled(files.size() == 1);
+        }
+        
+        /**
+         * asks for the new name, and renames the file
+         * @param e information about the event that caused this method to be called
+         */
+        public void actionPerformed(ActionEvent e) {
+            File file = files.get(0);
+            Object name = JOptionPane.showInputDialog(fileTree.getRootPane(),
+                    "New name for '" + file.getName() + "':",
+                    "Rename",
+                    JOptionPane.QUESTION_MESSAGE,
+                    null, null, file.getName());
+            if (name == null || name.toString().length() == 0 || name.equals(file.getName()))
+                return;
+            if (name.toString().indexOf(File.separatorChar) >= 0 || name.toString().indexOf('/') >= 0)
             {
-                putValue(Action.NAME, "Delete");
-                putValue(Action.MNEMONIC_KEY, KeyEvent.VK_D);
+                JOptionPane.showMessageDialog(fileTree.getRootPane(),
+                        "A name can't contain '" + File.separator + "'.",
+                        "Rename failed",
+                        JOptionPane.ERROR_MESSAGE);
+                return;
             }
             
-            DefaultMutableTreeNode treeNode = (DefaultMutableTreeNode)treePath.getLastPathComponent();
-            fileTreeNode = (FileTreeNode)treeNode.getUserObject();
-            if (!fileTreeNode.file.canWrite())
-                setEnabled(false);
+            renamed = PathFile.getChild(file.getParentFile(), name.toString());
+            run(FileOperationTask.Operation.RENAME, renamed.toPath(), "Renaming " + describe(files));
+        }
+    }
+    
+    private class DeleteFileAction extends FileOperationAction {
+        /**
+         * constructor for the action to delete the selected files and directories
+         * @param files the files to delete
+         */
+        public DeleteFileAction(List<File> files) {
+            super(Constants.isOSX ? "Move to Trash" : "Delete", files);
+            if (!Constants.isOSX)
+                putValue(Action.MNEMONIC_KEY, KeyEvent.VK_D);
         }
 
         /**
-         * the action called when the user wants to delete a file or directory
+         * the action called when the user wants to delete the files
          * @param e information about the event that caused this method to be called
          */
         public void actionPerformed(ActionEvent e) {
             int choice = JOptionPane.showConfirmDialog(fileTree.getRootPane(),
-                    "Are you sure you want to delete '" + fileTreeNode.file.getName()+"'?",
+                    "Are you sure you want to delete " + describe(files) + "?",
                     "Confirm delete",
                     JOptionPane.YES_NO_OPTION,
                     JOptionPane.QUESTION_MESSAGE);
-            if (choice == 1)
-                return; // they selected no
+            if (choice != JOptionPane.YES_OPTION)
+                return; // they selected no, or closed the dialog
             
-            boolean success = false;
-            if (fileTreeNode.file.isDirectory())
-                success = deleteDirectory(fileTreeNode.file);
-            else
-                success = fileTreeNode.file.delete();
-            
-            if (success)
-            {
-                fileTree.getFileTreeModel().removeNodeFromParent(
-                        (DefaultMutableTreeNode)treePath.getLastPathComponent());
-            }
-                
+            run(FileOperationTask.Operation.DELETE, null, "Deleting " + describe(files));
+        }
+    }
+    
+    /**
+     * Action that lists the selected directories again
+     */
+    private class RefreshAction extends AbstractAction {
+        /**
+         * constructor for the action to refresh the selected files and directories
+         * @param files the files to refresh
+         */
+        public RefreshAction(List<File> files) {
+            putValue(Action.NAME, "Refresh");
+            putValue(Action.MNEMONIC_KEY, KeyEvent.VK_F);
+            this.files = files;
+        }
+
+        /**
+         * the action called when the user wants to refresh the files
+         * @param e information about the event that caused this method to be called
+         */
+        public void actionPerformed(ActionEvent e) {
+            for (File file:files)
+                fileTree.refresh(file);
         }
         
         /**
-         * deletes a directory and its content
-         * @param dir The directory to delete
-         * @return true on success, false otherwise
+         * the files to refresh
          */
-        private boolean deleteDirectory(File dir) {
-            if (dir == null || !dir.exists() || !dir.isDirectory())
-                return false;
-            
-            boolean success = true;
-            File [] list = dir.listFiles();
-            for (File file:list)
-            {
-                if (file.isDirectory())
-                {
-                    if (!deleteDirectory(file))
-                        success = false;
-                }
-                else
-                {
-                    if (!file.delete())
-                        success = false;
-                }
-            }
-            if (!dir.delete())  // finally delete the actual directory
-                success = false;
-            
-            return success;
+        private List<File> files;
+    }
+    
+    /**
+     * Expands the selected directory and the ones below it, showing the progress
+     * if it takes a while
+     */
+    private class ExpandAllAction extends AbstractAction {
+        /**
+         * constructor for the action to expand the selected directory
+         * @param path the path of the directory
+         */
+        public ExpandAllAction(TreePath path) {
+            putValue(Action.NAME, "Expand All");
+            putValue(Action.MNEMONIC_KEY, KeyEvent.VK_X);
+            this.path = path;
         }
         
         /**
-         * The <code>TreePath</code> to the node that will be deleted.
+         * the action called when the user wants to expand the directory
+         * @param e information about the event that caused this method to be called
          */
-        private TreePath treePath;
+        public void actionPerformed(ActionEvent e) {
+            final SwingWorker<?, ?> task = fileTree.expandAll(path, EXPAND_ALL_DEPTH);
+            if (task == null)
+                return;
+            
+            File dir = fileTree.getFileTreeModel().getFile(path.getLastPathComponent());
+            final ProgressMonitor monitor = new ProgressMonitor(fileTree, "Expanding '" + dir.getName() + "'", "", 0, 100);
+            final Timer progressTimer = new Timer(PROGRESS_INTERVAL, null);
+            progressTimer.addActionListener(new ActionListener() {
+                public void actionPerformed(ActionEvent e) {
+                    if (monitor.isCanceled())
+                        task.cancel(true);
+                    if (task.isDone())
+                    {
+                        progressTimer.stop();
+                        monitor.close();
+                        return;
+                    }
+                    monitor.setProgress(task.getProgress());
+                }
+            });
+            progressTimer.start();
+        }
+        
         /**
-         * The <code>FileTreeNode</code> stored inside the <code>DefaultMutableTreeNode</code>'s
-         * user object
+         * the path of the directory to expand
          */
-        private FileTreeNode fileTreeNode;
+        private TreePath path;
     }
 }
@@ -0,0 +1,663 @@
+/* This file is part of FileTree.
+
+    FileTree is free software; you can redistribute it and/or modify
+    it under the terms of the GNU General Public License (or the Lesser GPL)
+    as published by the Free Software Foundation; either version 3 of the
+    License, or (at your option) any later version.
+
+    FileTree is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+ */
+/*
+ * FileTreeMetrics.java
+ *
+ * Copyright 2026 the FileTree contributors
+ */
+
+package com.arashpayan.filetree;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+import javax.management.JMException;
+import javax.management.ObjectName;
+import javax.swing.SwingUtilities;
+
+/**
+ * Counts what a <code>FileTreeCore</code> and the trees using it spend their
+ * time on: listing directories, expanding them, prefetching them, looking up
+ * icons, blocking the event dispatch thread, showing files and deleting them.
+ * Every operation is counted in a <code>LatencyHistogram</code>, and the totals
+ * can be read through the getters, or through JMX once the metrics are
+ * registered with <code>register</code>.
+ * <p>
+ * Operations that take longer than the slow operation threshold are logged as
+ * warnings to the "com.arashpayan.filetree" logger. The threshold is 0 by
+ * default, which logs nothing.
+ * <p>
+ * All methods can be called from any thread.
+ */
+public class FileTreeMetrics implements FileTreeMetricsMBean {
+
+    /**
+     * Creates a new instance of FileTreeMetrics
+     */
+    public FileTreeMetrics() {
+        listingLatency = new LatencyHistogram();
+        expansionLatency = new LatencyHistogram();
+        iconLookupLatency = new LatencyHistogram();
+        eventThreadLatency = new LatencyHistogram();
+        currentFileLatency = new LatencyHistogram();
+        deleteLatency = new LatencyHistogram();
+        entriesListed = new AtomicLong();
+        statCalls = new AtomicLong();
+        iconCacheHits = new AtomicLong();
+        iconCacheMisses = new AtomicLong();
+        prefetchedDirectories = new AtomicLong();
+        prefetchHits = new AtomicLong();
+        prefetchMisses = new AtomicLong();
+        prefetchEvictions = new AtomicLong();
+        ioTimeouts = new AtomicLong();
+        ioRejected = new AtomicLong();
+        deletedCount = new AtomicLong();
+        slowOperationCount = new AtomicLong();
+    }
+
+    /**
+     * returns how long it took to list each directory, whether for a tree or
+     * to check a watched directory
+     * @return the histogram of listing times
+     */
+    public LatencyHistogram getListingLatency() {
+        return listingLatency;
+    }
+
+    /**
+     * returns how long it took from the user expanding a directory to its
+     * children being shown
+     * @return the histogram of expansion times
+     */
+    public LatencyHistogram getExpansionLatency() {
+        return expansionLatency;
+    }
+
+    /**
+     * returns how long it took to look up the icons that weren't cached
+     * @return the histogram of icon lookup times
+     */
+    public LatencyHistogram getIconLookupLatency() {
+        return iconLookupLatency;
+    }
+
+    /**
+     * returns how long each piece of the trees' work kept the event dispatch
+     * thread busy
+     * @return the histogram of event dispatch thread blocking times
+     */
+    public LatencyHistogram getEventThreadLatency() {
+        return eventThreadLatency;
+    }
+
+    /**
+     * returns how long each call to <code>FileTree.setCurrentFile</code> took
+     * @return the histogram of <code>setCurrentFile</code> times
+     */
+    public LatencyHistogram getCurrentFileLatency() {
+        return currentFileLatency;
+    }
+
+    /**
+     * returns how long each delete took, from start to finish
+     * @return the histogram of delete times
+     */
+    public LatencyHistogram getDeleteLatency() {
+        return deleteLatency;
+    }
+
+    /**
+     * returns the number of directories listed
+     * @return the number of listings
+     */
+    public long getDirectoriesListed() {
+        return listingLatency.getCount();
+    }
+
+    /**
+     * returns the number of entries read from the directories listed
+     * @return the number of entries
+     */
+    public long getEntriesListed() {
+        return entriesListed.get();
+    }
+
+    /**
+     * returns the rate at which entries are read while directories are listed
+     * @return the entries listed per second of listing
+     */
+    public double getEntriesListedPerSecond() {
+        return perSecond(entriesListed.get(), listingLatency);
+    }
+
+    /**
+     * returns the average time it took to list a directory
+     * @return the mean listing time
+     */
+    public double getListingMeanMillis() {
+        return listingLatency.getMeanMillis();
+    }
+
+    /**
+     * returns the number of times the attributes of a file were read while
+     * directories were listed or checked for changes
+     * @return the number of stat calls
+     */
+    public long getStatCalls() {
+        return statCalls.get();
+    }
+
+    /**
+     * returns the number of directories expanded by the user
+     * @return the number of expansions
+     */
+    public long getExpansionCount() {
+        return expansionLatency.getCount();
+    }
+
+    /**
+     * returns the average time between expanding a directory and its children
+     * being shown
+     * @return the mean expansion time
+     */
+    public double getExpansionMeanMillis() {
+        return expansionLatency.getMeanMillis();
+    }
+
+    /**
+     * returns the time within which 99 out of 100 expansions showed their children
+     * @return the 99th percentile of the expansion time
+     */
+    public double getExpansion99thPercentileMillis() {
+        return expansionLatency.getPercentileMillis(99);
+    }
+
+    /**
+     * returns the longest time an expansion took to show its children
+     * @return the longest expansion time
+     */
+    public double getExpansionMaxMillis() {
+        return expansionLatency.getMaxNanos() / NANOS_PER_MILLI;
+    }
+
+    /**
+     * returns the number of icon requests answered from the icon caches
+     * @return the number of cache hits
+     */
+    public long getIconCacheHits() {
+        return iconCacheHits.get();
+    }
+
+    /**
+     * returns the number of icon requests that weren't in the icon caches
+     * @return the number of cache misses
+     */
+    public long getIconCacheMisses() {
+        return iconCacheMisses.get();
+    }
+
+    /**
+     * returns the average time it took to look up an icon that wasn't cached
+     * @return the mean icon lookup time
+     */
+    public double getIconLookupMeanMillis() {
+        return iconLookupLatency.getMeanMillis();
+    }
+
+    /**
+     * returns the number of directories listed ahead of being expanded
+     * @return the number of prefetched directories
+     */
+    public long getPrefetchedDirectories() {
+        return prefetchedDirectories.get();
+    }
+
+    /**
+     * returns the number of expansions served by a prefetched listing
+     * @return the number of prefetch hits
+     */
+    public long getPrefetchHits() {
+        return prefetchHits.get();
+    }
+
+    /**
+     * returns the number of expansions, made while prefetching, that had to
+     * list the directory anyway, because it wasn't prefetched yet or had
+     * changed since
+     * @return the number of prefetch misses
+     */
+    public long getPrefetchMisses() {
+        return prefetchMisses.get();
+    }
+
+    /**
+     * returns the share of the expansions, made while prefetching, that were
+     * served by a prefetched listing
+     * @return the hit rate, from 0 to 1, or 0 if nothing was expanded
+     */
+    public double getPrefetchHitRate() {
+        long hits = prefetchHits.get();
+        long total = hits + prefetchMisses.get();
+        if (total == 0)
+            return 0;
+
+        return hits / (double)total;
+    }
+
+    /**
+     * returns the number of prefetched listings dropped unused to stay within
+     * the memory budget
+     * @return the number of wasted prefetches
+     */
+    public long getPrefetchEvictions() {
+        return prefetchEvictions.get();
+    }
+
+    /**
+     * returns the number of filesystem calls that took longer than the I/O
+     * timeout, each of which marked its mount as degraded
+     * @return the number of timeouts
+     */
+    public long getIoTimeouts() {
+        return ioTimeouts.get();
+    }
+
+    /**
+     * returns the number of filesystem calls turned away because too many were
+     * queued on their mount
+     * @return the number of rejected calls
+     */
+    public long getIoRejected() {
+        return ioRejected.get();
+    }
+
+    /**
+     * returns the total time the event dispatch thread spent on the trees'
+     * work, during which it couldn't paint or handle input
+     * @return the time the event dispatch thread was blocked
+     */
+    public double getEventThreadBlockedMillis() {
+        return eventThreadLatency.getTotalNanos() / NANOS_PER_MILLI;
+    }
+
+    /**
+     * returns the longest the event dispatch thread was blocked at a time
+     * @return the longest time the event dispatch thread was blocked
+     */
+    public double getEventThreadMaxMillis() {
+        return eventThreadLatency.getMaxNanos() / NANOS_PER_MILLI;
+    }
+
+    /**
+     * returns the average time <code>setCurrentFile</code> took
+     * @return the mean time to show a file
+     */
+    public double getCurrentFileMeanMillis() {
+        return currentFileLatency.getMeanMillis();
+    }
+
+    /**
+     * returns the number of files and directories deleted
+     * @return the number of deleted paths
+     */
+    public long getDeletedCount() {
+        return deletedCount.get();
+    }
+
+    /**
+     * returns the rate at which files and directories are deleted
+     * @return the paths deleted per second of deleting
+     */
+    public double getDeletesPerSecond() {
+        return perSecond(deletedCount.get(), deleteLatency);
+    }
+
+    /**
+     * returns the time above which an operation is logged as slow
+     * @return the threshold, or 0 if slow operations aren't logged
+     */
+    public long getSlowOperationThresholdMillis() {
+        return slowOperationThreshold;
+    }
+
+    /**
+     * sets the time above which an operation is logged as slow
+     * @param millis the threshold, or 0 to stop logging slow operations
+     */
+    public void setSlowOperationThresholdMillis(long millis) {
+        if (millis < 0)
+            throw new IllegalArgumentException("millis must not be negative");
+
+        slowOperationThreshold = millis;
+    }
+
+    /**
+     * returns the number of operations that took longer than the threshold
+     * @return the number of slow operations
+     */
+    public long getSlowOperationCount() {
+        return slowOperationCount.get();
+    }
+
+    /**
+     * sets every counter back to 0
+     */
+    public void reset() {
+        listingLatency.reset();
+        expansionLatency.reset();
+        iconLookupLatency.reset();
+        eventThreadLatency.reset();
+        currentFileLatency.reset();
+        deleteLatency.reset();
+        entriesListed.set(0);
+        statCalls.set(0);
+        iconCacheHits.set(0);
+        iconCacheMisses.set(0);
+        prefetchedDirectories.set(0);
+        prefetchHits.set(0);
+        prefetchMisses.set(0);
+        prefetchEvictions.set(0);
+        ioTimeouts.set(0);
+        ioRejected.set(0);
+        deletedCount.set(0);
+        slowOperationCount.set(0);
+    }
+
+    /**
+     * makes the metrics visible through JMX, in the platform MBean server, as
+     * "com.arashpayan.filetree:type=FileTreeMetrics,name=<i>name</i>"
+     * @param name tells these metrics apart from those of other cores
+     * @throws JMException if the metrics can't be registered, for example
+     * because other metrics are registered under the same name
+     */
+    public synchronized void register(String name) throws JMException {
+        if (name == null)
+            throw new IllegalArgumentException("Null argument not allowed");
+
+        unregister();
+        ObjectName objectName = new ObjectName("com.arashpayan.filetree:type=FileTreeMetrics,name="
+                + ObjectName.quote(name));
+        ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+        this.objectName = objectName;
+    }
+
+    /**
+     * removes the metrics from JMX, if they were registered
+     * @throws JMException if the metrics can't be unregistered
+     */
+    public synchronized void unregister() throws JMException {
+        if (objectName == null)
+            return;
+
+        ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+        objectName = null;
+    }
+
+    /**
+     * counts the listing of a directory
+     * @param start when the listing started, from <code>System.nanoTime()</code>
+     * @param dir the directory
+     * @param entries the number of entries read
+     */
+    void listed(long start, Object dir, int entries) {
+        record(listingLatency, "Listing", start, dir);
+        entriesListed.addAndGet(entries);
+        // one for each entry, and one for the directory's last-modified time
+        statCalls.addAndGet(entries + 1);
+    }
+
+    /**
+     * counts reads of file attributes made outside of a listing
+     * @param count the number of reads
+     */
+    void statCalled(int count) {
+        statCalls.addAndGet(count);
+    }
+
+    /**
+     * counts an expansion whose children are now shown
+     * @param start when the directory was expanded, from <code>System.nanoTime()</code>
+     * @param dir the directory
+     */
+    void expanded(long start, Object dir) {
+        record(expansionLatency, "Expansion", start, dir);
+    }
+
+    /**
+     * counts an icon request that was answered from a cache
+     */
+    void iconCacheHit() {
+        iconCacheHits.incrementAndGet();
+    }
+
+    /**
+     * counts an icon request that wasn't in a cache
+     */
+    void iconCacheMiss() {
+        iconCacheMisses.incrementAndGet();
+    }
+
+    /**
+     * counts a directory listed ahead of being expanded
+     */
+    void prefetched() {
+        prefetchedDirectories.incrementAndGet();
+    }
+
+    /**
+     * counts an expansion served by a prefetched listing
+     */
+    void prefetchHit() {
+        prefetchHits.incrementAndGet();
+    }
+
+    /**
+     * counts an expansion that found no usable prefetched listing
+     */
+    void prefetchMiss() {
+        prefetchMisses.incrementAndGet();
+    }
+
+    /**
+     * counts prefetched listings dropped unused
+     * @param count the number of listings dropped
+     */
+    void prefetchEvicted(int count) {
+        prefetchEvictions.addAndGet(count);
+    }
+
+    /**
+     * counts a filesystem call that took longer than the I/O timeout, and logs
+     * that its mount isn't responding
+     * @param mount the mount point of the call
+     */
+    void ioTimedOut(String mount) {
+        ioTimeouts.incrementAndGet();
+        LOG.warning("Filesystem calls on " + mount + " are timing out");
+    }
+
+    /**
+     * counts a filesystem call turned away because its mount's queue was full
+     */
+    void ioRejected() {
+        ioRejected.incrementAndGet();
+    }
+
+    /**
+     * counts the lookup of an icon that wasn't cached. A lookup made on the event
+     * dispatch thread counts as blocking it.
+     * @param start when the lookup started, from <code>System.nanoTime()</code>
+     * @param file the file whose icon was looked up
+     */
+    void iconLookedUp(long start, Object file) {
+        long nanos = record(iconLookupLatency, "Icon lookup", start, file);
+        if (SwingUtilities.isEventDispatchThread())
+            eventThreadLatency.record(nanos);
+    }
+
+    /**
+     * counts work done on the event dispatch thread
+     * @param start when the work started, from <code>System.nanoTime()</code>
+     * @param operation what the work was, for the slow operation log
+     * @param subject what the work was done on, for the slow operation log
+     */
+    void eventThreadBlocked(long start, String operation, Object subject) {
+        record(eventThreadLatency, operation, start, subject);
+    }
+
+    /**
+     * counts a call to <code>FileTree.setCurrentFile</code>, which blocks the
+     * event dispatch thread for as long as it takes
+     * @param start when the call started, from <code>System.nanoTime()</code>
+     * @param file the file that was shown
+     */
+    void currentFileSet(long start, Object file) {
+        eventThreadLatency.record(record(currentFileLatency, "setCurrentFile", start, file));
+    }
+
+    /**
+     * counts a delete
+     * @param start when the delete started, from <code>System.nanoTime()</code>
+     * @param root the file or directory deleted
+     * @param deleted the number of files and directories deleted
+     */
+    void deleted(long start, Object root, long deleted) {
+        record(deleteLatency, "Delete", start, root);
+        deletedCount.addAndGet(deleted);
+    }
+
+    /**
+     * counts a run of an operation, and logs it if it was slow
+     * @param histogram the histogram of the operation
+     * @param operation the name of the operation, for the log
+     * @param start when the run started, from <code>System.nanoTime()</code>
+     * @param subject what the operation was done on, for the log
+     * @return how long the run took, in nanoseconds
+     */
+    private long record(LatencyHistogram histogram, String operation, long start, Object subject) {
+        long nanos = System.nanoTime() - start;
+        histogram.record(nanos);
+        long threshold = slowOperationThreshold;
+        if (threshold > 0 && nanos >= threshold * 1000000)
+        {
+            slowOperationCount.incrementAndGet();
+            LOG.warning(operation + " took " + nanos / 1000000 + " ms: " + subject);
+        }
+
+        return nanos;
+    }
+
+    /**
+     * returns a number of things done divided by the time it took to do them
+     * @param count the number of things done
+     * @param histogram the times it took
+     * @return the number of things done per second, or 0 if no time was counted
+     */
+    private static double perSecond(long count, LatencyHistogram histogram) {
+        long nanos = histogram.getTotalNanos();
+        if (nanos == 0)
+            return 0;
+
+        return count * 1e9 / nanos;
+    }
+
+    /**
+     * the times directories took to list
+     */
+    private final LatencyHistogram listingLatency;
+    /**
+     * the times expansions took to show their children
+     */
+    private final LatencyHistogram expansionLatency;
+    /**
+     * the times icons took to look up
+     */
+    private final LatencyHistogram iconLookupLatency;
+    /**
+     * the times the event dispatch thread was blocked
+     */
+    private final LatencyHistogram eventThreadLatency;
+    /**
+     * the times <code>setCurrentFile</code> took
+     */
+    private final LatencyHistogram currentFileLatency;
+    /**
+     * the times deletes took
+     */
+    private final LatencyHistogram deleteLatency;
+    /**
+     * the number of entries listed
+     */
+    private final AtomicLong entriesListed;
+    /**
+     * the number of times file attributes were read
+     */
+    private final AtomicLong statCalls;
+    /**
+     * the number of icon cache hits
+     */
+    private final AtomicLong iconCacheHits;
+    /**
+     * the number of icon cache misses
+     */
+    private final AtomicLong iconCacheMisses;
+    /**
+     * the number of directories prefetched
+     */
+    private final AtomicLong prefetchedDirectories;
+    /**
+     * the number of expansions served by a prefetched listing
+     */
+    private final AtomicLong prefetchHits;
+    /**
+     * the number of expansions that found no usable prefetched listing
+     */
+    private final AtomicLong prefetchMisses;
+    /**
+     * the number of prefetched listings dropped unused
+     */
+    private final AtomicLong prefetchEvictions;
+    /**
+     * the number of filesystem calls that timed out
+     */
+    private final AtomicLong ioTimeouts;
+    /**
+     * the number of filesystem calls turned away
+     */
+    private final AtomicLong ioRejected;
+    /**
+     * the number of paths deleted
+     */
+    private final AtomicLong deletedCount;
+    /**
+     * the number of operations that were slower than the threshold
+     */
+    private final AtomicLong slowOperationCount;
+    /**
+     * the time above which operations are logged, in milliseconds, or 0
+     */
+    private volatile long slowOperationThreshold;
+    /**
+     * the name the metrics are registered under in JMX, or null
+     */
+    private ObjectName objectName;
+
+    /**
+     * where slow operations are logged
+     */
+    private static final Logger LOG = Logger.getLogger("com.arashpayan.filetree");
+    /**
+     * the number of nanoseconds in a millisecond
+     */
+    private static final double NANOS_PER_MILLI = 1000000.0;
+}
@@ -0,0 +1,202 @@
+/* This file is part of FileTree.
+
+    FileTree is free software; you can redistribute it and/or modify
+    it under the terms of the GNU General Public License (or the Lesser GPL)
+    as published by the Free Software Foundation; either version 3 of the
+    License, or (at your option) any later version.
+
+    FileTree is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+ */
+/*
+ * FileTreeMetricsMBean.java
+ *
+ * Copyright 2026 the FileTree contributors
+ */
+
+package com.arashpayan.filetree;
+
+/**
+ * The management interface of <code>FileTreeMetrics</code>, as seen through JMX
+ * by tools like JConsole. Times are in milliseconds.
+ */
+public interface FileTreeMetricsMBean {
+
+    /**
+     * returns the number of directories listed
+     * @return the number of listings
+     */
+    long getDirectoriesListed();
+
+    /**
+     * returns the number of entries read from the directories listed
+     * @return the number of entries
+     */
+    long getEntriesListed();
+
+    /**
+     * returns the rate at which entries are read while directories are listed
+     * @return the entries listed per second of listing
+     */
+    double getEntriesListedPerSecond();
+
+    /**
+     * returns the average time it took to list a directory
+     * @return the mean listing time
+     */
+    double getListingMeanMillis();
+
+    /**
+     * returns the number of times the attributes of a file were read while
+     * directories were listed or checked for changes
+     * @return the number of stat calls
+     */
+    long getStatCalls();
+
+    /**
+     * returns the number of directories expanded by the user
+     * @return the number of expansions
+     */
+    long getExpansionCount();
+
+    /**
+     * returns the average time between expanding a directory and its children
+     * being shown
+     * @return the mean expansion time
+     */
+    double getExpansionMeanMillis();
+
+    /**
+     * returns the time within which 99 out of 100 expansions showed their children
+     * @return the 99th percentile of the expansion time
+     */
+    double getExpansion99thPercentileMillis();
+
+    /**
+     * returns the longest time an expansion took to show its children
+     * @return the longest expansion time
+     */
+    double getExpansionMaxMillis();
+
+    /**
+     * returns the number of icon requests answered from the icon caches
+     * @return the number of cache hits
+     */
+    long getIconCacheHits();
+
+    /**
+     * returns the number of icon requests that weren't in the icon caches
+     * @return the number of cache misses
+     */
+    long getIconCacheMisses();
+
+    /**
+     * returns the average time it took to look up an icon that wasn't cached
+     * @return the mean icon lookup time
+     */
+    double getIconLookupMeanMillis();
+
+    /**
+     * returns the number of directories listed ahead of being expanded
+     * @return the number of prefetched directories
+     */
+    long getPrefetchedDirectories();
+
+    /**
+     * returns the number of expansions served by a prefetched listing
+     * @return the number of prefetch hits
+     */
+    long getPrefetchHits();
+
+    /**
+     * returns the number of expansions, made while prefetching, that had to
+     * list the directory anyway, because it wasn't prefetched yet or had
+     * changed since
+     * @return the number of prefetch misses
+     */
+    long getPrefetchMisses();
+
+    /**
+     * returns the share of the expansions, made while prefetching, that were
+     * served by a prefetched listing
+     * @return the hit rate, from 0 to 1
+     */
+    double getPrefetchHitRate();
+
+    /**
+     * returns the number of prefetched listings dropped unused to stay within
+     * the memory budget
+     * @return the number of wasted prefetches
+     */
+    long getPrefetchEvictions();
+
+    /**
+     * returns the number of filesystem calls that took longer than the I/O
+     * timeout, each of which marked its mount as degraded
+     * @return the number of timeouts
+     */
+    long getIoTimeouts();
+
+    /**
+     * returns the number of filesystem calls turned away because too many were
+     * queued on their mount
+     * @return the number of rejected calls
+     */
+    long getIoRejected();
+
+    /**
+     * returns the total time the event dispatch thread spent on the trees'
+     * work, during which it couldn't paint or handle input
+     * @return the time the event dispatch thread was blocked
+     */
+    double getEventThreadBlockedMillis();
+
+    /**
+     * returns the longest the event dispatch thread was blocked at a time
+     * @return the longest time the event dispatch thread was blocked
+     */
+    double getEventThreadMaxMillis();
+
+    /**
+     * returns the average time <code>setCurrentFile</code> took
+     * @return the mean time to show a file
+     */
+    double getCurrentFileMeanMillis();
+
+    /**
+     * returns the number of files and directories deleted
+     * @return the number of deleted paths
+     */
+    long getDeletedCount();
+
+    /**
+     * returns the rate at which files and directories are deleted
+     * @return the paths deleted per second of deleting
+     */
+    double getDeletesPerSecond();
+
+    /**
+     * returns the time above which an operation is logged as slow
+     * @return the threshold, or 0 if slow operations aren't logged
+     */
+    long getSlowOperationThresholdMillis();
+
+    /**
+     * sets the time above which an operation is logged as slow
+     * @param millis the threshold, or 0 to stop logging slow operations
+     */
+    void setSlowOperationThresholdMillis(long millis);
+
+    /**
+     * returns the number of operations that took longer than the threshold
+     * @return the number of slow operations
+     */
+    long getSlowOperationCount();
+
+    /**
+     * sets every counter back to 0
+     */
+    void reset();
+}
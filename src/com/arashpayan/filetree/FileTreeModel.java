@@ -0,0 +1,480 @@
+/* This file is part of FileTree.
+
+    FileTree is free software; you can redistribute it and/or modify
+    it under the terms of the GNU General Public License (or the Lesser GPL)
+    as published by the Free Software Foundation; either version 3 of the
+    License, or (at your option) any later version.
+
+    FileTree is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+ */
+/*
+ * FileTreeModel.java
+ *
+ * Copyright 2026 the FileTree contributors
+ */
+
+package com.arashpayan.filetree;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+import javax.swing.tree.DefaultTreeModel;
+
+/**
+ * The <code>TreeModel</code> of the <code>FileTree</code>. Its nodes are
+ * <code>FileTreeNode</code>s, which store directory listings compactly and only
+ * create child nodes as they're asked for. Whether a node can be expanded is
+ * decided by <code>FileTreeNode.getAllowsChildren()</code>, so unloaded directories
+ * don't need a placeholder child to show an expand handle.
+ * <p>
+ * The model can also keep the nodes of a big directory's children bounded: with
+ * a child window set, only the children created most recently keep their nodes,
+ * and older ones are let go of as new ones are asked for. Children that have
+ * been expanded and children that are pinned, like the selected ones, always
+ * keep their nodes. Since a <code>JTree</code> in large model mode asks for the
+ * rows it shows and nothing else, the nodes held stay in proportion to the
+ * viewport rather than to the size of the directory.
+ * <p>
+ * All changes to the model must be made on the event dispatch thread.
+ */
+public class FileTreeModel extends DefaultTreeModel {
+
+    /**
+     * Creates a new instance of FileTreeModel
+     * @param root the root of the tree
+     */
+    public FileTreeModel(FileTreeNode root) {
+        super(root, true);
+        windows = new WeakHashMap<FileTreeNode, ChildWindow>();
+        pinned = new HashSet<FileTreeNode>();
+    }
+
+    /**
+     * returns a child of <code>parent</code>, creating its node if necessary.
+     * With a child window set, creating the node may let go of the node of
+     * another child of <code>parent</code> that was created longer ago.
+     * @param parent a node of this model
+     * @param index the index of the child
+     * @return the child at <code>index</code>
+     */
+    public Object getChild(Object parent, int index) {
+        FileTreeNode node = (FileTreeNode)parent;
+        if (childWindow == 0 || node.getChildCount() <= childWindow)
+            return node.getChildAt(index);
+
+        FileTreeNode child = node.getCreatedChild(index);
+        if (child != null)
+            return child;
+
+        child = node.getChildAt(index);
+        ChildWindow window = windows.get(node);
+        if (window == null)
+        {
+            window = new ChildWindow(childWindow);
+            windows.put(node, window);
+        }
+        int oldest = window.add(index);
+        // the indices may be stale after children were added or removed, which
+        // only means some other stateless child is let go of
+        if (oldest >= 0 && oldest != index && oldest < node.getChildCount()
+                && !pinned.contains(node.getCreatedChild(oldest)))
+            node.releaseChild(oldest);
+
+        return child;
+    }
+
+    /**
+     * returns the most child nodes a directory keeps
+     * @return the size of the child window, or 0 if every child keeps its node
+     */
+    int getChildWindow() {
+        return childWindow;
+    }
+
+    /**
+     * sets the most child nodes a directory keeps. Directories with fewer
+     * children keep all of them.
+     * @param childWindow the size of the child window, or 0 to keep every child's node
+     */
+    void setChildWindow(int childWindow) {
+        if (childWindow < 0)
+            throw new IllegalArgumentException("childWindow must not be negative");
+
+        this.childWindow = childWindow;
+        windows.clear();
+    }
+
+    /**
+     * keeps a node from being let go of by its parent, or allows it again
+     * @param node the node
+     * @param pin true to keep the node, false to allow letting go of it
+     */
+    void setPinned(FileTreeNode node, boolean pin) {
+        if (pin)
+            pinned.add(node);
+        else
+            pinned.remove(node);
+    }
+
+    /**
+     * returns true if <code>node</code> can't be expanded, which is the case for
+     * nodes that don't allow children, and for directories that were found to
+     * be empty or unreadable when they were probed
+     * @param node a node of this model
+     * @return true if <code>node</code> is shown without an expand handle
+     */
+    public boolean isLeaf(Object node) {
+        if (((FileTreeNode)node).isProbedEmpty())
+            return true;
+
+        return super.isLeaf(node);
+    }
+
+    /**
+     * records the results of probing child directories of <code>node</code>,
+     * firing a change for the children whose leaf state changed. Results for a
+     * listing that has been replaced since are dropped.
+     * @param node the node whose children were probed
+     * @param listing the listing of <code>node</code> when the probe started
+     * @param entries the entries of <code>listing</code> that were probed
+     * @param empty for each entry, whether the directory was empty or unreadable
+     */
+    void setProbed(FileTreeNode node, DirectoryListing listing, int[] entries, boolean[] empty) {
+        if (node.getListing() != listing)
+            return;
+
+        List<Integer> changed = new ArrayList<Integer>();
+        for (int i=0; i<entries.length; i++)
+        {
+            if (listing.is(entries[i], DirectoryListing.EMPTY) != empty[i])
+            {
+                listing.setEmpty(entries[i], empty[i]);
+                changed.add(entries[i]);
+            }
+        }
+        if (!changed.isEmpty())
+            nodesChanged(node, indicesOf(node, changed));
+    }
+
+    /**
+     * returns the <code>File</code> represented by a node of this model
+     * @param node a node of this model
+     * @return the <code>File</code>, or null if <code>node</code> doesn't represent a file
+     */
+    public File getFile(Object node) {
+        if (node instanceof FileTreeNode)
+            return ((FileTreeNode)node).getFile();
+
+        return null;
+    }
+
+    /**
+     * replaces the children of <code>node</code> with entries of a listing
+     * @param node the node to update
+     * @param listing the listing of the directory represented by <code>node</code>
+     * @param view the indices of the entries to show, in display order
+     */
+    void setChildren(FileTreeNode node, DirectoryListing listing, int[] view) {
+        node.setChildren(listing, view);
+        windows.remove(node);
+        nodeStructureChanged(node);
+    }
+
+    /**
+     * replaces the children of <code>node</code> with a single placeholder node
+     * @param node the node to update
+     * @param placeholder the text of the placeholder
+     */
+    void setPlaceholder(FileTreeNode node, String placeholder) {
+        node.setPlaceholder(placeholder);
+        windows.remove(node);
+        nodeStructureChanged(node);
+    }
+
+    /**
+     * merges entries of a listing into the children of <code>node</code>, removing any
+     * placeholder first
+     * @param node the node to update
+     * @param listing the listing of the directory represented by <code>node</code>
+     * @param sorted the indices of the entries to add, in display order
+     */
+    void mergeChildren(FileTreeNode node, DirectoryListing listing, int[] sorted) {
+        removePlaceholders(node);
+        if (sorted.length == 0)
+        {
+            node.mergeChildren(listing, sorted);
+            return;
+        }
+
+        nodesWereInserted(node, node.mergeChildren(listing, sorted));
+    }
+
+    /**
+     * removes the children of <code>node</code> that don't represent files
+     * @param node the node to update
+     */
+    void removePlaceholders(FileTreeNode node) {
+        for (int i=node.getChildCount()-1; i>=0; i--)
+        {
+            if (node.isAddedChild(i) && !node.getChildAt(i).representsFile())
+            {
+                FileTreeNode child = node.removeChildAt(i);
+                nodesWereRemoved(node, new int[] { i }, new Object[] { child });
+            }
+        }
+    }
+
+    /**
+     * applies changes read from the disk to the children of <code>node</code>,
+     * firing only the events needed to describe them: removals first, then
+     * changes, then insertions. Children that didn't change keep their nodes, so
+     * their expansion state and selection are kept too.
+     * @param node the node of the directory that changed
+     * @param changed fresh entries of the directory. Entries that are new are added,
+     * and entries whose attributes differ are updated.
+     * @param removed the names of entries that no longer exist. May be null.
+     * @param complete if true, <code>changed</code> is a complete listing of the
+     * directory, and any entry not in it is removed
+     * @param showFiles whether regular files are shown
+     * @param showHiddenFiles whether hidden files are shown
+     */
+    void applyChanges(FileTreeNode node, DirectoryListing changed, Collection<String> removed,
+            boolean complete, boolean showFiles, boolean showHiddenFiles) {
+        DirectoryListing listing = node.getListing();
+        if (listing == null)
+            return;
+
+        Map<String, Integer> indexByName = listing.getIndexByName();
+        List<Integer> gone = new ArrayList<Integer>();
+        List<Integer> deleted = new ArrayList<Integer>();
+        List<Integer> updated = new ArrayList<Integer>();
+        List<Integer> added = new ArrayList<Integer>();
+
+        if (removed != null)
+        {
+            for (String name:removed)
+            {
+                Integer entry = indexByName.remove(name);
+                if (entry != null)
+                {
+                    gone.add(entry);
+                    deleted.add(entry);
+                }
+            }
+        }
+
+        for (int i=0; i<changed.size(); i++)
+        {
+            Integer entry = indexByName.remove(changed.getName(i));
+            if (entry == null)
+                added.add(listing.add(changed, i));
+            else if (listing.hasSameAttributes(entry, changed, i))
+                continue;
+            else if (listing.is(entry, DirectoryListing.DIRECTORY) != changed.is(i, DirectoryListing.DIRECTORY))
+            {
+                // a file replaced by a directory or the other way around sorts
+                // differently, and needs a new node anyway
+                gone.add(entry);
+                deleted.add(entry);
+                added.add(listing.add(changed, i));
+            }
+            else
+            {
+                boolean wasShown = listing.isShown(entry, showFiles, showHiddenFiles);
+                listing.copyAttributes(entry, changed, i);
+                boolean isShown = listing.isShown(entry, showFiles, showHiddenFiles);
+                if (wasShown && !isShown)
+                    gone.add(entry);
+                else if (isShown && !wasShown)
+                    added.add(entry);
+                else if (isShown)
+                    updated.add(entry);
+            }
+        }
+
+        // whatever is left wasn't in the complete listing
+        if (complete)
+        {
+            gone.addAll(indexByName.values());
+            deleted.addAll(indexByName.values());
+        }
+
+        int[] removedIndices = indicesOf(node, gone);
+        for (int entry:deleted)
+            listing.markDeleted(entry);
+        if (removedIndices.length > 0)
+            nodesWereRemoved(node, removedIndices, node.removeChildren(removedIndices));
+
+        if (!updated.isEmpty())
+            nodesChanged(node, indicesOf(node, updated));
+
+        int[] shown = new int[added.size()];
+        int shownCount = 0;
+        for (int entry:added)
+        {
+            if (listing.isShown(entry, showFiles, showHiddenFiles))
+                shown[shownCount++] = entry;
+        }
+        if (shownCount > 0)
+            nodesWereInserted(node, node.mergeChildren(listing, listing.sort(Arrays.copyOf(shown, shownCount))));
+    }
+
+    /**
+     * returns the indices of the children of <code>node</code> that show the
+     * given entries of its listing. Entries that aren't shown are skipped.
+     * @param node the node whose children to look in
+     * @param entries the indices of the entries in the node's listing
+     * @return the child indices, in ascending order
+     */
+    private static int[] indicesOf(FileTreeNode node, List<Integer> entries) {
+        if (entries.isEmpty())
+            return new int[0];
+
+        // one pass over the children instead of a search per entry
+        int[] childByEntry = new int[node.getListing().size()];
+        Arrays.fill(childByEntry, -1);
+        for (int i=0; i<node.getChildCount(); i++)
+        {
+            int entry = node.getEntry(i);
+            if (entry >= 0)
+                childByEntry[entry] = i;
+        }
+
+        int[] indices = new int[entries.size()];
+        int count = 0;
+        for (int entry:entries)
+        {
+            if (childByEntry[entry] >= 0)
+                indices[count++] = childByEntry[entry];
+        }
+        indices = Arrays.copyOf(indices, count);
+        Arrays.sort(indices);
+        return indices;
+    }
+
+    /**
+     * re-applies the file and hidden file filters to the children of
+     * <code>node</code>, removing the children that are filtered out now and
+     * inserting the entries that aren't anymore. The other children are untouched.
+     * @param node the node to filter
+     * @param showFiles whether regular files are shown
+     * @param showHiddenFiles whether hidden files are shown
+     */
+    void refilter(FileTreeNode node, boolean showFiles, boolean showHiddenFiles) {
+        DirectoryListing listing = node.getListing();
+        if (listing == null)
+            return;
+
+        boolean[] inView = new boolean[listing.size()];
+        int[] removed = new int[node.getChildCount()];
+        int removedCount = 0;
+        for (int i=0; i<node.getChildCount(); i++)
+        {
+            if (node.isAddedChild(i))
+                continue;
+            int entry = node.getEntry(i);
+            inView[entry] = true;
+            if (!listing.isShown(entry, showFiles, showHiddenFiles))
+                removed[removedCount++] = i;
+        }
+        if (removedCount > 0)
+        {
+            removed = Arrays.copyOf(removed, removedCount);
+            nodesWereRemoved(node, removed, node.removeChildren(removed));
+        }
+
+        int[] added = new int[listing.size()];
+        int addedCount = 0;
+        for (int entry=0; entry<listing.size(); entry++)
+        {
+            if (!inView[entry] && listing.isShown(entry, showFiles, showHiddenFiles))
+                added[addedCount++] = entry;
+        }
+        if (addedCount > 0)
+            nodesWereInserted(node, node.mergeChildren(listing, listing.sort(Arrays.copyOf(added, addedCount))));
+    }
+
+    /**
+     * removes <code>node</code> from its parent
+     * @param node the node to remove
+     */
+    public void removeNode(FileTreeNode node) {
+        FileTreeNode parent = node.getParent();
+        if (parent == null)
+            throw new IllegalArgumentException("node does not have a parent.");
+
+        int index = parent.getIndex(node);
+        int entry = parent.getEntry(index);
+        parent.removeChildAt(index);
+        // keep the entry from coming back when the listing is filtered again
+        if (entry >= 0)
+            parent.getListing().markDeleted(entry);
+        nodesWereRemoved(parent, new int[] { index }, new Object[] { node });
+    }
+
+    /**
+     * the most child nodes a directory keeps, or 0 for no limit
+     */
+    private int childWindow;
+    /**
+     * the children created most recently, by directory. Only directories with
+     * more children than the window have one.
+     */
+    private final Map<FileTreeNode, ChildWindow> windows;
+    /**
+     * the nodes that are never let go of, whatever the child window
+     */
+    private final Set<FileTreeNode> pinned;
+
+    /**
+     * the indices of the children of one directory whose nodes were created
+     * most recently
+     */
+    private static class ChildWindow {
+        /**
+         * Creates a new instance of ChildWindow
+         * @param size the number of children to remember
+         */
+        ChildWindow(int size) {
+            indices = new int[size];
+        }
+
+        /**
+         * remembers a child whose node was created
+         * @param childIndex the index of the child
+         * @return the index of the child created longest ago, which no longer
+         * fits in the window, or -1 if the window isn't full yet
+         */
+        int add(int childIndex) {
+            int oldest = count == indices.length ? indices[next] : -1;
+            indices[next] = childIndex;
+            next = (next + 1) % indices.length;
+            if (count < indices.length)
+                count++;
+
+            return oldest;
+        }
+
+        /**
+         * the remembered indices, in a ring
+         */
+        private final int[] indices;
+        /**
+         * where the next index goes
+         */
+        private int next;
+        /**
+         * the number of indices remembered
+         */
+        private int count;
+    }
+}
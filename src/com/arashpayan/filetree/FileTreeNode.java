@@ -20,23 +20,669 @@
 package com.arashpayan.filetree;
 
 import java.io.File;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Enumeration;
+import javax.swing.tree.TreeNode;
 
 /**
- * A class used for representations of <code>File</code> objects in the
- * <code>FileTree</code>.
+ * A node of the <code>FileTree</code>, representing a <code>File</code>.
+ * <p>
+ * To keep large trees small, a node doesn't hold its <code>File</code> or its
+ * attributes. It only knows its parent and its index in the parent's
+ * <code>DirectoryListing</code>, where the name and the attribute snapshot taken
+ * when the directory was read are stored, and derives its path on demand. Child
+ * nodes are only created when the tree asks for them. Nodes that don't represent
+ * a file, such as the "Loading..." placeholder, just carry a label.
  * @author Arash Payan (http://www.arashpayan.com)
  */
-public class FileTreeNode {
-    
+public class FileTreeNode implements TreeNode {
+
     /**
-     * Creates a new instance of FileTreeNode
+     * Creates a new instance of FileTreeNode that represents a root of the tree
      * @param file The <code>File</code> that will be represented by this class.
      */
     public FileTreeNode(File file) {
         if (file == null)
             throw new IllegalArgumentException("Null file not allowed");
 
-        this.file = file;
+        entries = new DirectoryListing(1);
+        index = entries.add(file, null, true);
+        label = null;
+    }
+
+    /**
+     * Creates a new instance of FileTreeNode that doesn't represent a file
+     * @param label the text shown for the node
+     * @param allowsChildren whether the node can have children
+     */
+    FileTreeNode(String label, boolean allowsChildren) {
+        this.label = label;
+        this.allowsChildren = allowsChildren;
+        entries = null;
+        index = -1;
+    }
+
+    /**
+     * Creates a new instance of FileTreeNode for an entry of a directory listing
+     * @param parent the node of the directory
+     * @param index the index of the entry in the listing of <code>parent</code>
+     */
+    private FileTreeNode(FileTreeNode parent, int index) {
+        this.parent = parent;
+        this.entries = parent.listing;
+        this.index = index;
+        label = null;
+    }
+
+    /**
+     * returns the <code>File</code> represented by this node. The <code>File</code> is
+     * created on every call.
+     * @return the <code>File</code>, or null if this node doesn't represent a file
+     */
+    public File getFile() {
+        if (entries == null)
+            return null;
+
+        return entries.getFile(index, parent == null ? null : parent.getFile());
+    }
+
+    /**
+     * returns the name of the file represented by this node
+     * @return the name of the file, or the label if this node doesn't represent a file
+     */
+    public String getName() {
+        if (entries == null)
+            return label;
+
+        return entries.getName(index);
+    }
+
+    /**
+     * returns true if the file was a directory when it was read
+     * @return true if the file is a directory
+     */
+    public boolean isDirectory() {
+        return entries != null && entries.is(index, DirectoryListing.DIRECTORY);
+    }
+
+    /**
+     * returns true if the file was a regular file when it was read
+     * @return true if the file is a regular file
+     */
+    public boolean isFile() {
+        return entries != null && entries.is(index, DirectoryListing.FILE);
+    }
+
+    /**
+     * returns true if the file was hidden when it was read
+     * @return true if the file is hidden
+     */
+    public boolean isHidden() {
+        return entries != null && entries.is(index, DirectoryListing.HIDDEN);
+    }
+
+    /**
+     * returns true if any of the file's execute permission bits were set when it
+     * was read. Always false on Windows, which has no such bits.
+     * @return true if the file is executable
+     */
+    public boolean isExecutable() {
+        return entries != null && entries.is(index, DirectoryListing.EXECUTABLE);
+    }
+
+    /**
+     * returns the size of the file, in bytes, when it was read
+     * @return the size of the file
+     */
+    public long getSize() {
+        return entries == null ? 0 : entries.getSize(index);
+    }
+
+    /**
+     * returns the last-modified time of the file, in milliseconds since the epoch,
+     * when it was read
+     * @return the last-modified time of the file
+     */
+    public long getLastModified() {
+        return entries == null ? 0 : entries.getLastModified(index);
+    }
+
+    /**
+     * returns the total size of this directory and everything below it, if the
+     * tree is showing sizes and has started adding it up
+     * @return the size of this directory, or null if it isn't known
+     */
+    public DirectorySize getDirectorySize() {
+        return directorySize;
+    }
+
+    /**
+     * sets the total size of this directory
+     * @param directorySize the size of this directory
+     */
+    void setDirectorySize(DirectorySize directorySize) {
+        this.directorySize = directorySize;
+    }
+
+    /**
+     * returns the listing of this directory, or null if it hasn't been read
+     * @return the listing the children of this node come from
+     */
+    DirectoryListing getListing() {
+        return listing;
+    }
+
+    /**
+     * replaces the children of this node with the entries of <code>listing</code>
+     * given by <code>view</code>
+     * @param listing the listing of this directory
+     * @param view the indices of the entries to show, in display order
+     */
+    void setChildren(DirectoryListing listing, int[] view) {
+        detachChildren();
+        this.listing = listing;
+        this.view = view;
+        children = new FileTreeNode[view.length];
+        childCount = view.length;
+    }
+
+    /**
+     * replaces the children of this node with a single node that doesn't
+     * represent a file, such as a "Loading..." placeholder
+     * @param placeholder the text of the node
+     */
+    void setPlaceholder(String placeholder) {
+        detachChildren();
+        listing = null;
+        view = null;
+        children = null;
+        addChild(new FileTreeNode(placeholder, false));
+    }
+
+    /**
+     * adds a child that isn't an entry of this node's listing, such as a root or
+     * a placeholder, to the end of this node
+     * @param child the child to add
+     */
+    void addChild(FileTreeNode child) {
+        ensureCapacity(childCount + 1);
+        child.parent = this;
+        view[childCount] = -1;
+        children[childCount++] = child;
+    }
+
+    /**
+     * returns true if the child at <code>childIndex</code> isn't an entry of this
+     * node's listing, which is the case for roots and placeholders
+     * @param childIndex the index of the child
+     * @return true if the child was added with <code>addChild</code>
+     */
+    boolean isAddedChild(int childIndex) {
+        return view[childIndex] < 0;
+    }
+
+    /**
+     * returns true if this node is a directory that hasn't been loaded, and was
+     * found to be empty or unreadable when it was probed
+     * @return true if expanding this node would show no children
+     */
+    boolean isProbedEmpty() {
+        return listing == null && entries != null && entries.is(index, DirectoryListing.EMPTY);
+    }
+
+    /**
+     * returns true if this node represents a file, as opposed to a placeholder
+     * @return true if <code>getFile()</code> doesn't return null
+     */
+    boolean representsFile() {
+        return entries != null;
+    }
+
+    /**
+     * merges entries of the listing into the children of this node, which are
+     * already in display order. If this node has no listing yet, it adopts
+     * <code>listing</code>.
+     * @param listing the listing of this directory
+     * @param sorted indices of the entries to merge, in display order
+     * @return the indices the new children have among the children of this node
+     */
+    int[] mergeChildren(DirectoryListing listing, int[] sorted) {
+        this.listing = listing;
+        int[] inserted = new int[sorted.length];
+        if (hasAddedChildren())
+        {
+            mergeAll(listing, sorted, inserted);
+            return inserted;
+        }
+
+        // where each new entry goes among the current children, searching only
+        // after the one before it. A batch that sorts after the last child is
+        // appended after a single comparison.
+        int[] positions = new int[sorted.length];
+        int low = 0;
+        for (int j=0; j<sorted.length; j++)
+        {
+            String key = listing.getSortKey(sorted[j]);
+            int high = childCount;
+            if (low < high && listing.compare(view[high - 1], sorted[j], key) <= 0)
+                low = high;
+            while (low < high)
+            {
+                int mid = (low + high) >>> 1;
+                if (listing.compare(view[mid], sorted[j], key) <= 0)
+                    low = mid + 1;
+                else
+                    high = mid;
+            }
+            positions[j] = low;
+        }
+
+        // move the current children up from the end, dropping the new ones
+        // into the gaps
+        ensureCapacity(childCount + sorted.length);
+        int i = childCount - 1;
+        int k = childCount + sorted.length - 1;
+        for (int j=sorted.length-1; j>=0; j--)
+        {
+            while (i >= positions[j])
+            {
+                view[k] = view[i];
+                children[k--] = children[i--];
+            }
+            view[k] = sorted[j];
+            children[k] = null;
+            inserted[j] = k--;
+        }
+        childCount += sorted.length;
+        return inserted;
+    }
+
+    /**
+     * merges entries of the listing into the children of this node one by one,
+     * keeping the children that aren't entries where they are
+     * @param listing the listing of this directory
+     * @param sorted indices of the entries to merge, in display order
+     * @param inserted receives the indices the new children have
+     */
+    private void mergeAll(DirectoryListing listing, int[] sorted, int[] inserted) {
+        int[] mergedView = new int[childCount + sorted.length];
+        FileTreeNode[] mergedChildren = new FileTreeNode[mergedView.length];
+        int i = 0, j = 0, k = 0;
+        while (i < childCount || j < sorted.length)
+        {
+            if (j == sorted.length || (i < childCount
+                    && (view[i] < 0 || listing.compare(view[i], sorted[j]) <= 0)))
+            {
+                mergedView[k] = view[i];
+                mergedChildren[k++] = children[i++];
+            }
+            else
+            {
+                inserted[j++] = k;
+                mergedView[k++] = sorted[j - 1];
+            }
+        }
+
+        view = mergedView;
+        children = mergedChildren;
+        childCount = mergedView.length;
+    }
+
+    /**
+     * returns true if any child was added with <code>addChild</code>
+     * @return true if some children aren't entries of the listing
+     */
+    private boolean hasAddedChildren() {
+        for (int i=0; i<childCount; i++)
+        {
+            if (view[i] < 0)
+                return true;
+        }
+
+        return false;
+    }
+
+    /**
+     * removes a child of this node
+     * @param childIndex the index of the child among the children of this node
+     * @return the removed child
+     */
+    FileTreeNode removeChildAt(int childIndex) {
+        FileTreeNode child = getChildAt(childIndex);
+        int moved = childCount - childIndex - 1;
+        System.arraycopy(view, childIndex + 1, view, childIndex, moved);
+        System.arraycopy(children, childIndex + 1, children, childIndex, moved);
+        children[--childCount] = null;
+        child.parent = null;
+        return child;
+    }
+
+    /**
+     * removes several children of this node at once
+     * @param childIndices the indices of the children to remove, in ascending order
+     * @return the removed children
+     */
+    FileTreeNode[] removeChildren(int[] childIndices) {
+        FileTreeNode[] removed = new FileTreeNode[childIndices.length];
+        for (int i=0; i<childIndices.length; i++)
+        {
+            removed[i] = getChildAt(childIndices[i]);
+            removed[i].parent = null;
+        }
+
+        // slide the remaining children down over the removed ones in a single pass
+        int k = childIndices[0];
+        for (int i=childIndices[0], r=0; i<childCount; i++)
+        {
+            if (r < childIndices.length && childIndices[r] == i)
+            {
+                r++;
+                continue;
+            }
+            view[k] = view[i];
+            children[k++] = children[i];
+        }
+        for (int i=k; i<childCount; i++)
+            children[i] = null;
+        childCount = k;
+
+        return removed;
+    }
+
+    /**
+     * sorts the children of this node again, after the order of its listing
+     * changed. The children keep their nodes. Children that aren't entries of
+     * the listing, like placeholders, are moved to the front.
+     */
+    void sortChildren() {
+        if (listing == null || childCount == 0)
+            return;
+
+        int[] entries = new int[childCount];
+        int entryCount = 0;
+        FileTreeNode[] nodeByEntry = new FileTreeNode[listing.size()];
+        FileTreeNode[] sortedChildren = new FileTreeNode[children.length];
+        int k = 0;
+        for (int i=0; i<childCount; i++)
+        {
+            if (view[i] < 0)
+                sortedChildren[k++] = children[i];
+            else
+            {
+                entries[entryCount++] = view[i];
+                nodeByEntry[view[i]] = children[i];
+            }
+        }
+
+        int[] sortedView = new int[view.length];
+        Arrays.fill(sortedView, 0, k, -1);
+        for (int entry:listing.sort(Arrays.copyOf(entries, entryCount)))
+        {
+            sortedView[k] = entry;
+            sortedChildren[k++] = nodeByEntry[entry];
+        }
+        view = sortedView;
+        children = sortedChildren;
+    }
+
+    /**
+     * returns the index in this node's listing of the entry shown by a child
+     * @param childIndex the index of the child
+     * @return the index of the entry, or -1 if the child isn't an entry of the listing
+     */
+    int getEntry(int childIndex) {
+        return view[childIndex];
+    }
+
+    /**
+     * returns the index of the child with the given name. When the children that
+     * are entries of the listing are sorted by name, they're binary searched
+     * rather than scanned.
+     * @param name the name of the child
+     * @return the index of the child, or -1 if no child has that name
+     */
+    int indexOfChild(String name) {
+        if (listing != null)
+        {
+            int childIndex;
+            if (listing.getSortOrder().isByName())
+            {
+                childIndex = searchChildren(name, false);
+                // with directories first, the kind of the child has to be guessed
+                if (childIndex < 0 && listing.isDirectoriesFirst())
+                    childIndex = searchChildren(name, true);
+            }
+            else
+                childIndex = scanChildren(name);
+            if (childIndex >= 0)
+                return childIndex;
+        }
+
+        // children that aren't entries of the listing, like the roots of "Computer"
+        for (int i=0; i<childCount; i++)
+        {
+            if (view[i] < 0 && name.equals(getChildAt(i).getName()))
+                return i;
+        }
+
+        return -1;
+    }
+
+    /**
+     * binary searches the children that are entries of the listing for a name
+     * @param name the name of the child
+     * @param directory whether the child is a directory
+     * @return the index of the child, or -1 if it wasn't found
+     */
+    private int searchChildren(String name, boolean directory) {
+        int low = 0;
+        int high = childCount - 1;
+        while (low <= high)
+        {
+            int mid = (low + high) >>> 1;
+            if (view[mid] < 0)
+                return scanChildren(name);  // an added child breaks the order
+
+            int cmp = listing.compare(view[mid], directory, name);
+            if (cmp < 0)
+                low = mid + 1;
+            else if (cmp > 0)
+                high = mid - 1;
+            else
+                return mid;
+        }
+
+        return -1;
+    }
+
+    /**
+     * binary searches the children that are entries of the listing for a node,
+     * which works as long as they're in the listing's display order
+     * @param child the node to look for
+     * @return the index of <code>child</code>, or -1 if it wasn't found that way
+     */
+    private int searchChild(FileTreeNode child) {
+        if (listing == null || child.entries != listing)
+            return -1;
+
+        int low = 0;
+        int high = childCount - 1;
+        while (low <= high)
+        {
+            int mid = (low + high) >>> 1;
+            if (view[mid] < 0)
+                return -1;  // an added child breaks the order
+
+            int cmp = listing.compare(view[mid], child.index);
+            if (cmp < 0)
+                low = mid + 1;
+            else if (cmp > 0)
+                high = mid - 1;
+            else
+                return children[mid] == child ? mid : -1;
+        }
+
+        return -1;
+    }
+
+    /**
+     * looks through the children that are entries of the listing one by one
+     * @param name the name of the child
+     * @return the index of the child, or -1 if it wasn't found
+     */
+    private int scanChildren(String name) {
+        for (int i=0; i<childCount; i++)
+        {
+            if (view[i] >= 0 && listing.getName(view[i]).equals(name))
+                return i;
+        }
+
+        return -1;
+    }
+
+    /**
+     * makes room for <code>capacity</code> children
+     * @param capacity the number of children to make room for
+     */
+    private void ensureCapacity(int capacity) {
+        if (children == null)
+        {
+            view = new int[capacity];
+            children = new FileTreeNode[capacity];
+        }
+        else if (capacity > children.length)
+        {
+            capacity = Math.max(capacity, children.length * 2);
+            view = Arrays.copyOf(view, capacity);
+            children = Arrays.copyOf(children, capacity);
+        }
+    }
+
+    /**
+     * cuts the children that have been created loose from this node
+     */
+    private void detachChildren() {
+        for (int i=0; i<childCount; i++)
+        {
+            if (children[i] != null)
+                children[i].parent = null;
+        }
+        childCount = 0;
+    }
+
+    /**
+     * returns the child at <code>childIndex</code>, creating its node if necessary
+     * @param childIndex the index of the child
+     * @return the child at <code>childIndex</code>
+     */
+    public FileTreeNode getChildAt(int childIndex) {
+        if (childIndex < 0 || childIndex >= childCount)
+            throw new ArrayIndexOutOfBoundsException(childIndex);
+
+        FileTreeNode child = children[childIndex];
+        if (child == null)
+        {
+            child = new FileTreeNode(this, view[childIndex]);
+            children[childIndex] = child;
+        }
+
+        return child;
+    }
+
+    /**
+     * returns the child at <code>childIndex</code> if its node has been created
+     * @param childIndex the index of the child
+     * @return the child at <code>childIndex</code>, or null if it hasn't been created
+     */
+    FileTreeNode getCreatedChild(int childIndex) {
+        return children[childIndex];
+    }
+
+    /**
+     * lets go of the node of a child that has never been expanded, so it can
+     * be garbage collected. Asking for the child again creates a new node.
+     * Children that hold a listing or children of their own keep their nodes.
+     * @param childIndex the index of the child
+     * @return true if the child's node was let go of
+     */
+    boolean releaseChild(int childIndex) {
+        FileTreeNode child = children[childIndex];
+        if (child == null || view[childIndex] < 0 || child.listing != null || child.childCount > 0)
+            return false;
+
+        children[childIndex] = null;
+        return true;
+    }
+
+    /**
+     * returns the number of children of this node
+     * @return the number of children
+     */
+    public int getChildCount() {
+        return childCount;
+    }
+
+    /**
+     * returns the parent of this node
+     * @return the parent, or null if this node is a root or has been removed
+     */
+    public FileTreeNode getParent() {
+        return parent;
+    }
+
+    /**
+     * returns the index of <code>node</code> among the children of this node
+     * @param node the child to look for
+     * @return the index of <code>node</code>, or -1 if it isn't a child of this node
+     */
+    public int getIndex(TreeNode node) {
+        if (node == null || node.getParent() != this)
+            return -1;
+
+        int childIndex = searchChild((FileTreeNode)node);
+        if (childIndex >= 0)
+            return childIndex;
+
+        for (int i=0; i<childCount; i++)
+        {
+            if (children[i] == node)
+                return i;
+        }
+
+        return -1;
+    }
+
+    /**
+     * returns true if this node can have children, which is the case for
+     * directories the user can navigate into
+     * @return true if this node can have children
+     */
+    public boolean getAllowsChildren() {
+        if (entries == null)
+            return allowsChildren;
+
+        return entries.is(index, DirectoryListing.EXPANDABLE);
+    }
+
+    /**
+     * returns true if this node has no children
+     * @return true if this node has no children
+     */
+    public boolean isLeaf() {
+        return childCount == 0;
+    }
+
+    /**
+     * returns the children of this node, creating their nodes
+     * @return an enumeration of the children of this node
+     */
+    public Enumeration<FileTreeNode> children() {
+        FileTreeNode[] all = new FileTreeNode[childCount];
+        for (int i=0; i<childCount; i++)
+            all[i] = getChildAt(i);
+
+        return Collections.enumeration(Arrays.asList(all));
     }
 
     /**
@@ -45,12 +691,15 @@ public class FileTreeNode {
      * @return the representation of this <code>File</code> as a <code>String</code>
      */
     public String toString() {
-        String name = file.getName();
+        if (entries == null)
+            return label;
+
+        String name = getName();
         if (!Constants.isWindows)
             return name;
 
         if (name.length() == 0)
-            return file.getPath();
+            return getFile().getPath();
 
         if (Constants.isVista)
         {
@@ -71,9 +720,47 @@ public class FileTreeNode {
     }
 
     /**
-     * the object being represented
+     * the parent of this node
+     */
+    private FileTreeNode parent;
+    /**
+     * the listing this node is an entry of. Null if this node doesn't represent a file.
+     */
+    private final DirectoryListing entries;
+    /**
+     * the index of this node in <code>entries</code>
      */
-    public File file;
+    private final int index;
+    /**
+     * the text shown for a node that doesn't represent a file
+     */
+    private final String label;
+    /**
+     * whether a node that doesn't represent a file can have children
+     */
+    private boolean allowsChildren;
+    /**
+     * the listing of this directory, once it has been read
+     */
+    private DirectoryListing listing;
+    /**
+     * for each child, the index of its entry in <code>listing</code>, or -1 if it
+     * doesn't represent a file
+     */
+    private int[] view;
+    /**
+     * the child nodes that have been created so far
+     */
+    private FileTreeNode[] children;
+    /**
+     * the number of children
+     */
+    private int childCount;
+    /**
+     * the total size of this directory, once it's being added up
+     */
+    private DirectorySize directorySize;
+
     /**
      * the hex string that represents 'My Computer' in Windows
      */
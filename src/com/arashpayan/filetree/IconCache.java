@@ -0,0 +1,272 @@
+/* This file is part of FileTree.
+
+    FileTree is free software; you can redistribute it and/or modify
+    it under the terms of the GNU General Public License (or the Lesser GPL)
+    as published by the Free Software Foundation; either version 3 of the
+    License, or (at your option) any later version.
+
+    FileTree is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+ */
+/*
+ * IconCache.java
+ *
+ * Copyright 2026 the FileTree contributors
+ */
+
+package com.arashpayan.filetree;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import javax.swing.Icon;
+import javax.swing.SwingUtilities;
+
+/**
+ * A bounded, least-recently-used cache of the icons shown in the <code>FileTree</code>.
+ * Most files share their icon with every other file of the same kind (directories,
+ * files with the same extension, executables), so icons are cached by a signature
+ * of the file's kind rather than by file. Only files whose icon can really be
+ * unique, such as Windows programs and shortcuts, OS X application bundles and
+ * filesystem roots, are looked up individually.
+ * <p>
+ * Icons are looked up asynchronously. A cache miss returns null and schedules the
+ * lookup, and the callback passed with the request is run on the event dispatch
+ * thread once the icon is in the cache.
+ */
+public class IconCache {
+    
+    /**
+     * Looks up the icon for a file. Implementations are called on the cache's
+     * executor.
+     */
+    public interface IconSource {
+        /**
+         * returns the icon for <code>file</code>
+         * @param file the file to look up
+         * @return the icon for the file, or null if it has none
+         */
+        Icon getIcon(File file);
+    }
+    
+    /**
+     * Creates a new instance of IconCache
+     * @param maxSize the maximum number of icons kept in the cache
+     * @param source looks up the icons that aren't in the cache
+     * @param executor the executor the lookups are run on
+     */
+    public IconCache(final int maxSize, IconSource source, Executor executor) {
+        if (maxSize < 1)
+            throw new IllegalArgumentException("maxSize must be positive");
+        if (source == null || executor == null)
+            throw new IllegalArgumentException("Null argument not allowed");
+        
+        this.source = source;
+        this.executor = executor;
+        icons = new LinkedHashMap<String, Icon>(16, 0.75f, true) {
+            protected boolean removeEldestEntry(Map.Entry<String, Icon> eldest) {
+                return size() > maxSize;
+            }
+        };
+        pending = new HashSet<String>();
+    }
+    
+    /**
+     * returns the cached icon for <code>fileTreeNode</code>. If the icon isn't cached
+     * yet, this method returns null and looks it up in the background, running
+     * <code>onResolved</code> on the event dispatch thread when it's ready.
+     * @param fileTreeNode the file to get the icon for
+     * @param onResolved called once the icon has been looked up. May be null.
+     * @return the icon, or null if it isn't in the cache yet or the file has no icon
+     */
+    public Icon getIcon(FileTreeNode fileTreeNode, final Runnable onResolved) {
+        final String key = getKey(fileTreeNode);
+        final File file;
+        synchronized (this) {
+            Icon icon = icons.get(key);
+            if (icon != null || icons.containsKey(key))
+            {
+                hits++;
+                if (metrics != null)
+                    metrics.iconCacheHit();
+                return icon;
+            }
+            misses++;
+            if (metrics != null)
+                metrics.iconCacheMiss();
+            if (!pending.add(key))
+                return null;    // already being looked up
+        }
+        file = fileTreeNode.getFile();
+        
+        Runnable lookup = new Runnable() {
+            public void run() {
+                Icon icon = null;
+                long start = System.nanoTime();
+                try { icon = source.getIcon(file); }
+                catch (Exception e) { e.printStackTrace(); }
+                if (metrics != null)
+                    metrics.iconLookedUp(start, file);
+                
+                synchronized (IconCache.this) {
+                    pending.remove(key);
+                    icons.put(key, icon);
+                }
+                if (onResolved != null)
+                {
+                    if (SwingUtilities.isEventDispatchThread())
+                        onResolved.run();
+                    else
+                        SwingUtilities.invokeLater(onResolved);
+                }
+            }
+        };
+        if (scheduler != null && file != null)
+        {
+            // a lookup that times out is tried again the next time it's asked for
+            scheduler.submit(file, IoPriority.USER, lookup, new Runnable() {
+                public void run() {
+                    synchronized (IconCache.this) {
+                        pending.remove(key);
+                    }
+                }
+            });
+        }
+        else
+            executor.execute(lookup);
+        
+        return null;
+    }
+    
+    /**
+     * returns the number of requests answered from the cache
+     * @return the number of cache hits
+     */
+    public synchronized long getHitCount() {
+        return hits;
+    }
+    
+    /**
+     * returns the number of requests that weren't in the cache
+     * @return the number of cache misses
+     */
+    public synchronized long getMissCount() {
+        return misses;
+    }
+    
+    /**
+     * returns the number of icons currently in the cache
+     * @return the number of cached icons
+     */
+    public synchronized int size() {
+        return icons.size();
+    }
+    
+    /**
+     * removes every icon from the cache and resets the hit and miss counters
+     */
+    public synchronized void clear() {
+        icons.clear();
+        hits = 0;
+        misses = 0;
+    }
+    
+    /**
+     * sets where the cache's hits, misses and lookup times are counted, on top
+     * of its own counters
+     * @param metrics the metrics to count in, or null
+     */
+    void setMetrics(FileTreeMetrics metrics) {
+        this.metrics = metrics;
+    }
+    
+    /**
+     * sets the scheduler the lookups are run on instead of the executor, on the
+     * mount of each file, so a mount that has stopped responding only holds up
+     * the icons of its own files
+     * @param scheduler the scheduler, or null to use the executor
+     */
+    void setScheduler(IoScheduler scheduler) {
+        this.scheduler = scheduler;
+    }
+    
+    /**
+     * returns the signature of the kind of file <code>fileTreeNode</code> is. Files
+     * with the same signature share an icon.
+     * @param fileTreeNode the file to get the signature for
+     * @return the cache key for the file's icon
+     */
+    static String getKey(FileTreeNode fileTreeNode) {
+        String name = fileTreeNode.getName();
+        FileTreeNode parent = fileTreeNode.getParent();
+        // roots, drives and Windows' virtual folders all have icons of their own
+        if (name.length() == 0 || parent == null || !parent.representsFile() || name.startsWith("::{"))
+            return "path:" + fileTreeNode.getFile().getPath();
+        
+        String extension = "";
+        int dot = name.lastIndexOf('.');
+        if (dot > 0)
+            extension = name.substring(dot + 1).toLowerCase(Locale.ENGLISH);
+        if (UNIQUE_EXTENSIONS.contains(extension))
+            return "path:" + fileTreeNode.getFile().getPath();
+        
+        if (fileTreeNode.isDirectory())
+            return "dir";
+        if (!fileTreeNode.isFile())
+            return "other";
+        if (fileTreeNode.isExecutable())
+            return "exec." + extension;
+        return "file." + extension;
+    }
+    
+    /**
+     * looks up the icons that aren't in the cache
+     */
+    private IconSource source;
+    /**
+     * runs the lookups
+     */
+    private Executor executor;
+    /**
+     * runs the lookups instead of the executor, if it's set
+     */
+    private IoScheduler scheduler;
+    /**
+     * the cached icons, in least-recently-used order. Icons may be null.
+     */
+    private LinkedHashMap<String, Icon> icons;
+    /**
+     * the keys that are being looked up
+     */
+    private Set<String> pending;
+    /**
+     * the number of cache hits
+     */
+    private long hits;
+    /**
+     * the number of cache misses
+     */
+    private long misses;
+    /**
+     * where hits, misses and lookup times are counted too, or null
+     */
+    private volatile FileTreeMetrics metrics;
+    
+    /**
+     * the default maximum number of icons in the cache
+     */
+    public static final int DEFAULT_SIZE = 256;
+    /**
+     * extensions of files that carry their own icon, so they can't share one
+     */
+    private static final Set<String> UNIQUE_EXTENSIONS = new HashSet<String>(Constants.isWindows
+            ? Arrays.asList("exe", "lnk", "ico", "cur", "ani", "url", "scr")
+            : Constants.isOSX ? Arrays.asList("app", "icns", "prefpane") : Arrays.<String>asList());
+}
@@ -0,0 +1,41 @@
+/* This file is part of FileTree.
+
+    FileTree is free software; you can redistribute it and/or modify
+    it under the terms of the GNU General Public License (or the Lesser GPL)
+    as published by the Free Software Foundation; either version 3 of the
+    License, or (at your option) any later version.
+
+    FileTree is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+ */
+/*
+ * IoPriority.java
+ *
+ * Copyright 2026 the FileTree contributors
+ */
+
+package com.arashpayan.filetree;
+
+/**
+ * The priority classes of the filesystem work done for the tree. On each mount,
+ * queued work of a higher class always starts before work of a lower one.
+ */
+public enum IoPriority {
+
+    /**
+     * work the user is waiting for, like listing a directory they expanded
+     */
+    USER,
+    /**
+     * work done ahead of the user, like prefetching the directories they're
+     * likely to expand and probing directories for entries
+     */
+    PREFETCH,
+    /**
+     * long-running scans, like indexing names for searches and adding up the
+     * sizes of directories
+     */
+    BACKGROUND
+}
@@ -0,0 +1,785 @@
+/* This file is part of FileTree.
+
+    FileTree is free software; you can redistribute it and/or modify
+    it under the terms of the GNU General Public License (or the Lesser GPL)
+    as published by the Free Software Foundation; either version 3 of the
+    License, or (at your option) any later version.
+
+    FileTree is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+ */
+/*
+ * IoScheduler.java
+ *
+ * Copyright 2026 the FileTree contributors
+ */
+
+package com.arashpayan.filetree;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Runs the blocking filesystem calls of the trees, so that a mount that stops
+ * responding, like a hung network share, can't hold up the rest.
+ * <p>
+ * Work is queued per mount, in a bounded queue per <code>IoPriority</code>, and
+ * each mount runs at most a set number of calls at once, highest priority first.
+ * A call that goes longer than the timeout without progress fails with an
+ * <code>IOException</code> and marks its mount as degraded. Work that reads
+ * many entries reports progress with <code>madeProgress()</code> as it goes,
+ * so only a single call that hangs counts. The work queued on a degraded mount fails
+ * right away, and so does new work, except for one call let through every
+ * <code>DEGRADED_RETRY_MILLIS</code> to find out whether it has come back. A
+ * mount is healthy again as soon as any of its calls returns. A call that hangs
+ * keeps its thread, and its slot on the mount, until it returns, so a hung
+ * mount ties up no more than its own share of threads.
+ * <p>
+ * Mounts are told apart by their mount points, read from
+ * <code>/proc/self/mounts</code> on Linux and from the roots of the filesystem
+ * elsewhere, so finding the mount of a path never touches the disk.
+ * <code>Files.getFileStore()</code> isn't used, since it reads the attributes
+ * of the path, which would hang on the mount it's meant to guard against.
+ * Entries of other filesystems, like an open archive, each share the mount of
+ * their filesystem.
+ * <p>
+ * All methods can be called from any thread.
+ */
+final class IoScheduler {
+
+    /**
+     * Creates a new instance of IoScheduler
+     * @param metrics counts the calls that time out and the work turned away
+     */
+    IoScheduler(FileTreeMetrics metrics) {
+        this.metrics = metrics;
+        timeout = DEFAULT_TIMEOUT;
+        mountConcurrency = DEFAULT_MOUNT_CONCURRENCY;
+        mounts = new HashMap<String, Mount>();
+        mountPoints = new String[0];
+        // hung calls keep their threads, so the pool grows instead of queueing
+        workers = new ThreadPoolExecutor(0, Integer.MAX_VALUE, 60, TimeUnit.SECONDS,
+                new SynchronousQueue<Runnable>(), new ThreadFactory() {
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "FileTree I/O");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        watchdog = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "FileTree I/O watchdog");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * queues work on the mount of a file
+     * @param file the file the work is done on, which picks the mount
+     * @param priority the priority class of the work
+     * @param task the work
+     * @param onFailure run if the work times out, or fails without running
+     * because its mount is degraded or its queue is full. Runs on a thread of the
+     * scheduler's, never on the calling thread. May be null.
+     * @return the future of the work, which can be cancelled
+     */
+    FutureTask<?> submit(File file, IoPriority priority, Runnable task, Runnable onFailure) {
+        return submit(file, priority, Executors.callable(task), onFailure);
+    }
+
+    /**
+     * queues work on the mount of a file
+     * @param file the file the work is done on, which picks the mount
+     * @param priority the priority class of the work
+     * @param task the work
+     * @param onFailure run if the work times out, or fails without running
+     * because its mount is degraded or its queue is full. Runs on a thread of the
+     * scheduler's, never on the calling thread. May be null.
+     * @return the future of the work, which can be cancelled
+     */
+    <T> FutureTask<T> submit(File file, IoPriority priority, Callable<T> task, Runnable onFailure) {
+        if (file == null || priority == null || task == null)
+            throw new IllegalArgumentException("Null argument not allowed");
+
+        Mount mount = getMount(file);
+        IoTask<T> ioTask = new IoTask<T>(mount, task, onFailure);
+        synchronized (this) {
+            if (closed)
+            {
+                ioTask.cancel(false);
+                return ioTask;
+            }
+            if (mount.degraded)
+            {
+                long now = System.currentTimeMillis();
+                if (now - mount.retried < DEGRADED_RETRY_MILLIS)
+                {
+                    fail(ioTask, mount.point + " isn't responding");
+                    return ioTask;
+                }
+                mount.retried = now;
+            }
+            if (mount.queued == MAX_QUEUED_PER_MOUNT && !makeRoom(mount, priority))
+            {
+                metrics.ioRejected();
+                fail(ioTask, "Too much work queued on " + mount.point);
+                return ioTask;
+            }
+
+            mount.queues.get(priority.ordinal()).add(ioTask);
+            mount.queued++;
+            startNext(mount);
+        }
+
+        return ioTask;
+    }
+
+    /**
+     * does work on the mount of a file and waits for it. Must not be called from
+     * work that's running on the scheduler, which could otherwise wait on itself.
+     * @param file the file the work is done on, which picks the mount
+     * @param priority the priority class of the work
+     * @param task the work
+     * @return the result of the work
+     * @throws IOException if the work failed, timed out, or couldn't run
+     * because its mount is degraded
+     */
+    <T> T call(File file, IoPriority priority, Callable<T> task) throws IOException {
+        return call(file, priority, task, 0);
+    }
+
+    /**
+     * does work on the mount of a file and waits for it, for a limited time.
+     * Must not be called from work that's running on the scheduler, which could
+     * otherwise wait on itself.
+     * @param file the file the work is done on, which picks the mount
+     * @param priority the priority class of the work
+     * @param task the work
+     * @param wait the longest to wait for the work, queued and running, in
+     * milliseconds, or 0 to wait until it's done or times out. Work that
+     * isn't done by then is cancelled.
+     * @return the result of the work
+     * @throws IOException if the work failed, timed out, couldn't run because
+     * its mount is degraded, or wasn't done in time
+     */
+    <T> T call(File file, IoPriority priority, Callable<T> task, long wait) throws IOException {
+        FutureTask<T> future = submit(file, priority, task, null);
+        try {
+            if (wait > 0)
+                return future.get(wait, TimeUnit.MILLISECONDS);
+            return future.get();
+        } catch (TimeoutException e) {
+            future.cancel(true);
+            throw new InterruptedIOException("Gave up waiting for " + file);
+        } catch (InterruptedException e) {
+            future.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted waiting for " + file);
+        } catch (CancellationException e) {
+            throw new InterruptedIOException("Cancelled waiting for " + file);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException)
+                throw (IOException)cause;
+            if (cause instanceof RuntimeException)
+                throw (RuntimeException)cause;
+            if (cause instanceof Error)
+                throw (Error)cause;
+            throw new IOException(cause);
+        }
+    }
+
+    /**
+     * returns true if the mount of a file has stopped responding
+     * @param file the file
+     * @return true if its mount is degraded
+     */
+    boolean isDegraded(File file) {
+        Mount mount = getMount(file);
+        synchronized (this) {
+            return mount.degraded;
+        }
+    }
+
+    /**
+     * returns the mount points of the mounts that have stopped responding
+     * @return the degraded mounts, sorted
+     */
+    synchronized List<String> getDegradedMounts() {
+        List<String> degraded = new ArrayList<String>();
+        for (Mount mount:mounts.values())
+        {
+            if (mount.degraded)
+                degraded.add(mount.point);
+        }
+        Collections.sort(degraded);
+
+        return degraded;
+    }
+
+    /**
+     * returns the longest a call may take before it fails and its mount is
+     * marked as degraded
+     * @return the timeout, in milliseconds
+     */
+    long getTimeout() {
+        return timeout;
+    }
+
+    /**
+     * sets the longest a call may take before it fails and its mount is marked
+     * as degraded. Applies to calls started from now on.
+     * @param timeout the timeout, in milliseconds
+     */
+    void setTimeout(long timeout) {
+        if (timeout <= 0)
+            throw new IllegalArgumentException("timeout must be positive");
+
+        this.timeout = timeout;
+    }
+
+    /**
+     * returns the most calls run on a single mount at once
+     * @return the concurrency limit of each mount
+     */
+    int getMountConcurrency() {
+        return mountConcurrency;
+    }
+
+    /**
+     * sets the most calls run on a single mount at once
+     * @param mountConcurrency the concurrency limit of each mount
+     */
+    synchronized void setMountConcurrency(int mountConcurrency) {
+        if (mountConcurrency < 1)
+            throw new IllegalArgumentException("mountConcurrency must be at least 1");
+
+        this.mountConcurrency = mountConcurrency;
+        for (Mount mount:mounts.values())
+            startNext(mount);
+    }
+
+    /**
+     * fails the queued work and stops the threads. Work that's running is
+     * interrupted.
+     */
+    void close() {
+        synchronized (this) {
+            closed = true;
+            for (Mount mount:mounts.values())
+            {
+                for (ArrayDeque<IoTask<?>> queue:mount.queues)
+                {
+                    for (IoTask<?> task:queue)
+                        task.cancel(false);
+                    queue.clear();
+                }
+                mount.queued = 0;
+            }
+        }
+        workers.shutdownNow();
+        watchdog.shutdownNow();
+    }
+
+    /**
+     * starts queued work on a mount until it runs as much as it may. Must be
+     * called with the lock held.
+     * @param mount the mount
+     */
+    private void startNext(Mount mount) {
+        while (mount.running < mountConcurrency && mount.queued > 0 && !closed)
+        {
+            IoTask<?> task = null;
+            for (ArrayDeque<IoTask<?>> queue:mount.queues)
+            {
+                task = queue.poll();
+                if (task != null)
+                    break;
+            }
+            mount.queued--;
+            if (task.isDone())
+                continue;   // cancelled while it was queued
+
+            mount.running++;
+            final IoTask<?> started = task;
+            workers.execute(new Runnable() {
+                public void run() {
+                    runTask(started);
+                }
+            });
+        }
+    }
+
+    /**
+     * tells the scheduler that the work running on this thread is still getting
+     * answers from the disk, such as another entry of a directory being read,
+     * so its timeout starts over. Long work on a healthy mount, like reading a
+     * huge directory, then never times out, while a single call that hangs
+     * still does. Does nothing on a thread that isn't running work of a
+     * scheduler.
+     */
+    static void madeProgress() {
+        IoTask<?> task = RUNNING.get();
+        if (task != null)
+            task.progressed = System.nanoTime();
+    }
+
+    /**
+     * runs work, failing it if it goes longer than the timeout without making
+     * progress
+     * @param task the work
+     */
+    private void runTask(final IoTask<?> task) {
+        task.progressed = System.nanoTime();
+        watch(task, timeout);
+        RUNNING.set(task);
+        try {
+            task.run();
+        } finally {
+            RUNNING.remove();
+            ScheduledFuture<?> timer = task.timer;
+            if (timer != null)
+                timer.cancel(false);
+            synchronized (this) {
+                Mount mount = task.mount;
+                mount.running--;
+                // it answered, however late
+                mount.degraded = false;
+                startNext(mount);
+            }
+        }
+    }
+
+    /**
+     * checks on running work once the given time has passed
+     * @param task the work
+     * @param delay when to check, in milliseconds
+     */
+    private void watch(final IoTask<?> task, long delay) {
+        try {
+            task.timer = watchdog.schedule(new Runnable() {
+                public void run() {
+                    check(task);
+                }
+            }, delay, TimeUnit.MILLISECONDS);
+        } catch (RuntimeException e) {
+            // the scheduler has been closed
+        }
+    }
+
+    /**
+     * fails running work that hasn't made progress within the timeout, or
+     * checks on it again once the timeout has passed since it last did
+     * @param task the work
+     */
+    private void check(IoTask<?> task) {
+        if (task.isDone())
+            return;
+
+        long idle = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - task.progressed);
+        if (idle < timeout)
+            watch(task, timeout - idle);
+        else
+            timedOut(task);
+    }
+
+    /**
+     * fails work that went longer than the timeout without progress, along
+     * with everything queued on its mount, and marks the mount as degraded
+     * @param task the work that timed out
+     */
+    private void timedOut(IoTask<?> task) {
+        Mount mount = task.mount;
+        synchronized (this) {
+            if (task.isDone())
+                return;
+
+            mount.degraded = true;
+            mount.retried = System.currentTimeMillis();
+            for (ArrayDeque<IoTask<?>> queue:mount.queues)
+            {
+                for (IoTask<?> queued:queue)
+                    fail(queued, mount.point + " isn't responding");
+                queue.clear();
+            }
+            mount.queued = 0;
+        }
+        metrics.ioTimedOut(mount.point);
+        fail(task, mount.point + " didn't respond within " + timeout + " ms");
+    }
+
+    /**
+     * fails work with an <code>IOException</code>, running its failure handler on
+     * the watchdog thread
+     * @param task the work
+     * @param message the message of the exception
+     */
+    private void fail(final IoTask<?> task, String message) {
+        if (!task.fail(new IOException(message)) || task.onFailure == null)
+            return;
+
+        try {
+            watchdog.execute(task.onFailure);
+        } catch (RuntimeException e) {
+            // the scheduler has been closed
+        }
+    }
+
+    /**
+     * makes room in the full queue of a mount for work of the given priority, by
+     * failing the most recently queued work of the lowest priority below it
+     * @param mount the mount
+     * @param priority the priority of the new work
+     * @return false if all the queued work has the same priority or higher
+     */
+    private boolean makeRoom(Mount mount, IoPriority priority) {
+        for (int i=mount.queues.size()-1; i>priority.ordinal(); i--)
+        {
+            IoTask<?> dropped = mount.queues.get(i).pollLast();
+            if (dropped != null)
+            {
+                mount.queued--;
+                metrics.ioRejected();
+                fail(dropped, "Too much work queued on " + mount.point);
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * returns the mount a file is on, creating it if it's new
+     * @param file the file
+     * @return the mount
+     */
+    private Mount getMount(File file) {
+        String point;
+        if (file instanceof PathFile)
+            point = file.toPath().getFileSystem().toString();
+        else
+            point = findMountPoint(file.getAbsolutePath());
+
+        synchronized (this) {
+            Mount mount = mounts.get(point);
+            if (mount == null)
+            {
+                mount = new Mount(point);
+                mounts.put(point, mount);
+            }
+
+            return mount;
+        }
+    }
+
+    /**
+     * returns the mount point a path is under, which is the longest one that
+     * the path starts with
+     * @param path the absolute path
+     * @return the mount point, or "" if none matches
+     */
+    private String findMountPoint(String path) {
+        String[] points = getMountPoints();
+        for (String point:points)
+        {
+            if (isUnder(path, point))
+                return point;
+        }
+
+        return "";
+    }
+
+    /**
+     * returns the mount points, longest first, reading them again if they were
+     * read more than <code>MOUNT_REFRESH_MILLIS</code> ago
+     * @return the mount points
+     */
+    private String[] getMountPoints() {
+        long now = System.currentTimeMillis();
+        synchronized (this) {
+            if (now - mountPointsRead < MOUNT_REFRESH_MILLIS)
+                return mountPoints;
+            mountPointsRead = now;
+        }
+
+        List<String> points = readMountPoints();
+        Collections.sort(points, new Comparator<String>() {
+            public int compare(String p1, String p2) {
+                return p2.length() - p1.length();
+            }
+        });
+        String[] read = points.toArray(new String[points.size()]);
+        synchronized (this) {
+            mountPoints = read;
+        }
+
+        return read;
+    }
+
+    /**
+     * reads the mount points of the filesystem, without touching any of the mounts
+     * @return the mount points
+     */
+    private static List<String> readMountPoints() {
+        List<String> points = new ArrayList<String>();
+        if (Constants.isLinux)
+        {
+            try {
+                for (String line:Files.readAllLines(Paths.get("/proc/self/mounts"), Charset.forName("UTF-8")))
+                {
+                    String[] fields = line.split(" ");
+                    if (fields.length > 1)
+                        points.add(unescape(fields[1]));
+                }
+            } catch (IOException e) {
+                // fall back on the roots
+            }
+        }
+        if (points.isEmpty())
+        {
+            for (File root:File.listRoots())
+                points.add(root.getPath());
+        }
+
+        return points;
+    }
+
+    /**
+     * undoes the octal escapes of spaces, tabs and backslashes in a field of
+     * <code>/proc/self/mounts</code>
+     * @param field the field
+     * @return the field as it was before it was escaped
+     */
+    private static String unescape(String field) {
+        if (field.indexOf('\\') < 0)
+            return field;
+
+        StringBuilder unescaped = new StringBuilder(field.length());
+        for (int i=0; i<field.length(); i++)
+        {
+            char c = field.charAt(i);
+            if (c == '\\' && isOctal(field, i + 1))
+            {
+                unescaped.append((char)Integer.parseInt(field.substring(i + 1, i + 4), 8));
+                i += 3;
+            }
+            else
+                unescaped.append(c);
+        }
+
+        return unescaped.toString();
+    }
+
+    /**
+     * returns true if three octal digits start at an index of a string
+     * @param s the string
+     * @param start the index
+     * @return true if the three characters from <code>start</code> are octal digits
+     */
+    private static boolean isOctal(String s, int start) {
+        if (start + 3 > s.length())
+            return false;
+        for (int i=start; i<start+3; i++)
+        {
+            if (s.charAt(i) < '0' || s.charAt(i) > '7')
+                return false;
+        }
+
+        return true;
+    }
+
+    /**
+     * returns true if a path is a mount point or below it
+     * @param path the path
+     * @param point the mount point
+     * @return true if <code>path</code> is on the mount at <code>point</code>
+     */
+    private static boolean isUnder(String path, String point) {
+        boolean ignoreCase = Constants.isWindows;
+        if (!path.regionMatches(ignoreCase, 0, point, 0, point.length()))
+            return false;
+
+        return path.length() == point.length() || point.endsWith(File.separator)
+                || path.charAt(point.length()) == File.separatorChar;
+    }
+
+    /**
+     * counts the calls that time out and the work turned away
+     */
+    private final FileTreeMetrics metrics;
+    /**
+     * the longest a call may take, in milliseconds
+     */
+    private volatile long timeout;
+    /**
+     * the most calls run on a single mount at once
+     */
+    private int mountConcurrency;
+    /**
+     * the mounts work has been queued on, by mount point
+     */
+    private final Map<String, Mount> mounts;
+    /**
+     * the mount points, longest first
+     */
+    private String[] mountPoints;
+    /**
+     * when the mount points were last read, from <code>System.currentTimeMillis()</code>
+     */
+    private long mountPointsRead;
+    /**
+     * set once the scheduler has been closed
+     */
+    private boolean closed;
+    /**
+     * runs the calls
+     */
+    private final ThreadPoolExecutor workers;
+    /**
+     * fails the calls that take too long, and runs the failure handlers
+     */
+    private final ScheduledExecutorService watchdog;
+
+    /**
+     * the work running on each thread of the scheduler
+     */
+    private static final ThreadLocal<IoTask<?>> RUNNING = new ThreadLocal<IoTask<?>>();
+    /**
+     * the default timeout of a call, in milliseconds
+     */
+    static final long DEFAULT_TIMEOUT = 10000;
+    /**
+     * the default number of calls run on a single mount at once
+     */
+    static final int DEFAULT_MOUNT_CONCURRENCY = 4;
+    /**
+     * the most work queued on a single mount
+     */
+    static final int MAX_QUEUED_PER_MOUNT = 1024;
+    /**
+     * how often a degraded mount gets a call through to check whether it's back,
+     * in milliseconds
+     */
+    static final long DEGRADED_RETRY_MILLIS = 10000;
+    /**
+     * how long the mount points are used before they're read again, in
+     * milliseconds
+     */
+    private static final long MOUNT_REFRESH_MILLIS = 30000;
+
+    /**
+     * a mount and the work queued on it. Only used with the lock held.
+     */
+    private static class Mount {
+        /**
+         * Creates a new instance of Mount
+         * @param point the mount point
+         */
+        Mount(String point) {
+            this.point = point;
+            queues = new ArrayList<ArrayDeque<IoTask<?>>>();
+            for (int i=0; i<IoPriority.values().length; i++)
+                queues.add(new ArrayDeque<IoTask<?>>());
+        }
+
+        /**
+         * the mount point
+         */
+        final String point;
+        /**
+         * the queued work, by priority
+         */
+        final List<ArrayDeque<IoTask<?>>> queues;
+        /**
+         * the amount of queued work
+         */
+        int queued;
+        /**
+         * the number of calls running
+         */
+        int running;
+        /**
+         * whether a call has timed out since the last one returned
+         */
+        boolean degraded;
+        /**
+         * when a call was last let through while degraded, from
+         * <code>System.currentTimeMillis()</code>
+         */
+        long retried;
+    }
+
+    /**
+     * work queued on a mount
+     */
+    private static class IoTask<T> extends FutureTask<T> {
+        /**
+         * Creates a new instance of IoTask
+         * @param mount the mount the work is done on
+         * @param callable the work
+         * @param onFailure run if the work fails without finishing. May be null.
+         */
+        IoTask(Mount mount, Callable<T> callable, Runnable onFailure) {
+            super(callable);
+            this.mount = mount;
+            this.onFailure = onFailure;
+        }
+
+        /**
+         * fails the work, unless it's done already
+         * @param e the cause of the failure
+         * @return true if the work was failed, false if it was done already
+         */
+        synchronized boolean fail(IOException e) {
+            if (isDone())
+                return false;
+
+            setException(e);
+            return true;
+        }
+
+        /**
+         * the mount the work is done on
+         */
+        final Mount mount;
+        /**
+         * run if the work fails without finishing
+         */
+        final Runnable onFailure;
+        /**
+         * when the work last made progress, from <code>System.nanoTime()</code>
+         */
+        volatile long progressed;
+        /**
+         * the next check on the work while it runs
+         */
+        volatile ScheduledFuture<?> timer;
+    }
+}
@@ -0,0 +1,173 @@
+/* This file is part of FileTree.
+
+    FileTree is free software; you can redistribute it and/or modify
+    it under the terms of the GNU General Public License (or the Lesser GPL)
+    as published by the Free Software Foundation; either version 3 of the
+    License, or (at your option) any later version.
+
+    FileTree is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+ */
+/*
+ * LatencyHistogram.java
+ *
+ * Copyright 2026 the FileTree contributors
+ */
+
+package com.arashpayan.filetree;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Counts how long an operation takes, in buckets whose bounds are powers of two
+ * nanoseconds. Recording is a few atomic additions, so it can be done from any
+ * thread on every call. Percentiles are read from the buckets, so they're
+ * accurate to within a factor of two, which is plenty to tell a millisecond
+ * from a second.
+ */
+public class LatencyHistogram {
+
+    /**
+     * Creates a new instance of LatencyHistogram
+     */
+    public LatencyHistogram() {
+        buckets = new AtomicLongArray(BUCKETS);
+        count = new AtomicLong();
+        totalNanos = new AtomicLong();
+        maxNanos = new AtomicLong();
+    }
+
+    /**
+     * counts one run of the operation
+     * @param nanos how long it took, in nanoseconds
+     */
+    void record(long nanos) {
+        if (nanos < 0)
+            nanos = 0;
+
+        buckets.incrementAndGet(Long.SIZE - Long.numberOfLeadingZeros(nanos));
+        count.incrementAndGet();
+        totalNanos.addAndGet(nanos);
+        long max = maxNanos.get();
+        while (nanos > max && !maxNanos.compareAndSet(max, nanos))
+            max = maxNanos.get();
+    }
+
+    /**
+     * returns the number of runs counted
+     * @return the count
+     */
+    public long getCount() {
+        return count.get();
+    }
+
+    /**
+     * returns the time taken by all the runs counted
+     * @return the total time, in nanoseconds
+     */
+    public long getTotalNanos() {
+        return totalNanos.get();
+    }
+
+    /**
+     * returns the time taken by the slowest run
+     * @return the longest time, in nanoseconds
+     */
+    public long getMaxNanos() {
+        return maxNanos.get();
+    }
+
+    /**
+     * returns the average time a run took
+     * @return the mean, in milliseconds, or 0 if nothing was counted
+     */
+    public double getMeanMillis() {
+        long n = count.get();
+        if (n == 0)
+            return 0;
+
+        return totalNanos.get() / (double)n / NANOS_PER_MILLI;
+    }
+
+    /**
+     * returns the time within which the given percentage of the runs finished
+     * @param percentile the percentage of runs, from 0 to 100
+     * @return the upper bound of the bucket the percentile falls in, but no more
+     * than the slowest run, in milliseconds. 0 if nothing was counted.
+     */
+    public double getPercentileMillis(double percentile) {
+        if (percentile < 0 || percentile > 100)
+            throw new IllegalArgumentException("percentile must be between 0 and 100");
+
+        long n = count.get();
+        if (n == 0)
+            return 0;
+
+        long rank = Math.max(1, (long)Math.ceil(percentile / 100 * n));
+        long seen = 0;
+        for (int i=0; i<BUCKETS; i++)
+        {
+            seen += buckets.get(i);
+            if (seen >= rank)
+            {
+                // bucket 63 wraps around to Long.MAX_VALUE
+                long upper = (1L << i) - 1;
+                return Math.min(upper, maxNanos.get()) / NANOS_PER_MILLI;
+            }
+        }
+
+        return maxNanos.get() / NANOS_PER_MILLI;
+    }
+
+    /**
+     * forgets every run counted so far
+     */
+    void reset() {
+        for (int i=0; i<BUCKETS; i++)
+            buckets.set(i, 0);
+        count.set(0);
+        totalNanos.set(0);
+        maxNanos.set(0);
+    }
+
+    /**
+     * returns a summary of the histogram, like "12 runs, mean 3.1 ms, p99 8.4 ms,
+     * max 9.0 ms"
+     * @return the summary as a <code>String</code>
+     */
+    public String toString() {
+        return String.format("%d runs, mean %.1f ms, p99 %.1f ms, max %.1f ms", getCount(),
+                getMeanMillis(), getPercentileMillis(99), getMaxNanos() / NANOS_PER_MILLI);
+    }
+
+    /**
+     * the number of runs in each bucket. Bucket <code>i</code> holds the runs
+     * that took from 2^(i-1) up to 2^i nanoseconds, and bucket 0 the ones that
+     * took no time at all.
+     */
+    private final AtomicLongArray buckets;
+    /**
+     * the number of runs counted
+     */
+    private final AtomicLong count;
+    /**
+     * the time taken by all the runs counted, in nanoseconds
+     */
+    private final AtomicLong totalNanos;
+    /**
+     * the time taken by the slowest run, in nanoseconds
+     */
+    private final AtomicLong maxNanos;
+
+    /**
+     * the number of buckets, enough for any positive <code>long</code>
+     */
+    private static final int BUCKETS = Long.SIZE;
+    /**
+     * the number of nanoseconds in a millisecond
+     */
+    private static final double NANOS_PER_MILLI = 1000000.0;
+}
@@ -23,6 +23,11 @@ import java.awt.BorderLayout;
 import java.awt.Container;
 import java.awt.event.WindowAdapter;
 import java.awt.event.WindowEvent;
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import javax.management.JMException;
 import javax.swing.JFrame;
 import javax.swing.JScrollPane;
 
@@ -40,22 +45,56 @@ public class Main {
      * @param args the command line arguments
      */
     public static void main(String[] args) {
+        final File snapshot = new File(System.getProperty("user.home"), ".filetree-snapshot");
+        FileTreeCore core = new FileTreeCore();
+        // shows up in JConsole, and warns about anything that freezes the UI
+        core.getMetrics().setSlowOperationThresholdMillis(SLOW_OPERATION_THRESHOLD);
+        try {
+            core.getMetrics().register("Main");
+        } catch (JMException ex) {
+            ex.printStackTrace();
+        }
+        final FileTree fileTree = new FileTree(core, snapshot);
         JFrame jframe = new JFrame();
         jframe.addWindowListener(new WindowAdapter() {
             public void windowClosing(WindowEvent e) {
+                try {
+                    fileTree.saveSnapshot(snapshot);
+                } catch (IOException ex) {
+                    ex.printStackTrace();
+                }
                 System.exit(0);
             }
         });
         Container container = jframe.getContentPane();
         container.setLayout(new BorderLayout());
-        FileTree fileTree = new FileTree();
         fileTree.setShowHiddenFiles(false);
         fileTree.setDeleteEnabled(true);
+        fileTree.setAsyncLoading(true);
+        fileTree.setLiveUpdates(true);
+        fileTree.setCachedChildren(true);
+        fileTree.setPrefetchDepth(1);
+        fileTree.setEmptyDirectoryDetection(true);
+        fileTree.setFilter(new TreeFilter(Collections.<String>emptyList(), Arrays.asList(".git/", "node_modules/"), ".gitignore"));
+        if (args.length > 0)
+        {
+            // browse a zip or jar file instead of the filesystem
+            try {
+                fileTree.openArchive(new File(args[0]));
+            } catch (IOException ex) {
+                ex.printStackTrace();
+            }
+        }
         JScrollPane scrollPane = new JScrollPane(fileTree);
+        container.add(fileTree.createSearchField(), BorderLayout.NORTH);
         container.add(scrollPane, BorderLayout.CENTER);
         jframe.setSize(400, 500);
         jframe.setLocationByPlatform(true);
         jframe.setVisible(true);
     }
     
+    /**
+     * the time above which operations are logged as slow, in milliseconds
+     */
+    private static final long SLOW_OPERATION_THRESHOLD = 200;
 }
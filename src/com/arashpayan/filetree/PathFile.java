@@ -0,0 +1,402 @@
+/* This file is part of FileTree.
+
+    FileTree is free software; you can redistribute it and/or modify
+    it under the terms of the GNU General Public License (or the Lesser GPL)
+    as published by the Free Software Foundation; either version 3 of the
+    License, or (at your option) any later version.
+
+    FileTree is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+ */
+/*
+ * PathFile.java
+ *
+ * Copyright 2026 the FileTree contributors
+ */
+
+package com.arashpayan.filetree;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.NotSerializableException;
+import java.io.ObjectInputStream;
+import java.io.ObjectStreamException;
+import java.net.URI;
+import java.nio.file.ClosedFileSystemException;
+import java.nio.file.DirectoryIteratorException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A <code>File</code> that stands for a <code>Path</code> of a filesystem other
+ * than the default one, such as an entry of a zip file mounted through the zip
+ * filesystem provider, or of an in-memory filesystem. The tree works with
+ * <code>File</code>s throughout, so a <code>PathFile</code> answers the questions
+ * the tree asks, like <code>isDirectory()</code>, <code>lastModified()</code> and
+ * <code>listFiles()</code>, from its <code>Path</code> instead of from the disk.
+ * Its path string is only used to show it and to split it into names.
+ * <code>toPath()</code> returns the <code>Path</code> itself, so code that goes
+ * through NIO works on the other filesystem unchanged.
+ * <p>
+ * Like the shell folders of Windows, a <code>PathFile</code> can't be rebuilt
+ * from its path, so children are made from their parent with
+ * <code>getChild()</code>.
+ * <p>
+ * A <code>PathFile</code> is only equal to a <code>PathFile</code> of the same
+ * path on the same filesystem. A plain <code>File</code> compares its path
+ * string, though, and may call a <code>PathFile</code> with the same path equal,
+ * so the two kinds are never used as keys of the same map. A
+ * <code>PathFile</code> can't be serialized, since its <code>Path</code> can't.
+ */
+final class PathFile extends File {
+
+    /**
+     * Creates a new instance of PathFile
+     * @param path the path it stands for
+     */
+    PathFile(Path path) {
+        this(path, null);
+    }
+
+    /**
+     * Creates a new instance of PathFile with a name of its own, for the root of
+     * a filesystem, which has no name
+     * @param path the path it stands for
+     * @param name the name to show, or null to use the name of the path
+     */
+    PathFile(Path path, String name) {
+        super(path.toString());
+        this.path = path;
+        this.name = name;
+    }
+
+    /**
+     * returns the <code>File</code> that stands for a path. Paths of the default
+     * filesystem become plain <code>File</code>s.
+     * @param path the path
+     * @return the <code>File</code>
+     */
+    static File of(Path path) {
+        if (isDefault(path))
+            return path.toFile();
+
+        return new PathFile(path);
+    }
+
+    /**
+     * returns the entry of a directory with the given name, on the same
+     * filesystem as the directory
+     * @param dir the directory
+     * @param name the name of the entry
+     * @return the entry
+     */
+    static File getChild(File dir, String name) {
+        if (dir instanceof PathFile)
+            return new PathFile(((PathFile)dir).path.resolve(name));
+
+        return new File(dir, name);
+    }
+
+    /**
+     * returns true if a path is on the default filesystem, whose files can be
+     * watched and have the attributes of the platform
+     * @param path the path
+     * @return true if the path is on the default filesystem
+     */
+    static boolean isDefault(Path path) {
+        return path.getFileSystem() == FileSystems.getDefault();
+    }
+
+    /**
+     * returns the path this file stands for
+     * @return the path
+     */
+    public Path toPath() {
+        return path;
+    }
+
+    /**
+     * returns the URI of the path, which names the filesystem it's on
+     * @return the URI
+     */
+    public URI toURI() {
+        return path.toUri();
+    }
+
+    /**
+     * returns the name of the file, or the name it was given if it's a root
+     * @return the name
+     */
+    public String getName() {
+        if (name != null)
+            return name;
+
+        Path fileName = path.getFileName();
+        return fileName == null ? "" : fileName.toString();
+    }
+
+    /**
+     * returns the path string of the parent directory
+     * @return the parent's path, or null if this is a root
+     */
+    public String getParent() {
+        Path parent = path.getParent();
+        return parent == null ? null : parent.toString();
+    }
+
+    /**
+     * returns the parent directory, on the same filesystem
+     * @return the parent, or null if this is a root
+     */
+    public File getParentFile() {
+        Path parent = path.getParent();
+        return parent == null ? null : new PathFile(parent);
+    }
+
+    /**
+     * returns true, since the path is resolved against its own filesystem
+     * @return true
+     */
+    public boolean isAbsolute() {
+        return true;
+    }
+
+    /**
+     * returns this file, since its path is already absolute on its filesystem
+     * @return this file
+     */
+    public File getAbsoluteFile() {
+        return this;
+    }
+
+    /**
+     * returns the path string, which is already absolute on its filesystem
+     * @return the path string
+     */
+    public String getAbsolutePath() {
+        return getPath();
+    }
+
+    /**
+     * returns this file. Paths of other filesystems aren't canonicalized.
+     * @return this file
+     */
+    public File getCanonicalFile() {
+        return this;
+    }
+
+    /**
+     * returns the path string. Paths of other filesystems aren't canonicalized.
+     * @return the path string
+     */
+    public String getCanonicalPath() {
+        return getPath();
+    }
+
+    /**
+     * returns true if the path exists
+     * @return true if it exists
+     */
+    public boolean exists() {
+        return Files.exists(path);
+    }
+
+    /**
+     * returns true if the path is a directory
+     * @return true if it's a directory
+     */
+    public boolean isDirectory() {
+        return Files.isDirectory(path);
+    }
+
+    /**
+     * returns true if the path is a regular file
+     * @return true if it's a file
+     */
+    public boolean isFile() {
+        return Files.isRegularFile(path);
+    }
+
+    /**
+     * returns true if the name starts with a '.', since other filesystems don't
+     * have a hidden attribute of their own
+     * @return true if the file is hidden
+     */
+    public boolean isHidden() {
+        return getName().startsWith(".");
+    }
+
+    /**
+     * returns true if the path can be read
+     * @return true if it's readable
+     */
+    public boolean canRead() {
+        return Files.isReadable(path);
+    }
+
+    /**
+     * returns true if the path can be written, which it can't in a read-only
+     * filesystem
+     * @return true if it's writable
+     */
+    public boolean canWrite() {
+        return Files.isWritable(path);
+    }
+
+    /**
+     * returns true if the path can be executed
+     * @return true if it's executable
+     */
+    public boolean canExecute() {
+        return Files.isExecutable(path);
+    }
+
+    /**
+     * returns the last-modified time of the path
+     * @return the time in milliseconds, or 0 if it can't be read
+     */
+    public long lastModified() {
+        BasicFileAttributes attrs = readAttributes();
+        return attrs == null ? 0 : attrs.lastModifiedTime().toMillis();
+    }
+
+    /**
+     * returns the size of the path, in bytes
+     * @return the size, or 0 if it can't be read
+     */
+    public long length() {
+        BasicFileAttributes attrs = readAttributes();
+        return attrs == null ? 0 : attrs.size();
+    }
+
+    /**
+     * returns the names of the entries of the directory
+     * @return the names, or null if it isn't a directory or can't be read
+     */
+    public String[] list() {
+        File[] files = listFiles();
+        if (files == null)
+            return null;
+
+        String[] names = new String[files.length];
+        for (int i=0; i<files.length; i++)
+            names[i] = files[i].getName();
+
+        return names;
+    }
+
+    /**
+     * returns the entries of the directory, on the same filesystem
+     * @return the entries, or null if it isn't a directory or can't be read
+     */
+    public File[] listFiles() {
+        List<File> files = new ArrayList<File>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(path)) {
+            for (Path entry:stream)
+                files.add(new PathFile(entry));
+        } catch (IOException | DirectoryIteratorException | ClosedFileSystemException e) {
+            return null;
+        }
+
+        return files.toArray(new File[files.size()]);
+    }
+
+    /**
+     * deletes the path
+     * @return true if it was deleted
+     */
+    public boolean delete() {
+        try {
+            Files.delete(path);
+            return true;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * compares the paths, which are only equal on the same filesystem
+     * @param obj the object to compare with
+     * @return true if <code>obj</code> is a <code>PathFile</code> with an equal path
+     */
+    public boolean equals(Object obj) {
+        return obj instanceof PathFile && path.equals(((PathFile)obj).path);
+    }
+
+    /**
+     * returns the hash code of the path
+     * @return the hash code
+     */
+    public int hashCode() {
+        return path.hashCode();
+    }
+
+    /**
+     * compares the paths, the same way <code>equals()</code> does. Plain
+     * <code>File</code>s come first, and the paths of different filesystems are
+     * ordered by filesystem.
+     * @param other the file to compare with
+     * @return a negative number, zero or a positive number as this file sorts
+     * before, with or after <code>other</code>
+     */
+    public int compareTo(File other) {
+        if (!(other instanceof PathFile))
+            return 1;
+
+        Path otherPath = ((PathFile)other).path;
+        if (path.getFileSystem() == otherPath.getFileSystem())
+            return path.compareTo(otherPath);
+
+        int cmp = path.getFileSystem().toString().compareTo(otherPath.getFileSystem().toString());
+        if (cmp != 0)
+            return cmp;
+        return Integer.compare(System.identityHashCode(path.getFileSystem()),
+                System.identityHashCode(otherPath.getFileSystem()));
+    }
+
+    /**
+     * refuses to serialize the file, since its path would be lost
+     * @return nothing
+     * @throws ObjectStreamException always
+     */
+    private Object writeReplace() throws ObjectStreamException {
+        throw new NotSerializableException(PathFile.class.getName());
+    }
+
+    /**
+     * refuses to deserialize a file, which would have no path
+     * @param in the stream
+     * @throws IOException always
+     */
+    private void readObject(ObjectInputStream in) throws IOException {
+        throw new NotSerializableException(PathFile.class.getName());
+    }
+
+    /**
+     * reads the basic attributes of the path
+     * @return the attributes, or null if they can't be read
+     */
+    private BasicFileAttributes readAttributes() {
+        try {
+            return Files.readAttributes(path, BasicFileAttributes.class);
+        } catch (IOException | ClosedFileSystemException e) {
+            return null;
+        }
+    }
+
+    /**
+     * the path this file stands for
+     */
+    private final transient Path path;
+    /**
+     * the name to show, for a root. Null to use the name of the path.
+     */
+    private final String name;
+}
@@ -0,0 +1,222 @@
+/* This file is part of FileTree.
+
+    FileTree is free software; you can redistribute it and/or modify
+    it under the terms of the GNU General Public License (or the Lesser GPL)
+    as published by the Free Software Foundation; either version 3 of the
+    License, or (at your option) any later version.
+
+    FileTree is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+ */
+/*
+ * SearchTask.java
+ *
+ * Copyright 2026 the FileTree contributors
+ */
+
+package com.arashpayan.filetree;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import javax.swing.SwingWorker;
+
+/**
+ * Searches a <code>FileNameIndex</code> off the event dispatch thread. Every
+ * match is published as it's found, so <code>process</code> can show the
+ * results while the index is still being crawled. The search stops after
+ * <code>maxResults</code> matches, or when the task is cancelled.
+ * <p>
+ * A match is published along with the attributes of the directories leading
+ * to it and of the match itself, read here through the I/O scheduler, so
+ * showing it never touches the disk. The attributes of a directory are only
+ * read once per search. A match whose mount isn't responding is left out.
+ */
+class SearchTask extends SwingWorker<Void, SearchTask.Match> {
+
+    /**
+     * Creates a new instance of SearchTask
+     * @param index the index to search
+     * @param query the text to look for in the names of files
+     * @param maxResults the most matches to publish
+     * @param scheduler reads the attributes of the matches
+     * @param navigateOSXApps whether OS X application bundles can be expanded
+     */
+    SearchTask(FileNameIndex index, String query, int maxResults, IoScheduler scheduler, boolean navigateOSXApps) {
+        if (index == null || query == null || scheduler == null)
+            throw new IllegalArgumentException("Null argument not allowed");
+
+        this.index = index;
+        this.query = query;
+        this.maxResults = maxResults;
+        this.scheduler = scheduler;
+        this.navigateOSXApps = navigateOSXApps;
+        directories = new HashMap<File, DirectoryListing>();
+    }
+
+    /**
+     * runs the search. Called on a worker thread.
+     * @return nothing
+     * @throws InterruptedException if the task is cancelled while it waits for
+     * the index
+     */
+    protected Void doInBackground() throws InterruptedException {
+        index.search(query, new FileNameIndex.MatchHandler() {
+            public boolean matchFound(File file) {
+                if (isCancelled())
+                    return false;
+
+                Match match = read(file);
+                if (match == null)
+                    return true;
+                publish(match);
+                return ++found < maxResults;
+            }
+        });
+
+        return null;
+    }
+
+    /**
+     * reads the attributes of a match and of the directories leading to it
+     * @param file the file that matches
+     * @return the match, or null if it isn't below the root of the index or
+     * its mount isn't responding
+     */
+    private Match read(final File file) {
+        final File root = index.getRoot();
+        final List<String> names = new ArrayList<String>();
+        for (File f=file; !f.equals(root); f=f.getParentFile())
+        {
+            if (f.getParentFile() == null)
+                return null;
+            names.add(f.getName());
+        }
+        Collections.reverse(names);
+
+        try {
+            return scheduler.call(file, IoPriority.USER, new Callable<Match>() {
+                public Match call() {
+                    DirectoryListing path = new DirectoryListing(names.size());
+                    File dir = root;
+                    for (int i=0; i<names.size(); i++)
+                    {
+                        File child = PathFile.getChild(dir, names.get(i));
+                        DirectoryListing known = directories.get(child);
+                        if (known != null)
+                            path.add(known, 0);
+                        else if (i < names.size() - 1)
+                        {
+                            known = new DirectoryListing(1);
+                            known.add(child, dir, navigateOSXApps);
+                            directories.put(child, known);
+                            path.add(known, 0);
+                        }
+                        else
+                            path.add(child, dir, navigateOSXApps);
+                        dir = child;
+                    }
+                    return new Match(file, path);
+                }
+            });
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    /**
+     * returns the text being looked for
+     * @return the query of the search
+     */
+    String getQuery() {
+        return query;
+    }
+
+    /**
+     * returns the number of matches published so far
+     * @return the number of matches
+     */
+    int getFound() {
+        return found;
+    }
+
+    /**
+     * the index to search
+     */
+    private final FileNameIndex index;
+    /**
+     * the text to look for
+     */
+    private final String query;
+    /**
+     * the most matches to publish
+     */
+    private final int maxResults;
+    /**
+     * reads the attributes of the matches
+     */
+    private final IoScheduler scheduler;
+    /**
+     * whether OS X application bundles can be expanded
+     */
+    private final boolean navigateOSXApps;
+    /**
+     * the directories leading to matches whose attributes have been read, each
+     * as the single entry of a listing. Only used by the searching thread, one
+     * call at a time.
+     */
+    private final Map<File, DirectoryListing> directories;
+    /**
+     * the number of matches published so far
+     */
+    private volatile int found;
+
+    /**
+     * a file that matches, with the attributes of the path to it
+     */
+    static class Match {
+        /**
+         * Creates a new instance of Match
+         * @param file the file that matches
+         * @param path the directories leading to the file below the root of the
+         * index, then the file itself, each an entry with its attributes
+         */
+        Match(File file, DirectoryListing path) {
+            this.file = file;
+            this.path = path;
+        }
+
+        /**
+         * returns the file that matches
+         * @return the file
+         */
+        File getFile() {
+            return file;
+        }
+
+        /**
+         * returns the directories leading to the file below the root of the
+         * index, then the file itself, with their attributes
+         * @return a listing with an entry for every level of the path
+         */
+        DirectoryListing getPath() {
+            return path;
+        }
+
+        /**
+         * the file that matches
+         */
+        private final File file;
+        /**
+         * the path to the file, an entry per level
+         */
+        private final DirectoryListing path;
+    }
+}
@@ -0,0 +1,63 @@
+/* This file is part of FileTree.
+
+    FileTree is free software; you can redistribute it and/or modify
+    it under the terms of the GNU General Public License (or the Lesser GPL)
+    as published by the Free Software Foundation; either version 3 of the
+    License, or (at your option) any later version.
+
+    FileTree is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+ */
+/*
+ * SortOrder.java
+ *
+ * Copyright 2026 the FileTree contributors
+ */
+
+package com.arashpayan.filetree;
+
+/**
+ * The orders the children of a directory can be sorted in. Whether
+ * directories come before files is chosen separately, with
+ * <code>FileTreeCore.setDirectoriesFirst()</code>.
+ */
+public enum SortOrder {
+
+    /**
+     * by name, the way the platform sorts files: without regard to case on
+     * Windows, and by character value elsewhere
+     */
+    NAME,
+    /**
+     * by name without regard to case, with runs of digits compared by their
+     * numeric value, so "file2" comes before "file10"
+     */
+    NATURAL,
+    /**
+     * by size, smallest first, then by name
+     */
+    SIZE,
+    /**
+     * by last-modified time, oldest first, then by name
+     */
+    LAST_MODIFIED;
+
+    /**
+     * returns true if this order only looks at names, so entries can be found
+     * by name with a binary search
+     * @return true for <code>NAME</code> and <code>NATURAL</code>
+     */
+    boolean isByName() {
+        return this == NAME || this == NATURAL;
+    }
+
+    /**
+     * returns true if this order compares names without regard to case
+     * @return true if names are folded to one case before they're compared
+     */
+    boolean foldsCase() {
+        return this == NATURAL || Constants.isWindows;
+    }
+}
@@ -0,0 +1,778 @@
+/* This file is part of FileTree.
+
+    FileTree is free software; you can redistribute it and/or modify
+    it under the terms of the GNU General Public License (or the Lesser GPL)
+    as published by the Free Software Foundation; either version 3 of the
+    License, or (at your option) any later version.
+
+    FileTree is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+ */
+/*
+ * TreeFilter.java
+ *
+ * Copyright 2026 the FileTree contributors
+ */
+
+package com.arashpayan.filetree;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Pattern;
+
+/**
+ * Decides which files and directories a <code>FileTree</code> shows, beyond
+ * the show files and show hidden files options. A filter is made of three
+ * stages, each of which can only hide more:
+ * <ol>
+ * <li>exclude patterns: files and directories that match one are hidden</li>
+ * <li>rule files: files in <code>.gitignore</code> syntax, found in any
+ * directory, whose rules apply to everything below that directory. The rules
+ * of a deeper file take precedence, and within a file the last rule that
+ * matches wins, so a rule starting with "!" can bring back what an earlier one
+ * hid.</li>
+ * <li>include patterns: if there are any, a file must match one of them to be
+ * shown. Directories aren't affected, since they may hold files that match.</li>
+ * </ol>
+ * Patterns are globs by default, or regular expressions when they start with
+ * "regex:" (a "glob:" prefix is accepted too). A pattern without a "/" is
+ * matched against the name of an entry, and one with a "/" against its whole
+ * path, with "/" as the separator. In globs, "*" and "?" don't match "/", and
+ * "**" does. A glob ending in "/" only matches directories.
+ * <p>
+ * The patterns are compiled once, when the filter is created: names without
+ * wildcards are compared directly, "*.ext" globs become a suffix test, and
+ * everything else a <code>Pattern</code>. Rule files are read the first time
+ * they're needed, and again whenever a listing shows that they changed. A tree
+ * or an index only looks for rule files up to the directory it starts at, never
+ * above it. Listings read earlier can be filtered again from the rule files
+ * already read, without touching the disk, once <code>loadRules</code> has read
+ * the ones they need.
+ * <p>
+ * A directory that's hidden is never listed, and neither the search index nor
+ * the directory sizes descend into it. A filter is immutable apart from the
+ * rule files it has read, and can be used from any thread.
+ */
+public class TreeFilter {
+
+    /**
+     * Creates a new instance of TreeFilter that hides nothing
+     */
+    public TreeFilter() {
+        this(Collections.<String>emptyList(), Collections.<String>emptyList(), null);
+    }
+
+    /**
+     * Creates a new instance of TreeFilter
+     * @param includes the patterns a file must match one of to be shown. If
+     * empty, every file that isn't hidden otherwise is shown.
+     * @param excludes the patterns of the files and directories to hide
+     * @param ruleFileName the name of the rule files, like ".gitignore", or null
+     * to ignore rule files
+     * @throws java.util.regex.PatternSyntaxException if a regular expression
+     * isn't valid
+     */
+    public TreeFilter(Collection<String> includes, Collection<String> excludes, String ruleFileName) {
+        if (includes == null || excludes == null)
+            throw new IllegalArgumentException("Null argument not allowed");
+
+        this.includes = compilePatterns(includes);
+        this.excludes = compilePatterns(excludes);
+        this.ruleFileName = ruleFileName;
+        ruleFiles = new ConcurrentHashMap<Object, RuleFile>();
+        rulesVersion = new AtomicInteger();
+    }
+
+    /**
+     * returns the name of the rule files this filter reads
+     * @return the name of the rule files, or null if they're ignored
+     */
+    public String getRuleFileName() {
+        return ruleFileName;
+    }
+
+    /**
+     * returns true if an entry of a directory passes the filter
+     * @param dir the directory
+     * @param name the name of the entry
+     * @param directory whether the entry is a directory
+     * @return true if the entry is shown
+     */
+    public boolean accepts(File dir, String name, boolean directory) {
+        return accepts(getRuleChain(dir), dir, name, directory);
+    }
+
+    /**
+     * returns true if an entry that passed the patterns and rule files should be
+     * shown. Subclasses can override this method to plug in checks of their
+     * own. It's called from background threads, so it must be thread safe.
+     * @param dir the directory
+     * @param name the name of the entry
+     * @param directory whether the entry is a directory
+     * @return true if the entry is shown. Always true for this class.
+     */
+    protected boolean acceptsEntry(File dir, String name, boolean directory) {
+        return true;
+    }
+
+    /**
+     * returns a number that changes whenever a rule file that had been read
+     * turns out to have changed
+     * @return the version of the rule files
+     */
+    int getRulesVersion() {
+        return rulesVersion.get();
+    }
+
+    /**
+     * hides the entries of a listing that has just been read from the disk
+     * that don't pass the filter. If the listing holds the directory's rule
+     * file, and it changed since it was read, it's read again first, and so
+     * are the rule files above it that haven't been read.
+     * @param dir the directory the listing was read from
+     * @param top the highest directory whose rule file applies, or null to go
+     * up to the root of the filesystem
+     * @param listing the listing
+     * @param complete whether the listing holds every entry of the directory, so
+     * a rule file that isn't in it doesn't exist
+     */
+    void applyFresh(File dir, File top, DirectoryListing listing, boolean complete) {
+        if (ruleFileName != null)
+        {
+            long modified = -1;
+            for (int i=0; i<listing.size(); i++)
+            {
+                if (!listing.is(i, DirectoryListing.DELETED) && listing.getName(i).equals(ruleFileName))
+                    modified = listing.getLastModified(i);
+            }
+            if (modified >= 0 || complete)
+                updateRules(dir, modified);
+        }
+        apply(dir, top, listing, true);
+    }
+
+    /**
+     * hides the entries of a listing that don't pass the filter, and shows the
+     * ones that do
+     * @param dir the directory the listing was read from
+     * @param top the highest directory whose rule file applies, or null to go
+     * up to the root of the filesystem
+     * @param listing the listing
+     * @param read whether rule files that haven't been read are read now. If
+     * false, nothing is read from the disk, and they count as empty.
+     */
+    void apply(File dir, File top, DirectoryListing listing, boolean read) {
+        if (isEmpty())
+        {
+            for (int i=0; i<listing.size(); i++)
+                listing.setFiltered(i, false);
+            return;
+        }
+
+        RuleChain chain = getRuleChain(dir, top, read);
+        for (int i=0; i<listing.size(); i++)
+        {
+            boolean shown = accepts(chain, dir, listing.getName(i), listing.is(i, DirectoryListing.DIRECTORY));
+            listing.setFiltered(i, !shown);
+        }
+    }
+
+    /**
+     * records that the rule file of a directory was seen with the given
+     * last-modified time, reading it again if it changed since it was read
+     * @param dir the directory
+     * @param modified the last-modified time of the rule file, or -1 if the
+     * directory has none
+     */
+    void updateRules(File dir, long modified) {
+        if (ruleFileName == null)
+            return;
+
+        RuleFile cached = ruleFiles.get(getKey(dir));
+        if (cached != null && cached.modified == modified)
+            return;
+
+        putRuleFile(dir, modified < 0 ? NO_RULES : readRuleFile(dir));
+        if (cached != null)
+            rulesVersion.incrementAndGet();
+    }
+
+    /**
+     * reads the rule files that apply to the entries of a directory that
+     * haven't been read yet, so its listing can be filtered without reading
+     * the disk
+     * @param dir the directory
+     * @param top the highest directory whose rule file applies, or null to go
+     * up to the root of the filesystem
+     */
+    void loadRules(File dir, File top) {
+        getRuleChain(dir, top, true);
+    }
+
+    /**
+     * returns the rule files that apply to the entries of a directory, reading
+     * the ones that haven't been read, up to the root of the filesystem
+     * @param dir the directory
+     * @return the rule files, deepest first, or null if there are none
+     */
+    RuleChain getRuleChain(File dir) {
+        return getRuleChain(dir, null, true);
+    }
+
+    /**
+     * returns the rule files that apply to the entries of a directory
+     * @param dir the directory
+     * @param top the highest directory whose rule file applies, or null to go
+     * up to the root of the filesystem, as for a directory that isn't below it
+     * @param read whether rule files that haven't been read are read now. If
+     * false, they count as empty.
+     * @return the rule files, deepest first, or null if there are none
+     */
+    RuleChain getRuleChain(File dir, File top, boolean read) {
+        if (ruleFileName == null)
+            return null;
+
+        // the chain is built from the top down, so deeper files come first
+        Object topKey = top == null ? null : getKey(top);
+        List<File> ancestors = new ArrayList<File>();
+        for (File ancestor=dir; ancestor != null; ancestor=ancestor.getParentFile())
+        {
+            ancestors.add(ancestor);
+            if (topKey != null && topKey.equals(getKey(ancestor)))
+                break;
+        }
+
+        RuleChain chain = null;
+        for (int i=ancestors.size()-1; i>=0; i--)
+        {
+            File ancestor = ancestors.get(i);
+            RuleFile ruleFile = ruleFiles.get(getKey(ancestor));
+            if (ruleFile == null)
+            {
+                if (!read)
+                    continue;
+                ruleFile = readRuleFile(ancestor);
+                putRuleFile(ancestor, ruleFile);
+            }
+            if (ruleFile.rules.length > 0)
+                chain = new RuleChain(ruleFile.rules, toPath(ancestor).length(), chain);
+        }
+
+        return chain;
+    }
+
+    /**
+     * returns true if an entry passes the filter
+     * @param chain the rule files that apply to the directory, from <code>getRuleChain</code>
+     * @param dir the directory
+     * @param name the name of the entry
+     * @param directory whether the entry is a directory
+     * @return true if the entry is shown
+     */
+    boolean accepts(RuleChain chain, File dir, String name, boolean directory) {
+        String path = null;
+        if (excludes.length > 0)
+        {
+            path = toPath(dir, name);
+            for (Rule rule:excludes)
+            {
+                if (rule.matches(name, path, directory))
+                    return false;
+            }
+        }
+
+        for (RuleChain link=chain; link != null; link=link.parent)
+        {
+            if (path == null)
+                path = toPath(dir, name);
+            String relative = path.substring(link.prefixLength);
+            Rule rule = lastMatch(link.rules, name, relative, directory);
+            if (rule != null)
+            {
+                if (!rule.negated)
+                    return false;
+                break;
+            }
+        }
+
+        if (directory || includes.length == 0)
+            return acceptsEntry(dir, name, directory);
+
+        if (path == null)
+            path = toPath(dir, name);
+        for (Rule rule:includes)
+        {
+            if (rule.matches(name, path, directory))
+                return acceptsEntry(dir, name, directory);
+        }
+
+        return false;
+    }
+
+    /**
+     * returns true if this filter can't hide anything
+     * @return true if there are no patterns and no rule files, and
+     * <code>acceptsEntry</code> isn't overridden
+     */
+    private boolean isEmpty() {
+        return includes.length == 0 && excludes.length == 0 && ruleFileName == null
+                && getClass() == TreeFilter.class;
+    }
+
+    /**
+     * remembers the rule file of a directory, forgetting every rule file once
+     * too many directories are remembered
+     * @param dir the directory
+     * @param ruleFile its rule file
+     */
+    private void putRuleFile(File dir, RuleFile ruleFile) {
+        if (ruleFiles.size() >= MAX_CACHED_DIRECTORIES)
+            ruleFiles.clear();
+        ruleFiles.put(getKey(dir), ruleFile);
+    }
+
+    /**
+     * returns the key the rule file of a directory is remembered by. A
+     * directory on another filesystem goes by its <code>Path</code>, so it's
+     * never mistaken for a directory of the default filesystem with the same
+     * path string.
+     * @param dir the directory
+     * @return the key
+     */
+    private static Object getKey(File dir) {
+        return dir instanceof PathFile ? dir.toPath() : dir;
+    }
+
+    /**
+     * reads and compiles the rule file of a directory
+     * @param dir the directory
+     * @return the rules, or <code>NO_RULES</code> if the directory has no rule
+     * file or it can't be read
+     */
+    private RuleFile readRuleFile(File dir) {
+        File file = PathFile.getChild(dir, ruleFileName);
+        long modified = file.lastModified();
+        if (modified == 0 || !file.isFile())
+            return NO_RULES;
+
+        List<String> lines;
+        try {
+            lines = Files.readAllLines(file.toPath(), UTF8);
+        } catch (IOException e) {
+            return NO_RULES;
+        }
+
+        List<Rule> rules = new ArrayList<Rule>();
+        for (String line:lines)
+        {
+            Rule rule = compileRule(line);
+            if (rule != null)
+                rules.add(rule);
+        }
+
+        return new RuleFile(modified, rules.toArray(new Rule[rules.size()]));
+    }
+
+    /**
+     * returns the last rule of a rule file that matches an entry
+     * @param rules the rules of the file
+     * @param name the name of the entry
+     * @param relative the path of the entry relative to the rule file's directory
+     * @param directory whether the entry is a directory
+     * @return the rule, or null if none matches
+     */
+    private static Rule lastMatch(Rule[] rules, String name, String relative, boolean directory) {
+        for (int i=rules.length-1; i>=0; i--)
+        {
+            if (rules[i].matches(name, relative, directory))
+                return rules[i];
+        }
+
+        return null;
+    }
+
+    /**
+     * compiles include or exclude patterns
+     * @param patterns the patterns
+     * @return the compiled patterns
+     */
+    private static Rule[] compilePatterns(Collection<String> patterns) {
+        Rule[] rules = new Rule[patterns.size()];
+        int count = 0;
+        for (String pattern:patterns)
+        {
+            if (pattern == null)
+                throw new IllegalArgumentException("Null argument not allowed");
+
+            if (pattern.startsWith(REGEX_PREFIX))
+            {
+                String regex = pattern.substring(REGEX_PREFIX.length());
+                rules[count++] = new Rule(false, false, regex.indexOf('/') >= 0, null, null, Pattern.compile(regex));
+                continue;
+            }
+
+            String glob = pattern.startsWith(GLOB_PREFIX) ? pattern.substring(GLOB_PREFIX.length()) : pattern;
+            boolean directoryOnly = glob.endsWith("/") && glob.length() > 1;
+            if (directoryOnly)
+                glob = glob.substring(0, glob.length() - 1);
+            rules[count++] = compileGlob(glob, false, directoryOnly, glob.indexOf('/') >= 0);
+        }
+
+        return rules;
+    }
+
+    /**
+     * compiles a line of a rule file
+     * @param line the line
+     * @return the rule, or null if the line is blank or a comment
+     */
+    private static Rule compileRule(String line) {
+        int end = line.length();
+        while (end > 0 && (line.charAt(end - 1) == ' ' || line.charAt(end - 1) == '\t' || line.charAt(end - 1) == '\r'))
+            end--;
+        // a trailing space can be kept by escaping it
+        if (end < line.length() && end > 0 && line.charAt(end - 1) == '\\')
+            end++;
+        String pattern = line.substring(0, end);
+        if (pattern.length() == 0 || pattern.startsWith("#"))
+            return null;
+
+        boolean negated = pattern.startsWith("!");
+        if (negated)
+            pattern = pattern.substring(1);
+        else if (pattern.startsWith("\\!") || pattern.startsWith("\\#"))
+            pattern = pattern.substring(1);
+
+        boolean directoryOnly = pattern.endsWith("/");
+        if (directoryOnly)
+            pattern = pattern.substring(0, pattern.length() - 1);
+        // a pattern with a slash is relative to the rule file's directory
+        boolean anchored = pattern.indexOf('/') >= 0;
+        if (pattern.startsWith("/"))
+            pattern = pattern.substring(1);
+        if (pattern.length() == 0)
+            return null;
+
+        return compileGlob(pattern, negated, directoryOnly, anchored);
+    }
+
+    /**
+     * compiles a glob into the fastest matcher that does the job
+     * @param glob the glob
+     * @param negated whether a match shows the entry rather than hiding it
+     * @param directoryOnly whether only directories can match
+     * @param matchesPath whether the glob is matched against the path of an
+     * entry rather than its name
+     * @return the rule
+     */
+    private static Rule compileGlob(String glob, boolean negated, boolean directoryOnly, boolean matchesPath) {
+        if (!hasWildcards(glob, 0))
+            return new Rule(negated, directoryOnly, matchesPath, unescape(glob), null, null);
+        if (!matchesPath && glob.startsWith("*") && !hasWildcards(glob, 1))
+            return new Rule(negated, directoryOnly, false, null, unescape(glob.substring(1)), null);
+
+        return new Rule(negated, directoryOnly, matchesPath, null, null, Pattern.compile(toRegex(glob)));
+    }
+
+    /**
+     * returns true if a glob has a wildcard from <code>start</code> on
+     * @param glob the glob
+     * @param start the first character to look at
+     * @return true if there is a "*", "?" or "["
+     */
+    private static boolean hasWildcards(String glob, int start) {
+        for (int i=start; i<glob.length(); i++)
+        {
+            char c = glob.charAt(i);
+            if (c == '\\')
+                i++;
+            else if (c == '*' || c == '?' || c == '[')
+                return true;
+        }
+
+        return false;
+    }
+
+    /**
+     * removes the backslashes that escape characters of a glob
+     * @param glob the glob, without wildcards
+     * @return the text it matches
+     */
+    private static String unescape(String glob) {
+        if (glob.indexOf('\\') < 0)
+            return glob;
+
+        StringBuilder sb = new StringBuilder(glob.length());
+        for (int i=0; i<glob.length(); i++)
+        {
+            char c = glob.charAt(i);
+            if (c == '\\' && i + 1 < glob.length())
+                c = glob.charAt(++i);
+            sb.append(c);
+        }
+
+        return sb.toString();
+    }
+
+    /**
+     * translates a glob into a regular expression
+     * @param glob the glob
+     * @return the regular expression
+     */
+    private static String toRegex(String glob) {
+        StringBuilder regex = new StringBuilder(glob.length() * 2);
+        int length = glob.length();
+        for (int i=0; i<length; i++)
+        {
+            char c = glob.charAt(i);
+            if (c == '*' && i + 1 < length && glob.charAt(i + 1) == '*')
+            {
+                boolean startsSegment = i == 0 || glob.charAt(i - 1) == '/';
+                if (startsSegment && i + 2 < length && glob.charAt(i + 2) == '/')
+                {
+                    // "**/" is any number of directories, including none
+                    regex.append("(?:.*/)?");
+                    i += 2;
+                }
+                else
+                {
+                    regex.append(".*");
+                    i++;
+                }
+            }
+            else if (c == '*')
+                regex.append("[^/]*");
+            else if (c == '?')
+                regex.append("[^/]");
+            else if (c == '[' && glob.indexOf(']', i + 2) > 0)
+            {
+                int close = glob.indexOf(']', i + 2);
+                regex.append('[');
+                int first = i + 1;
+                if (glob.charAt(first) == '!' || glob.charAt(first) == '^')
+                {
+                    regex.append('^');
+                    first++;
+                }
+                for (int j=first; j<close; j++)
+                {
+                    char member = glob.charAt(j);
+                    if (member == '\\' || member == '[' || member == '&')
+                        regex.append('\\');
+                    regex.append(member);
+                }
+                regex.append(']');
+                i = close;
+            }
+            else if (c == '\\' && i + 1 < length)
+                regex.append(Pattern.quote(String.valueOf(glob.charAt(++i))));
+            else if (Character.isLetterOrDigit(c))
+                regex.append(c);
+            else
+                regex.append('\\').append(c);
+        }
+
+        return regex.toString();
+    }
+
+    /**
+     * returns the path of a directory with "/" as the separator, ending in "/"
+     * @param dir the directory
+     * @return the path
+     */
+    private static String toPath(File dir) {
+        String path = dir.getPath();
+        if (File.separatorChar != '/')
+            path = path.replace(File.separatorChar, '/');
+        if (!path.endsWith("/"))
+            path += "/";
+
+        return path;
+    }
+
+    /**
+     * returns the path of an entry with "/" as the separator
+     * @param dir the directory of the entry
+     * @param name the name of the entry
+     * @return the path
+     */
+    private static String toPath(File dir, String name) {
+        return toPath(dir) + name;
+    }
+
+    /**
+     * the patterns a file must match one of
+     */
+    private final Rule[] includes;
+    /**
+     * the patterns of the entries to hide
+     */
+    private final Rule[] excludes;
+    /**
+     * the name of the rule files, or null
+     */
+    private final String ruleFileName;
+    /**
+     * the rule files read so far, by the key of their directory
+     */
+    private final ConcurrentHashMap<Object, RuleFile> ruleFiles;
+    /**
+     * counts the changes to rule files that had been read
+     */
+    private final AtomicInteger rulesVersion;
+
+    /**
+     * the prefix of patterns that are regular expressions
+     */
+    private static final String REGEX_PREFIX = "regex:";
+    /**
+     * the prefix of patterns that are globs, which is optional
+     */
+    private static final String GLOB_PREFIX = "glob:";
+    /**
+     * the most directories whose rule files, or lack of one, are remembered
+     */
+    private static final int MAX_CACHED_DIRECTORIES = 65536;
+    /**
+     * the encoding of rule files
+     */
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+    /**
+     * the rules of a directory that has no rule file
+     */
+    private static final RuleFile NO_RULES = new RuleFile(-1, new Rule[0]);
+
+    /**
+     * a compiled pattern
+     */
+    private static class Rule {
+        /**
+         * Creates a new instance of Rule. Exactly one of <code>literal</code>,
+         * <code>suffix</code> and <code>pattern</code> is set.
+         * @param negated whether a match shows the entry rather than hiding it
+         * @param directoryOnly whether only directories can match
+         * @param matchesPath whether the path is matched rather than the name
+         * @param literal the text to match exactly
+         * @param suffix the text the name must end with
+         * @param pattern the regular expression to match
+         */
+        Rule(boolean negated, boolean directoryOnly, boolean matchesPath, String literal, String suffix, Pattern pattern) {
+            this.negated = negated;
+            this.directoryOnly = directoryOnly;
+            this.matchesPath = matchesPath;
+            this.literal = literal;
+            this.suffix = suffix;
+            this.pattern = pattern;
+        }
+
+        /**
+         * returns true if an entry matches
+         * @param name the name of the entry
+         * @param path the path of the entry
+         * @param directory whether the entry is a directory
+         * @return true if the entry matches
+         */
+        boolean matches(String name, String path, boolean directory) {
+            if (directoryOnly && !directory)
+                return false;
+
+            String text = matchesPath ? path : name;
+            if (literal != null)
+                return text.equals(literal);
+            if (suffix != null)
+                return text.endsWith(suffix);
+
+            return pattern.matcher(text).matches();
+        }
+
+        /**
+         * whether a match shows the entry rather than hiding it
+         */
+        final boolean negated;
+        /**
+         * whether only directories can match
+         */
+        final boolean directoryOnly;
+        /**
+         * whether the path is matched rather than the name
+         */
+        final boolean matchesPath;
+        /**
+         * the text to match exactly, or null
+         */
+        final String literal;
+        /**
+         * the text the name must end with, or null
+         */
+        final String suffix;
+        /**
+         * the regular expression to match, or null
+         */
+        final Pattern pattern;
+    }
+
+    /**
+     * the compiled rules of a rule file
+     */
+    private static class RuleFile {
+        /**
+         * Creates a new instance of RuleFile
+         * @param modified the last-modified time of the file, or -1 if there is none
+         * @param rules the rules, in the order they appear
+         */
+        RuleFile(long modified, Rule[] rules) {
+            this.modified = modified;
+            this.rules = rules;
+        }
+
+        /**
+         * the last-modified time of the file, or -1 if there is none
+         */
+        final long modified;
+        /**
+         * the rules, in the order they appear
+         */
+        final Rule[] rules;
+    }
+
+    /**
+     * the rule files that apply to a directory, deepest first
+     */
+    static class RuleChain {
+        /**
+         * Creates a new instance of RuleChain
+         * @param rules the rules of the deepest file
+         * @param prefixLength the length of the path of the file's directory,
+         * which is cut from paths to make them relative to it
+         * @param parent the rule files above, or null
+         */
+        RuleChain(Rule[] rules, int prefixLength, RuleChain parent) {
+            this.rules = rules;
+            this.prefixLength = prefixLength;
+            this.parent = parent;
+        }
+
+        /**
+         * the rules of the deepest file
+         */
+        final Rule[] rules;
+        /**
+         * the length of the path of the file's directory, ending in "/"
+         */
+        final int prefixLength;
+        /**
+         * the rule files above, or null
+         */
+        final RuleChain parent;
+    }
+}
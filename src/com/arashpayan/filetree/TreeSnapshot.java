@@ -0,0 +1,210 @@
+/* This file is part of FileTree.
+
+    FileTree is free software; you can redistribute it and/or modify
+    it under the terms of the GNU General Public License (or the Lesser GPL)
+    as published by the Free Software Foundation; either version 3 of the
+    License, or (at your option) any later version.
+
+    FileTree is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+ */
+/*
+ * TreeSnapshot.java
+ *
+ * Copyright 2026 the FileTree contributors
+ */
+
+package com.arashpayan.filetree;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The expanded directories of a <code>FileTree</code>, with their listings,
+ * saved to a file so the tree can be shown right away the next time it's
+ * created.
+ * <p>
+ * The file starts with the selected files, followed by each directory's path
+ * and its <code>DirectoryListing</code>, parents before their children. It's read
+ * through a memory mapping, so each listing is a few bulk copies out of the page
+ * cache. The file is written to a temporary file first and then moved into
+ * place, so a snapshot is never left half written.
+ */
+final class TreeSnapshot {
+
+    /**
+     * Creates a new instance of TreeSnapshot
+     * @param listings the listings of the directories, by directory, parents first
+     * @param selection the selected files
+     */
+    private TreeSnapshot(Map<File, DirectoryListing> listings, List<File> selection) {
+        this.listings = listings;
+        this.selection = selection;
+    }
+
+    /**
+     * returns the listings in the snapshot
+     * @return the listings of the directories, by directory, parents before
+     * their children
+     */
+    Map<File, DirectoryListing> getListings() {
+        return listings;
+    }
+
+    /**
+     * returns the files that were selected when the snapshot was taken
+     * @return the selected files
+     */
+    List<File> getSelection() {
+        return selection;
+    }
+
+    /**
+     * writes a snapshot
+     * @param file the file to write to
+     * @param listings the listings of the directories, by directory, parents first
+     * @param selection the selected files
+     * @throws IOException if the snapshot can't be written
+     */
+    static void write(File file, Map<File, DirectoryListing> listings, List<File> selection) throws IOException {
+        File dir = file.getAbsoluteFile().getParentFile();
+        File temp = File.createTempFile(file.getName(), ".tmp", dir);
+        try {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeInt(selection.size());
+                for (File selected:selection)
+                    writeString(out, selected.getPath());
+                out.writeInt(listings.size());
+                for (Map.Entry<File, DirectoryListing> entry:listings.entrySet())
+                {
+                    writeString(out, entry.getKey().getPath());
+                    entry.getValue().write(out);
+                }
+            }
+
+            try {
+                Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            temp.delete();
+        }
+    }
+
+    /**
+     * reads a snapshot written by <code>write</code>
+     * @param file the file to read
+     * @return the snapshot
+     * @throws IOException if the file can't be read, or isn't a valid snapshot
+     */
+    static TreeSnapshot read(File file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            MappedByteBuffer in = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (in.getInt() != MAGIC || in.getInt() != VERSION)
+                throw new IOException("Not a snapshot: " + file);
+
+            int selectionCount = readCount(in);
+            List<File> selection = new ArrayList<File>(selectionCount);
+            for (int i=0; i<selectionCount; i++)
+                selection.add(new File(readString(in)));
+
+            int listingCount = readCount(in);
+            Map<File, DirectoryListing> listings = new LinkedHashMap<File, DirectoryListing>(listingCount * 2);
+            for (int i=0; i<listingCount; i++)
+            {
+                File dir = new File(readString(in));
+                listings.put(dir, DirectoryListing.read(in));
+            }
+
+            return new TreeSnapshot(listings, selection);
+        } catch (BufferUnderflowException | IllegalArgumentException e) {
+            throw new IOException("Truncated snapshot: " + file, e);
+        }
+    }
+
+    /**
+     * writes a string as its length followed by its UTF-8 bytes
+     * @param out where to write the string
+     * @param s the string
+     * @throws IOException if the string can't be written
+     */
+    private static void writeString(DataOutputStream out, String s) throws IOException {
+        byte[] bytes = s.getBytes(UTF8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    /**
+     * reads a string written by <code>writeString</code>
+     * @param in the buffer to read from
+     * @return the string
+     * @throws IOException if the data doesn't hold a valid string
+     */
+    private static String readString(ByteBuffer in) throws IOException {
+        int length = in.getInt();
+        if (length < 0 || length > in.remaining())
+            throw new IOException("Invalid string");
+
+        byte[] bytes = new byte[length];
+        in.get(bytes);
+        return new String(bytes, UTF8);
+    }
+
+    /**
+     * reads the number of items that follow
+     * @param in the buffer to read from
+     * @return the number of items
+     * @throws IOException if the count can't be right
+     */
+    private static int readCount(ByteBuffer in) throws IOException {
+        int count = in.getInt();
+        // every item takes at least 4 bytes
+        if (count < 0 || count > in.remaining() / 4)
+            throw new IOException("Invalid count");
+
+        return count;
+    }
+
+    /**
+     * the listings of the directories, by directory, parents first
+     */
+    private final Map<File, DirectoryListing> listings;
+    /**
+     * the selected files
+     */
+    private final List<File> selection;
+
+    /**
+     * the first bytes of every snapshot
+     */
+    private static final int MAGIC = 0x46545331;    // "FTS1"
+    /**
+     * the version of the format, changed whenever it changes
+     */
+    private static final int VERSION = 1;
+    /**
+     * the encoding of the paths
+     */
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+}